@@ -9,8 +9,6 @@ import java.util.Set;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
-import sushi.event.attribute.SushiAttributeTypeEnum;
-import sushi.event.collection.SushiMapTree;
 import sushi.process.SushiProcess;
 import sushi.process.SushiProcessInstance;
 
@@ -29,14 +27,15 @@ public class AttributeCorrelator {
 	 * are E1, E2, and E3, the correlation is E1.A=E2.A, E1.A=E3.A and E2.A=E3.A
 	 * @param process the process from which the process instances are derived and created
 	 * @param timeCondition (optional) rule for advanced time correlation related to the process
+	 * @return the saved process, which holds the saved correlation attributes
 	 */
-	public static void correlate(List<SushiEventType> selectedEventTypes, List<SushiAttribute> correlationAttributes, SushiProcess process, TimeCondition timeCondition) {
+	public static SushiProcess correlate(List<SushiEventType> selectedEventTypes, List<SushiAttribute> correlationAttributes, SushiProcess process, TimeCondition timeCondition) {
 		process.addCorrelationAttributes(correlationAttributes);
 		if (timeCondition != null) {
-			timeCondition.save();
+			timeCondition = (TimeCondition) timeCondition.save();
 			process.setTimeCondition(timeCondition);
 		}
-		process.merge();
+		process = process.merge();
 		Set<SushiEvent> eventsToCorrelate = new HashSet<SushiEvent>();
 		for (SushiEventType actualEventType : selectedEventTypes) {
 			eventsToCorrelate.addAll(SushiEvent.findByEventType(actualEventType));
@@ -46,6 +45,7 @@ public class AttributeCorrelator {
 			SushiEvent actualEvent = eventIterator.next();
 			correlateEventToProcessInstance(actualEvent, correlationAttributes, process, timeCondition);
 		}
+		return process;
 	}
 	
 	/**
@@ -62,31 +62,23 @@ public class AttributeCorrelator {
 	static void correlateEventToProcessInstance(SushiEvent actualEvent, List<SushiAttribute> correlationAttributes, SushiProcess process, TimeCondition timeCondition) {
 		
 		boolean insertedInExistingProcessInstance = false;
-		List<SushiProcessInstance> processInstances = SushiProcessInstance.findByProcess(process);
 		
 		/*
 		 * Looking for a match from existing process instances. 
-		 * The event is related to a process instance if their values of all correlation attributes are equal.
+		 * The event is related to a process instance if their values of all correlation attributes are equal, 
+		 * these process instances are looked up in the correlation index.
 		 * If a rule for advanced time correlation is provided, the event must additionally belong to the time period defined in the rule for advanced time correlation. 
 		 * The event is finally added to the process instance.
 		 */
+		List<SushiProcessInstance> processInstances = CorrelationIndex.getInstance().findByCorrelationAttributes(process, correlationAttributes, actualEvent);
 		for (SushiProcessInstance actualProcessInstance : processInstances) {
 			boolean processInstanceAndEventMatch = true;
-			for (SushiAttribute actualCorrelationAttribute : correlationAttributes) {
-				String nameOfactualAttribute = actualCorrelationAttribute.getAttributeExpression();
-				SushiMapTree<String, Serializable> valueTreeOfProcessInstance = actualProcessInstance.getCorrelationAttributesAndValues();
-				SushiMapTree<String, Serializable> valueTreeOfEvent = actualEvent.getValues();
-				if (!valueTreeOfProcessInstance.get(nameOfactualAttribute).toString().equals(valueTreeOfEvent.get(nameOfactualAttribute).toString())) {
-					processInstanceAndEventMatch = false;
-					break;
-				}
-			}
-			if (processInstanceAndEventMatch && timeCondition != null) {
+			if (timeCondition != null) {
 				processInstanceAndEventMatch = timeCondition.belongsEventToTimerEvent(actualEvent, actualProcessInstance.getTimerEvent());
 			}
 			if (processInstanceAndEventMatch) {
 				actualProcessInstance.addEvent(actualEvent);
-				actualProcessInstance.merge();
+				actualProcessInstance = (SushiProcessInstance) actualProcessInstance.merge();
 				
 				actualEvent.addProcessInstance(actualProcessInstance);
 				actualEvent.merge();
@@ -122,6 +114,7 @@ public class AttributeCorrelator {
 			}
 			newProcessInstance.addEvent(actualEvent);
 			newProcessInstance.save();
+			CorrelationIndex.getInstance().update(process, newProcessInstance);
 			
 			actualEvent.addProcessInstance(newProcessInstance);
 			actualEvent.merge();
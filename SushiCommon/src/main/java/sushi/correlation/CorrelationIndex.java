@@ -0,0 +1,256 @@
+package sushi.correlation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import sushi.event.SushiEvent;
+import sushi.event.attribute.SushiAttribute;
+import sushi.event.collection.SushiMapTree;
+import sushi.persistence.Persistor;
+import sushi.process.SushiProcess;
+import sushi.process.SushiProcessInstance;
+
+/**
+ * In-memory index from correlation values to the process instances of a process.
+ * With this index, an incoming event finds its process instances by a hash lookup
+ * instead of comparing its values with the correlation values of all process instances of the process.
+ *
+ * The index of a process is built from the database on the first correlation for this process after startup
+ * and is rebuilt if the definition of the correlation (correlation attributes or correlation rules) changes.
+ * The index holds only IDs, the process instances are resolved from the persistence context.
+ */
+public class CorrelationIndex {
+
+	private static CorrelationIndex instance = null;
+	private Map<Integer, ProcessCorrelationIndex> processIndexes = new HashMap<Integer, ProcessCorrelationIndex>();
+
+	/**
+	 * Singleton, therefore the constructor is private.
+	 */
+	private CorrelationIndex() {
+	}
+
+	/**
+	 * Singleton class. Use this method to get the instance.
+	 * @return
+	 */
+	public static synchronized CorrelationIndex getInstance() {
+		if (instance == null) {
+			instance = new CorrelationIndex();
+		}
+		return instance;
+	}
+
+	/**
+	 * Clears the singleton-object, e.g. after switching the database.
+	 */
+	public static synchronized void clearInstance() {
+		instance = null;
+	}
+
+	/**
+	 * Returns the process instances of the process, whose values of all given correlation attributes
+	 * are equal to the values of the event.
+	 *
+	 * @param process
+	 * @param correlationAttributes single event type attributes defining the correlation of the given process
+	 * @param event
+	 * @return matching process instances in the order of their creation
+	 */
+	public synchronized List<SushiProcessInstance> findByCorrelationAttributes(SushiProcess process, List<SushiAttribute> correlationAttributes, SushiEvent event) {
+		List<String> attributeExpressions = new ArrayList<String>();
+		for (SushiAttribute correlationAttribute : correlationAttributes) {
+			attributeExpressions.add(correlationAttribute.getAttributeExpression());
+		}
+		ProcessCorrelationIndex processIndex = getProcessIndex(process, attributeExpressions);
+		return resolve(processIndex, processIndex.get(processIndex.getCorrelationKey(event.getValues())));
+	}
+
+	/**
+	 * Returns the process instances of the process, that have at least one correlation value
+	 * related to a value of the event through the given correlation rules.
+	 * These are candidates only, they have to be checked against all correlation rules.
+	 *
+	 * @param process
+	 * @param correlationRules set of correlation rules defining the correlation of the given process
+	 * @param event
+	 * @return candidate process instances
+	 */
+	public synchronized List<SushiProcessInstance> findCandidatesByCorrelationRules(SushiProcess process, Set<CorrelationRule> correlationRules, SushiEvent event) {
+		ProcessCorrelationIndex processIndex = getProcessIndex(process, null);
+		Set<Integer> candidateIDs = new LinkedHashSet<Integer>();
+		SushiMapTree<String, Serializable> valueTreeOfEvent = event.getValues();
+		for (CorrelationRule correlationRule : correlationRules) {
+			if (correlationRule.getFirstAttribute().getEventType().isSameEventType(event.getEventType())) {
+				Serializable value = valueTreeOfEvent.get(correlationRule.getFirstAttribute().getAttributeExpression());
+				if (value != null) {
+					candidateIDs.addAll(processIndex.get(Arrays.asList(correlationRule.getSecondAttribute().getQualifiedAttributeName(), value.toString())));
+				}
+			}
+			if (correlationRule.getSecondAttribute().getEventType().isSameEventType(event.getEventType())) {
+				Serializable value = valueTreeOfEvent.get(correlationRule.getSecondAttribute().getAttributeExpression());
+				if (value != null) {
+					candidateIDs.addAll(processIndex.get(Arrays.asList(correlationRule.getFirstAttribute().getQualifiedAttributeName(), value.toString())));
+				}
+			}
+		}
+		return resolve(processIndex, candidateIDs);
+	}
+
+	/**
+	 * Adds a new process instance of the process to the index or updates the index
+	 * after the correlation values of the process instance have changed.
+	 *
+	 * @param process
+	 * @param processInstance
+	 */
+	public synchronized void update(SushiProcess process, SushiProcessInstance processInstance) {
+		ProcessCorrelationIndex processIndex = processIndexes.get(process.getID());
+		if (processIndex != null) {
+			processIndex.remove(processInstance.getID());
+			processIndex.add(processInstance);
+		}
+	}
+
+	/**
+	 * Removes a process instance of the process from the index.
+	 *
+	 * @param process
+	 * @param processInstance
+	 */
+	public synchronized void remove(SushiProcess process, SushiProcessInstance processInstance) {
+		ProcessCorrelationIndex processIndex = processIndexes.get(process.getID());
+		if (processIndex != null) {
+			processIndex.remove(processInstance.getID());
+		}
+	}
+
+	/**
+	 * Removes the index of the process, it will be rebuilt from the database on the next correlation.
+	 * Has to be called if the process instances of the process are removed or the correlation is redefined.
+	 *
+	 * @param process
+	 */
+	public synchronized void removeProcess(SushiProcess process) {
+		processIndexes.remove(process.getID());
+	}
+
+	/**
+	 * Returns the index of the process and builds it from the database if necessary.
+	 *
+	 * @param attributeExpressions expressions of the correlation attributes or null for correlation with correlation rules
+	 */
+	private ProcessCorrelationIndex getProcessIndex(SushiProcess process, List<String> attributeExpressions) {
+		ProcessCorrelationIndex processIndex = processIndexes.get(process.getID());
+		if (processIndex == null || !processIndex.isBuiltFor(attributeExpressions)) {
+			processIndex = new ProcessCorrelationIndex(attributeExpressions);
+			for (SushiProcessInstance processInstance : SushiProcessInstance.findByProcess(process)) {
+				processIndex.add(processInstance);
+			}
+			processIndexes.put(process.getID(), processIndex);
+		}
+		return processIndex;
+	}
+
+	/**
+	 * Resolves the IDs from the persistence context and removes IDs of process instances,
+	 * which have been deleted in the meantime, from the index.
+	 */
+	private List<SushiProcessInstance> resolve(ProcessCorrelationIndex processIndex, Set<Integer> processInstanceIDs) {
+		List<SushiProcessInstance> processInstances = new ArrayList<SushiProcessInstance>();
+		for (Integer processInstanceID : new ArrayList<Integer>(processInstanceIDs)) {
+			SushiProcessInstance processInstance = Persistor.getEntityManager().find(SushiProcessInstance.class, processInstanceID);
+			if (processInstance == null) {
+				processIndex.remove(processInstanceID);
+			} else {
+				processInstances.add(processInstance);
+			}
+		}
+		return processInstances;
+	}
+
+	/**
+	 * Index of the process instances of one process.
+	 * For correlation with correlation attributes the key is the tuple of the values of the correlation attributes.
+	 * For correlation with correlation rules the keys are pairs of qualified attribute name and value.
+	 */
+	private static class ProcessCorrelationIndex {
+
+		private List<String> attributeExpressions;
+		private Map<List<String>, Set<Integer>> processInstanceIDsByKey = new HashMap<List<String>, Set<Integer>>();
+		private Map<Integer, List<List<String>>> keysByProcessInstanceID = new HashMap<Integer, List<List<String>>>();
+
+		private ProcessCorrelationIndex(List<String> attributeExpressions) {
+			this.attributeExpressions = attributeExpressions;
+		}
+
+		private boolean isBuiltFor(List<String> attributeExpressions) {
+			if (this.attributeExpressions == null) {
+				return attributeExpressions == null;
+			}
+			return this.attributeExpressions.equals(attributeExpressions);
+		}
+
+		private List<String> getCorrelationKey(SushiMapTree<String, Serializable> values) {
+			List<String> key = new ArrayList<String>();
+			for (String attributeExpression : attributeExpressions) {
+				key.add(String.valueOf(values.get(attributeExpression)));
+			}
+			return key;
+		}
+
+		private void add(SushiProcessInstance processInstance) {
+			List<List<String>> keys = new ArrayList<List<String>>();
+			SushiMapTree<String, Serializable> correlationValues = processInstance.getCorrelationAttributesAndValues();
+			if (attributeExpressions != null) {
+				keys.add(getCorrelationKey(correlationValues));
+			} else {
+				for (String qualifiedAttributeName : correlationValues.keySet()) {
+					Serializable value = correlationValues.get(qualifiedAttributeName);
+					if (value != null) {
+						keys.add(Arrays.asList(qualifiedAttributeName, value.toString()));
+					}
+				}
+			}
+			for (List<String> key : keys) {
+				Set<Integer> processInstanceIDs = processInstanceIDsByKey.get(key);
+				if (processInstanceIDs == null) {
+					processInstanceIDs = new LinkedHashSet<Integer>();
+					processInstanceIDsByKey.put(key, processInstanceIDs);
+				}
+				processInstanceIDs.add(processInstance.getID());
+			}
+			keysByProcessInstanceID.put(processInstance.getID(), keys);
+		}
+
+		private void remove(int processInstanceID) {
+			List<List<String>> keys = keysByProcessInstanceID.remove(processInstanceID);
+			if (keys == null) {
+				return;
+			}
+			for (List<String> key : keys) {
+				Set<Integer> processInstanceIDs = processInstanceIDsByKey.get(key);
+				if (processInstanceIDs != null) {
+					processInstanceIDs.remove(processInstanceID);
+					if (processInstanceIDs.isEmpty()) {
+						processInstanceIDsByKey.remove(key);
+					}
+				}
+			}
+		}
+
+		private Set<Integer> get(List<String> key) {
+			Set<Integer> processInstanceIDs = processInstanceIDsByKey.get(key);
+			if (processInstanceIDs == null) {
+				return new LinkedHashSet<Integer>();
+			}
+			return processInstanceIDs;
+		}
+	}
+}
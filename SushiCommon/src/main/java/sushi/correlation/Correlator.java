@@ -46,5 +46,6 @@ public class Correlator {
 		for (SushiProcessInstance processInstance : existingProcessInstances) {
 			processInstance.remove();
 		}
+		CorrelationIndex.getInstance().removeProcess(selectedProcess);
 	}
 }
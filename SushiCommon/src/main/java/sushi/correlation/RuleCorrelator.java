@@ -26,8 +26,9 @@ public class RuleCorrelator {
 	 * defining the correlation of the given process (e.g. E1.A=E2.B, E2.G=E3.H, E3.H=E4.H for event types E1, E2, E3, E4)
 	 * @param process the process from which the process instances are derived and created
 	 * @param timeCondition (optional) rule for advanced time correlation related to the process
+	 * @return the saved process, which holds the saved correlation rules
 	 */
-	public static void correlate(Set<CorrelationRule> correlationRules, SushiProcess process, TimeCondition timeCondition) {
+	public static SushiProcess correlate(Set<CorrelationRule> correlationRules, SushiProcess process, TimeCondition timeCondition) {
 		Set<SushiEventType> eventTypes = new HashSet<SushiEventType>();
 		for (CorrelationRule rule : correlationRules) {
 			process.addCorrelationRule(rule);
@@ -35,11 +36,11 @@ public class RuleCorrelator {
 			eventTypes.add(rule.getSecondAttribute().getEventType());
 		}
 		if (timeCondition != null) {
-			timeCondition.save();
+			timeCondition = (TimeCondition) timeCondition.save();
 			process.setTimeCondition(timeCondition);
 		}
 		process.setEventTypes(eventTypes);
-		process.merge();
+		process = process.merge();
 		Set<SushiEvent> eventsToCorrelate = new HashSet<SushiEvent>();
 		for(SushiEventType actualEventType : eventTypes){
 			eventsToCorrelate.addAll(SushiEvent.findByEventType(actualEventType));
@@ -49,6 +50,7 @@ public class RuleCorrelator {
 			SushiEvent actualEvent = eventIterator.next();
 			correlateEventToProcessInstance(actualEvent, correlationRules, process, timeCondition);
 		}
+		return process;
 	}
 	
 	/**
@@ -64,47 +66,19 @@ public class RuleCorrelator {
 	static void correlateEventToProcessInstance(SushiEvent actualEvent, Set<CorrelationRule> correlationRules, SushiProcess process, TimeCondition timeCondition) {
 		
 		boolean insertedInExistingProcessInstance = false;
-		List<SushiProcessInstance> processInstances = SushiProcessInstance.findByProcess(process);
+		CorrelationIndex correlationIndex = CorrelationIndex.getInstance();
+		List<SushiProcessInstance> processInstances = correlationIndex.findCandidatesByCorrelationRules(process, correlationRules, actualEvent);
 		Set<SushiProcessInstance> matchedProcessInstances = new HashSet<SushiProcessInstance>();
 		
 		/*
 		 * Looking for matching existing process instances. 
 		 * If no rule for advanced time correlation is provided, the event is related to a process instance 
 		 * if their values defined through the correlation rules are equal.
+		 * Only process instances sharing at least one related correlation value with the event 
+		 * are taken from the correlation index and checked here.
 		 */
 		for (SushiProcessInstance actualProcessInstance : processInstances) {
-			boolean processInstanceAndEventMatch = false;
-			SushiMapTree<String, Serializable> valueTreeOfProcessInstance = actualProcessInstance.getCorrelationAttributesAndValues();
-			SushiMapTree<String, Serializable> valueTreeOfEvent = actualEvent.getValues();
-			for (CorrelationRule actualCorrelationRule : correlationRules) {
-				if (actualCorrelationRule.getFirstAttribute().getEventType().equals(actualEvent.getEventType())) {
-					String qualifiedAttributeName = actualCorrelationRule.getSecondAttribute().getQualifiedAttributeName();
-					String attributeExpression = actualCorrelationRule.getFirstAttribute().getAttributeExpression();
-					if (valueTreeOfProcessInstance.get(qualifiedAttributeName) != null) {
-						if (valueTreeOfProcessInstance.get(qualifiedAttributeName).toString().equals(valueTreeOfEvent.get(attributeExpression).toString())) {
-							processInstanceAndEventMatch = true;
-						} else {
-							processInstanceAndEventMatch = false;
-							break;
-						}
-						continue;
-					}
-				}
-				if (actualCorrelationRule.getSecondAttribute().getEventType().equals(actualEvent.getEventType())) {
-					String qualifiedAttributeName = actualCorrelationRule.getFirstAttribute().getQualifiedAttributeName();
-					String attributeExpression = actualCorrelationRule.getSecondAttribute().getAttributeExpression();
-					if (valueTreeOfProcessInstance.get(qualifiedAttributeName) != null) {
-						if (valueTreeOfProcessInstance.get(qualifiedAttributeName).toString().equals(valueTreeOfEvent.get(attributeExpression).toString())) {
-							processInstanceAndEventMatch = true;
-						} else {
-							processInstanceAndEventMatch = false;
-							break;
-						}
-						continue;
-					}
-				}
-			}
-			if (processInstanceAndEventMatch) {
+			if (matchesProcessInstance(actualEvent, actualProcessInstance, correlationRules)) {
 				matchedProcessInstances.add(actualProcessInstance);
 			}
 		}
@@ -140,6 +114,7 @@ public class RuleCorrelator {
 							}
 							// The correlation values are merged here.
 							actualProcessInstance.getCorrelationAttributesAndValues().putAll(processInstanceToMerge.getCorrelationAttributesAndValues());
+							correlationIndex.remove(process, processInstanceToMerge);
 							processInstanceToMerge.remove();
 							System.out.println("Process instance merged and removed.");
 						}
@@ -147,7 +122,8 @@ public class RuleCorrelator {
 					storeCorrelationValuesOfProcessInstance(actualProcessInstance, correlationRules, actualEvent);
 					
 					actualProcessInstance.addEvent(actualEvent);
-					actualProcessInstance.merge();
+					actualProcessInstance = (SushiProcessInstance) actualProcessInstance.merge();
+					correlationIndex.update(process, actualProcessInstance);
 					
 					actualEvent.addProcessInstance(actualProcessInstance);
 					actualEvent.merge();
@@ -182,6 +158,7 @@ public class RuleCorrelator {
 			
 			newProcessInstance.addEvent(actualEvent);
 			newProcessInstance.save();
+			correlationIndex.update(process, newProcessInstance);
 			
 			actualEvent.addProcessInstance(newProcessInstance);
 			actualEvent.merge();
@@ -193,6 +170,51 @@ public class RuleCorrelator {
 		}
 	}
 	
+	/**
+	 * Checks whether an event matches a process instance through the given correlation rules.
+	 * The event matches if the process instance has at least one correlation value related to the event 
+	 * and all related correlation values of the process instance are equal to the values of the event.
+	 * 
+	 * @param actualEvent the event to be correlated to a process instance
+	 * @param actualProcessInstance the process instance to be checked
+	 * @param correlationRules set of correlation rules defining the correlation of the process
+	 * @return true if the event matches the process instance
+	 */
+	private static boolean matchesProcessInstance(SushiEvent actualEvent, SushiProcessInstance actualProcessInstance, Set<CorrelationRule> correlationRules) {
+		boolean processInstanceAndEventMatch = false;
+		SushiMapTree<String, Serializable> valueTreeOfProcessInstance = actualProcessInstance.getCorrelationAttributesAndValues();
+		SushiMapTree<String, Serializable> valueTreeOfEvent = actualEvent.getValues();
+		for (CorrelationRule actualCorrelationRule : correlationRules) {
+			if (actualCorrelationRule.getFirstAttribute().getEventType().isSameEventType(actualEvent.getEventType())) {
+				String qualifiedAttributeName = actualCorrelationRule.getSecondAttribute().getQualifiedAttributeName();
+				String attributeExpression = actualCorrelationRule.getFirstAttribute().getAttributeExpression();
+				if (valueTreeOfProcessInstance.get(qualifiedAttributeName) != null) {
+					if (valueTreeOfProcessInstance.get(qualifiedAttributeName).toString().equals(valueTreeOfEvent.get(attributeExpression).toString())) {
+						processInstanceAndEventMatch = true;
+					} else {
+						processInstanceAndEventMatch = false;
+						break;
+					}
+					continue;
+				}
+			}
+			if (actualCorrelationRule.getSecondAttribute().getEventType().isSameEventType(actualEvent.getEventType())) {
+				String qualifiedAttributeName = actualCorrelationRule.getFirstAttribute().getQualifiedAttributeName();
+				String attributeExpression = actualCorrelationRule.getSecondAttribute().getAttributeExpression();
+				if (valueTreeOfProcessInstance.get(qualifiedAttributeName) != null) {
+					if (valueTreeOfProcessInstance.get(qualifiedAttributeName).toString().equals(valueTreeOfEvent.get(attributeExpression).toString())) {
+						processInstanceAndEventMatch = true;
+					} else {
+						processInstanceAndEventMatch = false;
+						break;
+					}
+					continue;
+				}
+			}
+		}
+		return processInstanceAndEventMatch;
+	}
+	
 	/**
 	 * Helper method to store correlation values in a given process instance based on the new event.
 	 * May cascade over the given correlation rules. Example: Event from type E2 has values c=3 and d=4. 
@@ -206,7 +228,7 @@ public class RuleCorrelator {
 		List<SushiAttribute> correlationAttributes = extractCorrelationAttributes(correlationRules);
 //		Set<CorrelationRule> correlationRules = new HashSet<CorrelationRule>(correlationRulesOfProcess);
 		for (SushiAttribute actualCorrelationAttribute : correlationAttributes) {
-			if (actualCorrelationAttribute.getEventType().equals(event.getEventType())) {
+			if (actualCorrelationAttribute.getEventType().isSameEventType(event.getEventType())) {
 				String qualifiedAttributeName = actualCorrelationAttribute.getQualifiedAttributeName();
 				String attributeExpression = actualCorrelationAttribute.getAttributeExpression();
 				Serializable correlationValue = event.getValues().get(attributeExpression);
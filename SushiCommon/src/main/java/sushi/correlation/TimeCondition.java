@@ -198,8 +198,8 @@ public class TimeCondition extends Persistable {
 		for (SushiEvent timerEvent : getTimerEvents()) {
 			boolean processInstanceAndEventMatch = true;
 			for (CorrelationRule actualCorrelationRule : correlationRules) {
-				if (actualCorrelationRule.getFirstAttribute().getEventType().equals(timerEvent.getEventType())
-					&& actualCorrelationRule.getSecondAttribute().getEventType().equals(actualEvent.getEventType())) {
+				if (actualCorrelationRule.getFirstAttribute().getEventType().isSameEventType(timerEvent.getEventType())
+					&& actualCorrelationRule.getSecondAttribute().getEventType().isSameEventType(actualEvent.getEventType())) {
 					String attributeExpressionForTimerEvent = actualCorrelationRule.getFirstAttribute().getAttributeExpression();
 					String attributeExpressionForActualEvent = actualCorrelationRule.getSecondAttribute().getAttributeExpression();
 					if(!timerEvent.getValues().get(attributeExpressionForTimerEvent).equals(actualEvent.getValues().get(attributeExpressionForActualEvent))) {
@@ -207,8 +207,8 @@ public class TimeCondition extends Persistable {
 						break;
 					}
 				}
-				if (actualCorrelationRule.getSecondAttribute().getEventType().equals(timerEvent.getEventType())
-					&& actualCorrelationRule.getFirstAttribute().getEventType().equals(actualEvent.getEventType())) {
+				if (actualCorrelationRule.getSecondAttribute().getEventType().isSameEventType(timerEvent.getEventType())
+					&& actualCorrelationRule.getFirstAttribute().getEventType().isSameEventType(actualEvent.getEventType())) {
 					String attributeExpressionForTimerEvent = actualCorrelationRule.getSecondAttribute().getAttributeExpression();
 					String attributeExpressionForActualEvent = actualCorrelationRule.getFirstAttribute().getAttributeExpression();
 					if(!timerEvent.getValues().get(attributeExpressionForTimerEvent).equals(actualEvent.getValues().get(attributeExpressionForActualEvent))) {
@@ -221,7 +221,7 @@ public class TimeCondition extends Persistable {
 			 * If there are attributes in the timer event that are used in the correlation rules but not for the determination of timer events, 
 			 * a check is required whether its values are equal to the values from the given event.
 			 */
-			if (timerEvent.getEventType().equals(actualEvent.getEventType())) {
+			if (timerEvent.getEventType().isSameEventType(actualEvent.getEventType())) {
 				Set<SushiAttribute> relatedAttributes = new HashSet<SushiAttribute>();
 				for (CorrelationRule actualCorrelationRule : correlationRules) {
 					if (actualCorrelationRule.getEventTypeOfFirstAttribute().equals(timerEvent.getEventType())) {
@@ -0,0 +1,623 @@
+package sushi.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import sushi.event.attribute.SushiAttribute;
+import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.event.collection.SushiMapElement;
+import sushi.event.collection.SushiMapTree;
+import sushi.persistence.Persistor;
+
+/**
+ * Optional read index for the attribute values of the events of an event type, kept in one table.
+ * The table has one typed and indexed column for each attribute on the first level of the attribute tree
+ * of the event type. The values of hierarchical attributes and values that do not fit the type of their column
+ * are serialized into one binary column.
+ * Queries for attribute values of such event types are lookups in this table instead of joins
+ * over the tables of the map trees.
+ *
+ * The index does not replace the map trees: they are still saved for every event, because JPA loads
+ * the values of an event from its map tree. So enabling the index makes queries faster,
+ * but adds one row per event to the database instead of saving space.
+ * The columns are derived from the attribute tree of the event type when the index is enabled,
+ * so the attribute tree must not change afterwards.
+ * Values that do not fit the type of their column are only found through the map trees:
+ * each row records the attributes of such values and lookups for these attributes fall back to the map trees.
+ *
+ * Only the state in memory is guarded by the lock of the singleton, the database is accessed outside of it.
+ */
+public class ColumnarEventStorage {
+
+	private static final String TABLE_PREFIX = "EventValues_";
+	private static final String COLUMN_PREFIX = "Attribute_";
+	private static final String HIERARCHICAL_VALUES_COLUMN = "HierarchicalValues";
+	private static final String MISMATCHED_ATTRIBUTES_COLUMN = "MismatchedAttributes";
+	private static final String MISMATCHED_ATTRIBUTES_SEPARATOR = ",";
+
+	private static ColumnarEventStorage instance = null;
+	private Set<Integer> enabledEventTypeIDs = null;
+	private Set<Integer> fillingEventTypeIDs = new HashSet<Integer>();
+	private Map<Integer, Map<String, SushiAttribute>> columnAttributesByEventTypeID = new HashMap<Integer, Map<String, SushiAttribute>>();
+	private Map<Integer, Set<String>> mismatchedAttributesByEventTypeID = new HashMap<Integer, Set<String>>();
+	private Set<Integer> loadedMismatchesEventTypeIDs = new HashSet<Integer>();
+
+	/**
+	 * Singleton, therefore the constructor is private.
+	 */
+	private ColumnarEventStorage() {
+	}
+
+	/**
+	 * Singleton class. Use this method to get the instance.
+	 * @return
+	 */
+	public static synchronized ColumnarEventStorage getInstance() {
+		if (instance == null) {
+			instance = new ColumnarEventStorage();
+		}
+		return instance;
+	}
+
+	/**
+	 * Clears the singleton-object, e.g. after switching the database.
+	 */
+	public static synchronized void clearInstance() {
+		instance = null;
+	}
+
+	/**
+	 * @param eventType
+	 * @return true, if the attribute values of the events of the event type are indexed in their own table
+	 */
+	public boolean isEnabled(SushiEventType eventType) {
+		if (eventType == null) {
+			return false;
+		}
+		Set<Integer> enabledEventTypeIDs = getEnabledEventTypeIDs();
+		synchronized (this) {
+			return enabledEventTypeIDs.contains(eventType.getID());
+		}
+	}
+
+	/**
+	 * Creates the table for the event type and fills it with the values of the events already saved.
+	 * Events of the event type saved afterwards are also written to this table, additionally to their map trees.
+	 * Until the table is filled, the values are queried from the map trees.
+	 * The event type must be saved.
+	 * @param eventType
+	 */
+	public void enable(SushiEventType eventType) {
+		if (isEnabled(eventType)) {
+			return;
+		}
+		Map<String, SushiAttribute> columnAttributes = getColumnAttributes(eventType);
+		StringBuffer sb = new StringBuffer();
+		sb.append("CREATE TABLE IF NOT EXISTS " + getTableName(eventType) + " (EventID INTEGER NOT NULL PRIMARY KEY");
+		for (SushiAttribute attribute : columnAttributes.values()) {
+			sb.append(", " + getColumnName(attribute) + " " + getColumnType(attribute.getType()));
+		}
+		sb.append(", " + HIERARCHICAL_VALUES_COLUMN + " LONGBLOB");
+		sb.append(", " + MISMATCHED_ATTRIBUTES_COLUMN + " TEXT");
+		for (SushiAttribute attribute : columnAttributes.values()) {
+			// text columns can only be indexed by a prefix
+			String prefixLength = getColumnType(attribute.getType()).equals("TEXT") ? "(255)" : "";
+			sb.append(", INDEX (" + getColumnName(attribute) + prefixLength + ")");
+		}
+		sb.append(", FOREIGN KEY (EventID) REFERENCES Event (ID) ON DELETE CASCADE)");
+		executeUpdate(sb.toString());
+		Set<Integer> enabledEventTypeIDs = getEnabledEventTypeIDs();
+		synchronized (this) {
+			if (!enabledEventTypeIDs.add(eventType.getID())) {
+				// enabled concurrently
+				return;
+			}
+			// events saved from now on write their own rows, the events saved before are written by fill()
+			fillingEventTypeIDs.add(eventType.getID());
+			getMismatchedAttributeSet(eventType.getID());
+			loadedMismatchesEventTypeIDs.add(eventType.getID());
+		}
+		if (fill(eventType)) {
+			synchronized (this) {
+				fillingEventTypeIDs.remove(eventType.getID());
+			}
+		}
+	}
+
+	/**
+	 * Writes the values of the events saved before the table was created with JDBC batches.
+	 * Rows, which were written by events saved concurrently, are skipped.
+	 * @return true, if the table was filled; otherwise the values are still queried from the map trees
+	 */
+	private boolean fill(SushiEventType eventType) {
+		List<SushiEvent> events = SushiEvent.findByEventType(eventType);
+		Connection connection = null;
+		try {
+			connection = Persistor.openConnection();
+			connection.setAutoCommit(false);
+			for (int start = 0; start < events.size(); start += SushiEventBatchPersistor.getBatchSize()) {
+				insertRows(connection, events.subList(start, Math.min(start + SushiEventBatchPersistor.getBatchSize(), events.size())), true);
+			}
+			connection.commit();
+			return true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			SushiEventBatchPersistor.rollback(connection);
+			return false;
+		} finally {
+			SushiEventBatchPersistor.close(connection);
+		}
+	}
+
+	/**
+	 * Drops the table of the event type, the values of its events are only queried from their map trees.
+	 * @param eventType
+	 */
+	public void disable(SushiEventType eventType) {
+		Set<Integer> enabledEventTypeIDs = getEnabledEventTypeIDs();
+		synchronized (this) {
+			if (eventType == null || !enabledEventTypeIDs.remove(eventType.getID())) {
+				return;
+			}
+			fillingEventTypeIDs.remove(eventType.getID());
+			columnAttributesByEventTypeID.remove(eventType.getID());
+			mismatchedAttributesByEventTypeID.remove(eventType.getID());
+			loadedMismatchesEventTypeIDs.remove(eventType.getID());
+		}
+		executeUpdate("DROP TABLE IF EXISTS " + getTableName(eventType));
+	}
+
+	/**
+	 * Returns the stored attribute values of the event.
+	 * @param event
+	 * @return attribute expressions and values or null, if the event type of the event is not indexed in its own table
+	 */
+	public Map<String, Serializable> findValues(SushiEvent event) {
+		if (!isEnabled(event.getEventType())) {
+			return null;
+		}
+		Map<String, SushiAttribute> columnAttributes = getColumnAttributes(event.getEventType());
+		StringBuffer sb = new StringBuffer();
+		sb.append("SELECT ");
+		for (SushiAttribute attribute : columnAttributes.values()) {
+			sb.append(getColumnName(attribute) + ", ");
+		}
+		sb.append(HIERARCHICAL_VALUES_COLUMN + " FROM " + getTableName(event.getEventType()) + " WHERE EventID = ?");
+		Query query = Persistor.getEntityManager().createNativeQuery(sb.toString());
+		query.setParameter(1, event.getID());
+		List<?> result = query.getResultList();
+		if (result.isEmpty()) {
+			return null;
+		}
+		Object[] row = (columnAttributes.isEmpty()) ? new Object[] { result.get(0) } : (Object[]) result.get(0);
+		Map<String, Serializable> values = new HashMap<String, Serializable>();
+		int column = 0;
+		for (String attributeExpression : columnAttributes.keySet()) {
+			if (row[column] != null) {
+				values.put(attributeExpression, (Serializable) row[column]);
+			}
+			column++;
+		}
+		values.putAll(deserialize((byte[]) row[column]));
+		return values;
+	}
+
+	/**
+	 * @return true, if the event type is indexed in its own filled table and all attribute expressions have their own column,
+	 * which holds all values of the attribute
+	 */
+	boolean hasColumns(SushiEventType eventType, Collection<String> attributeExpressions) {
+		if (!isEnabled(eventType)) {
+			return false;
+		}
+		Set<String> mismatchedAttributes = getMismatchedAttributes(eventType);
+		synchronized (this) {
+			if (fillingEventTypeIDs.contains(eventType.getID())) {
+				return false;
+			}
+			for (String attributeExpression : attributeExpressions) {
+				if (mismatchedAttributes.contains(attributeExpression)) {
+					return false;
+				}
+			}
+		}
+		return getColumnAttributes(eventType).keySet().containsAll(attributeExpressions);
+	}
+
+	/**
+	 * Writes the values of the events, whose event type is indexed in its own table.
+	 * Must be called within the transaction that persists the events.
+	 */
+	void insert(List<SushiEvent> events) {
+		List<SushiEvent> eventsToInsert = new ArrayList<SushiEvent>();
+		for (SushiEvent event : events) {
+			if (isEnabled(event.getEventType())) {
+				eventsToInsert.add(event);
+			}
+		}
+		if (eventsToInsert.isEmpty()) {
+			return;
+		}
+		// the IDs of the events are generated on flush
+		Persistor.getEntityManager().flush();
+		for (SushiEvent event : eventsToInsert) {
+			insert(event);
+		}
+	}
+
+	/**
+	 * Writes the values of the events, whose event type is indexed in its own table, with one batch per table.
+	 * Used by the {@link SushiEventBatchPersistor}, the events must have their IDs.
+	 */
+	void insert(Connection connection, List<SushiEvent> events) throws SQLException {
+		Map<Integer, List<SushiEvent>> eventsByEventTypeID = new LinkedHashMap<Integer, List<SushiEvent>>();
+		for (SushiEvent event : events) {
+			if (isEnabled(event.getEventType())) {
+				if (!eventsByEventTypeID.containsKey(event.getEventType().getID())) {
+					eventsByEventTypeID.put(event.getEventType().getID(), new ArrayList<SushiEvent>());
+				}
+				eventsByEventTypeID.get(event.getEventType().getID()).add(event);
+			}
+		}
+		for (List<SushiEvent> eventsOfEventType : eventsByEventTypeID.values()) {
+			insertRows(connection, eventsOfEventType, false);
+		}
+	}
+
+	/**
+	 * Writes the rows of events of the same event type as one batch.
+	 * @param ignoreExisting if true, rows of events, which already have a row, are skipped
+	 */
+	private void insertRows(Connection connection, List<SushiEvent> events, boolean ignoreExisting) throws SQLException {
+		if (events.isEmpty()) {
+			return;
+		}
+		PreparedStatement statement = connection.prepareStatement(getInsertStatement(events.get(0).getEventType(), ignoreExisting));
+		try {
+			for (SushiEvent event : events) {
+				List<Object> row = getRow(event);
+				for (int i = 0; i < row.size(); i++) {
+					statement.setObject(i + 1, row.get(i));
+				}
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		} finally {
+			statement.close();
+		}
+	}
+
+	List<String> findDistinctValues(SushiEventType eventType, String attributeExpression) {
+		String column = getColumnName(getColumnAttributes(eventType).get(attributeExpression));
+		Query query = Persistor.getEntityManager().createNativeQuery("SELECT DISTINCT " + column + " FROM " + getTableName(eventType) + " WHERE " + column + " IS NOT NULL");
+		List<String> values = new ArrayList<String>();
+		for (Object value : query.getResultList()) {
+			values.add(SushiEvent.formatDistinctValue(value));
+		}
+		return values;
+	}
+
+	long countAppearances(SushiEventType eventType, String attributeExpression, String value) {
+		Map<String, Serializable> attributeExpressionsAndValues = new HashMap<String, Serializable>();
+		attributeExpressionsAndValues.put(attributeExpression, value);
+		Query query = createLookupQuery(eventType, "SELECT count(*) FROM " + getTableName(eventType), attributeExpressionsAndValues, null);
+		if (query == null) {
+			return 0;
+		}
+		return ((Number) query.getSingleResult()).longValue();
+	}
+
+	Serializable findValue(SushiEventType eventType, String attributeExpressionOfValue, Map<String, Serializable> attributeExpressionsAndValuesForSearch) {
+		String column = getColumnName(getColumnAttributes(eventType).get(attributeExpressionOfValue));
+		Query query = createLookupQuery(eventType, "SELECT " + column + " FROM " + getTableName(eventType), attributeExpressionsAndValuesForSearch, null);
+		if (query == null) {
+			return null;
+		}
+		query.setMaxResults(1);
+		List<?> result = query.getResultList();
+		if (result.isEmpty()) {
+			return null;
+		}
+		return (Serializable) result.get(0);
+	}
+
+	List<SushiEvent> findEvents(SushiEventType eventType, Map<String, Serializable> attributeExpressionsAndValues) {
+		Query query = createLookupQuery(eventType, "SELECT Event.* FROM Event JOIN " + getTableName(eventType) + " ON " + getTableName(eventType) + ".EventID = Event.ID", attributeExpressionsAndValues, SushiEvent.class);
+		if (query == null) {
+			return new ArrayList<SushiEvent>();
+		}
+		return query.getResultList();
+	}
+
+	/**
+	 * Creates a query, that selects the rows with the given values.
+	 * @return the query or null, if a value does not fit the type of its column and no row can match
+	 */
+	private Query createLookupQuery(SushiEventType eventType, String select, Map<String, Serializable> attributeExpressionsAndValues, Class<?> resultClass) {
+		StringBuffer sb = new StringBuffer(select);
+		List<Object> parameters = new ArrayList<Object>();
+		Map<String, SushiAttribute> columnAttributes = getColumnAttributes(eventType);
+		for (Entry<String, Serializable> attributeExpressionAndValue : attributeExpressionsAndValues.entrySet()) {
+			SushiAttribute attribute = columnAttributes.get(attributeExpressionAndValue.getKey());
+			Object value = convert(attributeExpressionAndValue.getValue(), attribute.getType());
+			if (value == null) {
+				return null;
+			}
+			sb.append(parameters.isEmpty() ? " WHERE " : " AND ");
+			sb.append(getTableName(eventType) + "." + getColumnName(attribute) + " = ?");
+			parameters.add(value);
+		}
+		Query query = (resultClass == null) ? Persistor.getEntityManager().createNativeQuery(sb.toString()) : Persistor.getEntityManager().createNativeQuery(sb.toString(), resultClass);
+		for (int i = 0; i < parameters.size(); i++) {
+			query.setParameter(i + 1, parameters.get(i));
+		}
+		return query;
+	}
+
+	private void insert(SushiEvent event) {
+		Query query = Persistor.getEntityManager().createNativeQuery(getInsertStatement(event.getEventType(), false));
+		List<Object> row = getRow(event);
+		for (int i = 0; i < row.size(); i++) {
+			query.setParameter(i + 1, row.get(i));
+		}
+		query.executeUpdate();
+	}
+
+	private String getInsertStatement(SushiEventType eventType, boolean ignoreExisting) {
+		Map<String, SushiAttribute> columnAttributes = getColumnAttributes(eventType);
+		StringBuffer columns = new StringBuffer("EventID");
+		StringBuffer parameters = new StringBuffer("?");
+		for (SushiAttribute attribute : columnAttributes.values()) {
+			columns.append(", " + getColumnName(attribute));
+			parameters.append(", ?");
+		}
+		columns.append(", " + HIERARCHICAL_VALUES_COLUMN + ", " + MISMATCHED_ATTRIBUTES_COLUMN);
+		parameters.append(", ?, ?");
+		return (ignoreExisting ? "INSERT IGNORE INTO " : "INSERT INTO ") + getTableName(eventType) + " (" + columns + ") VALUES (" + parameters + ")";
+	}
+
+	/**
+	 * Returns the values of the row of the event in the order of the insert statement.
+	 * Attributes with values, which do not fit their column, are registered, so their lookups use the map trees.
+	 */
+	private List<Object> getRow(SushiEvent event) {
+		Map<String, SushiAttribute> columnAttributes = getColumnAttributes(event.getEventType());
+		Map<String, Object> columnValues = new HashMap<String, Object>();
+		HashMap<String, Serializable> hierarchicalValues = new HashMap<String, Serializable>();
+		Set<String> mismatchedAttributes = new LinkedHashSet<String>();
+		SushiMapTree<String, Serializable> tree = event.getValues();
+		if (tree != null) {
+			for (SushiMapElement<String, Serializable> element : tree.getTreeElements()) {
+				String attributeExpression = element.getAttributeExpression();
+				SushiAttribute attribute = columnAttributes.get(attributeExpression);
+				Object value = (attribute != null) ? convert(element.getValue(), attribute.getType()) : null;
+				if (value != null && !columnValues.containsKey(attributeExpression)) {
+					columnValues.put(attributeExpression, value);
+				} else if (element.getValue() != null || element.hasChildren()) {
+					hierarchicalValues.put(attributeExpression, element.getValue());
+					if (attribute != null && element.getValue() != null) {
+						mismatchedAttributes.add(attributeExpression);
+					}
+				}
+			}
+		}
+		List<Object> row = new ArrayList<Object>();
+		row.add(event.getID());
+		for (String attributeExpression : columnAttributes.keySet()) {
+			row.add(columnValues.get(attributeExpression));
+		}
+		row.add(serialize(hierarchicalValues));
+		if (mismatchedAttributes.isEmpty()) {
+			row.add(null);
+		} else {
+			synchronized (this) {
+				getMismatchedAttributeSet(event.getEventType().getID()).addAll(mismatchedAttributes);
+			}
+			StringBuffer sb = new StringBuffer();
+			for (String attributeExpression : mismatchedAttributes) {
+				sb.append((sb.length() == 0) ? "" : MISMATCHED_ATTRIBUTES_SEPARATOR).append(attributeExpression);
+			}
+			row.add(sb.toString());
+		}
+		return row;
+	}
+
+	/**
+	 * Converts the value to the type of the column of an attribute with the given type.
+	 * @return converted value or null, if the value does not fit
+	 */
+	private Object convert(Serializable value, SushiAttributeTypeEnum type) {
+		if (value == null) {
+			return null;
+		}
+		if (type == SushiAttributeTypeEnum.INTEGER) {
+			if (value instanceof Number) {
+				return ((Number) value).intValue();
+			}
+			try {
+				return Integer.parseInt(value.toString().trim());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		} else if (type == SushiAttributeTypeEnum.DATE) {
+			if (value instanceof Date) {
+				return new Timestamp(((Date) value).getTime());
+			}
+			// e.g. a value returned by findDistinctValues
+			try {
+				return new Timestamp(new SimpleDateFormat(SushiEvent.DISTINCT_DATE_FORMAT).parse(value.toString().trim()).getTime());
+			} catch (ParseException e) {
+				return null;
+			}
+		}
+		return value.toString();
+	}
+
+	private byte[] serialize(HashMap<String, Serializable> values) {
+		if (values.isEmpty()) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(values);
+			oos.close();
+			return baos.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException("Values could not be serialized.", e);
+		}
+	}
+
+	private Map<String, Serializable> deserialize(byte[] bytes) {
+		if (bytes == null) {
+			return new HashMap<String, Serializable>();
+		}
+		try {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			return (Map<String, Serializable>) ois.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new RuntimeException("Values could not be deserialized.", e);
+		}
+	}
+
+	/**
+	 * Returns the attributes with their own column by their attribute expressions:
+	 * all attributes on the first level of the attribute tree without children.
+	 */
+	private Map<String, SushiAttribute> getColumnAttributes(SushiEventType eventType) {
+		synchronized (this) {
+			Map<String, SushiAttribute> columnAttributes = columnAttributesByEventTypeID.get(eventType.getID());
+			if (columnAttributes != null) {
+				return columnAttributes;
+			}
+		}
+		// the attribute tree may be loaded from the database
+		Map<String, SushiAttribute> columnAttributes = new LinkedHashMap<String, SushiAttribute>();
+		for (SushiAttribute attribute : eventType.getRootLevelValueTypes()) {
+			if (!attribute.hasChildren()) {
+				columnAttributes.put(attribute.getAttributeExpression(), attribute);
+			}
+		}
+		synchronized (this) {
+			if (!columnAttributesByEventTypeID.containsKey(eventType.getID())) {
+				columnAttributesByEventTypeID.put(eventType.getID(), columnAttributes);
+			}
+			return columnAttributesByEventTypeID.get(eventType.getID());
+		}
+	}
+
+	/**
+	 * Returns the IDs of the event types with a table, which are loaded once from the database.
+	 * The set must only be accessed while holding the lock of this object.
+	 */
+	private Set<Integer> getEnabledEventTypeIDs() {
+		synchronized (this) {
+			if (enabledEventTypeIDs != null) {
+				return enabledEventTypeIDs;
+			}
+		}
+		Set<Integer> loadedEventTypeIDs = new HashSet<Integer>();
+		Query query = Persistor.getEntityManager().createNativeQuery("" +
+				"SELECT TABLE_NAME FROM information_schema.TABLES " +
+				"WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME LIKE '" + TABLE_PREFIX + "%'");
+		for (Object tableName : query.getResultList()) {
+			try {
+				loadedEventTypeIDs.add(Integer.parseInt(((String) tableName).substring(TABLE_PREFIX.length())));
+			} catch (NumberFormatException e) {
+				// not a table of this storage
+			}
+		}
+		synchronized (this) {
+			if (enabledEventTypeIDs == null) {
+				enabledEventTypeIDs = loadedEventTypeIDs;
+			}
+			return enabledEventTypeIDs;
+		}
+	}
+
+	/**
+	 * Returns the attributes of the event type, which have values in the map trees that do not fit their column.
+	 * They are loaded once from the table, e.g. after a restart.
+	 * The set must only be accessed while holding the lock of this object.
+	 */
+	private Set<String> getMismatchedAttributes(SushiEventType eventType) {
+		synchronized (this) {
+			if (loadedMismatchesEventTypeIDs.contains(eventType.getID())) {
+				return getMismatchedAttributeSet(eventType.getID());
+			}
+		}
+		Set<String> loadedAttributes = new HashSet<String>();
+		Query query = Persistor.getEntityManager().createNativeQuery("SELECT DISTINCT " + MISMATCHED_ATTRIBUTES_COLUMN + " FROM " + getTableName(eventType) + " WHERE " + MISMATCHED_ATTRIBUTES_COLUMN + " IS NOT NULL");
+		for (Object attributeExpressions : query.getResultList()) {
+			loadedAttributes.addAll(Arrays.asList(((String) attributeExpressions).split(MISMATCHED_ATTRIBUTES_SEPARATOR)));
+		}
+		synchronized (this) {
+			Set<String> mismatchedAttributes = getMismatchedAttributeSet(eventType.getID());
+			// attributes registered by rows written meanwhile are kept
+			mismatchedAttributes.addAll(loadedAttributes);
+			loadedMismatchesEventTypeIDs.add(eventType.getID());
+			return mismatchedAttributes;
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock of this object.
+	 */
+	private Set<String> getMismatchedAttributeSet(int eventTypeID) {
+		Set<String> mismatchedAttributes = mismatchedAttributesByEventTypeID.get(eventTypeID);
+		if (mismatchedAttributes == null) {
+			mismatchedAttributes = new HashSet<String>();
+			mismatchedAttributesByEventTypeID.put(eventTypeID, mismatchedAttributes);
+		}
+		return mismatchedAttributes;
+	}
+
+	private String getTableName(SushiEventType eventType) {
+		return TABLE_PREFIX + eventType.getID();
+	}
+
+	private String getColumnName(SushiAttribute attribute) {
+		return COLUMN_PREFIX + attribute.getID();
+	}
+
+	private String getColumnType(SushiAttributeTypeEnum type) {
+		if (type == SushiAttributeTypeEnum.INTEGER) {
+			return "INTEGER";
+		} else if (type == SushiAttributeTypeEnum.DATE) {
+			return "DATETIME";
+		}
+		return "TEXT";
+	}
+
+	private void executeUpdate(String statement) {
+		EntityManager entityManager = Persistor.getEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery(statement).executeUpdate();
+		entityManager.getTransaction().commit();
+	}
+}
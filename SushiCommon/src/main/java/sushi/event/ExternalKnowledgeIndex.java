@@ -0,0 +1,428 @@
+package sushi.event;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import sushi.event.collection.SushiMapTree;
+
+/**
+ * In-memory index for the lookup of external knowledge, e.g. by the functions <code>integerValueFromEvent</code>
+ * and <code>stringValueFromEvent</code> in transformation rules.
+ * For each combination of event type, desired attribute and criteria attributes a lookup table is kept,
+ * which maps the values of the criteria attributes to the value of the desired attribute.
+ * So enriching an event is a hash lookup instead of a join over the tables of the map trees.
+ *
+ * Staleness policy:
+ * A lookup table is built from the database on its first use and afterwards updated with each event
+ * sent through the Broker ({@link #eventsAdded(Collection)}), so it reflects all events of the platform
+ * without delay. Removing events or event types through the Broker invalidates the lookup tables of the event type.
+ * Events, which are saved or removed bypassing the Broker, become visible after at most {@link #getMaximumAge()}
+ * milliseconds, because older lookup tables are rebuilt on their next use, or after {@link #invalidate(SushiEventType)}.
+ * If several events match the criteria, the value of the first saved event is returned like by the database query.
+ *
+ * Lookup tables are loaded from the database without holding the monitor of the index,
+ * so lookups in other tables and the ingestion of events are not blocked meanwhile.
+ * Events added during the loading are buffered and applied before the new table replaces the old one.
+ * While an outdated table is rebuilt, other lookups still use the outdated table,
+ * lookups of a table, which does not exist yet, wait for its first build.
+ */
+public class ExternalKnowledgeIndex {
+
+	public static final long DEFAULT_MAXIMUM_AGE_MILLIS = 5 * 60 * 1000;
+	public static final int DEFAULT_MAXIMUM_NUMBER_OF_TABLES = 100;
+
+	private static ExternalKnowledgeIndex instance = null;
+	private static long maximumAge = DEFAULT_MAXIMUM_AGE_MILLIS;
+	private static int maximumNumberOfTables = DEFAULT_MAXIMUM_NUMBER_OF_TABLES;
+
+	private final Map<TableKey, LookupTable> tables = new LinkedHashMap<TableKey, LookupTable>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TableKey, LookupTable> eldest) {
+			if (size() > maximumNumberOfTables) {
+				removeFromEventType(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+	private final Map<String, List<LookupTable>> tablesByEventTypeName = new HashMap<String, List<LookupTable>>();
+	private final Map<TableKey, TableBuild> pendingBuilds = new HashMap<TableKey, TableBuild>();
+	private long hits = 0;
+	private long misses = 0;
+	private long builds = 0;
+
+	/**
+	 * Singleton, therefore the constructor is private.
+	 */
+	private ExternalKnowledgeIndex() {
+	}
+
+	/**
+	 * Singleton class. Use this method to get the instance.
+	 * @return
+	 */
+	public static synchronized ExternalKnowledgeIndex getInstance() {
+		if (instance == null) {
+			instance = new ExternalKnowledgeIndex();
+		}
+		return instance;
+	}
+
+	/**
+	 * Clears the singleton-object, e.g. after switching the database.
+	 */
+	public static synchronized void clearInstance() {
+		instance = null;
+	}
+
+	/**
+	 * Returns the value of the desired attribute of the first event of the event type,
+	 * whose values of the criteria attributes are equal to the given values.
+	 * @param eventTypeName
+	 * @param attributeExpressionOfValue desired attribute
+	 * @param attributeExpressionsAndValuesForSearch criteria attributes and their values
+	 * @return value or null, if the event type does not exist or no event matches
+	 */
+	public Serializable findValue(String eventTypeName, String attributeExpressionOfValue, Map<String, Serializable> attributeExpressionsAndValuesForSearch) {
+		List<String> criteriaAttributeExpressions = new ArrayList<String>(attributeExpressionsAndValuesForSearch.keySet());
+		Collections.sort(criteriaAttributeExpressions);
+		TableKey tableKey = new TableKey(eventTypeName, attributeExpressionOfValue, criteriaAttributeExpressions);
+		List<String> criteriaValues = new ArrayList<String>(criteriaAttributeExpressions.size());
+		for (String criteriaAttributeExpression : criteriaAttributeExpressions) {
+			criteriaValues.add(normalize(attributeExpressionsAndValuesForSearch.get(criteriaAttributeExpression)));
+		}
+		TableBuild build;
+		boolean buildsTable = false;
+		synchronized (this) {
+			LookupTable table = tables.get(tableKey);
+			build = pendingBuilds.get(tableKey);
+			if (table != null && (build != null || System.currentTimeMillis() - table.buildTime <= maximumAge)) {
+				return lookup(table, criteriaValues);
+			}
+			if (build == null) {
+				build = new TableBuild(tableKey);
+				pendingBuilds.put(tableKey, build);
+				buildsTable = true;
+			}
+		}
+		if (buildsTable) {
+			build(build);
+		} else {
+			build.awaitCompletion();
+		}
+		synchronized (this) {
+			return (build.table == null) ? null : lookup(build.table, criteriaValues);
+		}
+	}
+
+	private Serializable lookup(LookupTable table, List<String> criteriaValues) {
+		Serializable value = table.values.get(criteriaValues);
+		if (value != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return value;
+	}
+
+	/**
+	 * Adds the values of saved events to the lookup tables of their event types.
+	 * Should be called after the events were saved, before they are sent to the streaming engine.
+	 * @param events
+	 */
+	public synchronized void eventsAdded(Collection<SushiEvent> events) {
+		if (tablesByEventTypeName.isEmpty() && pendingBuilds.isEmpty()) {
+			return;
+		}
+		for (SushiEvent event : events) {
+			if (event.getEventType() == null) {
+				continue;
+			}
+			List<LookupTable> eventTypeTables = tablesByEventTypeName.get(event.getEventType().getTypeName());
+			if (eventTypeTables != null) {
+				for (LookupTable table : eventTypeTables) {
+					table.add(event.getValues());
+				}
+			}
+			for (TableBuild build : pendingBuilds.values()) {
+				if (build.key.eventTypeName.equals(event.getEventType().getTypeName())) {
+					build.addedValues.add(event.getValues());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards the lookup tables of the event type, e.g. after events of the event type were removed.
+	 * The lookup tables are rebuilt from the database on their next use.
+	 * @param eventType
+	 */
+	public synchronized void invalidate(SushiEventType eventType) {
+		Iterator<TableBuild> buildIterator = pendingBuilds.values().iterator();
+		while (buildIterator.hasNext()) {
+			TableBuild build = buildIterator.next();
+			if (build.key.eventTypeName.equals(eventType.getTypeName())) {
+				build.discarded = true;
+				buildIterator.remove();
+			}
+		}
+		List<LookupTable> eventTypeTables = tablesByEventTypeName.remove(eventType.getTypeName());
+		if (eventTypeTables == null) {
+			return;
+		}
+		Iterator<LookupTable> iterator = tables.values().iterator();
+		while (iterator.hasNext()) {
+			if (eventTypeTables.contains(iterator.next())) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Discards all lookup tables.
+	 */
+	public synchronized void invalidateAll() {
+		for (TableBuild build : pendingBuilds.values()) {
+			build.discarded = true;
+		}
+		pendingBuilds.clear();
+		tables.clear();
+		tablesByEventTypeName.clear();
+	}
+
+	/**
+	 * Loads the lookup table of the build from the database without holding the monitor,
+	 * applies the events added meanwhile and replaces the old table, if the build was not discarded.
+	 */
+	private void build(TableBuild build) {
+		LookupTable table = null;
+		try {
+			table = load(build.key);
+		} finally {
+			synchronized (this) {
+				if (pendingBuilds.get(build.key) == build) {
+					pendingBuilds.remove(build.key);
+				}
+				if (table != null) {
+					for (SushiMapTree<String, Serializable> values : build.addedValues) {
+						table.add(values);
+					}
+					if (!build.discarded) {
+						install(table);
+					}
+					builds++;
+				}
+				build.table = table;
+				build.completed.countDown();
+			}
+		}
+	}
+
+	/**
+	 * @return the lookup table with the events in the database or null, if the event type does not exist
+	 */
+	private LookupTable load(TableKey tableKey) {
+		SushiEventType eventType = SushiEventType.findByTypeName(tableKey.eventTypeName);
+		if (eventType == null) {
+			return null;
+		}
+		LookupTable table = new LookupTable(tableKey);
+		for (SushiEvent event : SushiEvent.findByEventType(eventType)) {
+			table.add(event.getValues());
+		}
+		return table;
+	}
+
+	private void install(LookupTable table) {
+		LookupTable oldTable = tables.remove(table.key);
+		if (oldTable != null) {
+			removeFromEventType(table.key, oldTable);
+		}
+		tables.put(table.key, table);
+		List<LookupTable> eventTypeTables = tablesByEventTypeName.get(table.key.eventTypeName);
+		if (eventTypeTables == null) {
+			eventTypeTables = new ArrayList<LookupTable>();
+			tablesByEventTypeName.put(table.key.eventTypeName, eventTypeTables);
+		}
+		eventTypeTables.add(table);
+	}
+
+	private void removeFromEventType(TableKey tableKey, LookupTable table) {
+		List<LookupTable> eventTypeTables = tablesByEventTypeName.get(tableKey.eventTypeName);
+		if (eventTypeTables != null) {
+			eventTypeTables.remove(table);
+			if (eventTypeTables.isEmpty()) {
+				tablesByEventTypeName.remove(tableKey.eventTypeName);
+			}
+		}
+	}
+
+	/**
+	 * Values are compared by their string representation like in the database,
+	 * dates by their time, because their string representation depends on the source of the value.
+	 */
+	private static String normalize(Serializable value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Date) {
+			return String.valueOf(((Date) value).getTime());
+		}
+		return value.toString();
+	}
+
+	private static Serializable getValue(SushiMapTree<String, Serializable> values, String attributeExpression) {
+		Serializable value = values.getValueByAttributeExpression(attributeExpression);
+		return (value != null) ? value : values.get(attributeExpression);
+	}
+
+	/**
+	 * @return number of lookups, which found a value
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups, which found no value
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of lookup tables built from the database
+	 */
+	public synchronized long getBuilds() {
+		return builds;
+	}
+
+	/**
+	 * @return maximal age of a lookup table in milliseconds, before it is rebuilt from the database
+	 */
+	public static long getMaximumAge() {
+		return maximumAge;
+	}
+
+	/**
+	 * Sets the maximal age of a lookup table in milliseconds, before it is rebuilt from the database.
+	 * Only events saved bypassing the Broker need a rebuild to become visible.
+	 * @param maximumAge
+	 */
+	public static void setMaximumAge(long maximumAge) {
+		ExternalKnowledgeIndex.maximumAge = maximumAge;
+	}
+
+	/**
+	 * @return maximal number of lookup tables, the least recently used table is discarded first
+	 */
+	public static int getMaximumNumberOfTables() {
+		return maximumNumberOfTables;
+	}
+
+	public static void setMaximumNumberOfTables(int maximumNumberOfTables) {
+		ExternalKnowledgeIndex.maximumNumberOfTables = maximumNumberOfTables;
+	}
+
+	/**
+	 * Identifies a lookup table by event type, desired attribute and the sorted criteria attributes.
+	 */
+	private static class TableKey {
+
+		private final String eventTypeName;
+		private final String attributeExpressionOfValue;
+		private final List<String> criteriaAttributeExpressions;
+
+		private TableKey(String eventTypeName, String attributeExpressionOfValue, List<String> criteriaAttributeExpressions) {
+			this.eventTypeName = eventTypeName;
+			this.attributeExpressionOfValue = attributeExpressionOfValue;
+			this.criteriaAttributeExpressions = criteriaAttributeExpressions;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof TableKey)) {
+				return false;
+			}
+			TableKey other = (TableKey) object;
+			return eventTypeName.equals(other.eventTypeName)
+					&& attributeExpressionOfValue.equals(other.attributeExpressionOfValue)
+					&& criteriaAttributeExpressions.equals(other.criteriaAttributeExpressions);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * eventTypeName.hashCode() + attributeExpressionOfValue.hashCode()) + criteriaAttributeExpressions.hashCode();
+		}
+	}
+
+	/**
+	 * A lookup table, which is loaded from the database.
+	 * The values of events added meanwhile are collected under the monitor of the index.
+	 */
+	private static class TableBuild {
+
+		private final TableKey key;
+		private final List<SushiMapTree<String, Serializable>> addedValues = new ArrayList<SushiMapTree<String, Serializable>>();
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private boolean discarded = false;
+		private LookupTable table;
+
+		private TableBuild(TableKey key) {
+			this.key = key;
+		}
+
+		private void awaitCompletion() {
+			try {
+				completed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Maps the normalized values of the criteria attributes to the value of the desired attribute.
+	 */
+	private static class LookupTable {
+
+		private final TableKey key;
+		private final Map<List<String>, Serializable> values = new HashMap<List<String>, Serializable>();
+		private final long buildTime = System.currentTimeMillis();
+
+		private LookupTable(TableKey key) {
+			this.key = key;
+		}
+
+		private void add(SushiMapTree<String, Serializable> eventValues) {
+			Serializable value = getValue(eventValues, key.attributeExpressionOfValue);
+			if (value == null) {
+				return;
+			}
+			List<String> criteriaValues = new ArrayList<String>(key.criteriaAttributeExpressions.size());
+			for (String criteriaAttributeExpression : key.criteriaAttributeExpressions) {
+				String criteriaValue = normalize(getValue(eventValues, criteriaAttributeExpression));
+				if (criteriaValue == null) {
+					return;
+				}
+				criteriaValues.add(criteriaValue);
+			}
+			// the first saved event wins like in the database query
+			if (!values.containsKey(criteriaValues)) {
+				values.put(criteriaValues, value);
+			}
+		}
+	}
+
+}
@@ -3,6 +3,7 @@ package sushi.event;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -23,6 +24,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.OneToOne;
 import javax.persistence.Query;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import org.eclipse.persistence.annotations.Index;
@@ -43,9 +45,15 @@ import sushi.visualisation.SushiTimePeriodEnum;
 public class SushiEvent extends Persistable {
 	
 	private static final long serialVersionUID = 1L;
+	/**
+	 * Format of dates written as text into the values of the map trees by the database.
+	 */
+	static final String DISTINCT_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+	private static final Set<String> SORTABLE_COLUMNS = new HashSet<String>(Arrays.asList("ID", "TIMESTAMP", "EVENTTYPE_ID"));
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "SushiEventID")
+	@TableGenerator(name = "SushiEventID", table = "SushiIDGenerator", pkColumnName = "TableName", valueColumnName = "NextID", pkColumnValue = "Event", allocationSize = 50)
 	protected int ID;
 	
 	@Temporal(TemporalType.TIMESTAMP)
@@ -247,6 +255,10 @@ public class SushiEvent extends Persistable {
 	}
 	
 	public static List<SushiEvent> findByEventTypeAndAttributeExpressionsAndValues(SushiEventType eventType, Map<String, Serializable> attributeExpressionsAndValues){
+		ColumnarEventStorage columnarStorage = ColumnarEventStorage.getInstance();
+		if (columnarStorage.hasColumns(eventType, attributeExpressionsAndValues.keySet())) {
+			return columnarStorage.findEvents(eventType, attributeExpressionsAndValues);
+		}
 		StringBuffer sb = new StringBuffer();
 		sb.append("" +
 				"SELECT * FROM Event JOIN SushiMapTree_SushiMapTreeElements mte " +
@@ -277,6 +289,10 @@ public class SushiEvent extends Persistable {
 	}
 	
 	public static Serializable findValueByEventTypeAndAttributeExpressionsAndValues(SushiEventType eventType, String attributeExpressionOfValue, Map<String, Serializable> attributeExpressionsAndValuesForSearch){
+		ColumnarEventStorage columnarStorage = ColumnarEventStorage.getInstance();
+		if (columnarStorage.hasColumns(eventType, attributeExpressionsAndValuesForSearch.keySet()) && columnarStorage.hasColumns(eventType, Arrays.asList(attributeExpressionOfValue))) {
+			return columnarStorage.findValue(eventType, attributeExpressionOfValue, attributeExpressionsAndValuesForSearch);
+		}
 		StringBuffer sb = new StringBuffer();
 		sb.append("" +
 					"SELECT me.MapValue FROM Event " +
@@ -508,6 +524,70 @@ public class SushiEvent extends Persistable {
 		return query.getResultList();
 	}
 	
+	/**
+	 * Returns a page of the events matching the condition, sorted by the database.
+	 * @param condition SQL condition on the table Event with positional parameters (?1, ?2, ...) or null for all events
+	 * @param parameters values of the positional parameters in their order
+	 * @param orderColumn column of the table Event to sort by: ID, TIMESTAMP or EVENTTYPE_ID
+	 * @param ascending
+	 * @param first index of the first returned event
+	 * @param count maximal number of returned events
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<SushiEvent> findByCondition(String condition, List<?> parameters, String orderColumn, boolean ascending, int first, int count) {
+		Query query = createConditionQuery("SELECT * FROM Event", SushiEvent.class, condition, parameters, orderColumn, ascending);
+		query.setFirstResult(first);
+		query.setMaxResults(count);
+		return query.getResultList();
+	}
+	
+	/**
+	 * Returns all events matching the condition ordered by their ID.
+	 * @param condition SQL condition on the table Event with positional parameters (?1, ?2, ...) or null for all events
+	 * @param parameters values of the positional parameters in their order
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<SushiEvent> findByCondition(String condition, List<?> parameters) {
+		return createConditionQuery("SELECT * FROM Event", SushiEvent.class, condition, parameters, "ID", true).getResultList();
+	}
+	
+	/**
+	 * Returns the number of events matching the condition.
+	 * @param condition SQL condition on the table Event with positional parameters (?1, ?2, ...) or null for all events
+	 * @param parameters values of the positional parameters in their order
+	 * @return
+	 */
+	public static long getNumberOfEvents(String condition, List<?> parameters) {
+		Query query = createConditionQuery("SELECT count(*) FROM Event", null, condition, parameters, null, true);
+		return ((Number) query.getSingleResult()).longValue();
+	}
+	
+	private static Query createConditionQuery(String select, Class<?> resultClass, String condition, List<?> parameters, String orderColumn, boolean ascending) {
+		StringBuilder sql = new StringBuilder(select);
+		if (condition != null) {
+			sql.append(" WHERE ").append(condition);
+		}
+		if (orderColumn != null) {
+			if (!SORTABLE_COLUMNS.contains(orderColumn)) {
+				throw new IllegalArgumentException("Events can not be sorted by " + orderColumn + ".");
+			}
+			sql.append(" ORDER BY ").append(orderColumn).append(ascending ? " ASC" : " DESC");
+			if (!orderColumn.equals("ID")) {
+				// events with equal values keep a stable order across pages
+				sql.append(", ID").append(ascending ? " ASC" : " DESC");
+			}
+		}
+		Query query = (resultClass != null) ? Persistor.getEntityManager().createNativeQuery(sql.toString(), resultClass) : Persistor.getEntityManager().createNativeQuery(sql.toString());
+		if (parameters != null) {
+			for (int i = 0; i < parameters.size(); i++) {
+				query.setParameter(i + 1, parameters.get(i));
+			}
+		}
+		return query;
+	}
+	
 	/**
 	 * @return all SushiEvents
 	 */
@@ -518,6 +598,10 @@ public class SushiEvent extends Persistable {
 	
 	@Override
 	public SushiEvent save() {
+		if (ColumnarEventStorage.getInstance().isEnabled(eventType)) {
+			// the values have to be stored in the table of the event type within the same transaction
+			return (save(new ArrayList<SushiEvent>(Arrays.asList(this))) != null) ? this : null;
+		}
 		return (SushiEvent) super.save();
 	}
 	
@@ -527,16 +611,21 @@ public class SushiEvent extends Persistable {
 	}
 	
 	/**
-	 * saves the given SushiEvents
+	 * saves the given SushiEvents,
+	 * large numbers of events are saved with JDBC batch inserts by the {@link SushiEventBatchPersistor}
 	 * @param events
 	 * @return
 	 */
 	public static List<SushiEvent> save(List<SushiEvent> events) {
+		if (events.size() >= SushiEventBatchPersistor.getThreshold()) {
+			return SushiEventBatchPersistor.save(events);
+		}
 		try {
 			Persistor.getEntityManager().getTransaction().begin();
 			for (SushiEvent event : events) {
 				Persistor.getEntityManager().persist(event);
 			}
+			ColumnarEventStorage.getInstance().insert(events);
 			Persistor.getEntityManager().getTransaction().commit();
 			return events;
 		}  catch (Exception e) {
@@ -603,6 +692,10 @@ public class SushiEvent extends Persistable {
 	 * returns distinct values of the given attribute of the given eventtyp
 	 */
 	public static List<String> findDistinctValuesOfAttributeOfType(String attributeName, SushiEventType type) {
+		ColumnarEventStorage columnarStorage = ColumnarEventStorage.getInstance();
+		if (columnarStorage.hasColumns(type, Arrays.asList(attributeName))) {
+			return columnarStorage.findDistinctValues(type, attributeName);
+		}
 		Query query = Persistor.getEntityManager().createNativeQuery("SELECT DISTINCT me.MapValue " +
 				"FROM Event JOIN SushiMapTree_SushiMapTreeElements mte " +
 					"ON mte.SushiMapTree_SushiMapID=Event.MapTreeID " +
@@ -612,13 +705,33 @@ public class SushiEvent extends Persistable {
 					"ON (me.ID = mtre.treeRootElements_ID OR me.ID = mtre.treeRootElements_ID) " +
 				"WHERE EVENTTYPE_ID = '" + type.getID() + "' " +
 						"AND me.MapKey = '" + attributeName + "'");
-		return query.getResultList();
+		List<String> values = new ArrayList<String>();
+		for (Object value : query.getResultList()) {
+			values.add(formatDistinctValue(value));
+		}
+		return values;
+	}
+
+	/**
+	 * Formats a value for {@link #findDistinctValuesOfAttributeOfType(String, SushiEventType)}.
+	 * Dates are formatted like they are stored as text in the map trees,
+	 * so the {@link ColumnarEventStorage} returns the same values.
+	 */
+	static String formatDistinctValue(Object value) {
+		if (value instanceof Date) {
+			return new SimpleDateFormat(DISTINCT_DATE_FORMAT).format((Date) value);
+		}
+		return String.valueOf(value);
 	}
 
 	/**
 	 * return the number of the repetition of the value in the specified eventtyp and attribute 
 	 */
 	public static long findNumberOfAppearancesByAttributeValue(String attributeName, String value, SushiEventType type) {
+		ColumnarEventStorage columnarStorage = ColumnarEventStorage.getInstance();
+		if (columnarStorage.hasColumns(type, Arrays.asList(attributeName))) {
+			return columnarStorage.countAppearances(type, attributeName, value);
+		}
 		Query query = Persistor.getEntityManager().createNativeQuery("SELECT count(DISTINCT Event.ID) " +
 				"FROM Event JOIN SushiMapTree_SushiMapTreeElements mte " +
 					"ON mte.SushiMapTree_SushiMapID=Event.MapTreeID " +
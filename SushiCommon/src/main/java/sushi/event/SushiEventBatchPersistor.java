@@ -0,0 +1,354 @@
+package sushi.event;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+import sushi.event.collection.SushiMapElement;
+import sushi.event.collection.SushiMapTree;
+import sushi.persistence.Persistor;
+
+/**
+ * Bulk persistence for large numbers of events, e.g. from an import.
+ * Instead of persisting each event with its map tree through JPA, the rows of the tables
+ * Event, SushiMapTree, SushiMapElement and their join tables are written with JDBC batch inserts.
+ * The IDs are not generated by the database row by row, a range of IDs is reserved for each table
+ * in the table generator SushiIDGenerator, which JPA uses for these tables as well, before the events are written.
+ *
+ * The events are written in batches of {@link #getBatchSize()} events and committed
+ * every {@link #getCommitSize()} events.
+ * Afterwards, they are put into the cache of JPA, so they can be referenced by other entities, e.g. process instances.
+ */
+public class SushiEventBatchPersistor {
+
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_COMMIT_SIZE = 5000;
+	public static final int DEFAULT_THRESHOLD = 1000;
+
+	private static final String INSERT_MAP_ELEMENT = "INSERT INTO SushiMapElement (ID, PARENT_ID, MapKey, MapValue) VALUES (?, ?, ?, ?)";
+	private static final String INSERT_MAP_ELEMENT_CHILD = "INSERT INTO SushiMapElement_SushiMapElement (SushiMapElement_ID, children_ID) VALUES (?, ?)";
+	private static final String INSERT_MAP_TREE = "INSERT INTO SushiMapTree (SushiMapID, Test) VALUES (?, ?)";
+	private static final String INSERT_MAP_TREE_ELEMENT = "INSERT INTO SushiMapTree_SushiMapTreeElements (SushiMapTree_SushiMapID, treeElements_ID) VALUES (?, ?)";
+	private static final String INSERT_MAP_TREE_ROOT_ELEMENT = "INSERT INTO SushiMapTree_SushiMapTreeRootElements (SushiMapTree_SushiMapID, treeRootElements_ID) VALUES (?, ?)";
+	private static final String INSERT_EVENT = "INSERT INTO Event (ID, TIMESTAMP, MapTreeID, EVENTTYPE_ID) VALUES (?, ?, ?, ?)";
+	private static final String INSERT_ID_GENERATOR = "INSERT IGNORE INTO SushiIDGenerator (TableName, NextID) VALUES (?, 0)";
+	private static final String RESERVE_IDS = "UPDATE SushiIDGenerator SET NextID = LAST_INSERT_ID(GREATEST(NextID, (SELECT COALESCE(MAX(%s), 0) FROM %s)) + ?) WHERE TableName = ?";
+	private static final String SEED_IDS = "UPDATE SushiIDGenerator SET NextID = GREATEST(NextID, (SELECT COALESCE(MAX(%s), 0) FROM %s)) WHERE TableName = ?";
+
+	private static int batchSize = DEFAULT_BATCH_SIZE;
+	private static int commitSize = DEFAULT_COMMIT_SIZE;
+	private static int threshold = DEFAULT_THRESHOLD;
+
+	/**
+	 * Saves the given events with JDBC batch inserts.
+	 * The events must not have been saved before and their event types must be saved.
+	 * If a batch fails, the events of the batches committed before remain in the database
+	 * and the IDs of the other events are reset.
+	 * @param events
+	 * @return the saved events or null, if the events could not be saved
+	 */
+	public static List<SushiEvent> save(List<SushiEvent> events) {
+		Connection connection = null;
+		int numberOfCommittedEvents = 0;
+		try {
+			connection = Persistor.openConnection();
+			assignIDs(connection, events);
+			connection.setAutoCommit(false);
+			while (numberOfCommittedEvents < events.size()) {
+				int end = Math.min(numberOfCommittedEvents + commitSize, events.size());
+				for (int start = numberOfCommittedEvents; start < end; start += batchSize) {
+					insert(connection, events.subList(start, Math.min(start + batchSize, end)));
+				}
+				connection.commit();
+				numberOfCommittedEvents = end;
+			}
+			putInCache(events);
+			return events;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			rollback(connection);
+			resetIDs(events.subList(numberOfCommittedEvents, events.size()));
+			return null;
+		} finally {
+			close(connection);
+		}
+	}
+
+	/**
+	 * Reserves a range of IDs for each table and assigns them to the events, their map trees and map elements.
+	 */
+	private static void assignIDs(Connection connection, List<SushiEvent> events) throws SQLException {
+		int numberOfTrees = 0;
+		int numberOfElements = 0;
+		for (SushiEvent event : events) {
+			if (event.getValues() != null) {
+				numberOfTrees++;
+				numberOfElements += getElements(event.getValues()).size();
+			}
+		}
+		int eventID = reserveIDs(connection, "Event", "ID", events.size());
+		int treeID = reserveIDs(connection, "SushiMapTree", "SushiMapID", numberOfTrees);
+		int elementID = reserveIDs(connection, "SushiMapElement", "ID", numberOfElements);
+		for (SushiEvent event : events) {
+			event.setID(eventID++);
+			if (event.getValues() != null) {
+				event.getValues().setID(treeID++);
+				for (SushiMapElement<String, Serializable> element : getElements(event.getValues())) {
+					element.setID(elementID++);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reserves the given number of IDs in the table generator, which JPA uses for the IDs of the table, too.
+	 * The counter is moved with a single update, so the range can not overlap with ranges
+	 * reserved concurrently by JPA or by other batches.
+	 * The counter is moved behind the highest existing ID first, in case rows were written without the generator.
+	 * @return first reserved ID
+	 */
+	private static int reserveIDs(Connection connection, String table, String idColumn, int numberOfIDs) throws SQLException {
+		if (numberOfIDs == 0) {
+			return 0;
+		}
+		PreparedStatement insertStatement = connection.prepareStatement(INSERT_ID_GENERATOR);
+		PreparedStatement updateStatement = connection.prepareStatement(String.format(RESERVE_IDS, idColumn, table));
+		Statement statement = connection.createStatement();
+		try {
+			insertStatement.setString(1, table);
+			insertStatement.executeUpdate();
+			updateStatement.setInt(1, numberOfIDs);
+			updateStatement.setString(2, table);
+			updateStatement.executeUpdate();
+			ResultSet result = statement.executeQuery("SELECT LAST_INSERT_ID()");
+			result.next();
+			return result.getInt(1) - numberOfIDs + 1;
+		} finally {
+			insertStatement.close();
+			updateStatement.close();
+			statement.close();
+		}
+	}
+
+	/**
+	 * Moves the counters of the table generator behind the highest existing IDs of the tables Event, SushiMapTree and SushiMapElement.
+	 * The rows of existing databases were numbered by the database before, so JPA would start at the first ID again.
+	 * The counters are never moved backwards, so this can run while JPA or batches reserve IDs.
+	 * @throws SQLException
+	 */
+	public static void seedIDGenerators() throws SQLException {
+		Connection connection = null;
+		try {
+			connection = Persistor.openConnection();
+			seedIDGenerator(connection, "Event", "ID");
+			seedIDGenerator(connection, "SushiMapTree", "SushiMapID");
+			seedIDGenerator(connection, "SushiMapElement", "ID");
+		} finally {
+			close(connection);
+		}
+	}
+
+	private static void seedIDGenerator(Connection connection, String table, String idColumn) throws SQLException {
+		PreparedStatement insertStatement = connection.prepareStatement(INSERT_ID_GENERATOR);
+		PreparedStatement updateStatement = connection.prepareStatement(String.format(SEED_IDS, idColumn, table));
+		try {
+			insertStatement.setString(1, table);
+			insertStatement.executeUpdate();
+			updateStatement.setString(1, table);
+			updateStatement.executeUpdate();
+		} finally {
+			insertStatement.close();
+			updateStatement.close();
+		}
+	}
+
+	/**
+	 * Writes the rows for the given events as one batch per table.
+	 * The tables are written in the order of their foreign keys.
+	 */
+	private static void insert(Connection connection, List<SushiEvent> events) throws SQLException {
+		PreparedStatement elementStatement = connection.prepareStatement(INSERT_MAP_ELEMENT);
+		PreparedStatement elementChildStatement = connection.prepareStatement(INSERT_MAP_ELEMENT_CHILD);
+		PreparedStatement treeStatement = connection.prepareStatement(INSERT_MAP_TREE);
+		PreparedStatement treeElementStatement = connection.prepareStatement(INSERT_MAP_TREE_ELEMENT);
+		PreparedStatement treeRootElementStatement = connection.prepareStatement(INSERT_MAP_TREE_ROOT_ELEMENT);
+		PreparedStatement eventStatement = connection.prepareStatement(INSERT_EVENT);
+		try {
+			for (SushiEvent event : events) {
+				SushiMapTree<String, Serializable> tree = event.getValues();
+				if (tree != null) {
+					for (SushiMapElement<String, Serializable> element : getElements(tree)) {
+						addBatch(elementStatement, element.getID(), element.hasParent() ? element.getParent().getID() : null, element.getKey(), element.getValue());
+						for (SushiMapElement<String, Serializable> child : element.getChildren()) {
+							addBatch(elementChildStatement, element.getID(), child.getID());
+						}
+					}
+					addBatch(treeStatement, tree.getID(), "Test");
+					for (SushiMapElement<String, Serializable> element : tree.getTreeElements()) {
+						addBatch(treeElementStatement, tree.getID(), element.getID());
+					}
+					for (SushiMapElement<String, Serializable> element : tree.getTreeRootElements()) {
+						addBatch(treeRootElementStatement, tree.getID(), element.getID());
+					}
+				}
+				addBatch(eventStatement, event.getID(), event.getTimestamp(), (tree != null) ? tree.getID() : null, (event.getEventType() != null) ? event.getEventType().getID() : null);
+			}
+			elementStatement.executeBatch();
+			elementChildStatement.executeBatch();
+			treeStatement.executeBatch();
+			treeElementStatement.executeBatch();
+			treeRootElementStatement.executeBatch();
+			eventStatement.executeBatch();
+			ColumnarEventStorage.getInstance().insert(connection, events);
+		} finally {
+			elementStatement.close();
+			elementChildStatement.close();
+			treeStatement.close();
+			treeElementStatement.close();
+			treeRootElementStatement.close();
+			eventStatement.close();
+		}
+	}
+
+	private static void addBatch(PreparedStatement statement, Object... parameters) throws SQLException {
+		for (int i = 0; i < parameters.length; i++) {
+			Object parameter = parameters[i];
+			if (parameter instanceof Date && !(parameter instanceof Timestamp)) {
+				parameter = new Timestamp(((Date) parameter).getTime());
+			}
+			statement.setObject(i + 1, parameter);
+		}
+		statement.addBatch();
+	}
+
+	/**
+	 * Returns all map elements of the tree, each parent before its children.
+	 */
+	private static List<SushiMapElement<String, Serializable>> getElements(SushiMapTree<String, Serializable> tree) {
+		List<SushiMapElement<String, Serializable>> elements = new ArrayList<SushiMapElement<String, Serializable>>();
+		Set<SushiMapElement<String, Serializable>> visited = Collections.newSetFromMap(new IdentityHashMap<SushiMapElement<String, Serializable>, Boolean>());
+		for (SushiMapElement<String, Serializable> element : tree.getTreeRootElements()) {
+			addElement(element, elements, visited);
+		}
+		for (SushiMapElement<String, Serializable> element : tree.getTreeElements()) {
+			addElement(element, elements, visited);
+		}
+		return elements;
+	}
+
+	private static void addElement(SushiMapElement<String, Serializable> element, List<SushiMapElement<String, Serializable>> elements, Set<SushiMapElement<String, Serializable>> visited) {
+		if (!visited.add(element)) {
+			return;
+		}
+		if (element.hasParent()) {
+			addElement(element.getParent(), elements, visited);
+		}
+		elements.add(element);
+		for (SushiMapElement<String, Serializable> child : element.getChildren()) {
+			addElement(child, elements, visited);
+		}
+	}
+
+	/**
+	 * Registers the saved objects in the shared cache of JPA,
+	 * so JPA does not treat them as new objects when they are referenced by other entities.
+	 */
+	private static void putInCache(List<SushiEvent> events) {
+		ServerSession session = JpaHelper.getServerSession(Persistor.getEntityManagerFactory());
+		for (SushiEvent event : events) {
+			if (session.getDescriptor(event) == null) {
+				continue;
+			}
+			if (event.getValues() != null) {
+				for (SushiMapElement<String, Serializable> element : getElements(event.getValues())) {
+					session.getIdentityMapAccessor().putInIdentityMap(element);
+				}
+				session.getIdentityMapAccessor().putInIdentityMap(event.getValues());
+			}
+			session.getIdentityMapAccessor().putInIdentityMap(event);
+		}
+	}
+
+	private static void resetIDs(List<SushiEvent> events) {
+		for (SushiEvent event : events) {
+			event.setID(0);
+			if (event.getValues() != null) {
+				event.getValues().setID(0);
+				for (SushiMapElement<String, Serializable> element : getElements(event.getValues())) {
+					element.setID(0);
+				}
+			}
+		}
+	}
+
+	static void rollback(Connection connection) {
+		try {
+			if (connection != null && !connection.getAutoCommit()) {
+				connection.rollback();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	static void close(Connection connection) {
+		try {
+			if (connection != null) {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return maximal number of events written with one JDBC batch per table
+	 */
+	public static int getBatchSize() {
+		return batchSize;
+	}
+
+	public static void setBatchSize(int batchSize) {
+		SushiEventBatchPersistor.batchSize = batchSize;
+	}
+
+	/**
+	 * @return maximal number of events written in one transaction
+	 */
+	public static int getCommitSize() {
+		return commitSize;
+	}
+
+	public static void setCommitSize(int commitSize) {
+		SushiEventBatchPersistor.commitSize = commitSize;
+	}
+
+	/**
+	 * @return minimal number of events, for which {@link SushiEvent#save(List)} uses the batch persistence
+	 */
+	public static int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets the minimal number of events, for which {@link SushiEvent#save(List)} uses the batch persistence.
+	 * Use {@link Integer#MAX_VALUE} to always persist events through JPA.
+	 * @param threshold
+	 */
+	public static void setThreshold(int threshold) {
+		SushiEventBatchPersistor.threshold = threshold;
+	}
+}
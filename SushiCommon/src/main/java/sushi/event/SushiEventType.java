@@ -9,6 +9,8 @@ import java.util.Set;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -23,6 +25,7 @@ import sushi.bpmn.monitoringpoint.MonitoringPoint;
 import sushi.correlation.CorrelationRule;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.attribute.SushiAttributeTree;
+import sushi.persistence.MetadataCache;
 import sushi.persistence.Persistable;
 import sushi.persistence.Persistor;
 import sushi.process.SushiProcess;
@@ -38,6 +41,8 @@ import sushi.visualisation.SushiChartConfiguration;
 public class SushiEventType extends Persistable {
 	
 	private static final long serialVersionUID = 1L;
+	
+	private static final MetadataCache<String, SushiEventType> typeNameCache = MetadataCache.create("SushiEventType.findByTypeName", SushiEventType.class);
 
 	@Id
 	@Column(name="ID")
@@ -61,6 +66,14 @@ public class SushiEventType extends Persistable {
 	
 	@Column(name = "SchemaName")
 	private String schemaName;
+	
+	// retention of the window in the streaming engine, the default retention of the engine is used if null
+	@Column(name = "WindowRetention")
+	@Enumerated(EnumType.STRING)
+	private SushiWindowRetentionEnum windowRetention = null;
+	
+	@Column(name = "WindowRetentionSize")
+	private long windowRetentionSize = 0;
 	    
 	private SushiEventType() {
 		this.typeName = "";
@@ -270,6 +283,35 @@ public class SushiEventType extends Persistable {
 	public int getID() {
 		return ID;
 	}
+	
+	/**
+	 * Returns true, if the given event type is the same event type as this one.
+	 * Each thread loads its own instance of an event type, so saved event types are compared by their ID.
+	 * Event types, which were not saved yet, are only the same as themselves.
+	 * @param eventType
+	 * @return
+	 */
+	public boolean isSameEventType(SushiEventType eventType) {
+		if (eventType == this) return true;
+		return eventType != null && ID != 0 && ID == eventType.getID();
+	}
+	
+	/**
+	 * Compares event types like {@link #isSameEventType(SushiEventType)}, 
+	 * so that contains() and remove() of collections work with instances of other threads.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof SushiEventType && isSameEventType((SushiEventType) o);
+	}
+	
+	/**
+	 * The hash code is based on the unique type name, because the ID changes when the event type is saved.
+	 */
+	@Override
+	public int hashCode() {
+		return typeName == null ? 0 : typeName.hashCode();
+	}
 
 	public void setID(int iD) {
 		ID = iD;
@@ -347,6 +389,32 @@ public class SushiEventType extends Persistable {
 		this.schemaName = xmlName;
 	}
 	
+	/**
+	 * @return retention of the window of the event type in the streaming engine or null for the default retention
+	 */
+	public SushiWindowRetentionEnum getWindowRetention() {
+		return windowRetention;
+	}
+	
+	/**
+	 * @return number of events or seconds kept in the window, depending on the retention
+	 */
+	public long getWindowRetentionSize() {
+		return windowRetentionSize;
+	}
+	
+	/**
+	 * Sets the retention of the window of the event type in the streaming engine.
+	 * It takes effect, when the window is created, i.e. when the event type is registered at the engine.
+	 * @param windowRetention retention or null for the default retention
+	 * @param windowRetentionSize number of events for {@link SushiWindowRetentionEnum#LENGTH}, 
+	 * number of seconds for {@link SushiWindowRetentionEnum#TIME}
+	 */
+	public void setWindowRetention(SushiWindowRetentionEnum windowRetention, long windowRetentionSize) {
+		this.windowRetention = windowRetention;
+		this.windowRetentionSize = windowRetentionSize;
+	}
+	
 	@Override
 	public String toString() {
 		String processText = this.typeName + " (" + this.ID + ")";
@@ -407,6 +475,10 @@ public class SushiEventType extends Persistable {
 	 * @return
 	 */
 	public static SushiEventType findByTypeName(String typeName) {
+		SushiEventType cached = typeNameCache.getSingle(typeName);
+		if (cached != null) {
+			return cached;
+		}
 		Query query = Persistor.getEntityManager().createNativeQuery("" + 
 				"SELECT * FROM EventType " + 
 				"WHERE TypeName = '" + typeName + "'", SushiEventType.class);
@@ -414,7 +486,9 @@ public class SushiEventType extends Persistable {
 		assert(query.getResultList().size() < 2);
 		try{
 			if (query.getResultList().size() > 0) {
-				return (SushiEventType) query.getResultList().get(0);
+				SushiEventType eventType = (SushiEventType) query.getResultList().get(0);
+				typeNameCache.putSingle(typeName, eventType);
+				return eventType;
 			} else {
 				return null;
 			}
@@ -480,6 +554,7 @@ public class SushiEventType extends Persistable {
 				Persistor.getEntityManager().persist(eventType);
 			}
 			Persistor.getEntityManager().getTransaction().commit();
+			MetadataCache.invalidate(SushiEventType.class);
 			return true;
 		}  catch (Exception e) {
 			e.printStackTrace();
@@ -494,12 +569,13 @@ public class SushiEventType extends Persistable {
 	@Override
 	public SushiEventType remove() {
 		try {	
+			ColumnarEventStorage.getInstance().disable(this);
 			// remove eventtype from process
 			// delete correlation rule if correlation rule contains attribute of this event type
 			Set<CorrelationRule> correlationRulesToBeRemoved = new HashSet<CorrelationRule>();
 			for (SushiProcess process : SushiProcess.findByEventType(this)) {
 				process.removeEventType(this);
-				if(process.getTimeCondition() != null && process.getTimeCondition().getSelectedEventType().equals(this)){
+				if(process.getTimeCondition() != null && isSameEventType(process.getTimeCondition().getSelectedEventType())){
 					process.getTimeCondition().remove();
 				}
 				for (SushiAttribute attribute : getValueTypes()) {
@@ -507,7 +583,7 @@ public class SushiEventType extends Persistable {
 				}
 				Set<CorrelationRule> correlationRulesOfProcess = new HashSet<CorrelationRule>(process.getCorrelationRules());
 				for (CorrelationRule correlationRule : correlationRulesOfProcess) {
-					if (correlationRule.getFirstAttribute().getEventType().equals(this) || correlationRule.getSecondAttribute().getEventType().equals(this)) {
+					if (isSameEventType(correlationRule.getFirstAttribute().getEventType()) || isSameEventType(correlationRule.getSecondAttribute().getEventType())) {
 						process.getCorrelationRules().remove(correlationRule);
 						correlationRulesToBeRemoved.add(correlationRule);
 					}
@@ -0,0 +1,21 @@
+package sushi.event;
+
+/**
+ * This enumeration encapsulates the retention policies of the window of an event type in the streaming engine.
+ * The size of the retention is a number of events for LENGTH and a number of seconds for TIME.
+ */
+public enum SushiWindowRetentionEnum {
+	LENGTH ("latest events"),
+	TIME ("events of the last seconds"),
+	EXTERNAL ("until removed");
+
+	private String type;
+
+	SushiWindowRetentionEnum(String type) {
+		this.type = type;
+	}
+
+	public String toString() {
+		return type;
+	}
+}
@@ -16,6 +16,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.Query;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -40,7 +41,8 @@ import sushi.util.XMLUtils;
 public class SushiMapElement<K, V> extends Persistable {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "SushiMapElementID")
+	@TableGenerator(name = "SushiMapElementID", table = "SushiIDGenerator", pkColumnName = "TableName", valueColumnName = "NextID", pkColumnValue = "SushiMapElement", allocationSize = 50)
 	private int ID;
 	
 	@ManyToOne(cascade = CascadeType.PERSIST)
@@ -205,5 +207,9 @@ public class SushiMapElement<K, V> extends Persistable {
 	@Override
 	public int getID() {
 		return ID;
-	}	
+	}
+	
+	public void setID(int iD) {
+		ID = iD;
+	}
 }
\ No newline at end of file
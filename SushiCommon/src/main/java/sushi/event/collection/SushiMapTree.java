@@ -8,6 +8,8 @@ import java.io.ObjectOutputStream;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +26,8 @@ import javax.persistence.JoinTable;
 import javax.persistence.OneToMany;
 import javax.persistence.Query;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Transient;
 
 import sushi.persistence.Persistable;
 import sushi.persistence.Persistor;
@@ -40,7 +44,8 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	private static final long serialVersionUID = 1L;
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "SushiMapTreeID")
+	@TableGenerator(name = "SushiMapTreeID", table = "SushiIDGenerator", pkColumnName = "TableName", valueColumnName = "NextID", pkColumnValue = "SushiMapTree", allocationSize = 50)
 	@Column(name="SushiMapID")
 	protected int ID;
 	
@@ -57,6 +62,24 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	@Column(name="Test")
 	private String test = "Test";
 	
+	/**
+	 * index from key to the first tree element with this key, 
+	 * built lazily from the tree elements and not persisted by JPA
+	 */
+	@Transient
+	private transient Map<K, SushiMapElement<K,V>> keyIndex;
+	
+	/**
+	 * index from attribute expression to the first tree element with this attribute expression, 
+	 * built lazily from the tree elements and not persisted by JPA
+	 */
+	@Transient
+	private transient Map<String, SushiMapElement<K,V>> attributeExpressionIndex;
+	
+	// the tree element list the indexes were built from, JPA replaces the list when loading the tree
+	@Transient
+	private transient List<SushiMapElement<K,V>> indexedTreeElements;
+	
 	public SushiMapTree(){
 		this.ID = 0;
 	}
@@ -66,6 +89,7 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 		SushiMapElement<K, V> element = new SushiMapElement<K, V>(rootElementKey, rootElementValue);
 		treeElements.add(element);
 		treeRootElements.add(element);
+		indexElement(element);
 	}
 	
 	public boolean isHierarchical() {
@@ -73,12 +97,32 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	}
 	
 	public V getValueOfAttribute(String attribute) {
-		for (SushiMapElement<K, V>  element : treeElements) {
-			if (element.getKey().equals(attribute)) {
-				return element.getValue();
-			}
+		return get(attribute);
+	}
+	
+	/**
+	 * use this only if the SushiMapTree is used as attribute name/value mapping
+	 * 
+	 * @param attributeExpression (e.g. 'vehicle_information.transport')
+	 * @return value of the node with the given attribute expression
+	 */
+	public V getValueByAttributeExpression(String attributeExpression) {
+		SushiMapElement<K, V> element = getAttributeExpressionIndex().get(attributeExpression);
+		if(element != null){
+			return element.getValue();
+		} else {
+			return null;
 		}
-		return null;
+	}
+	
+	/**
+	 * use this only if the SushiMapTree is used as attribute name/value mapping
+	 * 
+	 * @param attributeExpression (e.g. 'vehicle_information.transport')
+	 * @return true if the tree contains a node with the given attribute expression
+	 */
+	public boolean containsAttributeExpression(String attributeExpression) {
+		return getAttributeExpressionIndex().containsKey(attributeExpression);
 	}
 	
 	/**
@@ -167,6 +211,7 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 		if(parentElement == null){
 			treeRootElements.add(childMapElement);
 		}
+		indexElement(childMapElement);
 	}
 	
 	/**
@@ -177,7 +222,9 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	 */
 	public boolean addRootElement(K childKey, V childValue){
 		SushiMapElement<K,V> element = new SushiMapElement<K,V>(childKey, childValue);
-		return (treeRootElements.add(element) && treeElements.add(element));
+		boolean added = (treeRootElements.add(element) && treeElements.add(element));
+		indexElement(element);
+		return added;
 	}
 	
 	/**
@@ -204,7 +251,7 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 
 	@Override
 	public boolean containsKey(Object key) {
-		return keySet().contains(key);
+		return getKeyIndex().containsKey(key);
 	}
 
 	@Override
@@ -225,8 +272,10 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 
 	@Override
 	public V put(K key, V value) {
-		treeElements.add(new SushiMapElement<K, V>(key, value));
-		treeRootElements.add(new SushiMapElement<K, V>(key, value));
+		SushiMapElement<K, V> element = new SushiMapElement<K, V>(key, value);
+		treeElements.add(element);
+		treeRootElements.add(element);
+		indexElement(element);
 		return value;
 	}
 
@@ -259,6 +308,7 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 			}
 			treeElements.remove(removeTreeElement);
 			treeRootElements.remove(removeTreeElement);
+			unindexElement(removeTreeElement);
 		}
 		return removeTreeElementValue;
 		
@@ -267,7 +317,7 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	@Override
 	public void putAll(Map<? extends K, ? extends V> m) {
 		for(java.util.Map.Entry<? extends K, ? extends V> element  : m.entrySet()){
-			treeRootElements.add(new SushiMapElement<K, V>(element.getKey(), element.getValue()));
+			put(element.getKey(), element.getValue());
 		}
 	}
 
@@ -275,15 +325,15 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	public void clear() {
 		treeElements.clear();
 		treeRootElements.clear();
+		invalidateIndexes();
 	}
 
+	/**
+	 * @return read-only view of the keys of all nodes
+	 */
 	@Override
 	public Set<K> keySet() {
-		Set<K> keySet = new HashSet<K>();
-		for(SushiMapElement mapElement : treeElements){
-			keySet.add((K) mapElement.getKey());
-		}
-		return keySet;
+		return Collections.unmodifiableSet(getKeyIndex().keySet());
 	}
 
 	@Override
@@ -328,12 +378,101 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 		if(treeElementKey == null){
 			return null;
 		}
-		for(SushiMapElement<K, V> currentMapElement : treeElements){
-			if(currentMapElement.getKey().equals(treeElementKey)){
-				return currentMapElement;
+		return getKeyIndex().get(treeElementKey);
+	}
+	
+	/**
+	 * returns the key index and builds it if necessary,
+	 * e.g. after the tree was loaded by JPA or deserialized
+	 */
+	private Map<K, SushiMapElement<K, V>> getKeyIndex() {
+		if(keyIndex == null || indexedTreeElements != treeElements){
+			buildIndexes();
+		}
+		return keyIndex;
+	}
+	
+	/**
+	 * returns the attribute expression index and builds it if necessary,
+	 * e.g. after the tree was loaded by JPA or deserialized
+	 */
+	private Map<String, SushiMapElement<K, V>> getAttributeExpressionIndex() {
+		if(attributeExpressionIndex == null || indexedTreeElements != treeElements){
+			buildIndexes();
+		}
+		return attributeExpressionIndex;
+	}
+	
+	private void buildIndexes() {
+		keyIndex = new HashMap<K, SushiMapElement<K, V>>();
+		attributeExpressionIndex = new HashMap<String, SushiMapElement<K, V>>();
+		indexedTreeElements = treeElements;
+		for(SushiMapElement<K, V> element : treeElements){
+			addToIndexes(element);
+		}
+	}
+	
+	private void invalidateIndexes() {
+		keyIndex = null;
+		attributeExpressionIndex = null;
+		indexedTreeElements = null;
+	}
+	
+	/**
+	 * adds a new node to the indexes, if they are already built
+	 * the first node of a key stays in the index as in the linear search before
+	 */
+	private void indexElement(SushiMapElement<K, V> element) {
+		if(keyIndex != null && indexedTreeElements == treeElements){
+			addToIndexes(element);
+		}
+	}
+	
+	private void addToIndexes(SushiMapElement<K, V> element) {
+		if(!keyIndex.containsKey(element.getKey())){
+			keyIndex.put(element.getKey(), element);
+		}
+		if(element.getKey() instanceof String){
+			String attributeExpression = element.getAttributeExpression();
+			if(!attributeExpressionIndex.containsKey(attributeExpression)){
+				attributeExpressionIndex.put(attributeExpression, element);
+			}
+		}
+	}
+	
+	/**
+	 * removes a node, which is not part of the tree anymore, from the indexes
+	 * and replaces it by another node with the same key or attribute expression if there is one
+	 */
+	private void unindexElement(SushiMapElement<K, V> element) {
+		if(keyIndex == null || indexedTreeElements != treeElements){
+			return;
+		}
+		boolean replaceKey = (keyIndex.get(element.getKey()) == element);
+		String attributeExpression = null;
+		boolean replaceAttributeExpression = false;
+		if(element.getKey() instanceof String){
+			attributeExpression = element.getAttributeExpression();
+			replaceAttributeExpression = (attributeExpressionIndex.get(attributeExpression) == element);
+		}
+		if(replaceKey){
+			keyIndex.remove(element.getKey());
+		}
+		if(replaceAttributeExpression){
+			attributeExpressionIndex.remove(attributeExpression);
+		}
+		if(replaceKey || replaceAttributeExpression){
+			for(SushiMapElement<K, V> currentMapElement : treeElements){
+				if(replaceKey && currentMapElement.getKey().equals(element.getKey())){
+					keyIndex.put(currentMapElement.getKey(), currentMapElement);
+					replaceKey = false;
+				}
+				if(replaceAttributeExpression && currentMapElement.getKey() instanceof String && currentMapElement.getAttributeExpression().equals(attributeExpression)){
+					attributeExpressionIndex.put(attributeExpression, currentMapElement);
+					replaceAttributeExpression = false;
+				}
 			}
 		}
-		return null;
 	}
 	
 	/**
@@ -416,19 +555,27 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	 * @param retainableKeys
 	 */
 	public void retainAllKeys(ArrayList<String> retainableKeys) {
-		for(K key : keySet()){
+		for(K key : new ArrayList<K>(keySet())){
 			if(!retainableKeys.contains(key)){
 				this.remove(key);
 			}
 		}
 	}
 	
+	/**
+	 * @return all nodes of the tree
+	 */
+	public List<SushiMapElement<K, V>> getTreeElements() {
+		return treeElements;
+	}
+	
 	public List<SushiMapElement<K, V>> getTreeRootElements() {
 		return treeRootElements;
 	}
 
 	public void setTreeRootElements(List<SushiMapElement<K, V>> treeRootElements) {
 		this.treeRootElements = treeRootElements;
+		invalidateIndexes();
 	}
 	
 	@Override
@@ -454,4 +601,8 @@ public class SushiMapTree<K, V> extends Persistable implements Map<K,V> {
 	public int getID() {
 		return ID;
 	}
+	
+	public void setID(int iD) {
+		ID = iD;
+	}
 }
\ No newline at end of file
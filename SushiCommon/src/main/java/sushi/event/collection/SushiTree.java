@@ -3,8 +3,10 @@ package sushi.event.collection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.CascadeType;
@@ -18,11 +20,16 @@ import javax.persistence.JoinTable;
 import javax.persistence.OneToMany;
 import javax.persistence.Query;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
 import sushi.persistence.Persistable;
 import sushi.persistence.Persistor;
 
 /**
+ * The structure of the tree is indexed (see {@link SushiTreeIndex}): elements are found by their value,
+ * depths, leaves and ancestors are answered without walking the whole tree.
+ * The index is not persisted and built lazily, so the structure must be changed through the methods of the tree.
+ * 
  * @author micha
  *
  * @param <T>
@@ -50,6 +57,17 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	@JoinTable(name="SushiTree_SushiTreeRootElements")
 	private List<SushiTreeElement<T>> treeRootElements = new ArrayList<SushiTreeElement<T>>();
 	
+	/**
+	 * index of the structure of the tree, 
+	 * built lazily from the tree elements and not persisted by JPA
+	 */
+	@Transient
+	private transient SushiTreeIndex<T> index;
+	
+	// the tree element list the index was built from, JPA replaces the list when loading the tree
+	@Transient
+	private transient List<SushiTreeElement<T>> indexedTreeElements;
+	
 	public SushiTree() {
 		this.ID = 0;
 	}
@@ -64,10 +82,9 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	}
 	
 	public T getParent(T treeElementValue){
-		for(SushiTreeElement<T> currentTreeElement : treeElements){
-			if(currentTreeElement.getValue() == treeElementValue){
-				return currentTreeElement.getParent().getValue();
-			}
+		SushiTreeElement<T> currentTreeElement = getIndex().findElementByIdentity(treeElementValue);
+		if(currentTreeElement != null && currentTreeElement.getParent() != null){
+			return currentTreeElement.getParent().getValue();
 		}
 		return null;
 	}
@@ -102,14 +119,8 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	 */
 	public Set<T> getIndirectParents(Collection<T> children){
 		Set<T> parentValues = new HashSet<T>();
-		Set<SushiTreeElement<T>> parents = new HashSet<SushiTreeElement<T>>();
-		for(SushiTreeElement<T> treeElement : treeElements){
-			if(treeElement.getChildValues().containsAll(children) && children.containsAll(treeElement.getChildValues())){
-				parents.add(treeElement);
-				parentValues.add(treeElement.getValue());
-			}
-		}
-		for(SushiTreeElement<T> parent : parents){
+		for(SushiTreeElement<T> parent : findElementsWithChildren(children)){
+			parentValues.add(parent.getValue());
 			parentValues.addAll(getIndirectParents(parent));
 		}
 		return parentValues;
@@ -161,14 +172,37 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	 * @return
 	 */
 	public List<T> getParents(Collection<T> elements){
-		List<T> parentValues = new ArrayList<T>();
-		for(SushiTreeElement<T> treeElement : treeElements){
-			List<T> childrenOfElement = this.getChildren(treeElement.getValue());
-			if(childrenOfElement.containsAll(elements) && elements.containsAll(childrenOfElement)){
-				parentValues.add(treeElement.getValue());
+		return getTreeElementValues(findElementsWithChildren(elements));
+	}
+	
+	/**
+	 * Returns the tree elements, whose children have exactly the given values, in the order of the tree.
+	 * Only the parents of the elements with the first value are candidates, 
+	 * for no values the leaves are returned.
+	 * @param childValues
+	 * @return
+	 */
+	private List<SushiTreeElement<T>> findElementsWithChildren(Collection<T> childValues){
+		SushiTreeIndex<T> index = getIndex();
+		if(childValues.isEmpty()){
+			return new ArrayList<SushiTreeElement<T>>(index.getLeaves());
+		}
+		Map<SushiTreeElement<T>, Boolean> candidates = new IdentityHashMap<SushiTreeElement<T>, Boolean>();
+		for(SushiTreeElement<T> child : index.findElements(childValues.iterator().next())){
+			SushiTreeElement<T> parent = child.getParent();
+			if(parent != null && index.contains(parent)){
+				candidates.put(parent, Boolean.TRUE);
 			}
 		}
-		return parentValues;
+		List<SushiTreeElement<T>> parents = new ArrayList<SushiTreeElement<T>>();
+		for(SushiTreeElement<T> candidate : candidates.keySet()){
+			List<T> childrenOfElement = candidate.getChildValues();
+			if(childrenOfElement.containsAll(childValues) && childValues.containsAll(childrenOfElement)){
+				parents.add(candidate);
+			}
+		}
+		index.sort(parents);
+		return parents;
 	}
 	
 	/**
@@ -177,13 +211,7 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	 * @return
 	 */
 	public List<T> getValuesOfLeaves(){
-		List<T> leafValues = new ArrayList<T>();
-		for(SushiTreeElement<T> element : treeElements){
-			if(!element.hasChildren()){
-				leafValues.add(element.getValue());
-			}
-		}
-		return leafValues;
+		return getTreeElementValues(getIndex().getLeaves());
 	}
 	
 	/**
@@ -206,40 +234,65 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	
 	/**
 	 * Returns all elements of the tree, that have no children.
+	 * The returned set is cached until the tree changes and can not be modified.
 	 * @return
 	 */
 	public Set<T> getLeafElements(){
-		Set<T> leaves = new HashSet<T>();
-		for(SushiTreeElement<T> element : getLeafs()){
-			leaves.add(element.getValue());
-		}
-		return leaves;
+		return getIndex().getLeafValues();
 	}
 	
 	/**
 	 * Returns all tree elements, that have no children.
 	 * @return
 	 */
-	private Set<SushiTreeElement<T>> getLeafs(){
-		Set<SushiTreeElement<T>> leaves = new HashSet<SushiTreeElement<T>>();
-		for(SushiTreeElement<T> element : treeElements){
-			if(!element.hasChildren()){
-				leaves.add(element);
-			}
-		}
-		return leaves;
+	private List<SushiTreeElement<T>> getLeafs(){
+		return getIndex().getLeaves();
 	}
 	
 	public boolean isInLeaves(T treeElement){
-		Set<SushiTreeElement<T>> leaves = getLeafs();
-		for(SushiTreeElement<T> element : leaves){
-			if(element.getValue().equals(treeElement)){
+		SushiTreeIndex<T> index = getIndex();
+		for(SushiTreeElement<T> element : index.findElements(treeElement)){
+			if(index.isLeaf(element)){
 				return true;
 			}
 		}
 		return false;
 	}
 	
+	/**
+	 * Returns true, if the first element is a direct or indirect parent of the second element.
+	 * @param ancestor
+	 * @param descendant
+	 * @return
+	 */
+	public boolean isAncestor(T ancestor, T descendant){
+		SushiTreeIndex<T> index = getIndex();
+		SushiTreeElement<T> ancestorElement = index.findElement(ancestor);
+		SushiTreeElement<T> descendantElement = index.findElement(descendant);
+		if(ancestorElement == null || descendantElement == null){
+			return false;
+		}
+		return index.isAncestor(ancestorElement, descendantElement);
+	}
+	
+	/**
+	 * Returns the deepest element of the tree, which is one of the given elements or a parent of both. 
+	 * If the elements are not contained or belong to different root elements, null will be returned.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	public T getLowestCommonAncestor(T first, T second){
+		SushiTreeIndex<T> index = getIndex();
+		SushiTreeElement<T> firstElement = index.findElement(first);
+		SushiTreeElement<T> secondElement = index.findElement(second);
+		if(firstElement == null || secondElement == null){
+			return null;
+		}
+		SushiTreeElement<T> ancestor = index.getLowestCommonAncestor(firstElement, secondElement);
+		return (ancestor != null) ? ancestor.getValue() : null;
+	}
+	
 	public boolean hasChildren(T treeElement){
 		SushiTreeElement<T> currentTreeElement = findTreeElementByValue(treeElement);
 		return currentTreeElement.hasChildren();
@@ -257,6 +310,7 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 		if(parent == null){
 			treeRootElements.add(childTreeElement);
 		}
+		indexElement(childTreeElement);
 	}
 	
 //	public void addChild(T parent, T child, SushiAttributeTypeEnum type) {
@@ -281,6 +335,7 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	public boolean addRootElement(T rootElement){
 		SushiTreeElement<T> element = new SushiTreeElement<T>(rootElement);
 		treeElements.add(element);
+		indexElement(element);
 		return treeRootElements.add(element);
 	}
 //	
@@ -300,6 +355,7 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 		List<SushiTreeElement<T>> children = currentTreeElement.getChildren();
 		treeElements.removeAll(children);
 		currentTreeElement.removeChildren();
+		invalidateIndex();
 	}
 
 	@Override
@@ -315,12 +371,7 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	@Override
 	public boolean contains(Object o) {
 		try{
-			for(T element  : this.getElements()){
-				if(element.equals(o)){
-					return true;
-				}
-			}
-			return false;
+			return getIndex().containsValue(o);
 		} catch(ClassCastException c){
 			return false;
 		}
@@ -369,6 +420,7 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 			if (!(removeTreeElement.getParent() == null)){
 				removeTreeElement.getParent().getChildren().remove(removeTreeElement);
 			}
+			unindexElement(removeTreeElement);
 			return (treeElements.remove(removeTreeElement) && treeRootElements.remove(removeTreeElement));
 		}
 		return false;
@@ -470,6 +522,7 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	public void clear() {
 		treeElements.clear();
 		treeRootElements.clear();
+		invalidateIndex();
 	}
 	
 	private ArrayList<T> getTreeElementValues(List<SushiTreeElement<T>>treeElements) {
@@ -484,25 +537,49 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 		if(treeElementValue == null){
 			return null;
 		}
-		for(SushiTreeElement<T> currentTreeElement : treeElements){
-			if(currentTreeElement.getValue().equals(treeElementValue)){
-				return currentTreeElement;
-			}
-		}
-		return null;
+		return getIndex().findElement(treeElementValue);
 	}
 	
 	private List<SushiTreeElement<T>> findTreeElementsByValue(T treeElementValue){
 		if(treeElementValue == null){
 			return null;
 		}
-		List<SushiTreeElement<T>> elements = new ArrayList<SushiTreeElement<T>>();
-		for(SushiTreeElement<T> currentTreeElement : treeElements){
-			if(currentTreeElement.getValue().equals(treeElementValue)){
-				elements.add(currentTreeElement);
-			}
+		return new ArrayList<SushiTreeElement<T>>(getIndex().findElements(treeElementValue));
+	}
+	
+	/**
+	 * returns the index and builds it if necessary,
+	 * e.g. after loading the tree or if the tree elements were changed directly
+	 */
+	private SushiTreeIndex<T> getIndex() {
+		if(index == null || indexedTreeElements != treeElements || index.size() != treeElements.size()){
+			index = new SushiTreeIndex<T>(treeElements);
+			indexedTreeElements = treeElements;
+		}
+		return index;
+	}
+	
+	private void invalidateIndex() {
+		index = null;
+		indexedTreeElements = null;
+	}
+	
+	/**
+	 * adds a new element to the index, if it is already built
+	 */
+	private void indexElement(SushiTreeElement<T> element) {
+		if(index != null && indexedTreeElements == treeElements){
+			index.add(element);
+		}
+	}
+	
+	/**
+	 * removes an element, which is not part of the tree anymore, from the index
+	 */
+	private void unindexElement(SushiTreeElement<T> element) {
+		if(index != null && indexedTreeElements == treeElements){
+			index.remove(element, element.getParent());
 		}
-		return elements;
 	}
 	
 	public boolean isHierarchical() {
@@ -563,17 +640,11 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	 * @return
 	 */
 	public int getElementDepth(T element){
-		int depth = 0;
 		SushiTreeElement<T> treeElement = this.findTreeElementByValue(element);
 		if(treeElement == null){
 			return -1;
 		}
-		SushiTreeElement<T> parent = treeElement.getParent();
-		while(parent != null){
-			parent = parent.getParent();
-			depth++;
-		}
-		return depth;
+		return getIndex().getDepth(treeElement);
 	}
 	
 	@Override
@@ -625,10 +696,9 @@ public class SushiTree<T> extends Persistable implements Collection<T> {
 	 */
 	public boolean isInChildrenOfNode(T parent, T child) {
 		if (parent != null) {
-			for (T attribute : getElements()) {
-				if (attribute.equals(parent)) {
-					return getChildren(attribute).contains(child); 
-				}
+			SushiTreeElement<T> parentElement = findTreeElementByValue(parent);
+			if (parentElement != null) {
+				return parentElement.getChildValues().contains(child); 
 			}
 			return false;
 		} else {
@@ -0,0 +1,303 @@
+package sushi.event.collection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the structure of a {@link SushiTree}, which is not persisted by JPA.
+ * It maps the values to their tree elements, keeps the depth and the leaves of the tree
+ * and the ancestors of each element in jumps of powers of two (binary lifting),
+ * so ancestor checks and lowest common ancestors are answered in O(log n) without walking the tree.
+ * Added elements are indexed incrementally, the tree discards the index on changes it can not follow.
+ *
+ * @param <T>
+ */
+class SushiTreeIndex<T> {
+
+	private final Map<SushiTreeElement<T>, Node<T>> nodes = new IdentityHashMap<SushiTreeElement<T>, Node<T>>();
+	private final Map<T, List<SushiTreeElement<T>>> elementsByValue = new HashMap<T, List<SushiTreeElement<T>>>();
+	private final Map<SushiTreeElement<T>, Boolean> leaves = new IdentityHashMap<SushiTreeElement<T>, Boolean>();
+	private List<SushiTreeElement<T>> sortedLeaves = null;
+	private Set<T> leafValues = null;
+	private long nextSequence = 0;
+	private int numberOfElements = 0;
+	private final Comparator<SushiTreeElement<T>> sequenceComparator = new Comparator<SushiTreeElement<T>>() {
+		@Override
+		public int compare(SushiTreeElement<T> first, SushiTreeElement<T> second) {
+			long firstSequence = nodes.get(first).sequence;
+			long secondSequence = nodes.get(second).sequence;
+			return (firstSequence < secondSequence) ? -1 : ((firstSequence == secondSequence) ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Builds the index from the elements of a tree in their order.
+	 * @param treeElements
+	 */
+	SushiTreeIndex(List<SushiTreeElement<T>> treeElements) {
+		for (SushiTreeElement<T> element : treeElements) {
+			add(element);
+		}
+	}
+
+	/**
+	 * Adds an element of the tree, which was appended to the tree elements.
+	 * The parent of the element must already be contained in the index.
+	 * @param element
+	 */
+	void add(SushiTreeElement<T> element) {
+		Node<T> node = getOrCreateNode(element);
+		if (node.member) {
+			return;
+		}
+		node.member = true;
+		node.sequence = nextSequence++;
+		numberOfElements++;
+		List<SushiTreeElement<T>> elements = elementsByValue.get(element.getValue());
+		if (elements == null) {
+			elements = new ArrayList<SushiTreeElement<T>>(1);
+			elementsByValue.put(element.getValue(), elements);
+		}
+		elements.add(element);
+		if (!element.hasChildren()) {
+			leaves.put(element, Boolean.TRUE);
+		}
+		if (element.getParent() != null) {
+			leaves.remove(element.getParent());
+		}
+		leavesChanged();
+	}
+
+	/**
+	 * Removes an element, which was removed from the tree together with its descendants.
+	 * @param element
+	 * @param formerParent the parent of the element before it was removed or null
+	 */
+	void remove(SushiTreeElement<T> element, SushiTreeElement<T> formerParent) {
+		Node<T> node = nodes.remove(element);
+		if (node == null) {
+			return;
+		}
+		if (node.member) {
+			numberOfElements--;
+			List<SushiTreeElement<T>> elements = elementsByValue.get(element.getValue());
+			if (elements != null) {
+				elements.remove(element);
+				if (elements.isEmpty()) {
+					elementsByValue.remove(element.getValue());
+				}
+			}
+			leaves.remove(element);
+		}
+		if (formerParent != null && !formerParent.hasChildren()) {
+			Node<T> parentNode = nodes.get(formerParent);
+			if (parentNode != null && parentNode.member) {
+				leaves.put(formerParent, Boolean.TRUE);
+			}
+		}
+		leavesChanged();
+	}
+
+	/**
+	 * @param value
+	 * @return the first element of the tree with an equal value or null
+	 */
+	SushiTreeElement<T> findElement(Object value) {
+		List<SushiTreeElement<T>> elements = elementsByValue.get(value);
+		return (elements == null) ? null : elements.get(0);
+	}
+
+	/**
+	 * @param value
+	 * @return all elements of the tree with an equal value in the order of the tree
+	 */
+	List<SushiTreeElement<T>> findElements(Object value) {
+		List<SushiTreeElement<T>> elements = elementsByValue.get(value);
+		return (elements == null) ? Collections.<SushiTreeElement<T>>emptyList() : elements;
+	}
+
+	/**
+	 * @param value
+	 * @return the first element of the tree with the identical value or null
+	 */
+	SushiTreeElement<T> findElementByIdentity(T value) {
+		for (SushiTreeElement<T> element : findElements(value)) {
+			if (element.getValue() == value) {
+				return element;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return number of indexed elements of the tree
+	 */
+	int size() {
+		return numberOfElements;
+	}
+
+	boolean contains(SushiTreeElement<T> element) {
+		Node<T> node = nodes.get(element);
+		return node != null && node.member;
+	}
+
+	boolean containsValue(Object value) {
+		return elementsByValue.containsKey(value);
+	}
+
+	/**
+	 * @param element
+	 * @return depth of the element, root elements have depth 0
+	 */
+	int getDepth(SushiTreeElement<T> element) {
+		return nodes.get(element).depth;
+	}
+
+	/**
+	 * @return the leaves of the tree in the order of the tree
+	 */
+	List<SushiTreeElement<T>> getLeaves() {
+		if (sortedLeaves == null) {
+			List<SushiTreeElement<T>> leafElements = new ArrayList<SushiTreeElement<T>>(leaves.keySet());
+			Collections.sort(leafElements, sequenceComparator);
+			sortedLeaves = Collections.unmodifiableList(leafElements);
+		}
+		return sortedLeaves;
+	}
+
+	/**
+	 * @return the values of the leaves of the tree
+	 */
+	Set<T> getLeafValues() {
+		if (leafValues == null) {
+			Set<T> values = new LinkedHashSet<T>();
+			for (SushiTreeElement<T> leaf : getLeaves()) {
+				values.add(leaf.getValue());
+			}
+			leafValues = Collections.unmodifiableSet(values);
+		}
+		return leafValues;
+	}
+
+	boolean isLeaf(SushiTreeElement<T> element) {
+		return leaves.containsKey(element);
+	}
+
+	/**
+	 * Sorts elements of the tree in the order of the tree.
+	 * @param elements
+	 */
+	void sort(List<SushiTreeElement<T>> elements) {
+		Collections.sort(elements, sequenceComparator);
+	}
+
+	/**
+	 * @param ancestor
+	 * @param descendant
+	 * @return true, if the first element is a direct or indirect parent of the second element
+	 */
+	boolean isAncestor(SushiTreeElement<T> ancestor, SushiTreeElement<T> descendant) {
+		Node<T> ancestorNode = nodes.get(ancestor);
+		Node<T> descendantNode = nodes.get(descendant);
+		if (ancestorNode == null || descendantNode == null || ancestorNode.depth >= descendantNode.depth) {
+			return false;
+		}
+		return getAncestor(descendantNode, descendantNode.depth - ancestorNode.depth) == ancestorNode;
+	}
+
+	/**
+	 * @param first
+	 * @param second
+	 * @return the deepest element, which is the first or second element or an ancestor of both,
+	 * or null, if the elements belong to different root elements
+	 */
+	SushiTreeElement<T> getLowestCommonAncestor(SushiTreeElement<T> first, SushiTreeElement<T> second) {
+		Node<T> firstNode = nodes.get(first);
+		Node<T> secondNode = nodes.get(second);
+		if (firstNode == null || secondNode == null) {
+			return null;
+		}
+		if (getAncestor(firstNode, firstNode.depth) != getAncestor(secondNode, secondNode.depth)) {
+			return null;
+		}
+		if (firstNode.depth > secondNode.depth) {
+			firstNode = getAncestor(firstNode, firstNode.depth - secondNode.depth);
+		} else {
+			secondNode = getAncestor(secondNode, secondNode.depth - firstNode.depth);
+		}
+		if (firstNode == secondNode) {
+			return firstNode.element;
+		}
+		for (int k = firstNode.jumps.size() - 1; k >= 0; k--) {
+			if (k < firstNode.jumps.size() && firstNode.jumps.get(k) != secondNode.jumps.get(k)) {
+				firstNode = firstNode.jumps.get(k);
+				secondNode = secondNode.jumps.get(k);
+			}
+		}
+		return firstNode.jumps.get(0).element;
+	}
+
+	/**
+	 * Returns the ancestor the given number of levels above the node.
+	 */
+	private Node<T> getAncestor(Node<T> node, int levels) {
+		for (int k = 0; levels > 0; k++, levels >>= 1) {
+			if ((levels & 1) == 1) {
+				node = node.jumps.get(k);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Creates the nodes of the element and its ancestors, if necessary.
+	 * Ancestors, which are not elements of the tree, get a node without being a member of the index.
+	 */
+	private Node<T> getOrCreateNode(SushiTreeElement<T> element) {
+		Node<T> node = nodes.get(element);
+		if (node == null) {
+			Node<T> parentNode = (element.getParent() == null) ? null : getOrCreateNode(element.getParent());
+			node = new Node<T>(element, parentNode);
+			nodes.put(element, node);
+		}
+		return node;
+	}
+
+	private void leavesChanged() {
+		sortedLeaves = null;
+		leafValues = null;
+	}
+
+	/**
+	 * Element of the tree with its depth and the ancestors 1, 2, 4, 8, ... levels above it.
+	 */
+	private static class Node<T> {
+
+		private final SushiTreeElement<T> element;
+		private final int depth;
+		private final List<Node<T>> jumps = new ArrayList<Node<T>>(1);
+		private boolean member = false;
+		private long sequence = -1;
+
+		private Node(SushiTreeElement<T> element, Node<T> parentNode) {
+			this.element = element;
+			if (parentNode == null) {
+				depth = 0;
+			} else {
+				depth = parentNode.depth + 1;
+				jumps.add(parentNode);
+				for (int k = 0; k < jumps.get(k).jumps.size(); k++) {
+					jumps.add(jumps.get(k).jumps.get(k));
+				}
+			}
+		}
+	}
+
+}
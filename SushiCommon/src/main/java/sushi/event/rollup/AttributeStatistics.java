@@ -0,0 +1,50 @@
+package sushi.event.rollup;
+
+import java.io.Serializable;
+
+/**
+ * Number, minimum, maximum and sum of the numeric values of an attribute of an event type,
+ * as maintained by the {@link EventRollup}.
+ * After events were removed, minimum and maximum are only bounds of the remaining values until the rollups are rebuilt.
+ */
+public class AttributeStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long numberOfValues;
+	private final double minimum;
+	private final double maximum;
+	private final double sum;
+
+	public AttributeStatistics(long numberOfValues, double minimum, double maximum, double sum) {
+		this.numberOfValues = numberOfValues;
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.sum = sum;
+	}
+
+	public long getNumberOfValues() {
+		return numberOfValues;
+	}
+
+	public double getMinimum() {
+		return minimum;
+	}
+
+	public double getMaximum() {
+		return maximum;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public double getAverage() {
+		return (numberOfValues == 0) ? 0 : sum / numberOfValues;
+	}
+
+	@Override
+	public String toString() {
+		return "values: " + numberOfValues + ", min: " + minimum + ", max: " + maximum + ", sum: " + sum;
+	}
+}
@@ -0,0 +1,748 @@
+package sushi.event.rollup;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Query;
+
+import sushi.event.SushiEvent;
+import sushi.event.SushiEventType;
+import sushi.event.attribute.SushiAttribute;
+import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.persistence.Persistor;
+
+/**
+ * Pre-aggregated statistics of the events, so charts and event views do not scan the events.
+ * For each event type the number of events per minute, hour and day is kept in the table EventCountRollup.
+ * For each integer attribute on the first level of the attribute tree of an event type,
+ * the number, minimum, maximum and sum of its values per minute, hour and day are kept in the table AttributeRollup
+ * and the number of values per integer (a histogram with bins of width 1) in the table AttributeHistogramRollup.
+ * Events without event type are counted with the event type ID 0, events without timestamp are not counted.
+ *
+ * The rollups are updated incrementally with each batch of events sent through the Broker ({@link #eventsAdded(Collection)}),
+ * each batch is one upsert per affected bucket. Removing events only decreases the numbers and sums,
+ * so minimum and maximum may still include removed values until the rollups are rebuilt.
+ * On the first use per database the rollups are compared with the events and rebuilt from them, if the numbers differ,
+ * e.g. for events saved or removed bypassing the Broker.
+ * Comparing and rebuilding hold the ingestion lock ({@link #setIngestionLock(Lock)}), so events saved
+ * but not yet added to the rollups by another thread are not counted twice.
+ * The rollups are written with the connection of the entity manager of the current thread.
+ */
+public class EventRollup {
+
+	public static final int REBUILD_PAGE_SIZE = 1000;
+	public static final int UNTYPED_EVENT_TYPE_ID = 0;
+
+	private static final String[] CREATE_TABLES = {
+		"CREATE TABLE IF NOT EXISTS EventCountRollup (EventTypeID INTEGER NOT NULL, Granularity VARCHAR(6) NOT NULL, "
+				+ "BucketStart DATETIME NOT NULL, EventCount BIGINT NOT NULL, PRIMARY KEY (EventTypeID, Granularity, BucketStart))",
+		"CREATE TABLE IF NOT EXISTS AttributeRollup (EventTypeID INTEGER NOT NULL, AttributeName VARCHAR(255) NOT NULL, "
+				+ "Granularity VARCHAR(6) NOT NULL, BucketStart DATETIME NOT NULL, ValueCount BIGINT NOT NULL, "
+				+ "MinimumValue DOUBLE, MaximumValue DOUBLE, SumOfValues DOUBLE, PRIMARY KEY (EventTypeID, AttributeName, Granularity, BucketStart))",
+		"CREATE TABLE IF NOT EXISTS AttributeHistogramRollup (EventTypeID INTEGER NOT NULL, AttributeName VARCHAR(255) NOT NULL, "
+				+ "BinStart BIGINT NOT NULL, ValueCount BIGINT NOT NULL, PRIMARY KEY (EventTypeID, AttributeName, BinStart))"
+	};
+	private static final String ADD_COUNT = "INSERT INTO EventCountRollup (EventTypeID, Granularity, BucketStart, EventCount) VALUES (?, ?, ?, ?) "
+			+ "ON DUPLICATE KEY UPDATE EventCount = EventCount + VALUES(EventCount)";
+	private static final String ADD_ATTRIBUTE = "INSERT INTO AttributeRollup (EventTypeID, AttributeName, Granularity, BucketStart, ValueCount, MinimumValue, MaximumValue, SumOfValues) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE ValueCount = ValueCount + VALUES(ValueCount), "
+			+ "MinimumValue = LEAST(MinimumValue, VALUES(MinimumValue)), MaximumValue = GREATEST(MaximumValue, VALUES(MaximumValue)), "
+			+ "SumOfValues = SumOfValues + VALUES(SumOfValues)";
+	private static final String ADD_BIN = "INSERT INTO AttributeHistogramRollup (EventTypeID, AttributeName, BinStart, ValueCount) VALUES (?, ?, ?, ?) "
+			+ "ON DUPLICATE KEY UPDATE ValueCount = ValueCount + VALUES(ValueCount)";
+	private static final String SUBTRACT_COUNT = "UPDATE EventCountRollup SET EventCount = EventCount - ? "
+			+ "WHERE EventTypeID = ? AND Granularity = ? AND BucketStart = ?";
+	private static final String SUBTRACT_ATTRIBUTE = "UPDATE AttributeRollup SET ValueCount = ValueCount - ?, SumOfValues = SumOfValues - ? "
+			+ "WHERE EventTypeID = ? AND AttributeName = ? AND Granularity = ? AND BucketStart = ?";
+	private static final String SUBTRACT_BIN = "UPDATE AttributeHistogramRollup SET ValueCount = ValueCount - ? "
+			+ "WHERE EventTypeID = ? AND AttributeName = ? AND BinStart = ?";
+	private static final String[] DELETE_EMPTY_ROWS = {
+		"DELETE FROM EventCountRollup WHERE EventCount <= 0",
+		"DELETE FROM AttributeRollup WHERE ValueCount <= 0",
+		"DELETE FROM AttributeHistogramRollup WHERE ValueCount <= 0"
+	};
+	private static final String[] TABLES = { "EventCountRollup", "AttributeRollup", "AttributeHistogramRollup" };
+
+	private static EventRollup instance = null;
+
+	private static volatile Lock ingestionLock = null;
+
+	private volatile boolean reconciled = false;
+	private final Map<Integer, List<String>> numericAttributesByEventTypeID = new HashMap<Integer, List<String>>();
+	private long numberOfRebuilds = 0;
+
+	/**
+	 * Singleton, therefore the constructor is private.
+	 */
+	private EventRollup() {
+	}
+
+	/**
+	 * Singleton class. Use this method to get the instance.
+	 * @return
+	 */
+	public static synchronized EventRollup getInstance() {
+		if (instance == null) {
+			instance = new EventRollup();
+		}
+		return instance;
+	}
+
+	/**
+	 * Clears the singleton-object, e.g. after switching the database.
+	 */
+	public static synchronized void clearInstance() {
+		instance = null;
+	}
+
+	/**
+	 * Sets the lock, which is held while events are saved and added to the rollups, e.g. the lock of the Broker.
+	 * It has to be acquired before the rollups are locked.
+	 * @param lock
+	 */
+	public static void setIngestionLock(Lock lock) {
+		ingestionLock = lock;
+	}
+
+	/**
+	 * Adds saved events to the rollups.
+	 * Should be called after the events were saved.
+	 * @param events
+	 */
+	public void eventsAdded(Collection<SushiEvent> events) {
+		// a reconciliation already includes the saved events
+		if (reconcileIfNecessary()) {
+			return;
+		}
+		synchronized (this) {
+			Deltas deltas = new Deltas();
+			for (SushiEvent event : events) {
+				deltas.add(event, true);
+			}
+			write(deltas, false);
+		}
+	}
+
+	/**
+	 * Subtracts removed events from the rollups.
+	 * Should be called after the events were removed.
+	 * @param events
+	 */
+	public void eventsRemoved(Collection<SushiEvent> events) {
+		if (reconcileIfNecessary()) {
+			return;
+		}
+		synchronized (this) {
+			Deltas deltas = new Deltas();
+			for (SushiEvent event : events) {
+				deltas.add(event, true);
+			}
+			write(deltas, true);
+		}
+	}
+
+	/**
+	 * Removes the rollups of the event type, e.g. after the event type was removed.
+	 * @param eventType
+	 */
+	public void eventTypeRemoved(SushiEventType eventType) {
+		synchronized (this) {
+			numericAttributesByEventTypeID.remove(eventType.getID());
+		}
+		if (reconcileIfNecessary()) {
+			return;
+		}
+		synchronized (this) {
+			List<String> statements = new ArrayList<String>();
+			for (String table : TABLES) {
+				statements.add("DELETE FROM " + table + " WHERE EventTypeID = " + eventType.getID());
+			}
+			execute(statements);
+		}
+	}
+
+	/**
+	 * Compares the rollups with the events on their next use and rebuilds them, if the numbers differ.
+	 */
+	public synchronized void invalidate() {
+		reconciled = false;
+		numericAttributesByEventTypeID.clear();
+	}
+
+	/**
+	 * Rebuilds all rollups from the events in the database.
+	 * The numbers of events are aggregated in the database, the attribute values are read
+	 * in pages of {@link #REBUILD_PAGE_SIZE} events of the event types with integer attributes.
+	 */
+	public void rebuild() {
+		lockIngestion();
+		try {
+			synchronized (this) {
+				rebuildRollups();
+			}
+		} finally {
+			unlockIngestion();
+		}
+	}
+
+	/**
+	 * Rebuilds the rollups, the ingestion lock and the rollups must be locked.
+	 * The events are read with a separate entity manager, which is cleared after each page,
+	 * so neither the pages pile up nor the entities of the current thread are detached.
+	 */
+	private void rebuildRollups() {
+		numericAttributesByEventTypeID.clear();
+		List<String> statements = new ArrayList<String>(Arrays.asList(CREATE_TABLES));
+		for (String table : TABLES) {
+			statements.add("DELETE FROM " + table);
+		}
+		for (RollupGranularity granularity : RollupGranularity.values()) {
+			statements.add("INSERT INTO EventCountRollup (EventTypeID, Granularity, BucketStart, EventCount) "
+					+ "SELECT COALESCE(EVENTTYPE_ID, " + UNTYPED_EVENT_TYPE_ID + "), '" + granularity.name() + "', "
+					+ "DATE_FORMAT(TIMESTAMP, '" + granularity.getSQLDateFormat() + "'), COUNT(*) "
+					+ "FROM Event WHERE TIMESTAMP IS NOT NULL GROUP BY 1, 3");
+		}
+		if (!execute(statements)) {
+			return;
+		}
+		EntityManager pageEntityManager = Persistor.getEntityManagerFactory().createEntityManager();
+		try {
+			for (SushiEventType eventType : SushiEventType.findAll()) {
+				if (getNumericAttributes(eventType).isEmpty()) {
+					continue;
+				}
+				int lastID = 0;
+				while (true) {
+					Query query = pageEntityManager.createNativeQuery("SELECT * FROM Event WHERE EVENTTYPE_ID = ?1 AND ID > ?2 ORDER BY ID", SushiEvent.class);
+					query.setParameter(1, eventType.getID());
+					query.setParameter(2, lastID);
+					query.setMaxResults(REBUILD_PAGE_SIZE);
+					@SuppressWarnings("unchecked")
+					List<SushiEvent> events = query.getResultList();
+					Deltas deltas = new Deltas();
+					for (SushiEvent event : events) {
+						deltas.add(event, false);
+						lastID = event.getID();
+					}
+					pageEntityManager.clear();
+					if (!write(deltas, false)) {
+						return;
+					}
+					if (events.size() < REBUILD_PAGE_SIZE) {
+						break;
+					}
+				}
+			}
+		} finally {
+			pageEntityManager.close();
+		}
+		reconciled = true;
+		numberOfRebuilds++;
+	}
+
+	/**
+	 * @return number of all events with timestamp
+	 */
+	public long getNumberOfEvents() {
+		reconcileIfNecessary();
+		Query query = Persistor.getEntityManager().createNativeQuery("SELECT SUM(EventCount) FROM EventCountRollup WHERE Granularity = 'DAY'");
+		return toLong(query.getSingleResult());
+	}
+
+	/**
+	 * @param eventType
+	 * @return number of events of the event type with timestamp
+	 */
+	public long getNumberOfEvents(SushiEventType eventType) {
+		Long numberOfEvents = getNumberOfEventsByEventTypeID().get(eventType.getID());
+		return (numberOfEvents == null) ? 0 : numberOfEvents;
+	}
+
+	/**
+	 * Returns the number of events with timestamp for all event types with events in one query.
+	 * @return number of events by the ID of their event type, {@link #UNTYPED_EVENT_TYPE_ID} for events without event type
+	 */
+	public Map<Integer, Long> getNumberOfEventsByEventTypeID() {
+		reconcileIfNecessary();
+		return getRollupCounts();
+	}
+
+	/**
+	 * Returns the non-empty buckets of the event type in the given time, the oldest first.
+	 * @param eventType
+	 * @param granularity
+	 * @param start (optional) the bucket containing this time is the first bucket
+	 * @param end (optional) buckets starting at or after this time are excluded
+	 * @return
+	 */
+	public List<RollupBucket> getEventCounts(SushiEventType eventType, RollupGranularity granularity, Date start, Date end) {
+		reconcileIfNecessary();
+		List<Object> parameters = new ArrayList<Object>(Arrays.<Object>asList(eventType.getID(), granularity.name()));
+		String sql = "SELECT BucketStart, EventCount FROM EventCountRollup WHERE EventTypeID = ?1 AND Granularity = ?2"
+				+ getTimeCondition(granularity, start, end, parameters) + " ORDER BY BucketStart";
+		List<RollupBucket> buckets = new ArrayList<RollupBucket>();
+		for (Object[] row : getRows(createQuery(sql, parameters))) {
+			buckets.add(new RollupBucket(new Date(((Date) row[0]).getTime()), toLong(row[1])));
+		}
+		return buckets;
+	}
+
+	/**
+	 * Returns the statistics of all values of an integer attribute of the event type.
+	 * @param eventType
+	 * @param attributeName name of an attribute on the first level of the attribute tree
+	 * @return statistics or null, if no values are known
+	 */
+	public AttributeStatistics getAttributeStatistics(SushiEventType eventType, String attributeName) {
+		return getAttributeStatistics(eventType, attributeName, null, null);
+	}
+
+	/**
+	 * Returns the statistics of the values of an integer attribute of the event type in the given time,
+	 * aggregated from the daily buckets.
+	 * @param eventType
+	 * @param attributeName name of an attribute on the first level of the attribute tree
+	 * @param start (optional) the day containing this time is the first day
+	 * @param end (optional) days starting at or after this time are excluded
+	 * @return statistics or null, if no values are known
+	 */
+	public AttributeStatistics getAttributeStatistics(SushiEventType eventType, String attributeName, Date start, Date end) {
+		reconcileIfNecessary();
+		List<Object> parameters = new ArrayList<Object>(Arrays.<Object>asList(eventType.getID(), attributeName, RollupGranularity.DAY.name()));
+		String sql = "SELECT SUM(ValueCount), MIN(MinimumValue), MAX(MaximumValue), SUM(SumOfValues) FROM AttributeRollup "
+				+ "WHERE EventTypeID = ?1 AND AttributeName = ?2 AND Granularity = ?3"
+				+ getTimeCondition(RollupGranularity.DAY, start, end, parameters);
+		List<Object[]> rows = getRows(createQuery(sql, parameters));
+		if (rows.isEmpty() || rows.get(0)[0] == null || toLong(rows.get(0)[0]) == 0) {
+			return null;
+		}
+		Object[] row = rows.get(0);
+		return new AttributeStatistics(toLong(row[0]), ((Number) row[1]).doubleValue(), ((Number) row[2]).doubleValue(), ((Number) row[3]).doubleValue());
+	}
+
+	/**
+	 * Returns the histogram of the values of an integer attribute of the event type.
+	 * The bins start at multiples of the bin width and contain the values up to the next multiple.
+	 * @param eventType
+	 * @param attributeName name of an attribute on the first level of the attribute tree
+	 * @param binWidth
+	 * @return number of values by the start of their bin, only non-empty bins are contained
+	 */
+	public SortedMap<Long, Long> getHistogram(SushiEventType eventType, String attributeName, int binWidth) {
+		if (binWidth < 1) {
+			throw new IllegalArgumentException("The width of the bins must be positive.");
+		}
+		reconcileIfNecessary();
+		Query query = createQuery("SELECT BinStart, ValueCount FROM AttributeHistogramRollup WHERE EventTypeID = ?1 AND AttributeName = ?2",
+				Arrays.<Object>asList(eventType.getID(), attributeName));
+		SortedMap<Long, Long> histogram = new TreeMap<Long, Long>();
+		for (Object[] row : getRows(query)) {
+			long value = toLong(row[0]);
+			// rounds down for negative values, too
+			long binStart = value - (((value % binWidth) + binWidth) % binWidth);
+			Long numberOfValues = histogram.get(binStart);
+			histogram.put(binStart, ((numberOfValues == null) ? 0 : numberOfValues) + toLong(row[1]));
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return number of rebuilds of the rollups from the events
+	 */
+	public synchronized long getNumberOfRebuilds() {
+		return numberOfRebuilds;
+	}
+
+	/**
+	 * Creates the tables and rebuilds the rollups, if their numbers of events differ from the events in the database.
+	 * Must not be called while the rollups are locked, because the ingestion lock is acquired first.
+	 * @return true, if the rollups were compared with the events
+	 */
+	private boolean reconcileIfNecessary() {
+		if (reconciled) {
+			return false;
+		}
+		lockIngestion();
+		try {
+			synchronized (this) {
+				if (reconciled) {
+					return false;
+				}
+				if (!execute(Arrays.asList(CREATE_TABLES))) {
+					return true;
+				}
+				Query query = Persistor.getEntityManager().createNativeQuery("SELECT COALESCE(EVENTTYPE_ID, " + UNTYPED_EVENT_TYPE_ID + "), COUNT(*) "
+						+ "FROM Event WHERE TIMESTAMP IS NOT NULL GROUP BY EVENTTYPE_ID");
+				if (toCountMap(getRows(query)).equals(getRollupCounts())) {
+					reconciled = true;
+				} else {
+					rebuildRollups();
+				}
+				return true;
+			}
+		} finally {
+			unlockIngestion();
+		}
+	}
+
+	private static void lockIngestion() {
+		Lock lock = ingestionLock;
+		if (lock != null) {
+			lock.lock();
+		}
+	}
+
+	private static void unlockIngestion() {
+		Lock lock = ingestionLock;
+		if (lock != null) {
+			lock.unlock();
+		}
+	}
+
+	private Map<Integer, Long> getRollupCounts() {
+		Query query = Persistor.getEntityManager().createNativeQuery("SELECT EventTypeID, SUM(EventCount) FROM EventCountRollup "
+				+ "WHERE Granularity = 'DAY' GROUP BY EventTypeID");
+		return toCountMap(getRows(query));
+	}
+
+	/**
+	 * Returns the names of the integer attributes on the first level of the attribute tree of the event type.
+	 */
+	private List<String> getNumericAttributes(SushiEventType eventType) {
+		if (eventType == null) {
+			return Collections.emptyList();
+		}
+		List<String> numericAttributes = numericAttributesByEventTypeID.get(eventType.getID());
+		if (numericAttributes == null) {
+			numericAttributes = new ArrayList<String>();
+			for (SushiAttribute attribute : eventType.getRootLevelValueTypes()) {
+				if (attribute.getType() == SushiAttributeTypeEnum.INTEGER) {
+					numericAttributes.add(attribute.getName());
+				}
+			}
+			numericAttributesByEventTypeID.put(eventType.getID(), numericAttributes);
+		}
+		return numericAttributes;
+	}
+
+	/**
+	 * Executes the statements in one transaction.
+	 * If they fail, the rollups are reconciled on their next use.
+	 * @return true, if the statements were executed
+	 */
+	private boolean execute(List<String> sqlStatements) {
+		Connection connection = beginTransaction();
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				for (String sql : sqlStatements) {
+					statement.executeUpdate(sql);
+				}
+			} finally {
+				statement.close();
+			}
+			Persistor.getEntityManager().getTransaction().commit();
+			return true;
+		} catch (SQLException | RuntimeException e) {
+			e.printStackTrace();
+			rollback();
+			reconciled = false;
+			return false;
+		}
+	}
+
+	/**
+	 * Adds the deltas to the rollups or subtracts them in one transaction with one JDBC batch per table.
+	 * If they can not be written, the rollups are reconciled on their next use.
+	 * @return true, if the deltas were written
+	 */
+	private boolean write(Deltas deltas, boolean subtract) {
+		if (deltas.isEmpty()) {
+			return true;
+		}
+		Connection connection = beginTransaction();
+		try {
+			PreparedStatement statement = connection.prepareStatement(subtract ? SUBTRACT_COUNT : ADD_COUNT);
+			try {
+				for (Entry<Key, Aggregate> entry : deltas.counts.entrySet()) {
+					Key key = entry.getKey();
+					if (subtract) {
+						statement.setLong(1, entry.getValue().count);
+						statement.setInt(2, key.eventTypeID);
+						statement.setString(3, key.granularity.name());
+						statement.setTimestamp(4, new Timestamp(key.position));
+					} else {
+						statement.setInt(1, key.eventTypeID);
+						statement.setString(2, key.granularity.name());
+						statement.setTimestamp(3, new Timestamp(key.position));
+						statement.setLong(4, entry.getValue().count);
+					}
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			} finally {
+				statement.close();
+			}
+			statement = connection.prepareStatement(subtract ? SUBTRACT_ATTRIBUTE : ADD_ATTRIBUTE);
+			try {
+				for (Entry<Key, Aggregate> entry : deltas.attributes.entrySet()) {
+					Key key = entry.getKey();
+					Aggregate aggregate = entry.getValue();
+					if (subtract) {
+						statement.setLong(1, aggregate.count);
+						statement.setDouble(2, aggregate.sum);
+						statement.setInt(3, key.eventTypeID);
+						statement.setString(4, key.attributeName);
+						statement.setString(5, key.granularity.name());
+						statement.setTimestamp(6, new Timestamp(key.position));
+					} else {
+						statement.setInt(1, key.eventTypeID);
+						statement.setString(2, key.attributeName);
+						statement.setString(3, key.granularity.name());
+						statement.setTimestamp(4, new Timestamp(key.position));
+						statement.setLong(5, aggregate.count);
+						statement.setDouble(6, aggregate.minimum);
+						statement.setDouble(7, aggregate.maximum);
+						statement.setDouble(8, aggregate.sum);
+					}
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			} finally {
+				statement.close();
+			}
+			statement = connection.prepareStatement(subtract ? SUBTRACT_BIN : ADD_BIN);
+			try {
+				for (Entry<Key, Aggregate> entry : deltas.bins.entrySet()) {
+					Key key = entry.getKey();
+					if (subtract) {
+						statement.setLong(1, entry.getValue().count);
+						statement.setInt(2, key.eventTypeID);
+						statement.setString(3, key.attributeName);
+						statement.setLong(4, key.position);
+					} else {
+						statement.setInt(1, key.eventTypeID);
+						statement.setString(2, key.attributeName);
+						statement.setLong(3, key.position);
+						statement.setLong(4, entry.getValue().count);
+					}
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			} finally {
+				statement.close();
+			}
+			if (subtract) {
+				Statement deleteStatement = connection.createStatement();
+				try {
+					for (String sql : DELETE_EMPTY_ROWS) {
+						deleteStatement.executeUpdate(sql);
+					}
+				} finally {
+					deleteStatement.close();
+				}
+			}
+			Persistor.getEntityManager().getTransaction().commit();
+			return true;
+		} catch (SQLException | RuntimeException e) {
+			e.printStackTrace();
+			rollback();
+			reconciled = false;
+			return false;
+		}
+	}
+
+	/**
+	 * Begins a transaction of the entity manager of the current thread and returns its connection,
+	 * so no connection is opened per write.
+	 */
+	private static Connection beginTransaction() {
+		EntityManager entityManager = Persistor.getEntityManager();
+		entityManager.getTransaction().begin();
+		return entityManager.unwrap(Connection.class);
+	}
+
+	private static void rollback() {
+		EntityTransaction transaction = Persistor.getEntityManager().getTransaction();
+		if (transaction.isActive()) {
+			transaction.rollback();
+		}
+	}
+
+	/**
+	 * Appends the conditions for the start of the buckets and adds their values to the parameters.
+	 */
+	private static String getTimeCondition(RollupGranularity granularity, Date start, Date end, List<Object> parameters) {
+		StringBuilder condition = new StringBuilder();
+		if (start != null) {
+			parameters.add(new Timestamp(granularity.getBucketStart(start).getTime()));
+			condition.append(" AND BucketStart >= ?").append(parameters.size());
+		}
+		if (end != null) {
+			parameters.add(new Timestamp(end.getTime()));
+			condition.append(" AND BucketStart < ?").append(parameters.size());
+		}
+		return condition.toString();
+	}
+
+	private static Query createQuery(String sql, List<Object> parameters) {
+		Query query = Persistor.getEntityManager().createNativeQuery(sql);
+		for (int i = 0; i < parameters.size(); i++) {
+			query.setParameter(i + 1, parameters.get(i));
+		}
+		return query;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object[]> getRows(Query query) {
+		return query.getResultList();
+	}
+
+	private static Map<Integer, Long> toCountMap(List<Object[]> rows) {
+		Map<Integer, Long> counts = new HashMap<Integer, Long>();
+		for (Object[] row : rows) {
+			long count = toLong(row[1]);
+			if (count > 0) {
+				counts.put(((Number) row[0]).intValue(), count);
+			}
+		}
+		return counts;
+	}
+
+	private static long toLong(Object value) {
+		return (value == null) ? 0 : ((Number) value).longValue();
+	}
+
+	/**
+	 * Returns the value as number, if it is a finite number or a string representing one.
+	 */
+	private static Double toNumber(Serializable value) {
+		Double number = null;
+		if (value instanceof Number) {
+			number = ((Number) value).doubleValue();
+		} else if (value instanceof String) {
+			try {
+				number = Double.valueOf(((String) value).trim());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return (number == null || number.isNaN() || number.isInfinite()) ? null : number;
+	}
+
+	/**
+	 * Changes of the rollups by a batch of events, aggregated per bucket, so each bucket is written only once.
+	 */
+	private class Deltas {
+
+		private final Map<Key, Aggregate> counts = new HashMap<Key, Aggregate>();
+		private final Map<Key, Aggregate> attributes = new HashMap<Key, Aggregate>();
+		private final Map<Key, Aggregate> bins = new HashMap<Key, Aggregate>();
+
+		private void add(SushiEvent event, boolean withCounts) {
+			if (event.getTimestamp() == null) {
+				return;
+			}
+			SushiEventType eventType = event.getEventType();
+			int eventTypeID = (eventType == null) ? UNTYPED_EVENT_TYPE_ID : eventType.getID();
+			if (withCounts) {
+				for (RollupGranularity granularity : RollupGranularity.values()) {
+					getAggregate(counts, new Key(eventTypeID, null, granularity, granularity.getBucketStart(event.getTimestamp()).getTime())).count++;
+				}
+			}
+			for (String attributeName : getNumericAttributes(eventType)) {
+				Double value = toNumber(event.getValues().get(attributeName));
+				if (value == null) {
+					continue;
+				}
+				for (RollupGranularity granularity : RollupGranularity.values()) {
+					getAggregate(attributes, new Key(eventTypeID, attributeName, granularity, granularity.getBucketStart(event.getTimestamp()).getTime())).add(value);
+				}
+				getAggregate(bins, new Key(eventTypeID, attributeName, null, (long) Math.floor(value))).count++;
+			}
+		}
+
+		private Aggregate getAggregate(Map<Key, Aggregate> aggregates, Key key) {
+			Aggregate aggregate = aggregates.get(key);
+			if (aggregate == null) {
+				aggregate = new Aggregate();
+				aggregates.put(key, aggregate);
+			}
+			return aggregate;
+		}
+
+		private boolean isEmpty() {
+			return counts.isEmpty() && attributes.isEmpty() && bins.isEmpty();
+		}
+	}
+
+	/**
+	 * Identifies a row of a rollup table: the bucket of an event type or of one of its attributes,
+	 * the position is the start of the bucket in milliseconds or the start of the bin of the histogram.
+	 */
+	private static class Key {
+
+		private final int eventTypeID;
+		private final String attributeName;
+		private final RollupGranularity granularity;
+		private final long position;
+
+		private Key(int eventTypeID, String attributeName, RollupGranularity granularity, long position) {
+			this.eventTypeID = eventTypeID;
+			this.attributeName = attributeName;
+			this.granularity = granularity;
+			this.position = position;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) object;
+			return eventTypeID == other.eventTypeID && position == other.position && granularity == other.granularity
+					&& (attributeName == null ? other.attributeName == null : attributeName.equals(other.attributeName));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = 31 * eventTypeID + (int) (position ^ (position >>> 32));
+			hash = 31 * hash + ((granularity == null) ? 0 : granularity.hashCode());
+			return 31 * hash + ((attributeName == null) ? 0 : attributeName.hashCode());
+		}
+	}
+
+	private static class Aggregate {
+
+		private long count = 0;
+		private double minimum = Double.POSITIVE_INFINITY;
+		private double maximum = Double.NEGATIVE_INFINITY;
+		private double sum = 0;
+
+		private void add(double value) {
+			count++;
+			minimum = Math.min(minimum, value);
+			maximum = Math.max(maximum, value);
+			sum += value;
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package sushi.event.rollup;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Number of events of an event type in one time bucket of the {@link EventRollup}.
+ */
+public class RollupBucket implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Date bucketStart;
+	private final long numberOfEvents;
+
+	public RollupBucket(Date bucketStart, long numberOfEvents) {
+		this.bucketStart = bucketStart;
+		this.numberOfEvents = numberOfEvents;
+	}
+
+	public Date getBucketStart() {
+		return bucketStart;
+	}
+
+	public long getNumberOfEvents() {
+		return numberOfEvents;
+	}
+
+	@Override
+	public String toString() {
+		return bucketStart + ": " + numberOfEvents;
+	}
+}
@@ -0,0 +1,65 @@
+package sushi.event.rollup;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import sushi.visualisation.SushiTimePeriodEnum;
+
+/**
+ * This enumeration encapsulates the sizes of the time buckets of the {@link EventRollup}.
+ * The buckets start at full minutes, hours or days in the local time zone.
+ */
+public enum RollupGranularity {
+	MINUTE("%Y-%m-%d %H:%i:00"),
+	HOUR("%Y-%m-%d %H:00:00"),
+	DAY("%Y-%m-%d 00:00:00");
+
+	private String sqlDateFormat;
+
+	RollupGranularity(String sqlDateFormat) {
+		this.sqlDateFormat = sqlDateFormat;
+	}
+
+	/**
+	 * @return format for the MySQL function DATE_FORMAT, which truncates a timestamp to the start of its bucket
+	 */
+	String getSQLDateFormat() {
+		return sqlDateFormat;
+	}
+
+	/**
+	 * Returns the start of the bucket containing the given time.
+	 * @param time
+	 * @return
+	 */
+	public Date getBucketStart(Date time) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(time);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.set(Calendar.SECOND, 0);
+		if (this != MINUTE) {
+			cal.set(Calendar.MINUTE, 0);
+		}
+		if (this == DAY) {
+			cal.set(Calendar.HOUR_OF_DAY, 0);
+		}
+		return cal.getTime();
+	}
+
+	/**
+	 * Returns the granularity, which shows a time period with a reasonable number of buckets.
+	 * @param period
+	 * @return
+	 */
+	public static RollupGranularity forPeriod(SushiTimePeriodEnum period) {
+		switch (period) {
+		case ONEHOUR:
+			return MINUTE;
+		case ONEDAY:
+		case ONEMONTH:
+			return HOUR;
+		default:
+			return DAY;
+		}
+	}
+}
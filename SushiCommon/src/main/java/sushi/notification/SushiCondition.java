@@ -89,6 +89,14 @@ public class SushiCondition extends Persistable{
 		return ID;
 	}
 
+	public String getAttribute() {
+		return attribute;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
 	
 	//JPA-Methods
 	
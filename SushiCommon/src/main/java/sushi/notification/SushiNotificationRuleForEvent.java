@@ -73,13 +73,45 @@ public class SushiNotificationRuleForEvent extends SushiNotificationRule {
 	 * @param event
 	 */
 	public void trigger(SushiEvent event) {
+		SushiNotificationForEvent notification = createNotification(event);
+		Runnable delivery = createDelivery(notification);
+		if (delivery != null) {
+			delivery.run();
+		}
+	}
+	
+	/**
+	 * Creates and saves a new notification for the event.
+	 * @param event
+	 * @return the notification
+	 */
+	public SushiNotificationForEvent createNotification(SushiEvent event) {
 		SushiNotificationForEvent notification = new SushiNotificationForEvent(event, user, this);
 		notification.save();
+		return notification;
+	}
+	
+	/**
+	 * Creates the task that informs the user about the notification outside of the platform, e.g. by mail.
+	 * The recipient and the message are determined immediately, so the task does not access the database
+	 * and can be run in another thread.
+	 * @param notification
+	 * @return the task or null, if the user is not informed outside of the platform
+	 */
+	public Runnable createDelivery(SushiNotificationForEvent notification) {
 		//here can be added other actions connected to the creation of a notification
-		if (priority == SushiNotificationPriorityEnum.HIGH) {
-			//send mail
-			EmailUtils.sendBP2013Mail(user.getMail(), "Notification GET-Events", notification.toString());
+		if (priority != SushiNotificationPriorityEnum.HIGH) {
+			return null;
 		}
+		final String recipient = user.getMail();
+		final String message = notification.toString();
+		return new Runnable() {
+			@Override
+			public void run() {
+				//send mail
+				EmailUtils.sendBP2013Mail(recipient, "Notification GET-Events", message);
+			}
+		};
 	}
 	
 	/**
@@ -0,0 +1,301 @@
+package sushi.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bounded cache for the results of frequently used finders of metadata entities,
+ * e.g. {@link sushi.event.SushiEventType#findByTypeName(String)}, which are called for every incoming event.
+ * A cache maps the parameter of a finder to the IDs of the found entities.
+ * The entities are resolved by ID from the persistence context, so no query is sent to the database on a hit.
+ * If the cache is full, the least recently used entry is evicted.
+ *
+ * A cache is invalidated completely if an entity of a class it depends on is saved, merged or removed
+ * through {@link Persistable}, or if {@link #invalidate(Class)} is called explicitly, e.g. after bulk deletions.
+ * Only non-empty results of single-entity finders should be put into a cache,
+ * because new entities are not always saved through {@link Persistable}.
+ */
+public class MetadataCache<K, T extends Persistable> {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+	private static final List<MetadataCache<?, ?>> caches = new CopyOnWriteArrayList<MetadataCache<?, ?>>();
+
+	private final String name;
+	private final Class<T> entityClass;
+	private final List<Class<?>> changeDependencies = new ArrayList<Class<?>>();
+	private final List<Class<?>> removeDependencies = new ArrayList<Class<?>>();
+	private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+	private final Map<K, List<Integer>> entries = new LinkedHashMap<K, List<Integer>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, List<Integer>> eldest) {
+			if (size() > maximumSize) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+	};
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long invalidations = 0;
+
+	private MetadataCache(String name, Class<T> entityClass) {
+		this.name = name;
+		this.entityClass = entityClass;
+	}
+
+	/**
+	 * Creates and registers a cache for entities of the given class.
+	 * The cache is invalidated if an entity of this class is saved, merged or removed.
+	 * @param name name of the cached finder, e.g. SushiEventType.findByTypeName
+	 * @param entityClass class of the cached entities
+	 * @return
+	 */
+	public static <K, T extends Persistable> MetadataCache<K, T> create(String name, Class<T> entityClass) {
+		MetadataCache<K, T> cache = new MetadataCache<K, T>(name, entityClass);
+		cache.changeDependencies.add(entityClass);
+		caches.add(cache);
+		return cache;
+	}
+
+	/**
+	 * Creates and registers a cache for entities of the given class,
+	 * which are only invalidated if they are removed, e.g. for finders by ID.
+	 * @param name name of the cached finder, e.g. SushiProcessInstance.findByID
+	 * @param entityClass class of the cached entities
+	 * @return
+	 */
+	public static <K, T extends Persistable> MetadataCache<K, T> createForRemovals(String name, Class<T> entityClass) {
+		MetadataCache<K, T> cache = new MetadataCache<K, T>(name, entityClass);
+		cache.removeDependencies.add(entityClass);
+		caches.add(cache);
+		return cache;
+	}
+
+	/**
+	 * Invalidates this cache also if an entity of one of the given classes is saved, merged or removed.
+	 * @param dependencies
+	 * @return this cache
+	 */
+	public synchronized MetadataCache<K, T> dependsOn(Class<?>... dependencies) {
+		changeDependencies.addAll(Arrays.asList(dependencies));
+		return this;
+	}
+
+	/**
+	 * Invalidates this cache also if an entity of one of the given classes is removed.
+	 * @param dependencies
+	 * @return this cache
+	 */
+	public synchronized MetadataCache<K, T> dependsOnRemovalOf(Class<?>... dependencies) {
+		removeDependencies.addAll(Arrays.asList(dependencies));
+		return this;
+	}
+
+	/**
+	 * Returns the cached entities for the key.
+	 * @param key
+	 * @return the entities or null, if the key is not cached or one of the entities does not exist anymore
+	 */
+	public synchronized List<T> get(K key) {
+		List<Integer> IDs = entries.get(key);
+		if (IDs == null) {
+			misses++;
+			return null;
+		}
+		List<T> entities = new ArrayList<T>(IDs.size());
+		for (int ID : IDs) {
+			T entity = Persistor.getEntityManager().find(entityClass, ID);
+			if (entity == null) {
+				entries.remove(key);
+				misses++;
+				return null;
+			}
+			entities.add(entity);
+		}
+		hits++;
+		return entities;
+	}
+
+	/**
+	 * Returns the cached entity for the key.
+	 * @param key
+	 * @return the entity or null, if the key is not cached
+	 */
+	public T getSingle(K key) {
+		List<T> entities = get(key);
+		return (entities == null || entities.isEmpty()) ? null : entities.get(0);
+	}
+
+	/**
+	 * Caches the result of a finder. Entities, which were not saved yet, are not cached.
+	 * @param key
+	 * @param entities
+	 */
+	public synchronized void put(K key, List<? extends T> entities) {
+		List<Integer> IDs = new ArrayList<Integer>(entities.size());
+		for (T entity : entities) {
+			if (entity == null || entity.getID() == 0) {
+				return;
+			}
+			IDs.add(entity.getID());
+		}
+		entries.put(key, Collections.unmodifiableList(IDs));
+	}
+
+	/**
+	 * Caches the result of a single-entity finder, if an entity was found.
+	 * @param key
+	 * @param entity
+	 */
+	public void putSingle(K key, T entity) {
+		if (entity != null) {
+			put(key, Collections.singletonList(entity));
+		}
+	}
+
+	/**
+	 * Removes all entries of this cache.
+	 */
+	public synchronized void clear() {
+		if (!entries.isEmpty()) {
+			invalidations++;
+		}
+		entries.clear();
+	}
+
+	private synchronized boolean dependsOnChangesOf(Class<?> changedClass) {
+		return isAssignableFromAny(changeDependencies, changedClass);
+	}
+
+	private synchronized boolean dependsOnRemovalsOf(Class<?> removedClass) {
+		return isAssignableFromAny(changeDependencies, removedClass) || isAssignableFromAny(removeDependencies, removedClass);
+	}
+
+	private static boolean isAssignableFromAny(List<Class<?>> classes, Class<?> clazz) {
+		for (Class<?> dependency : classes) {
+			if (dependency.isAssignableFrom(clazz)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Informs the caches that an entity was saved or merged.
+	 * @param entity
+	 */
+	public static void changed(Persistable entity) {
+		for (MetadataCache<?, ?> cache : caches) {
+			if (cache.dependsOnChangesOf(entity.getClass())) {
+				cache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Informs the caches that an entity was removed.
+	 * @param entity
+	 */
+	public static void removed(Persistable entity) {
+		invalidate(entity.getClass());
+	}
+
+	/**
+	 * Invalidates all caches, which depend on the given class, e.g. after all entities of the class were deleted.
+	 * @param entityClass
+	 */
+	public static void invalidate(Class<?> entityClass) {
+		for (MetadataCache<?, ?> cache : caches) {
+			if (cache.dependsOnRemovalsOf(entityClass)) {
+				cache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Invalidates all caches, e.g. after switching the database.
+	 */
+	public static void invalidateAll() {
+		for (MetadataCache<?, ?> cache : caches) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns all registered caches, e.g. to show their statistics.
+	 * @return
+	 */
+	public static List<MetadataCache<?, ?>> getCaches() {
+		return Collections.unmodifiableList(caches);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public synchronized int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Sets the maximal number of cached keys. Exceeding entries are evicted with the next insertion.
+	 * @param maximumSize
+	 */
+	public synchronized void setMaximumSize(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * @return ratio of hits to all lookups or 0, if there was no lookup
+	 */
+	public synchronized double getHitRatio() {
+		long lookups = hits + misses;
+		return (lookups == 0) ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Resets the hit, miss, eviction and invalidation counters.
+	 */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		invalidations = 0;
+	}
+
+	@Override
+	public String toString() {
+		return name + " (size: " + getSize() + ", hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions() + ")";
+	}
+
+}
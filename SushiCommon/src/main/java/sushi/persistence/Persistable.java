@@ -11,14 +11,24 @@ public abstract class Persistable implements Serializable {
 
 	/**
 	 * Saves the current object to the database.
-	 * @return
+	 * An object, which was already saved, but was loaded by the EntityManager of another thread
+	 * or of a closed unit of work, is merged instead.
+	 * In this case the managed copy is returned, which holds the IDs of newly saved referenced objects,
+	 * so callers, which keep the object, have to continue with the returned object.
+	 * @return the saved object, which is the current object or its managed copy
 	 */
 	public Persistable save(){
 		try {
+			Persistable saved = this;
 			Persistor.getEntityManager().getTransaction().begin();
-			Persistor.getEntityManager().persist(this);
+			if (getID() != 0 && !Persistor.getEntityManager().contains(this)) {
+				saved = Persistor.getEntityManager().merge(this);
+			} else {
+				Persistor.getEntityManager().persist(this);
+			}
 			Persistor.getEntityManager().getTransaction().commit();
-			return this;
+			MetadataCache.changed(saved);
+			return saved;
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -27,14 +37,17 @@ public abstract class Persistable implements Serializable {
 	
 	/**
 	 * Merges the state of the current object to the database.
-	 * @return
+	 * Callers, which keep the object, have to continue with the returned managed copy,
+	 * because only the copy holds the IDs of newly saved referenced objects.
+	 * @return the managed copy of the current object
 	 */
 	public Persistable merge(){
 		try {
 			Persistor.getEntityManager().getTransaction().begin();
-			Persistor.getEntityManager().merge(this);
+			Persistable merged = Persistor.getEntityManager().merge(this);
 			Persistor.getEntityManager().getTransaction().commit();
-			return this;
+			MetadataCache.changed(merged);
+			return merged;
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -51,6 +64,7 @@ public abstract class Persistable implements Serializable {
 			Persistable toBeRemoved = Persistor.getEntityManager().merge(this);
 			Persistor.getEntityManager().remove(toBeRemoved);
 			Persistor.getEntityManager().getTransaction().commit();
+			MetadataCache.removed(this);
 			return this;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -82,10 +96,12 @@ public abstract class Persistable implements Serializable {
 	public abstract int getID();
 	
 	/**
-	 * Waits, until other transactions are finished.
+	 * Waited, until other transactions on the shared EntityManager were finished.
+	 * Each thread has its own EntityManager now (see {@link Persistor#getEntityManager()}),
+	 * so there are no transactions of other threads to wait for.
 	 */
+	@Deprecated
 	public void waitForTransaction() {
-		while(Persistor.getEntityManager().getTransaction().isActive());
 	}
 
 }
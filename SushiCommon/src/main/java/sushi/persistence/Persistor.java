@@ -1,17 +1,43 @@
 package sushi.persistence;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import sushi.correlation.CorrelationIndex;
+import sushi.event.ColumnarEventStorage;
+import sushi.event.ExternalKnowledgeIndex;
+import sushi.event.SushiEventBatchPersistor;
+import sushi.event.rollup.EventRollup;
+
 /**
  * This class is the controller for the database access and to get a connection to the EntityManager.
+ * Each thread works with its own EntityManager, because an EntityManager must not be used concurrently.
+ * The EntityManagers share the cache and the connection pool of the EntityManagerFactory.
+ * Threads, which serve independent units of work (e.g. web requests or scheduled jobs),
+ * should call {@link #closeEntityManager()} at the end of each unit of work,
+ * so their persistence context does not grow and does not hold stale objects.
+ * If the database is switched, the EntityManagers of other threads are not closed while they may be in use,
+ * but replaced with their next call of {@link #getEntityManager()}.
  */
 public class Persistor {
 	
 	private static String PERSISTENCE_UNIT_NAME = DatabaseEnvironments.DEVELOPMENT.getDatabaseName();
-	private static EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME);
-	private static EntityManager entityManager = entityManagerFactory.createEntityManager();
+	private static volatile EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME);
+	private static final ThreadLocal<EntityManager> entityManager = new ThreadLocal<EntityManager>();
+	private static final Map<EntityManager, EntityManagerFactory> openEntityManagers = new ConcurrentHashMap<EntityManager, EntityManagerFactory>();
+	private static final Set<EntityManagerFactory> retiredEntityManagerFactories = Collections.newSetFromMap(new ConcurrentHashMap<EntityManagerFactory, Boolean>());
+	private static final Object seedLock = new Object();
+	private static volatile EntityManagerFactory seededEntityManagerFactory = null;
 
 	public static EntityManagerFactory getEntityManagerFactory() {
 		return entityManagerFactory;
@@ -22,12 +48,122 @@ public class Persistor {
 		Persistor.entityManagerFactory = entityManagerFactory;
 	}
 
+	/**
+	 * Returns the EntityManager of the current thread and creates it, if necessary.
+	 * An EntityManager of a database, which was switched since, is closed and replaced.
+	 * @return
+	 */
 	public static EntityManager getEntityManager() {
-		return entityManager;
+		EntityManager currentEntityManager = entityManager.get();
+		if (currentEntityManager == null || !currentEntityManager.isOpen() || openEntityManagers.get(currentEntityManager) != entityManagerFactory) {
+			if (currentEntityManager != null) {
+				closeEntityManager();
+			}
+			currentEntityManager = entityManagerFactory.createEntityManager();
+			setEntityManager(currentEntityManager);
+			seedIDGeneratorsIfNecessary(currentEntityManager.getEntityManagerFactory());
+		}
+		return currentEntityManager;
+	}
+
+	/**
+	 * Seeds the table generator SushiIDGenerator from the existing rows once per database,
+	 * after the first EntityManager has created the tables (see {@link SushiEventBatchPersistor#seedIDGenerators()}).
+	 */
+	private static void seedIDGeneratorsIfNecessary(EntityManagerFactory currentFactory) {
+		if (seededEntityManagerFactory == currentFactory) return;
+		synchronized (seedLock) {
+			if (seededEntityManagerFactory == currentFactory || currentFactory != entityManagerFactory) {
+				return;
+			}
+			try {
+				SushiEventBatchPersistor.seedIDGenerators();
+				seededEntityManagerFactory = currentFactory;
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
+	/**
+	 * Sets the EntityManager of the current thread.
+	 * @param entityManager
+	 */
 	public static void setEntityManager(EntityManager entityManager) {
-		Persistor.entityManager = entityManager;
+		EntityManager previousEntityManager = Persistor.entityManager.get();
+		if (previousEntityManager != null) {
+			openEntityManagers.remove(previousEntityManager);
+		}
+		Persistor.entityManager.set(entityManager);
+		if (entityManager != null) {
+			openEntityManagers.put(entityManager, entityManager.getEntityManagerFactory());
+		}
+		closeUnusedRetiredFactories();
+	}
+
+	/**
+	 * Ends the unit of work of the current thread: rolls back an unfinished transaction and closes the EntityManager.
+	 * The next call of {@link #getEntityManager()} in this thread creates a new EntityManager.
+	 * Objects loaded before are detached, but can still be merged.
+	 */
+	public static void closeEntityManager() {
+		EntityManager currentEntityManager = entityManager.get();
+		entityManager.remove();
+		if (currentEntityManager != null) {
+			openEntityManagers.remove(currentEntityManager);
+			close(currentEntityManager);
+		}
+		closeUnusedRetiredFactories();
+	}
+
+	/**
+	 * Closes the factories of switched databases, as soon as no thread uses one of their EntityManagers anymore.
+	 */
+	private static void closeUnusedRetiredFactories() {
+		if (retiredEntityManagerFactories.isEmpty()) return;
+		for (EntityManagerFactory retiredFactory : retiredEntityManagerFactories) {
+			if (!openEntityManagers.containsValue(retiredFactory) && retiredEntityManagerFactories.remove(retiredFactory)) {
+				try {
+					retiredFactory.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private static void close(EntityManager entityManager) {
+		try {
+			if (entityManager.isOpen()) {
+				if (entityManager.getTransaction().isActive()) {
+					entityManager.getTransaction().rollback();
+				}
+				entityManager.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Opens a plain JDBC connection with the settings of the current persistence unit,
+	 * e.g. for batch inserts, which bypass JPA. The caller has to close the connection.
+	 * @return
+	 * @throws SQLException
+	 */
+	public static Connection openConnection() throws SQLException {
+		Map<String, Object> settings = entityManagerFactory.getProperties();
+		try {
+			Class.forName((String) settings.get("javax.persistence.jdbc.driver"));
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("JDBC driver not found", e);
+		}
+		Properties properties = new Properties();
+		properties.setProperty("user", (String) settings.get("javax.persistence.jdbc.user"));
+		properties.setProperty("password", (String) settings.get("javax.persistence.jdbc.password"));
+		// sends each batch as one multi-row insert
+		properties.setProperty("rewriteBatchedStatements", "true");
+		return DriverManager.getConnection((String) settings.get("javax.persistence.jdbc.url"), properties);
 	}
 
 	public static String getPERSISTENCE_UNIT_NAME() {
@@ -42,10 +178,21 @@ public class Persistor {
 		setPERSISTENCE_UNIT_NAME(DatabaseEnvironments.TEST.getDatabaseName());
 	}
 
-	public static void setPERSISTENCE_UNIT_NAME(String persistenceUnitName) {
-		entityManager.close();
-		entityManagerFactory.close();
+	/**
+	 * Switches the database. Only the EntityManager of the current thread is closed,
+	 * other threads may still use theirs and get a new EntityManager for the new database with their next call of {@link #getEntityManager()}.
+	 * The factory of the previous database is closed, when none of its EntityManagers is used anymore.
+	 * @param persistenceUnitName
+	 */
+	public static synchronized void setPERSISTENCE_UNIT_NAME(String persistenceUnitName) {
+		EntityManagerFactory previousFactory = entityManagerFactory;
 		entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnitName);
-		entityManager = entityManagerFactory.createEntityManager();
+		retiredEntityManagerFactories.add(previousFactory);
+		closeEntityManager();
+		CorrelationIndex.clearInstance();
+		ColumnarEventStorage.clearInstance();
+		ExternalKnowledgeIndex.clearInstance();
+		EventRollup.clearInstance();
+		MetadataCache.invalidateAll();
 	}
 }
\ No newline at end of file
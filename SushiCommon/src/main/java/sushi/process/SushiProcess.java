@@ -30,6 +30,7 @@ import sushi.correlation.TimeCondition;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.collection.SushiTree;
+import sushi.persistence.MetadataCache;
 import sushi.persistence.Persistable;
 import sushi.persistence.Persistor;
 
@@ -43,6 +44,8 @@ import sushi.persistence.Persistor;
 public class SushiProcess extends Persistable implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
+	
+	private static final MetadataCache<Integer, SushiProcess> eventTypeCache = MetadataCache.<Integer, SushiProcess>create("SushiProcess.findByEventType", SushiProcess.class).dependsOn(SushiEventType.class);
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -190,24 +193,33 @@ public class SushiProcess extends Persistable implements Serializable {
 	
 	public boolean addEventType(SushiEventType eventType) {
 		if(!eventTypes.contains(eventType)){
-			eventType.save();
-			eventTypes.add(eventType);
+			SushiEventType savedEventType = eventType.save();
+			eventTypes.add(savedEventType != null ? savedEventType : eventType);
 			return true;
 		}
 		return false;
 	}
 
 	public boolean removeEventType(SushiEventType eventType) {
-		if (!eventTypes.remove(eventType)){
-			// EventType als Notfallvariante per Typename und ID suchen und löschen, 
-			// da durch JPA teilweise unterschiedliche ObjektIDs entstehen können
-			for(SushiEventType containedEventType : eventTypes){
-				if(containedEventType.getID() == eventType.getID() && containedEventType.getTypeName().equals(eventType.getTypeName())){
-					return eventTypes.remove(containedEventType);
-				}
-			}
-		}
-		return false;
+		return eventTypes.remove(eventType);
+	}
+	
+	/**
+	 * Each thread loads its own instance of a process, so saved processes are compared by their ID.
+	 * Processes, which were not saved yet, are only equal to themselves.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		return o instanceof SushiProcess && ID != 0 && ID == ((SushiProcess) o).getID();
+	}
+	
+	/**
+	 * The hash code is based on the name, because the ID changes when the process is saved.
+	 */
+	@Override
+	public int hashCode() {
+		return name == null ? 0 : name.hashCode();
 	}
 	
 	@Override
@@ -232,6 +244,10 @@ public class SushiProcess extends Persistable implements Serializable {
 	 */
 	@SuppressWarnings("unchecked")
 	public static List<SushiProcess> findByEventType(SushiEventType eventType){
+		List<SushiProcess> cached = eventTypeCache.get(eventType.getID());
+		if (cached != null) {
+			return cached;
+		}
 		Query query = Persistor.getEntityManager().createNativeQuery("" +
 				"Select * " +
 				"FROM Process " +
@@ -239,7 +255,12 @@ public class SushiProcess extends Persistable implements Serializable {
 					"Select Id " +
 					"FROM ProcessEventTypes " +
 					"WHERE eventTypes_ID = '" + eventType.getID()+ "')", SushiProcess.class);
-		return query.getResultList();
+		List<SushiProcess> processes = query.getResultList();
+		// new processes, e.g. saved by cascade, do not always invalidate the cache, so an empty result is looked up again
+		if (!processes.isEmpty()) {
+			eventTypeCache.put(eventType.getID(), processes);
+		}
+		return processes;
 	}
 	
 	/**
@@ -390,6 +411,7 @@ public class SushiProcess extends Persistable implements Serializable {
 				Persistor.getEntityManager().persist(process);
 			}
 			Persistor.getEntityManager().getTransaction().commit();
+			MetadataCache.invalidate(SushiProcess.class);
 			return true;
 		}  catch (Exception e) {
 			e.printStackTrace();
@@ -429,6 +451,7 @@ public class SushiProcess extends Persistable implements Serializable {
 			Query query = Persistor.getEntityManager().createQuery("DELETE FROM SushiProcess");
 			int deleteRecords = query.executeUpdate();
 			entr.commit();
+			MetadataCache.invalidate(SushiProcess.class);
 			System.out.println(deleteRecords + " records are deleted.");
 		} catch (Exception ex) {
 			System.out.println(ex.getMessage());
@@ -18,9 +18,11 @@ import javax.persistence.OneToOne;
 import javax.persistence.Query;
 import javax.persistence.Table;
 
+import sushi.correlation.CorrelationIndex;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.collection.SushiMapTree;
+import sushi.persistence.MetadataCache;
 import sushi.persistence.Persistable;
 import sushi.persistence.Persistor;
 
@@ -33,6 +35,8 @@ import sushi.persistence.Persistor;
 public class SushiProcessInstance extends Persistable implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
+	
+	private static final MetadataCache<Integer, SushiProcessInstance> idCache = MetadataCache.createForRemovals("SushiProcessInstance.findByID", SushiProcessInstance.class);
 
 	@Id
 	@GeneratedValue
@@ -199,12 +203,17 @@ public class SushiProcessInstance extends Persistable implements Serializable {
 	 */
 	@SuppressWarnings("unchecked")
 	public static SushiProcessInstance findByID(int ID){
+		SushiProcessInstance cached = idCache.getSingle(ID);
+		if (cached != null) {
+			return cached;
+		}
 		Query query = Persistor.getEntityManager().createNativeQuery("" +
 				"SELECT * " +
 				"FROM ProcessInstance " +
 				"WHERE ID = '" + ID + "'", SushiProcessInstance.class);
 		List<SushiProcessInstance> processInstances = query.getResultList();
 		if(!processInstances.isEmpty()){
+			idCache.putSingle(ID, processInstances.get(0));
 			return processInstances.get(0);
 		}else{
 			return null;
@@ -351,10 +360,12 @@ public class SushiProcessInstance extends Persistable implements Serializable {
 			Query query = Persistor.getEntityManager().createQuery("DELETE FROM SushiProcessInstance");
 			int deleteRecords = query.executeUpdate();
 			entr.commit();
+			MetadataCache.invalidate(SushiProcessInstance.class);
 			System.out.println(deleteRecords + " records are deleted.");
 		} catch (Exception ex) {
 			System.out.println(ex.getMessage());
 		}
+		CorrelationIndex.clearInstance();
 	}
 
 	public SushiEvent getTimerEvent() {
@@ -383,6 +394,25 @@ public class SushiProcessInstance extends Persistable implements Serializable {
 		this.merge();
 	}
 	
+	/**
+	 * Each thread loads its own instance of a process instance, so saved process instances are compared by their ID.
+	 * Process instances, which were not saved yet, are only equal to themselves.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		return o instanceof SushiProcessInstance && ID != 0 && ID == ((SushiProcessInstance) o).getID();
+	}
+	
+	/**
+	 * Process instances have no other unique value than the ID, 
+	 * so they must not be saved for the first time while they are contained in a hash based collection.
+	 */
+	@Override
+	public int hashCode() {
+		return ID;
+	}
+	
 	@Override
 	public String toString() {
 		return "Process Instance " + this.ID;
@@ -3,6 +3,7 @@ package sushi.util;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -39,7 +40,8 @@ import sushi.process.SushiProcessInstance;
  */
 public class XMLUtils {
 
-	private static SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+	private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	private static SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
 	
 	public enum XPathConstantsMapping {
 
@@ -64,6 +66,24 @@ public class XMLUtils {
 	 */
 	public static Node eventToNode(SushiEvent event) {
 		SushiMapTree<String, Serializable> values = event.getValues();
+		List<Integer> processInstanceIDs = new ArrayList<Integer>();
+		for (SushiProcessInstance processInstance : event.getProcessInstances()) {
+			processInstanceIDs.add(processInstance.getID());
+		}
+		Document doc = eventToNode(event.getEventType().getTypeName(), event.getTimestamp(), processInstanceIDs);
+		Element root = doc.getDocumentElement();
+		for (SushiMapElement<String, Serializable> element : values.getTreeRootElements()){
+			Node importedNode = doc.importNode(element.getNodeWithChildnodes().getFirstChild(), true);
+			root.appendChild(importedNode);
+		}
+		return doc;
+	}
+
+	/**
+	 * Creates a typed XML-Node without attribute values, e.g. for a pattern event derived from a query match.
+	 * @return XML Representation of an event of the given event type
+	 */
+	public static Document eventToNode(String eventTypeName, Date timestamp, List<Integer> processInstanceIDs) {
 		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
 		domFactory.setNamespaceAware(true);
 		DocumentBuilder builder = null;
@@ -74,30 +94,41 @@ public class XMLUtils {
 		}
 		// need document from XML for the XML parser
 		Document doc = builder.newDocument();
-		Element root = doc.createElement(event.getEventType().getTypeName());
+		Element root = doc.createElement(eventTypeName);
 		doc.appendChild(root);
 		Element time = doc.createElement("Timestamp");
-		time.setTextContent(getFormattedDate(event.getTimestamp()));
+		time.setTextContent(getFormattedDate(timestamp));
 		root.appendChild(time);
 		
-		List<Integer> processInstanceIDs = new ArrayList<Integer>();
-		for (SushiProcessInstance processInstance : event.getProcessInstances()) {
-			processInstanceIDs.add(processInstance.getID());
-		}
 		Element processInst = doc.createElement("ProcessInstances");
 		processInst.setTextContent(processInstanceIDs.toString());
 		root.appendChild(processInst);
-		
-		for (SushiMapElement<String, Serializable> element : values.getTreeRootElements()){
-			Node importedNode = doc.importNode(element.getNodeWithChildnodes().getFirstChild(), true);
-			root.appendChild(importedNode);
-		}
 		return doc;
 	}
 
 	public static String getFormattedDate(Date date) {
 		return sdf.format(date);
 	}
+
+	/**
+	 * Parses a date given as text like dates are written into the XML representation of events:
+	 * in the format of {@link #getFormattedDate(Date)} or as xsd:dateTime.
+	 * @param text
+	 * @return date or null, if the text is no date
+	 */
+	public static Date parseDate(String text) {
+		String trimmedText = text.trim();
+		try {
+			// a new format, because the shared one is not thread-safe
+			return new SimpleDateFormat(DATE_FORMAT).parse(trimmedText);
+		} catch (ParseException e) {
+			try {
+				return DatatypeConverter.parseDateTime(trimmedText).getTime();
+			} catch (IllegalArgumentException e1) {
+				return null;
+			}
+		}
+	}
 	
 	/**
 	 * Converts Date into XML-Tag with type xsd:dateTime
@@ -77,6 +77,22 @@ public class SushiMapTreeTest {
 		assertTrue(testMapTree.findElement(rootElement2Key) == rootElement2Value);
 	}
 	
+	@Test
+	public void testTreeLookup(){
+		SushiMapTree<String, String> testMapTree = buildTestMap();
+		assertTrue(testMapTree.containsKey(rootElement1Child1Key));
+		assertTrue(testMapTree.keySet().size() == 3);
+		assertTrue(testMapTree.getValueByAttributeExpression(rootElement1Key + "." + rootElement1Child1Key + "." + rootElement1Child1Child1Key) == rootElement1Child1Child1Value);
+		
+		testMapTree.remove(rootElement1Child1Key);
+		assertFalse(testMapTree.containsKey(rootElement1Child1Key));
+		assertFalse(testMapTree.containsAttributeExpression(rootElement1Key + "." + rootElement1Child1Key));
+		
+		testMapTree.remove(rootElement1Key);
+		assertTrue(testMapTree.containsKey(rootElement2Key));
+		assertTrue(testMapTree.get(rootElement2Key) == rootElement2Value);
+	}
+	
 	private SushiMapTree<String, String> buildTestMap(){
 		SushiMapTree<String, String> testMapTree = new SushiMapTree<String, String>(rootElement1Key, rootElement1Value);
 
@@ -1,9 +1,12 @@
 package sushi.event.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -68,6 +71,32 @@ public class SushiTreeTest {
 		assertTrue(testTree.findElement(rootElement2) == rootElement2);
 	}
 	
+	@Test
+	public void testTreeIndex(){
+		SushiTree<String> testTree = buildTestTree();
+		assertEquals(2, testTree.getElementDepth(rootElement1Child1Child1));
+		assertTrue(testTree.isAncestor(rootElement1, rootElement1Child1Child1));
+		assertFalse(testTree.isAncestor(rootElement1Child1Child1, rootElement1));
+		assertFalse(testTree.isAncestor(rootElement2, rootElement1Child1));
+		assertTrue(testTree.getParent(rootElement1Child1Child1) == rootElement1Child1);
+		assertTrue(testTree.getLeafElements().contains(rootElement2));
+		assertTrue(testTree.getLeafElements().contains(rootElement1Child1Child1));
+		assertEquals(2, testTree.getLeafElements().size());
+		
+		String rootElement1Child2 = new String("Root Element 1 Child 2");
+		testTree.addChild(rootElement1, rootElement1Child2);
+		assertEquals(rootElement1, testTree.getLowestCommonAncestor(rootElement1Child1Child1, rootElement1Child2));
+		assertEquals(rootElement1Child1, testTree.getLowestCommonAncestor(rootElement1Child1Child1, rootElement1Child1));
+		assertNull(testTree.getLowestCommonAncestor(rootElement1Child1, rootElement2));
+		assertEquals(3, testTree.getLeafElements().size());
+		assertTrue(testTree.getParents(Arrays.asList(rootElement1Child1, rootElement1Child2)).contains(rootElement1));
+		
+		testTree.remove(rootElement1Child1Child1);
+		assertTrue(testTree.isInLeaves(rootElement1Child1));
+		assertEquals(-1, testTree.getElementDepth(rootElement1Child1Child1));
+		assertFalse(testTree.contains(rootElement1Child1Child1));
+	}
+	
 	private SushiTree<String> buildTestTree(){
 		SushiTree<String> testTree = new SushiTree<String>(rootElement1);
 
@@ -1,26 +1,43 @@
 package sushi.persistence.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import sushi.event.ColumnarEventStorage;
+import sushi.event.ExternalKnowledgeIndex;
 import sushi.event.SushiEvent;
+import sushi.event.SushiEventBatchPersistor;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.attribute.SushiAttributeTree;
 import sushi.event.attribute.SushiAttributeTypeEnum;
 import sushi.event.collection.SushiMapTree;
+import sushi.event.rollup.AttributeStatistics;
+import sushi.event.rollup.EventRollup;
+import sushi.event.rollup.RollupBucket;
+import sushi.event.rollup.RollupGranularity;
 import sushi.persistence.Persistor;
 
 /**
@@ -46,6 +63,31 @@ public class EventPersistenceTest implements PersistenceTest {
 		assertTrue("Value should be 0, but was " + SushiEvent.findAll().size(), SushiEvent.findAll().size()==0);
 	}
 	
+	@Test
+	public void testSaveInOtherThread() throws InterruptedException {
+		final SushiEventType eventType = new SushiEventType("OtherThreadType");
+		eventType.save();
+		final List<SushiEvent> savedEvents = new ArrayList<SushiEvent>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				SushiEvent event = new SushiEvent(eventType, new Date());
+				if (event.save() != null) {
+					savedEvents.add(event);
+				}
+				Persistor.closeEntityManager();
+			}
+		};
+		thread.start();
+		thread.join();
+		assertTrue(savedEvents.size() == 1);
+		assertTrue(SushiEvent.findByEventType(eventType).size() == 1);
+		// the event type is still managed by the entity manager of this thread
+		eventType.setTimestampName("OtherTimestamp");
+		assertTrue(eventType.save() != null);
+		assertTrue(SushiEventType.findByTypeName("OtherThreadType").getTimestampName().equals("OtherTimestamp"));
+	}
+	
 	private void storeExampleEvents() {
 		SushiMapTree<String, Serializable> hm = new SushiMapTree<String, Serializable>();
 		hm.put("kuchen", "kaese");
@@ -162,6 +204,26 @@ public class EventPersistenceTest implements PersistenceTest {
 		assertTrue(SushiEvent.getNumberOfEventsByEventType(tsun) == 1);
 	}
 
+	@Test
+	public void testFindByCondition() {
+		SushiEventType pagedEventType = new SushiEventType("Paged");
+		pagedEventType.save();
+		ArrayList<SushiEvent> pagedEvents = new ArrayList<SushiEvent>();
+		for (int i = 0; i < 5; i++) {
+			pagedEvents.add(new SushiEvent(pagedEventType, new Date()));
+		}
+		SushiEvent.save(pagedEvents);
+		List<Object> parameters = new ArrayList<Object>(Arrays.asList(pagedEventType.getID()));
+
+		assertEquals(5, SushiEvent.getNumberOfEvents("EVENTTYPE_ID = ?1", parameters));
+		List<SushiEvent> page = SushiEvent.findByCondition("EVENTTYPE_ID = ?1", parameters, "ID", false, 0, 2);
+		assertEquals(2, page.size());
+		assertTrue(page.get(0).getID() > page.get(1).getID());
+		page = SushiEvent.findByCondition("EVENTTYPE_ID = ?1", parameters, "ID", false, 4, 2);
+		assertEquals(1, page.size());
+		assertEquals(SushiEvent.findAll().size(), SushiEvent.findByCondition(null, null).size());
+	}
+
 	@Test
 	public void testGetDistinctValuesOfAttributes() {
 		storeExampleEvents();
@@ -187,4 +249,251 @@ public class EventPersistenceTest implements PersistenceTest {
 		assertTrue("should be 2, but was " + appearancesOfKaese, appearancesOfKaese == 2);
 		assertTrue("should be 1, but was " + appearancesOfKirschkirsch, appearancesOfKirschkirsch == 1);
 	}
+	
+	@Test
+	public void testBatchPersistence() {
+		SushiEventType tsun = new SushiEventType("Tsun");
+		tsun.save();
+		List<SushiEvent> events = new ArrayList<SushiEvent>();
+		for (int i = 0; i < 25; i++) {
+			SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+			values.put("kuchen", "kaese" + (i % 5));
+			values.addRootElement("vehicle_information", null);
+			values.addChild("vehicle_information", "transport", "Truck");
+			events.add(new SushiEvent(tsun, new Date(), values));
+		}
+		SushiEventBatchPersistor.setThreshold(1);
+		SushiEventBatchPersistor.setBatchSize(4);
+		SushiEventBatchPersistor.setCommitSize(10);
+		try {
+			assertTrue(SushiEvent.save(events) != null);
+		} finally {
+			SushiEventBatchPersistor.setThreshold(SushiEventBatchPersistor.DEFAULT_THRESHOLD);
+			SushiEventBatchPersistor.setBatchSize(SushiEventBatchPersistor.DEFAULT_BATCH_SIZE);
+			SushiEventBatchPersistor.setCommitSize(SushiEventBatchPersistor.DEFAULT_COMMIT_SIZE);
+		}
+		//read the events from the rows instead of the objects put into the cache
+		Persistor.getEntityManagerFactory().getCache().evictAll();
+		Persistor.closeEntityManager();
+		assertTrue(SushiEvent.getNumberOfEventsByEventType(tsun) == 25);
+		assertTrue(SushiEvent.findDistinctValuesOfAttributeOfType("kuchen", tsun).size() == 5);
+		SushiEvent event = SushiEvent.findByID(events.get(3).getID());
+		assertTrue(event != events.get(3));
+		assertTrue(event.getValues().get("kuchen").equals("kaese3"));
+		assertTrue(event.getValues().get("transport").equals("Truck"));
+		
+		//events saved through JPA afterwards get IDs behind the reserved range
+		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+		values.put("kuchen", "kaese5");
+		SushiEvent singleEvent = new SushiEvent(tsun, new Date(), values);
+		singleEvent.save();
+		assertTrue(singleEvent.getID() > events.get(events.size() - 1).getID());
+		assertTrue(SushiEvent.getNumberOfEventsByEventType(tsun) == 26);
+	}
+	
+	@Test
+	public void testSeedIDGenerators() throws SQLException {
+		storeExampleEvents();
+		int highestID = 0;
+		for (SushiEvent event : SushiEvent.findAll()) {
+			highestID = Math.max(highestID, event.getID());
+		}
+		Connection connection = Persistor.openConnection();
+		try {
+			//the rows of an existing database were numbered without the table generator
+			connection.createStatement().executeUpdate("UPDATE SushiIDGenerator SET NextID = 0");
+			SushiEventBatchPersistor.seedIDGenerators();
+			ResultSet result = connection.createStatement().executeQuery("SELECT NextID FROM SushiIDGenerator WHERE TableName = 'Event'");
+			assertTrue(result.next());
+			assertTrue(result.getInt(1) >= highestID);
+		} finally {
+			connection.close();
+		}
+	}
+	
+	@Test
+	public void testColumnarStorage() {
+		SushiAttributeTree attributes = new SushiAttributeTree();
+		SushiAttribute vehicleInformation = new SushiAttribute("vehicle_information");
+		new SushiAttribute(vehicleInformation, "transport", SushiAttributeTypeEnum.STRING);
+		attributes.addRoot(new SushiAttribute("Container", SushiAttributeTypeEnum.STRING));
+		attributes.addRoot(new SushiAttribute("Weight", SushiAttributeTypeEnum.INTEGER));
+		attributes.addRoot(new SushiAttribute("Arrival", SushiAttributeTypeEnum.DATE));
+		attributes.addRoot(vehicleInformation);
+		SushiEventType containerEventType = new SushiEventType("ContainerEvent", attributes);
+		containerEventType.save();
+		
+		Date arrival = new GregorianCalendar(2013, Calendar.JANUARY, 15, 14, 30, 0).getTime();
+		SushiEvent oldEvent = createContainerEvent(containerEventType, "C0", "100", "Truck");
+		oldEvent.getValues().put("Arrival", arrival);
+		oldEvent.save();
+		List<String> arrivalsOfMapTrees = SushiEvent.findDistinctValuesOfAttributeOfType("Arrival", containerEventType);
+		assertEquals(1, arrivalsOfMapTrees.size());
+		ColumnarEventStorage.getInstance().enable(containerEventType);
+		assertTrue(ColumnarEventStorage.getInstance().isEnabled(containerEventType));
+		List<SushiEvent> newEvents = new ArrayList<SushiEvent>(Arrays.asList(
+				createContainerEvent(containerEventType, "C1", "200", "Ship"), 
+				createContainerEvent(containerEventType, "C2", "200", "Truck")));
+		for (SushiEvent newEvent : newEvents) {
+			newEvent.getValues().put("Arrival", arrival);
+		}
+		SushiEvent.save(newEvents);
+		
+		assertTrue(SushiEvent.findDistinctValuesOfAttributeOfType("Weight", containerEventType).size() == 2);
+		assertTrue(SushiEvent.findNumberOfAppearancesByAttributeValue("Weight", "200", containerEventType) == 2);
+		//dates are formatted like the values of the map trees
+		assertEquals(arrivalsOfMapTrees, SushiEvent.findDistinctValuesOfAttributeOfType("Arrival", containerEventType));
+		assertTrue(SushiEvent.findNumberOfAppearancesByAttributeValue("Arrival", arrivalsOfMapTrees.get(0), containerEventType) == 3);
+		Map<String, Serializable> searchValues = new HashMap<String, Serializable>();
+		searchValues.put("Container", "C2");
+		assertTrue(SushiEvent.findValueByEventTypeAndAttributeExpressionsAndValues(containerEventType, "Weight", searchValues).equals(200));
+		assertTrue(SushiEvent.findByEventTypeAndAttributeExpressionsAndValues(containerEventType, searchValues).size() == 1);
+		Map<String, Serializable> values = ColumnarEventStorage.getInstance().findValues(oldEvent);
+		assertTrue(values.get("Container").equals("C0"));
+		assertTrue(values.get("vehicle_information.transport").equals("Truck"));
+		
+		//values, which do not fit the type of their column, are found through the map trees
+		createContainerEvent(containerEventType, "C3", "heavy", "Ship").save();
+		assertTrue(SushiEvent.findDistinctValuesOfAttributeOfType("Weight", containerEventType).contains("heavy"));
+		assertTrue(SushiEvent.findNumberOfAppearancesByAttributeValue("Weight", "heavy", containerEventType) == 1);
+		assertTrue(SushiEvent.findNumberOfAppearancesByAttributeValue("Weight", "200", containerEventType) == 2);
+		
+		containerEventType.remove();
+		assertTrue(!ColumnarEventStorage.getInstance().isEnabled(containerEventType));
+	}
+	
+	@Test
+	public void testExternalKnowledgeIndex() {
+		SushiAttributeTree attributes = new SushiAttributeTree();
+		SushiAttribute vehicleInformation = new SushiAttribute("vehicle_information");
+		new SushiAttribute(vehicleInformation, "transport", SushiAttributeTypeEnum.STRING);
+		attributes.addRoot(new SushiAttribute("Container", SushiAttributeTypeEnum.STRING));
+		attributes.addRoot(new SushiAttribute("Weight", SushiAttributeTypeEnum.INTEGER));
+		attributes.addRoot(vehicleInformation);
+		SushiEventType containerEventType = new SushiEventType("KnowledgeContainerEvent", attributes);
+		containerEventType.save();
+		createContainerEvent(containerEventType, "C1", "100", "Truck").save();
+		
+		ExternalKnowledgeIndex index = ExternalKnowledgeIndex.getInstance();
+		Map<String, Serializable> searchValues = new HashMap<String, Serializable>();
+		searchValues.put("Container", "C1");
+		searchValues.put("transport", "Truck");
+		assertTrue(index.findValue("KnowledgeContainerEvent", "Weight", searchValues).equals("100"));
+		assertTrue(index.getBuilds() == 1);
+		
+		//new events are added to the existing lookup table
+		SushiEvent newEvent = createContainerEvent(containerEventType, "C2", "200", "Ship");
+		newEvent.save();
+		index.eventsAdded(Arrays.asList(newEvent));
+		searchValues.put("Container", "C2");
+		searchValues.put("transport", "Ship");
+		assertTrue(index.findValue("KnowledgeContainerEvent", "Weight", searchValues).equals("200"));
+		searchValues.put("transport", "Truck");
+		assertTrue(index.findValue("KnowledgeContainerEvent", "Weight", searchValues) == null);
+		assertTrue(index.getBuilds() == 1);
+		assertTrue(index.findValue("UnknownEventType", "Weight", searchValues) == null);
+		
+		index.invalidate(containerEventType);
+		searchValues.put("transport", "Ship");
+		assertTrue(index.findValue("KnowledgeContainerEvent", "Weight", searchValues).equals("200"));
+		assertTrue(index.getBuilds() == 2);
+	}
+
+	@Test
+	public void testConcurrentExternalKnowledgeLookups() throws InterruptedException {
+		SushiAttributeTree attributes = new SushiAttributeTree();
+		SushiAttribute vehicleInformation = new SushiAttribute("vehicle_information");
+		new SushiAttribute(vehicleInformation, "transport", SushiAttributeTypeEnum.STRING);
+		attributes.addRoot(new SushiAttribute("Container", SushiAttributeTypeEnum.STRING));
+		attributes.addRoot(new SushiAttribute("Weight", SushiAttributeTypeEnum.INTEGER));
+		attributes.addRoot(vehicleInformation);
+		SushiEventType containerEventType = new SushiEventType("ConcurrentKnowledgeContainerEvent", attributes);
+		containerEventType.save();
+		for (int i = 0; i < 100; i++) {
+			createContainerEvent(containerEventType, "C" + i, Integer.toString(i), "Truck").save();
+		}
+		
+		//the lookup table is built once, lookups during the build wait for it
+		final ExternalKnowledgeIndex index = ExternalKnowledgeIndex.getInstance();
+		final List<Serializable> foundValues = Collections.synchronizedList(new ArrayList<Serializable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			final int container = i;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					Map<String, Serializable> searchValues = new HashMap<String, Serializable>();
+					searchValues.put("Container", "C" + container);
+					foundValues.add(index.findValue("ConcurrentKnowledgeContainerEvent", "Weight", searchValues));
+					Persistor.closeEntityManager();
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join(30000);
+		}
+		assertEquals(4, foundValues.size());
+		assertTrue(foundValues.containsAll(Arrays.asList("0", "1", "2", "3")));
+		assertTrue(index.getBuilds() == 1);
+	}
+
+	@Test
+	public void testEventRollup() {
+		SushiAttributeTree attributes = new SushiAttributeTree();
+		SushiAttribute vehicleInformation = new SushiAttribute("vehicle_information");
+		new SushiAttribute(vehicleInformation, "transport", SushiAttributeTypeEnum.STRING);
+		attributes.addRoot(new SushiAttribute("Container", SushiAttributeTypeEnum.STRING));
+		attributes.addRoot(new SushiAttribute("Weight", SushiAttributeTypeEnum.INTEGER));
+		attributes.addRoot(vehicleInformation);
+		SushiEventType containerEventType = new SushiEventType("RollupContainerEvent", attributes);
+		containerEventType.save();
+		createContainerEvent(containerEventType, "C1", "10", "Truck").save();
+		createContainerEvent(containerEventType, "C2", "20", "Truck").save();
+
+		//the first use builds the rollups from the saved events
+		EventRollup rollup = EventRollup.getInstance();
+		assertEquals(2, rollup.getNumberOfEvents(containerEventType));
+		assertEquals(1, rollup.getNumberOfRebuilds());
+
+		//new events are added incrementally
+		List<SushiEvent> newEvents = new ArrayList<SushiEvent>();
+		newEvents.add(createContainerEvent(containerEventType, "C3", "30", "Ship"));
+		newEvents.add(createContainerEvent(containerEventType, "C4", "40", "Ship"));
+		SushiEvent.save(newEvents);
+		rollup.eventsAdded(newEvents);
+		assertEquals(4, rollup.getNumberOfEvents(containerEventType));
+		long numberOfEventsInBuckets = 0;
+		for (RollupBucket bucket : rollup.getEventCounts(containerEventType, RollupGranularity.MINUTE, null, null)) {
+			numberOfEventsInBuckets += bucket.getNumberOfEvents();
+		}
+		assertEquals(4, numberOfEventsInBuckets);
+		AttributeStatistics statistics = rollup.getAttributeStatistics(containerEventType, "Weight");
+		assertEquals(4, statistics.getNumberOfValues());
+		assertEquals(10, statistics.getMinimum(), 0);
+		assertEquals(40, statistics.getMaximum(), 0);
+		assertEquals(100, statistics.getSum(), 0);
+		SortedMap<Long, Long> histogram = rollup.getHistogram(containerEventType, "Weight", 20);
+		assertEquals(3, histogram.size());
+		assertEquals(Long.valueOf(2), histogram.get(20L));
+		assertTrue(rollup.getAttributeStatistics(containerEventType, "Container") == null);
+
+		//removed events are subtracted
+		SushiEvent removedEvent = newEvents.get(1);
+		removedEvent.remove();
+		rollup.eventsRemoved(Arrays.asList(removedEvent));
+		assertEquals(3, rollup.getNumberOfEvents(containerEventType));
+		assertEquals(60, rollup.getAttributeStatistics(containerEventType, "Weight").getSum(), 0);
+		assertEquals(1, rollup.getNumberOfRebuilds());
+	}
+	
+	private SushiEvent createContainerEvent(SushiEventType eventType, String container, String weight, String transport) {
+		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+		values.put("Container", container);
+		values.put("Weight", weight);
+		values.addRootElement("vehicle_information", null);
+		values.addChild("vehicle_information", "transport", transport);
+		return new SushiEvent(eventType, new Date(), values);
+	}
 }
@@ -15,6 +15,7 @@ import org.junit.runners.MethodSorters;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.collection.SushiMapTree;
+import sushi.persistence.MetadataCache;
 import sushi.persistence.Persistor;
 import sushi.process.SushiProcess;
 import sushi.util.SushiTestHelper;
@@ -61,6 +62,46 @@ public class EventTypePersistorTest implements PersistenceTest {
 		
 	}
 
+	@Test
+	public void testFindByTypeNameIsCached() {
+		storeExampleEventType();
+		MetadataCache<?, ?> cache = findCache("SushiEventType.findByTypeName");
+		assertTrue(cache != null);
+		cache.resetStatistics();
+		
+		SushiEventType eventType = SushiEventType.findByTypeName("Kino");
+		assertTrue(SushiEventType.findByTypeName("Kino").getID() == eventType.getID());
+		assertTrue("Hits should be 1, but were " + cache.getHits(), cache.getHits() == 1);
+		assertTrue("Misses should be 1, but were " + cache.getMisses(), cache.getMisses() == 1);
+		
+		eventType.remove();
+		assertTrue(SushiEventType.findByTypeName("Kino") == null);
+	}
+
+	@Test
+	public void testEmptyResultsAreNotCached() {
+		storeExampleEventType();
+		SushiEventType eventTypeWithoutProcess = new SushiEventType("EventTypeWithoutProcess");
+		eventTypeWithoutProcess.save();
+		MetadataCache<?, ?> cache = findCache("SushiProcess.findByEventType");
+		assertTrue(cache != null);
+		cache.clear();
+		
+		assertTrue(SushiProcess.findByEventType(eventTypeWithoutProcess).isEmpty());
+		assertTrue("Size should be 0, but was " + cache.getSize(), cache.getSize() == 0);
+		assertTrue(!SushiProcess.findByEventType(SushiEventType.findByTypeName("Kino")).isEmpty());
+		assertTrue("Size should be 1, but was " + cache.getSize(), cache.getSize() == 1);
+	}
+
+	private MetadataCache<?, ?> findCache(String name) {
+		for (MetadataCache<?, ?> cache : MetadataCache.getCaches()) {
+			if (cache.getName().equals(name)) {
+				return cache;
+			}
+		}
+		return null;
+	}
+
 	private void storeExampleEvents() {
 		SushiEventType eventType = SushiEventType.findByTypeName("Kino");
 
@@ -1,5 +1,7 @@
 package sushi.persistence.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -13,8 +15,11 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import sushi.correlation.CorrelationRule;
 import sushi.correlation.TimeCondition;
 import sushi.event.SushiEventType;
+import sushi.event.attribute.SushiAttribute;
+import sushi.event.attribute.SushiAttributeTypeEnum;
 import sushi.persistence.Persistor;
 import sushi.process.SushiProcess;
 
@@ -101,5 +106,48 @@ public class ProcessPersistorTest implements PersistenceTest {
 		processFromDataBase = SushiProcess.findByName("ProcessWithTimeCondition").get(0);
 		assertNull(processFromDataBase.getTimeCondition());
 	}
+	
+	@Test
+	public void testSaveDetachedProcessTwice(){
+		SushiAttribute firstAttribute = new SushiAttribute("Location", SushiAttributeTypeEnum.INTEGER);
+		new SushiEventType("DetachedFirst", Arrays.asList(firstAttribute)).save();
+		SushiAttribute secondAttribute = new SushiAttribute("Location", SushiAttributeTypeEnum.INTEGER);
+		new SushiEventType("DetachedSecond", Arrays.asList(secondAttribute)).save();
+		SushiProcess process = new SushiProcess("DetachedProcess");
+		process.save();
+		// the process is kept beyond its unit of work, like the objects of a web page
+		Persistor.closeEntityManager();
+		int numberOfCorrelationRules = CorrelationRule.findAll().size();
+		
+		process.addCorrelationRule(new CorrelationRule(firstAttribute, secondAttribute));
+		process = process.save();
+		assertEquals(numberOfCorrelationRules + 1, CorrelationRule.findAll().size());
+		Persistor.closeEntityManager();
+		process = process.save();
+		assertNotNull(process);
+		assertEquals(numberOfCorrelationRules + 1, CorrelationRule.findAll().size());
+		assertEquals(1, SushiProcess.findByName("DetachedProcess").get(0).getCorrelationRules().size());
+	}
+	
+	@Test
+	public void testDetachedEntitiesAreEqual(){
+		SushiEventType eventType = new SushiEventType("DetachedEventType");
+		SushiProcess process = new SushiProcess("DetachedEqualProcess");
+		process.addEventType(eventType);
+		process.save();
+		// the entities are kept beyond their unit of work, like the objects of a web page or a monitor
+		Persistor.closeEntityManager();
+		
+		SushiProcess processFromDatabase = SushiProcess.findByName("DetachedEqualProcess").get(0);
+		SushiEventType eventTypeFromDatabase = SushiEventType.findByTypeName("DetachedEventType");
+		assertTrue(process != processFromDatabase);
+		assertEquals(process, processFromDatabase);
+		assertEquals(process.hashCode(), processFromDatabase.hashCode());
+		assertEquals(eventType, eventTypeFromDatabase);
+		assertEquals(eventType.hashCode(), eventTypeFromDatabase.hashCode());
+		assertFalse(processFromDatabase.addEventType(eventType));
+		assertEquals(1, processFromDatabase.getEventTypes().size());
+		assertFalse(new SushiProcess("DetachedEqualProcess").equals(process));
+	}
 
 }
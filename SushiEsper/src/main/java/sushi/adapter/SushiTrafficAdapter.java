@@ -18,6 +18,7 @@ import org.xml.sax.SAXException;
 
 import sushi.esper.SushiStreamProcessingAdapter;
 import sushi.eventhandling.Broker;
+import sushi.persistence.Persistor;
 import sushi.traffic.importer.TomTomTrafficimporter;
 
 /**
@@ -95,6 +96,8 @@ public class SushiTrafficAdapter implements Job {
 			if (SushiStreamProcessingAdapter.getInstance().isActivatedWeatherAdapter()) importTrafficEventsHamburgToBerlin();
 		} catch (JSONException | XPathExpressionException | ParserConfigurationException | SAXException | IOException e) {
 			e.printStackTrace();
+		} finally {
+			Persistor.closeEntityManager();
 		}
 	}
 
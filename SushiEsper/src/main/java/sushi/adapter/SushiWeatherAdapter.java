@@ -18,6 +18,7 @@ import sushi.esper.SushiStreamProcessingAdapter;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.eventhandling.Broker;
+import sushi.persistence.Persistor;
 import sushi.weather.importer.DWDImporter;
 import sushi.xml.importer.XMLParsingException;
 
@@ -98,6 +99,8 @@ public class SushiWeatherAdapter implements Job{
 			if (SushiStreamProcessingAdapter.getInstance().isActivatedWeatherAdapter()) importWeatherEvents();
 		} catch (JSONException | XMLParsingException | IOException e) {
 			e.printStackTrace();
+		} finally {
+			Persistor.closeEntityManager();
 		}
 	}
 }
\ No newline at end of file
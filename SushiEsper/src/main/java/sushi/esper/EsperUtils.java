@@ -1,13 +1,25 @@
 package sushi.esper;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.xml.datatype.DatatypeConstants;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPathConstants;
 
+import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.attribute.SushiAttributeTree;
 import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.event.collection.SushiMapElement;
+import sushi.process.SushiProcessInstance;
+import sushi.util.XMLUtils;
+
 import com.espertech.esper.client.ConfigurationEventTypeXMLDOM;
 
 /**
@@ -15,6 +27,9 @@ import com.espertech.esper.client.ConfigurationEventTypeXMLDOM;
  */
 public class EsperUtils {
 	
+	/** property of the events in esper with the ID of the saved event, used to remove the event from its window */
+	public static final String EVENT_ID = "EventID";
+	
 	/**
 	 * Translates a java datatype to an XPath-Constants datatype. 
 	 * @param clazz
@@ -62,6 +77,7 @@ public class EsperUtils {
 		dom.setRootElementName(eventType.getTypeName());
 		dom.addXPathProperty("Timestamp", "/" + eventType.getTypeName() + "/Timestamp", XPathConstants.STRING, "java.util.Date");
 		dom.addXPathProperty("ProcessInstances", "/" + eventType.getTypeName() + "/" + "ProcessInstances", XPathConstants.STRING, "java.util.List");
+		dom.addXPathProperty(EVENT_ID, "/" + eventType.getTypeName() + "/" + EVENT_ID, XPathConstants.NUMBER, "int");
 		
 		for (SushiAttribute element: tree.getAttributes()) {
 			SushiAttributeTypeEnum attType = element.getType();
@@ -79,4 +95,120 @@ public class EsperUtils {
 		return dom;
 	}
 
+	/**
+	 * Transforms a sushi event type to an esper map event type definition.
+	 * Hierarchical attributes are mapped to nested maps, 
+	 * so that attribute expressions like 'vehicle_information.transport' are valid esper properties.
+	 * @param eventType
+	 * @return esper map event type definition
+	 */
+	public static Map<String, Object> eventTypeToMapDefinition(SushiEventType eventType) {
+		Map<String, Object> definition = new HashMap<String, Object>();
+		definition.put("Timestamp", Date.class);
+		definition.put("ProcessInstances", List.class);
+		definition.put(EVENT_ID, Integer.class);
+		for (SushiAttribute attribute : eventType.getRootLevelValueTypes()) {
+			definition.put(attribute.getName(), attributeToMapDefinition(attribute));
+		}
+		return definition;
+	}
+	
+	private static Object attributeToMapDefinition(SushiAttribute attribute) {
+		if (attribute.hasChildren()) {
+			Map<String, Object> definition = new HashMap<String, Object>();
+			for (SushiAttribute child : attribute.getChildren()) {
+				definition.put(child.getName(), attributeToMapDefinition(child));
+			}
+			return definition;
+		}
+		return mapClassToJavaClass(attribute.getType());
+	}
+	
+	/**
+	 * Translates a sushi attribute type to the java class used for map events.
+	 * @param clazz
+	 * @return java class
+	 */
+	public static Class<?> mapClassToJavaClass(SushiAttributeTypeEnum clazz) {
+		if (clazz == SushiAttributeTypeEnum.INTEGER) {
+			return Integer.class;
+		}
+		if (clazz == SushiAttributeTypeEnum.DATE) {
+			return Date.class;
+		}
+		return String.class;
+	}
+	
+	/**
+	 * Transforms a sushi event to an esper map event.
+	 * The values are converted to the types of the attributes of the event type.
+	 * @param event
+	 * @return esper formed map event
+	 */
+	public static Map<String, Object> eventToMap(SushiEvent event) {
+		Map<String, SushiAttributeTypeEnum> attributeTypes = new HashMap<String, SushiAttributeTypeEnum>();
+		for (SushiAttribute attribute : event.getEventType().getValueTypes()) {
+			attributeTypes.put(attribute.getAttributeExpression(), attribute.getType());
+		}
+		Map<String, Object> mapEvent = new HashMap<String, Object>();
+		mapEvent.put("Timestamp", event.getTimestamp());
+		mapEvent.put(EVENT_ID, event.getID());
+		List<Integer> processInstanceIDs = new ArrayList<Integer>();
+		for (SushiProcessInstance processInstance : event.getProcessInstances()) {
+			processInstanceIDs.add(processInstance.getID());
+		}
+		mapEvent.put("ProcessInstances", processInstanceIDs);
+		for (SushiMapElement<String, Serializable> element : event.getValues().getTreeRootElements()) {
+			mapEvent.put(element.getKey(), mapElementToMapValue(element, attributeTypes));
+		}
+		return mapEvent;
+	}
+	
+	private static Object mapElementToMapValue(SushiMapElement<String, Serializable> element, Map<String, SushiAttributeTypeEnum> attributeTypes) {
+		if (element.hasChildren()) {
+			Map<String, Object> nestedMap = new HashMap<String, Object>();
+			for (SushiMapElement<String, Serializable> child : element.getChildren()) {
+				nestedMap.put(child.getKey(), mapElementToMapValue(child, attributeTypes));
+			}
+			return nestedMap;
+		}
+		return convertValue(element.getValue(), attributeTypes.get(element.getAttributeExpression()));
+	}
+	
+	/**
+	 * Converts a value of an event to the java class of the attribute type, 
+	 * like the XPath casts of the XML-DOM representation do.
+	 * @param value
+	 * @param type
+	 * @return converted value or null if the value is not convertible
+	 */
+	private static Object convertValue(Serializable value, SushiAttributeTypeEnum type) {
+		if (value == null) {
+			return null;
+		}
+		if (type == SushiAttributeTypeEnum.INTEGER) {
+			if (value instanceof Integer) {
+				return value;
+			}
+			if (value instanceof Number) {
+				return ((Number) value).intValue();
+			}
+			try {
+				return Integer.parseInt(value.toString().trim());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		if (type == SushiAttributeTypeEnum.DATE) {
+			if (value instanceof Date) {
+				return value;
+			}
+			return XMLUtils.parseDate(value.toString());
+		}
+		if (value instanceof Date) {
+			return XMLUtils.getFormattedDate((Date) value);
+		}
+		return value.toString();
+	}
+
 }
@@ -0,0 +1,325 @@
+package sushi.esper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.espertech.esper.client.EPAdministrator;
+import com.espertech.esper.client.EPException;
+import com.espertech.esper.client.EPStatement;
+import com.espertech.esper.client.EventBean;
+import com.espertech.esper.client.UpdateListener;
+import com.espertech.esper.client.soda.EPStatementObjectModel;
+import com.espertech.esper.client.soda.Expression;
+import com.espertech.esper.client.soda.FilterStream;
+import com.espertech.esper.client.soda.SelectClauseElement;
+import com.espertech.esper.client.soda.SelectClauseExpression;
+import com.espertech.esper.client.soda.Stream;
+
+/**
+ * Registry of the Esper statements of live queries and transformation rules.
+ * Stateless statements with the same EPL (apart from whitespace) are created only once and shared:
+ * the listeners of all queries and rules with this EPL are attached to the shared statement,
+ * so the engine evaluates each distinct filter only once per event.
+ * Statements with state, e.g. patterns, data windows or aggregations, are created per listener,
+ * because a listener joining such a statement would get results of the events sent before it joined.
+ * A statement is destroyed, when its last listener is released.
+ * An exception of one listener does not keep the other listeners of a statement from being updated.
+ *
+ * Per shared statement, the number of updates, delivered events and the time spent in the listeners are counted.
+ */
+public class StatementRegistry {
+
+	private final EPAdministrator administrator;
+	private final Map<String, SharedStatement> statementsByEPL = new HashMap<String, SharedStatement>();
+	private final Map<UpdateListener, SharedStatement> statementsByListener = new IdentityHashMap<UpdateListener, SharedStatement>();
+	private final Map<String, UpdateListener> listenersByName = new HashMap<String, UpdateListener>();
+	private long numberOfSharedAcquisitions = 0;
+
+	public StatementRegistry(EPAdministrator administrator) {
+		this.administrator = administrator;
+	}
+
+	/**
+	 * Attaches the listener to the statement with the given EPL and creates the statement, if necessary.
+	 * @param epl
+	 * @param name (optional) unique name to release the listener by {@link #release(String)}, e.g. of a transformation rule
+	 * @param listener
+	 * @return the shared statement
+	 * @throws EPException if the EPL is invalid, the name is already used or the listener is already registered
+	 */
+	public synchronized SharedStatement acquire(String epl, String name, UpdateListener listener) throws EPException {
+		if (name != null && listenersByName.containsKey(name)) {
+			throw new EPException("A statement with the name " + name + " is already registered.");
+		}
+		if (statementsByListener.containsKey(listener)) {
+			throw new EPException("The listener is already registered for a statement.");
+		}
+		String canonicalEPL = canonicalize(epl);
+		SharedStatement sharedStatement = statementsByEPL.get(canonicalEPL);
+		if (sharedStatement == null) {
+			boolean shareable = isStateless(epl);
+			sharedStatement = new SharedStatement(canonicalEPL, administrator.createEPL(epl), shareable);
+			if (shareable) {
+				statementsByEPL.put(canonicalEPL, sharedStatement);
+			}
+		} else {
+			numberOfSharedAcquisitions++;
+		}
+		sharedStatement.listeners.add(listener);
+		statementsByListener.put(listener, sharedStatement);
+		if (name != null) {
+			listenersByName.put(name, listener);
+		}
+		return sharedStatement;
+	}
+
+	/**
+	 * Detaches the listener from its statement. The statement is destroyed, if it has no listeners anymore.
+	 * @param listener
+	 * @return true, if the listener was registered
+	 */
+	public synchronized boolean release(UpdateListener listener) {
+		SharedStatement sharedStatement = statementsByListener.remove(listener);
+		if (sharedStatement == null) {
+			return false;
+		}
+		listenersByName.values().remove(listener);
+		sharedStatement.listeners.remove(listener);
+		if (sharedStatement.listeners.isEmpty()) {
+			if (sharedStatement.shareable) {
+				statementsByEPL.remove(sharedStatement.canonicalEPL);
+			}
+			sharedStatement.statement.removeAllListeners();
+			sharedStatement.statement.destroy();
+		}
+		return true;
+	}
+
+	/**
+	 * Detaches the listener registered with the given name from its statement.
+	 * @param name
+	 * @return true, if a listener was registered with the name
+	 */
+	public synchronized boolean release(String name) {
+		UpdateListener listener = listenersByName.get(name);
+		return listener != null && release(listener);
+	}
+
+	/**
+	 * @param listener
+	 * @return the statement the listener is attached to or null
+	 */
+	public synchronized SharedStatement getSharedStatement(UpdateListener listener) {
+		return statementsByListener.get(listener);
+	}
+
+	/**
+	 * @param name
+	 * @return the statement the listener with the given name is attached to or null
+	 */
+	public synchronized SharedStatement getSharedStatement(String name) {
+		UpdateListener listener = listenersByName.get(name);
+		return (listener == null) ? null : statementsByListener.get(listener);
+	}
+
+	/**
+	 * @return all statements currently registered
+	 */
+	public synchronized List<SharedStatement> getSharedStatements() {
+		return new ArrayList<SharedStatement>(new LinkedHashSet<SharedStatement>(statementsByListener.values()));
+	}
+
+	/**
+	 * @return number of acquisitions, which reused an existing statement instead of creating a new one
+	 */
+	public synchronized long getNumberOfSharedAcquisitions() {
+		return numberOfSharedAcquisitions;
+	}
+
+	/**
+	 * Returns whether the results of the statement depend only on the current event:
+	 * a select from a single filter stream without data window, pattern, subquery, aggregation, grouping or output rate.
+	 * @param epl
+	 * @return
+	 */
+	private boolean isStateless(String epl) {
+		EPStatementObjectModel model;
+		try {
+			model = administrator.compileEPL(epl);
+		} catch (EPException e) {
+			return false;
+		}
+		if (model.getSelectClause() == null || model.getFromClause() == null || model.getFromClause().getStreams().size() != 1
+				|| model.getCreateWindow() != null || model.getOnExpr() != null || model.getUpdateClause() != null
+				|| model.getMatchRecognizeClause() != null || model.getGroupByClause() != null || model.getHavingClause() != null
+				|| model.getOutputLimitClause() != null || model.getContextName() != null) {
+			return false;
+		}
+		Stream stream = model.getFromClause().getStreams().get(0);
+		if (!(stream instanceof FilterStream) || !((FilterStream) stream).getViews().isEmpty()) {
+			return false;
+		}
+		List<Expression> expressions = new ArrayList<Expression>();
+		expressions.add(((FilterStream) stream).getFilter().getFilter());
+		expressions.add(model.getWhereClause());
+		for (SelectClauseElement element : model.getSelectClause().getSelectList()) {
+			if (element instanceof SelectClauseExpression) {
+				expressions.add(((SelectClauseExpression) element).getExpression());
+			}
+		}
+		for (Expression expression : expressions) {
+			if (!isStateless(expression)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Aggregations (e.g. count, sum, window), previous, prior and subqueries keep state across events.
+	 */
+	private static boolean isStateless(Expression expression) {
+		if (expression == null) {
+			return true;
+		}
+		String name = expression.getClass().getSimpleName();
+		if (name.endsWith("ProjectionExpression") || name.startsWith("Subquery") || name.equals("PreviousExpression") || name.equals("PriorExpression")) {
+			return false;
+		}
+		for (Expression child : expression.getChildren()) {
+			if (!isStateless(child)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Normalizes the whitespace of an EPL statement outside of string literals and removes a trailing semicolon,
+	 * so statements differing only in formatting are recognized as equal.
+	 * @param epl
+	 * @return
+	 */
+	public static String canonicalize(String epl) {
+		StringBuilder sb = new StringBuilder(epl.length());
+		char quote = 0;
+		boolean pendingWhitespace = false;
+		for (int i = 0; i < epl.length(); i++) {
+			char c = epl.charAt(i);
+			if (quote == 0 && Character.isWhitespace(c)) {
+				pendingWhitespace = true;
+				continue;
+			}
+			if (pendingWhitespace && sb.length() > 0) {
+				sb.append(' ');
+			}
+			pendingWhitespace = false;
+			if (quote == 0 && (c == '\'' || c == '"')) {
+				quote = c;
+			} else if (c == quote && epl.charAt(i - 1) != '\\') {
+				quote = 0;
+			}
+			sb.append(c);
+		}
+		while (sb.length() > 0 && sb.charAt(sb.length() - 1) == ';') {
+			sb.setLength(sb.length() - 1);
+		}
+		return sb.toString().trim();
+	}
+
+	/**
+	 * An Esper statement shared by several listeners, if it is stateless.
+	 * The statement has only one listener, which dispatches the results to the attached listeners and counts the costs.
+	 */
+	public static class SharedStatement implements UpdateListener {
+
+		private final String canonicalEPL;
+		private final EPStatement statement;
+		private final boolean shareable;
+		private final List<UpdateListener> listeners = new CopyOnWriteArrayList<UpdateListener>();
+		private final AtomicLong numberOfUpdates = new AtomicLong();
+		private final AtomicLong numberOfEvents = new AtomicLong();
+		private final AtomicLong listenerTimeNanos = new AtomicLong();
+
+		private SharedStatement(String canonicalEPL, EPStatement statement, boolean shareable) {
+			this.canonicalEPL = canonicalEPL;
+			this.statement = statement;
+			this.shareable = shareable;
+			statement.addListener(this);
+		}
+
+		@Override
+		public void update(EventBean[] newEvents, EventBean[] oldEvents) {
+			long start = System.nanoTime();
+			for (UpdateListener listener : listeners) {
+				try {
+					listener.update(newEvents, oldEvents);
+				} catch (RuntimeException e) {
+					System.err.println("A listener of the statement " + canonicalEPL + " failed.");
+					e.printStackTrace();
+				}
+			}
+			listenerTimeNanos.addAndGet(System.nanoTime() - start);
+			numberOfUpdates.incrementAndGet();
+			if (newEvents != null) {
+				numberOfEvents.addAndGet(newEvents.length);
+			}
+		}
+
+		public String getCanonicalEPL() {
+			return canonicalEPL;
+		}
+
+		public EPStatement getStatement() {
+			return statement;
+		}
+
+		/**
+		 * @return true, if further listeners with the same EPL are attached to this statement
+		 */
+		public boolean isShareable() {
+			return shareable;
+		}
+
+		/**
+		 * @return number of listeners attached to the statement
+		 */
+		public int getNumberOfReferences() {
+			return listeners.size();
+		}
+
+		/**
+		 * @return number of times the statement delivered results
+		 */
+		public long getNumberOfUpdates() {
+			return numberOfUpdates.get();
+		}
+
+		/**
+		 * @return number of new events delivered by the statement
+		 */
+		public long getNumberOfEvents() {
+			return numberOfEvents.get();
+		}
+
+		/**
+		 * @return time in nanoseconds spent in the listeners of the statement
+		 */
+		public long getListenerTimeNanos() {
+			return listenerTimeNanos.get();
+		}
+
+		@Override
+		public String toString() {
+			return canonicalEPL + " (references: " + getNumberOfReferences() + ", updates: " + getNumberOfUpdates()
+					+ ", events: " + getNumberOfEvents() + ", listener time: " + getListenerTimeNanos() / 1000000 + " ms)";
+		}
+	}
+
+}
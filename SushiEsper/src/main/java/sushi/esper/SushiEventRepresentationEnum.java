@@ -0,0 +1,22 @@
+package sushi.esper;
+
+/**
+ * Encapsulates the representations in which events can be handed to Esper.
+ * XML_DOM registers every event type as XML-DOM type and converts each event into a DOM document.
+ * MAP registers every event type as Map type and sends the attribute values of the events directly.
+ */
+public enum SushiEventRepresentationEnum {
+
+	XML_DOM ("XML-DOM"),
+	MAP ("Map");
+
+	private String name;
+
+	SushiEventRepresentationEnum(String name){
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -2,17 +2,25 @@ package sushi.esper;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import sushi.adapter.SushiTrafficAdapter;
 import sushi.adapter.SushiWeatherAdapter;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
+import sushi.event.SushiWindowRetentionEnum;
 import sushi.query.SushiLiveQueryListener;
 import sushi.query.SushiPatternQuery;
 import sushi.query.SushiPatternQueryListener;
@@ -26,6 +34,7 @@ import com.espertech.esper.client.EPAdministrator;
 import com.espertech.esper.client.EPRuntime;
 import com.espertech.esper.client.EPServiceProviderManager;
 import com.espertech.esper.client.EPStatement;
+import com.espertech.esper.client.EventBean;
 import com.espertech.esper.client.EventType;
 import com.espertech.esper.client.time.CurrentTimeEvent;
 import com.espertech.esper.client.time.TimerControlEvent;
@@ -33,15 +42,28 @@ import com.espertech.esper.core.service.EPServiceProviderSPI;
 
 /**
  * Adapter for the Esper event proccesing engine.
+ * Each event type has a named window, which keeps its events for on-demand queries.
+ * The retention of the window is configured per event type ({@link SushiEventType#getWindowRetention()})
+ * or by the default retention of the adapter, so the memory of a long-running engine is bounded.
+ * The windows are indexed by the ID of the events, which are removed by sending their IDs to an on-delete statement
+ * of the window, so removing events does not parse a statement per event.
  */
 @SuppressWarnings("serial")
 public class SushiStreamProcessingAdapter implements Serializable {
 
 	private static SushiStreamProcessingAdapter instance = null;
+	private static SushiEventRepresentationEnum eventRepresentation = SushiEventRepresentationEnum.XML_DOM;
+	public static final SushiWindowRetentionEnum DEFAULT_WINDOW_RETENTION = SushiWindowRetentionEnum.LENGTH;
+	public static final long DEFAULT_WINDOW_RETENTION_SIZE = 100000;
+	private static SushiWindowRetentionEnum defaultWindowRetention = DEFAULT_WINDOW_RETENTION;
+	private static long defaultWindowRetentionSize = DEFAULT_WINDOW_RETENTION_SIZE;
 	private Configuration esperConfiguration;
 	private EPServiceProviderSPI esperServiceProvider;
 	private EPRuntime esperRuntime;
 	private HashMap<SushiQuery, SushiLiveQueryListener> queryListeners;
+	private StatementRegistry statementRegistry;
+	private Map<String, List<EPStatement>> windowStatements = new HashMap<String, List<EPStatement>>();
+	private Map<String, Set<String>> windowIndexNames = new HashMap<String, Set<String>>();
 	private boolean activatedTomTomAdapter = false;
 	private boolean activatedWeatherAdapter = false; 
 	private SushiTrafficAdapter trafficAdapter;
@@ -64,6 +86,47 @@ public class SushiStreamProcessingAdapter implements Serializable {
 		return (instance == null);
 	}
 	
+	/**
+	 * returns the representation in which event types are registered and events are sent to Esper
+	 */
+	public static SushiEventRepresentationEnum getEventRepresentation() {
+		return eventRepresentation;
+	}
+	
+	/**
+	 * sets the representation in which event types are registered and events are sent to Esper
+	 * has only an effect on instances created afterwards, so call it before {@link #getInstance()} or after {@link #clearInstance()}
+	 * @param representation
+	 */
+	public static void setEventRepresentation(SushiEventRepresentationEnum representation) {
+		eventRepresentation = representation;
+	}
+	
+	/**
+	 * returns the retention of windows of event types without own retention
+	 */
+	public static SushiWindowRetentionEnum getDefaultWindowRetention() {
+		return defaultWindowRetention;
+	}
+	
+	/**
+	 * returns the number of events or seconds kept in windows of event types without own retention
+	 */
+	public static long getDefaultWindowRetentionSize() {
+		return defaultWindowRetentionSize;
+	}
+	
+	/**
+	 * sets the retention of windows of event types without own retention
+	 * has only an effect on windows created afterwards, so call it before {@link #getInstance()} or after {@link #clearInstance()}
+	 * @param retention
+	 * @param size number of events for {@link SushiWindowRetentionEnum#LENGTH}, number of seconds for {@link SushiWindowRetentionEnum#TIME}
+	 */
+	public static void setDefaultWindowRetention(SushiWindowRetentionEnum retention, long size) {
+		defaultWindowRetention = retention;
+		defaultWindowRetentionSize = size;
+	}
+	
 	public static void clearInstance() {
 		if (instance != null) {
 			instance.weatherAdapter.deleteQuartzJob();
@@ -89,6 +152,7 @@ public class SushiStreamProcessingAdapter implements Serializable {
 		esperRuntime = esperServiceProvider.getEPRuntime();
 		esperRuntime.sendEvent(new TimerControlEvent(TimerControlEvent.ClockType.CLOCK_EXTERNAL));
 		queryListeners = new HashMap<SushiQuery, SushiLiveQueryListener>();
+		statementRegistry = new StatementRegistry(esperServiceProvider.getEPAdministrator());
 		registerExistingEventTypes();
 		
 		List<SushiQuery> queries = SushiQuery.getAllLiveQueries();
@@ -120,7 +184,14 @@ public class SushiStreamProcessingAdapter implements Serializable {
 	 * checks if eventtype is already registered 
 	 */
 	public boolean isEventType(SushiEventType eventType) {
-		return esperServiceProvider.getEPAdministrator().getConfiguration().isEventTypeExists(eventType.getTypeName());
+		return isEventType(eventType.getTypeName());
+	}
+
+	/**
+	 * checks if an eventtype with the given name is already registered
+	 */
+	public boolean isEventType(String eventTypeName) {
+		return esperServiceProvider.getEPAdministrator().getConfiguration().isEventTypeExists(eventTypeName);
 	}
 
 	/**
@@ -164,37 +235,117 @@ public class SushiStreamProcessingAdapter implements Serializable {
 	}
 	
 	/**
-	 * converts the SushiEvents in XMLEvents and send them to esper
+	 * converts the SushiEvents in XMLEvents or map events, depending on the event representation, and send them to esper
 	 * @param event
 	 */
 	public void addEvent(SushiEvent event) {
+		long timeInMilliseconds = event.getTimestamp().getTime();
+		if (eventRepresentation == SushiEventRepresentationEnum.MAP) {
+			Map<String, Object> mapEvent = EsperUtils.eventToMap(event);
+			this.esperRuntime.sendEvent(new CurrentTimeEvent(timeInMilliseconds));
+			this.esperRuntime.sendEvent(mapEvent, event.getEventType().getTypeName());
+			return;
+		}
 		Node node = XMLUtils.eventToNode(event);
 //		XMLUtils.printDocument((Document) node);
-		if (node == null) System.err.println("Event was not parseable!");
-		long timeInMilliseconds = event.getTimestamp().getTime();
+		if (node == null) {
+			System.err.println("Event was not parseable!");
+		} else {
+			Document document = (Document) node;
+			Element eventID = document.createElement(EsperUtils.EVENT_ID);
+			eventID.setTextContent(String.valueOf(event.getID()));
+			document.getDocumentElement().appendChild(eventID);
+		}
 		this.esperRuntime.sendEvent(new CurrentTimeEvent(timeInMilliseconds));
 		this.esperRuntime.sendEvent(node);
 	}
+
+	/**
+	 * Sends an event without attribute values, e.g. a pattern event derived from a query match, to esper.
+	 * Unlike {@link #addEvent(SushiEvent)}, neither the event type nor the process instances are loaded from the database.
+	 * @param eventTypeName
+	 * @param timestamp
+	 * @param processInstanceIDs
+	 */
+	public void addEvent(String eventTypeName, Date timestamp, Collection<Integer> processInstanceIDs) {
+		List<Integer> processInstanceIDList = new ArrayList<Integer>(processInstanceIDs);
+		this.esperRuntime.sendEvent(new CurrentTimeEvent(timestamp.getTime()));
+		if (eventRepresentation == SushiEventRepresentationEnum.MAP) {
+			Map<String, Object> mapEvent = new HashMap<String, Object>();
+			mapEvent.put("Timestamp", timestamp);
+			mapEvent.put("ProcessInstances", processInstanceIDList);
+			this.esperRuntime.sendEvent(mapEvent, eventTypeName);
+		} else {
+			this.esperRuntime.sendEvent(XMLUtils.eventToNode(eventTypeName, timestamp, processInstanceIDList));
+		}
+	}
+
+	/**
+	 * Sends the event of the bean again to esper with a new timestamp, e.g. if a caught event is needed by another query.
+	 * The event is copied from the underlying map or XML node, so it is not converted to a {@link SushiEvent}.
+	 * @param bean
+	 * @param timestamp
+	 */
+	@SuppressWarnings("unchecked")
+	public void resendEvent(EventBean bean, Date timestamp) {
+		Object underlying = bean.getUnderlying();
+		if (underlying instanceof Map) {
+			Map<String, Object> mapEvent = new HashMap<String, Object>((Map<String, Object>) underlying);
+			mapEvent.put("Timestamp", timestamp);
+			this.esperRuntime.sendEvent(new CurrentTimeEvent(timestamp.getTime()));
+			this.esperRuntime.sendEvent(mapEvent, bean.getEventType().getName());
+		} else if (underlying instanceof Node) {
+			Node node = ((Node) underlying).cloneNode(true);
+			Element root = (node instanceof Document) ? ((Document) node).getDocumentElement() : (Element) node;
+			Node child = root.getFirstChild();
+			while (child != null) {
+				if ("Timestamp".equals(child.getNodeName())) {
+					child.setTextContent(XMLUtils.getFormattedDate(timestamp));
+				}
+				child = child.getNextSibling();
+			}
+			this.esperRuntime.sendEvent(new CurrentTimeEvent(timestamp.getTime()));
+			this.esperRuntime.sendEvent(node);
+		}
+	}
 	
 	/**
-	 * converts SushiEventtyp to XML and send it to Esper
+	 * converts SushiEventtyp to XML or map type definition, depending on the event representation, and send it to Esper
 	 * @param eventType
 	 */
 	public void addEventType(SushiEventType eventType) {
 		if (isEventType(eventType)) return;
-		ConfigurationEventTypeXMLDOM dom = EsperUtils.eventTypeToXMLDom(eventType);		
-		this.esperServiceProvider.getEPAdministrator().getConfiguration().addEventType(eventType.getTypeName(), dom);
+		if (eventRepresentation == SushiEventRepresentationEnum.MAP) {
+			Map<String, Object> definition = EsperUtils.eventTypeToMapDefinition(eventType);
+			this.esperServiceProvider.getEPAdministrator().getConfiguration().addEventType(eventType.getTypeName(), definition);
+		} else {
+			ConfigurationEventTypeXMLDOM dom = EsperUtils.eventTypeToXMLDom(eventType);		
+			this.esperServiceProvider.getEPAdministrator().getConfiguration().addEventType(eventType.getTypeName(), dom);
+		}
 		this.createWindow(eventType);
 	}
 	
 	/**
-	 * deletes given events from event window
+	 * deletes given events from their event windows
+	 * events are identified by their ID, so they must have been saved before they were sent to esper
 	 * @param events
 	 */
 	public void removeEvents(List<SushiEvent> events) {
-		for (SushiEvent event: events) {
-			removeEvent(event);
-		}	
+		Map<String, List<Integer>> eventIDsByEventTypeName = new HashMap<String, List<Integer>>();
+		for (SushiEvent event : events) {
+			if (event.getEventType() == null || event.getID() == 0) {
+				continue;
+			}
+			List<Integer> eventIDs = eventIDsByEventTypeName.get(event.getEventType().getTypeName());
+			if (eventIDs == null) {
+				eventIDs = new ArrayList<Integer>();
+				eventIDsByEventTypeName.put(event.getEventType().getTypeName(), eventIDs);
+			}
+			eventIDs.add(event.getID());
+		}
+		for (Entry<String, List<Integer>> entry : eventIDsByEventTypeName.entrySet()) {
+			removeEventsByID(entry.getKey(), entry.getValue());
+		}
 	}
 	
 	/**
@@ -202,29 +353,43 @@ public class SushiStreamProcessingAdapter implements Serializable {
 	 * @param event
 	 */
 	public void removeEvent(SushiEvent event) {
-		StringBuffer sb = new StringBuffer();
-		sb.append("DELETE FROM " + event.getEventType().getTypeName() + "Window WHERE ");
-		sb.append("(Timestamp.getTime() = " + event.getTimestamp().getTime() + ")");
-		Iterator<String> iterator = event.getValues().keySet().iterator();
-		while (iterator.hasNext()) {
-			String key = iterator.next();
-			Serializable value = event.getValues().get(key);
-			if (value instanceof String) {
-				sb.append(" AND (" + key + " = '" + value + "')");
-			} else if (value instanceof Date) {
-				sb.append(" AND (" + key + ".getTime() = " + ((Date) value).getTime() + ")");
-			} else {
-				sb.append(" AND (" + key + " = " + value + ")");
-			}
-		}	
-		this.esperRuntime.executeQuery(sb.toString());
+		removeEvents(Arrays.asList(event));
+	}
+	
+	/**
+	 * deletes the events with the given IDs from the window of the event type
+	 * each ID is sent to the on-delete statement of the window, which finds the event by the index of the window
+	 * @param eventTypeName
+	 * @param eventIDs
+	 */
+	public void removeEventsByID(String eventTypeName, Collection<Integer> eventIDs) {
+		String removalEventTypeName = getRemovalEventTypeName(eventTypeName);
+		if (!isEventType(removalEventTypeName)) {
+			return;
+		}
+		for (Integer eventID : eventIDs) {
+			Map<String, Object> removalEvent = new HashMap<String, Object>();
+			removalEvent.put(EsperUtils.EVENT_ID, eventID);
+			this.esperRuntime.sendEvent(removalEvent, removalEventTypeName);
+		}
 	}
 	
 	/**
-	 * deletes Eventype from Esper
+	 * deletes Eventype and its window from Esper
 	 * @param eventType
 	 */
 	public void removeEventType(SushiEventType eventType) {
+		List<EPStatement> statements = windowStatements.remove(eventType.getTypeName());
+		if (statements != null) {
+			for (int i = statements.size() - 1; i >= 0; i--) {
+				statements.get(i).destroy();
+			}
+		}
+		windowIndexNames.remove(eventType.getTypeName());
+		String removalEventTypeName = getRemovalEventTypeName(eventType.getTypeName());
+		if (isEventType(removalEventTypeName)) {
+			this.esperServiceProvider.getEPAdministrator().getConfiguration().removeEventType(removalEventTypeName, true);
+		}
 		this.esperServiceProvider.getEPAdministrator().getConfiguration().removeEventType(eventType.getTypeName(), true);
 	}
 	
@@ -244,34 +409,30 @@ public class SushiStreamProcessingAdapter implements Serializable {
 
 	/**
 	 * registers live query to Esper and starts a listener to it
+	 * stateless live queries with the same query string share one statement, see {@link StatementRegistry}
 	 *  
 	 * @param liveQuery
 	 * @return Listener which will get notifications if live-query gets triggered
 	 */
 	public SushiLiveQueryListener addLiveQuery(SushiQuery liveQuery) {
-		EPStatement newStatement = esperServiceProvider.getEPAdministrator().createEPL(liveQuery.getQueryString());
 		SushiLiveQueryListener listener = new SushiLiveQueryListener(liveQuery);
-		newStatement.addListener(listener);
+		statementRegistry.acquire(liveQuery.getQueryString(), null, listener);
 		queryListeners.put(liveQuery, listener);
 		return listener;
 	}
 	
 	public SushiPatternQueryListener addPatternQuery(SushiPatternQuery sushiPatternQuery) {
-		EPStatement newStatement = esperServiceProvider.getEPAdministrator().createEPL(sushiPatternQuery.getQueryString());
 		SushiLiveQueryListener listener = new SushiPatternQueryListener(sushiPatternQuery);
-		newStatement.addListener(listener);
-		sushiPatternQuery.setEPStatement(newStatement);
+		sushiPatternQuery.setEPStatement(statementRegistry.acquire(sushiPatternQuery.getQueryString(), null, listener).getStatement());
 		queryListeners.put(sushiPatternQuery, listener);
 		return (SushiPatternQueryListener) listener;
 	}
 	
 	public SushiPatternQueryListener updatePatternQuery(SushiPatternQuery sushiPatternQuery) {
 		//Erstes altes Statement löschen
-		esperServiceProvider.getEPAdministrator().getStatement(sushiPatternQuery.getEPStatement().getName()).destroy();
+		statementRegistry.release(sushiPatternQuery.getListener());
 		
-		EPStatement newStatement = esperServiceProvider.getEPAdministrator().createEPL(sushiPatternQuery.getQueryString());
-		newStatement.addListener(sushiPatternQuery.getListener());
-		sushiPatternQuery.setEPStatement(newStatement);
+		sushiPatternQuery.setEPStatement(statementRegistry.acquire(sushiPatternQuery.getQueryString(), null, sushiPatternQuery.getListener()).getStatement());
 		return (SushiPatternQueryListener) sushiPatternQuery.getListener();
 	}
 
@@ -282,7 +443,10 @@ public class SushiStreamProcessingAdapter implements Serializable {
 	 */
 	public boolean removeLiveQuery(String queryName) {
 		SushiQuery query = getLiveQueryByTitle(queryName);
-		queryListeners.remove(query);
+		SushiLiveQueryListener listener = queryListeners.remove(query);
+		if (listener != null) {
+			statementRegistry.release(listener);
+		}
 		return query.remove() != null;
 	}
 
@@ -365,6 +529,7 @@ public class SushiStreamProcessingAdapter implements Serializable {
 
 	/**
 	 * creates window in esper for the given eventtype
+	 * the window keeps the events according to the retention of the event type and is indexed by the IDs of the events
 	 * @param eventType
 	 */
 	public void createWindow(SushiEventType eventType) {
@@ -372,9 +537,92 @@ public class SushiStreamProcessingAdapter implements Serializable {
 			addEventType(eventType);
 			return;
 		}
-		if (hasWindow(eventType.getTypeName() + "Window")) return;
-		esperServiceProvider.getEPAdministrator().createEPL("CREATE WINDOW " + eventType.getTypeName() + "Window.win:keepall() AS " + eventType.getTypeName() );
-		esperServiceProvider.getEPAdministrator().createEPL("INSERT INTO " + eventType.getTypeName() + "Window SELECT * FROM " + eventType.getTypeName());
+		String windowName = getWindowName(eventType);
+		if (hasWindow(windowName)) return;
+		EPAdministrator administrator = esperServiceProvider.getEPAdministrator();
+		List<EPStatement> statements = new ArrayList<EPStatement>();
+		statements.add(administrator.createEPL("CREATE WINDOW " + windowName + "." + getWindowView(eventType) + " AS " + eventType.getTypeName()));
+		statements.add(administrator.createEPL("INSERT INTO " + windowName + " SELECT * FROM " + eventType.getTypeName()));
+		windowStatements.put(eventType.getTypeName(), statements);
+		windowIndexNames.put(eventType.getTypeName(), new HashSet<String>());
+		createWindowIndex(eventType, EsperUtils.EVENT_ID);
+		
+		String removalEventTypeName = getRemovalEventTypeName(eventType.getTypeName());
+		if (!isEventType(removalEventTypeName)) {
+			Map<String, Object> definition = new HashMap<String, Object>();
+			definition.put(EsperUtils.EVENT_ID, Integer.class);
+			administrator.getConfiguration().addEventType(removalEventTypeName, definition);
+		}
+		statements.add(administrator.createEPL("ON " + removalEventTypeName + " AS r DELETE FROM " + windowName + " AS w "
+				+ "WHERE w." + EsperUtils.EVENT_ID + " = r." + EsperUtils.EVENT_ID));
+	}
+	
+	/**
+	 * creates an index on the window of the event type for the given attributes, 
+	 * so on-demand queries and on-delete statements comparing these attributes look up the events instead of scanning the window
+	 * the index is destroyed together with the window
+	 * @param eventType
+	 * @param attributeExpressions attributes on the first level of the event type, the index is unique by this combination
+	 * @return name of the index or null, if the event type has no window
+	 */
+	public String createWindowIndex(SushiEventType eventType, String... attributeExpressions) {
+		List<EPStatement> statements = windowStatements.get(eventType.getTypeName());
+		if (statements == null) {
+			return null;
+		}
+		StringBuffer indexName = new StringBuffer(getWindowName(eventType) + "Index");
+		StringBuffer columns = new StringBuffer();
+		for (String attributeExpression : attributeExpressions) {
+			indexName.append("_" + attributeExpression.replaceAll("[^A-Za-z0-9_]", "_"));
+			if (columns.length() > 0) {
+				columns.append(", ");
+			}
+			columns.append(attributeExpression);
+		}
+		Set<String> indexNames = windowIndexNames.get(eventType.getTypeName());
+		if (indexNames.add(indexName.toString())) {
+			statements.add(esperServiceProvider.getEPAdministrator().createEPL("CREATE INDEX " + indexName + " ON " + getWindowName(eventType) + " (" + columns + ")"));
+		}
+		return indexName.toString();
+	}
+	
+	/**
+	 * returns the names of the indexes on the window of the event type
+	 * @param eventType
+	 * @return
+	 */
+	public Set<String> getWindowIndexNames(SushiEventType eventType) {
+		Set<String> indexNames = windowIndexNames.get(eventType.getTypeName());
+		return (indexNames == null) ? new HashSet<String>() : new HashSet<String>(indexNames);
+	}
+	
+	/**
+	 * returns the view of the window of the event type, which defines how long events are kept
+	 */
+	private static String getWindowView(SushiEventType eventType) {
+		SushiWindowRetentionEnum retention = eventType.getWindowRetention();
+		long size = eventType.getWindowRetentionSize();
+		if (retention == null || (retention != SushiWindowRetentionEnum.EXTERNAL && size <= 0)) {
+			retention = defaultWindowRetention;
+			size = defaultWindowRetentionSize;
+		}
+		switch (retention) {
+		case LENGTH:
+			return "win:length(" + size + ")";
+		case TIME:
+			//the engine time follows the timestamps of the events
+			return "win:time(" + size + " sec)";
+		default:
+			return "win:keepall()";
+		}
+	}
+	
+	private static String getWindowName(SushiEventType eventType) {
+		return eventType.getTypeName() + "Window";
+	}
+	
+	private static String getRemovalEventTypeName(String eventTypeName) {
+		return eventTypeName + "WindowRemoval";
 	}
 
 	public EPRuntime getEsperRuntime() {
@@ -434,4 +682,11 @@ public class SushiStreamProcessingAdapter implements Serializable {
 	public EPStatement getStatement(String name) {
 		return getEsperAdministrator().getStatement(name);
 	}
+
+	/**
+	 * returns the registry of the statements of live queries and transformation rules
+	 */
+	public StatementRegistry getStatementRegistry() {
+		return statementRegistry;
+	}
 }
\ No newline at end of file
@@ -11,8 +11,7 @@ import java.util.Map;
 
 import org.w3c.dom.Node;
 
-import sushi.event.SushiEvent;
-import sushi.event.SushiEventType;
+import sushi.event.ExternalKnowledgeIndex;
 
 /**
  * This class contains methods that have been registered to Esper.
@@ -162,7 +161,8 @@ public class SushiUtils {
 	}
 	
 	/**
-	 * Returns attribute values of events with a certain event type and attribute expressions. 
+	 * Returns attribute values of events with a certain event type and attribute expressions.
+	 * The values are looked up in the {@link ExternalKnowledgeIndex} instead of the database.
 	 * @param eventTypeName
 	 * @param attributeExpression
 	 * @param array
@@ -173,7 +173,7 @@ public class SushiUtils {
 		for (int i = 0; i < array.length; i = i+2) {
 			attributeExpressionsAndValues.put((String) array[i], (Serializable) array[i+1]);
 		}
-		return SushiEvent.findValueByEventTypeAndAttributeExpressionsAndValues(SushiEventType.findByTypeName(eventTypeName), attributeExpression, attributeExpressionsAndValues);
+		return ExternalKnowledgeIndex.getInstance().findValue(eventTypeName, attributeExpression, attributeExpressionsAndValues);
 	}
 	
 	/**
@@ -209,4 +209,30 @@ public class SushiUtils {
 		}
 		return result;
 	}
+	
+	/**
+	 * Sums up the attribute values of certain attribute from each event of an event list.
+	 * Used if the events are sent to Esper as map events.
+	 * @param events
+	 * @param attributeName
+	 * @return
+	 */
+	public static Integer sumFromEventList(Map[] events, String attributeName) {
+		String[] attributeNameByLevels = attributeName.split("\\.");
+		Integer result = 0;
+		if (events != null) {
+			for (Map event : events) {
+				Object currentAttribute = event;
+				for (int i = 0; i < attributeNameByLevels.length && currentAttribute instanceof Map; i++) {
+					currentAttribute = ((Map) currentAttribute).get(attributeNameByLevels[i]);
+				}
+				try {
+					result += new Integer(currentAttribute.toString());
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return result;
+	}
 }
@@ -7,8 +7,10 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import sushi.correlation.Correlator;
 import sushi.esper.SushiStreamProcessingAdapter;
+import sushi.event.ExternalKnowledgeIndex;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
+import sushi.event.rollup.EventRollup;
 import sushi.notification.SushiNotificationRule;
 import sushi.notification.SushiNotificationRuleForEvent;
 
@@ -19,6 +21,14 @@ import sushi.notification.SushiNotificationRuleForEvent;
 public class Broker{
 	
 	private static Lock lock = new ReentrantLock(true);
+	private static IngestionPipeline pipeline = null;
+	private static int pipelineQueueCapacity = IngestionPipeline.DEFAULT_QUEUE_CAPACITY;
+	private static int pipelineBatchSize = IngestionPipeline.DEFAULT_BATCH_SIZE;
+	
+	static {
+		// the rollups are reconciled under the lock, so they do not count events twice, which are saved but not yet added
+		EventRollup.setIngestionLock(lock);
+	}
 	
 	/**
 	 * This method should be used to insert events into the platform.
@@ -29,13 +39,22 @@ public class Broker{
 	 */
 	public static SushiEvent send(SushiEvent event) {
 		lock.lock();
-		System.out.println(event);
-		event.save();
-		Correlator.correlate(Arrays.asList(event));
-		SushiStreamProcessingAdapter.getInstance().addEvent(event);
-		NotificationObservable.getInstance().trigger(event);
-		lock.unlock();
-		return event;
+		try {
+			System.out.println(event);
+			SushiEvent savedEvent = event.save();
+			if (savedEvent != null) {
+				// an event loaded in another unit of work is merged, the platform continues with its managed copy
+				event = savedEvent;
+			}
+			ExternalKnowledgeIndex.getInstance().eventsAdded(Arrays.asList(event));
+			EventRollup.getInstance().eventsAdded(Arrays.asList(event));
+			Correlator.correlate(Arrays.asList(event));
+			SushiStreamProcessingAdapter.getInstance().addEvent(event);
+			NotificationObservable.getInstance().trigger(event);
+			return event;
+		} finally {
+			lock.unlock();
+		}
 	}
 	
 	
@@ -47,13 +66,18 @@ public class Broker{
 	 */
 	public static SushiNotificationRule send(SushiNotificationRule rule) {
 		lock.lock();
-		rule.save();
 		try {
+			SushiNotificationRule savedRule = (SushiNotificationRule) rule.save();
+			if (savedRule != null) {
+				rule = savedRule;
+			}
 			SushiNotificationRuleForEvent eventRule = (SushiNotificationRuleForEvent) rule;
 			NotificationObservable.getInstance().addNotificationObserver(eventRule);
 			return rule;
 		} catch (Exception e) {
 			return null;
+		} finally {
+			lock.unlock();
 		}
 	}
 	
@@ -66,16 +90,21 @@ public class Broker{
 	 */
 	public static SushiEventType send(SushiEventType eventType) {
 		lock.lock();
-		SushiEventType registered = SushiEventType.findByTypeName(eventType.getTypeName()); 
-		if (registered != null) {
-			System.err.println("An EventType with name :" + eventType.getTypeName() + " is already saved.");
+		try {
+			SushiEventType registered = SushiEventType.findByTypeName(eventType.getTypeName()); 
+			if (registered != null) {
+				System.err.println("An EventType with name :" + eventType.getTypeName() + " is already saved.");
+				return registered;
+			}
+			SushiEventType savedEventType = eventType.save();
+			if (savedEventType != null) {
+				eventType = savedEventType;
+			}
+			SushiStreamProcessingAdapter.getInstance().addEventType(eventType);
+			return eventType;
+		} finally {
 			lock.unlock();
-			return registered;
 		}
-		eventType.save();
-		SushiStreamProcessingAdapter.getInstance().addEventType(eventType);
-		lock.unlock();
-		return eventType;
 	}
 		
 	/**
@@ -87,14 +116,81 @@ public class Broker{
 	 */
 	public static List<SushiEvent> send(List<SushiEvent> events) {
 		lock.lock();
-		if(events != null && !events.isEmpty()){
-			SushiEvent.save(events);
-			Correlator.correlate(events);
-			SushiStreamProcessingAdapter.getInstance().addEvents(events);
-			NotificationObservable.getInstance().trigger(events);
+		try {
+			if(events != null && !events.isEmpty()){
+				SushiEvent.save(events);
+				ExternalKnowledgeIndex.getInstance().eventsAdded(events);
+				EventRollup.getInstance().eventsAdded(events);
+				Correlator.correlate(events);
+				SushiStreamProcessingAdapter.getInstance().addEvents(events);
+				NotificationObservable.getInstance().trigger(events);
+			}
+			return events;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * This method can be used to send an event to the platform without waiting for its processing.
+	 * It will be saved in the database, correlated, send to the streaming engine 
+	 * and possibly invoke notifications by the {@link IngestionPipeline}.
+	 * @param event
+	 * @return future which is done after the event was processed
+	 */
+	public static IngestionFuture sendAsync(SushiEvent event) {
+		return sendAsync(Arrays.asList(event), null);
+	}
+	
+	/**
+	 * This method can be used to send several events to the platform without waiting for their processing.
+	 * They will be saved in the database, correlated, send to the streaming engine 
+	 * and possibly invoke notifications by the {@link IngestionPipeline}.
+	 * Blocks only if the pipeline is full, so it must not be called while holding the lock of the broker.
+	 * @param events
+	 * @param callback (optional) informed after the events were processed
+	 * @return future which is done after the events were processed
+	 */
+	public static IngestionFuture sendAsync(List<SushiEvent> events, IngestionCallback callback) {
+		return getPipeline().submit(events, callback);
+	}
+	
+	/**
+	 * Returns the pipeline for asynchronous sending and starts it if necessary.
+	 * @return
+	 */
+	public static synchronized IngestionPipeline getPipeline() {
+		if (pipeline == null || !pipeline.isRunning()) {
+			pipeline = new IngestionPipeline(pipelineQueueCapacity, pipelineBatchSize, lock);
+		}
+		return pipeline;
+	}
+	
+	/**
+	 * Configures the pipeline for asynchronous sending. 
+	 * A running pipeline is shut down and restarted with the new configuration on the next asynchronous sending.
+	 * @param queueCapacity maximal number of waiting submissions per pipeline stage
+	 * @param batchSize maximal number of events processed together by a pipeline stage
+	 */
+	public static synchronized void configurePipeline(int queueCapacity, int batchSize) {
+		pipelineQueueCapacity = queueCapacity;
+		pipelineBatchSize = batchSize;
+		shutdownPipeline();
+	}
+	
+	/**
+	 * Stops the pipeline for asynchronous sending and waits until the events waiting in the pipeline are processed.
+	 */
+	public static synchronized void shutdownPipeline() {
+		if (pipeline != null) {
+			pipeline.shutdown();
+			try {
+				pipeline.awaitTermination();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			pipeline = null;
 		}
-		lock.unlock();
-		return events;
 	}
 	
 	/**
@@ -105,10 +201,15 @@ public class Broker{
 	 */
 	public static SushiEventType remove(SushiEventType eventType) {
 		lock.lock();
-		eventType.remove();
-		SushiStreamProcessingAdapter.getInstance().removeEventType(eventType);
-		lock.unlock();
-		return eventType;
+		try {
+			eventType.remove();
+			ExternalKnowledgeIndex.getInstance().invalidate(eventType);
+			EventRollup.getInstance().eventTypeRemoved(eventType);
+			SushiStreamProcessingAdapter.getInstance().removeEventType(eventType);
+			return eventType;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -119,10 +220,17 @@ public class Broker{
 	 */	
 	public static SushiEvent remove(SushiEvent event) {
 		lock.lock();
-		SushiStreamProcessingAdapter.getInstance().removeEvent(event);
-		event.remove();
-		lock.unlock();
-		return event;
+		try {
+			SushiStreamProcessingAdapter.getInstance().removeEvent(event);
+			event.remove();
+			if (event.getEventType() != null) {
+				ExternalKnowledgeIndex.getInstance().invalidate(event.getEventType());
+			}
+			EventRollup.getInstance().eventsRemoved(Arrays.asList(event));
+			return event;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -0,0 +1,64 @@
+package sushi.eventhandling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import sushi.event.SushiEvent;
+import sushi.excel.importer.EventBatchHandler;
+
+/**
+ * Sends the batches of a streaming import to the platform with {@link Broker#sendAsync(List, IngestionCallback)},
+ * so the file is read further while the previous batches are saved.
+ * The events of a batch can be prepared before sending, e.g. to set their event type, by overriding {@link #prepare(List)}.
+ */
+public class IngestingEventBatchHandler implements EventBatchHandler {
+
+	private final List<IngestionFuture> futures = new ArrayList<IngestionFuture>();
+	private long numberOfSentEvents = 0;
+
+	@Override
+	public void handle(List<SushiEvent> events) {
+		prepare(events);
+		futures.add(Broker.sendAsync(events, null));
+		numberOfSentEvents += events.size();
+	}
+
+	/**
+	 * Called for each batch before it is sent.
+	 * @param events
+	 */
+	protected void prepare(List<SushiEvent> events) {
+	}
+
+	/**
+	 * Waits until all batches sent so far are ingested.
+	 * @return number of events saved in the database
+	 */
+	public long awaitIngestion() {
+		long numberOfSavedEvents = 0;
+		for (IngestionFuture future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+			if (future.isPersisted()) {
+				numberOfSavedEvents += future.getEvents().size();
+			}
+		}
+		return numberOfSavedEvents;
+	}
+
+	/**
+	 * @return number of events sent so far, the result of {@link #awaitIngestion()} is smaller,
+	 * if some of them could not be saved
+	 */
+	public long getNumberOfSentEvents() {
+		return numberOfSentEvents;
+	}
+
+}
@@ -0,0 +1,28 @@
+package sushi.eventhandling;
+
+import java.util.List;
+
+import sushi.event.SushiEvent;
+
+/**
+ * Callback for events sent asynchronously to the platform with {@link Broker#sendAsync(List, IngestionCallback)}.
+ * The methods are called by the threads of the {@link IngestionPipeline}, so they should return quickly.
+ */
+public interface IngestionCallback {
+
+	/**
+	 * Called after the events have been saved, correlated, sent to the streaming engine
+	 * and the notification rules have been triggered.
+	 * @param events
+	 */
+	public void ingested(List<SushiEvent> events);
+
+	/**
+	 * Called if one of the ingestion steps failed for the events.
+	 * The following steps are not executed for these events.
+	 * @param events
+	 * @param exception
+	 */
+	public void failed(List<SushiEvent> events, Exception exception);
+
+}
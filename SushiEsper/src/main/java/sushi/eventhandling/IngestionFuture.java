@@ -0,0 +1,115 @@
+package sushi.eventhandling;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import sushi.event.SushiEvent;
+
+/**
+ * Result of events sent asynchronously to the platform.
+ * It is completed by the {@link IngestionPipeline} after the last ingestion step.
+ * Events already handed to the pipeline can not be cancelled.
+ * It is completed or failed only once, so the callback is informed only once.
+ */
+public class IngestionFuture implements Future<List<SushiEvent>> {
+
+	private final List<SushiEvent> events;
+	private final IngestionCallback callback;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+	private volatile boolean persisted = false;
+	private volatile Exception exception;
+
+	public IngestionFuture(List<SushiEvent> events, IngestionCallback callback) {
+		this.events = events;
+		this.callback = callback;
+	}
+
+	public List<SushiEvent> getEvents() {
+		return events;
+	}
+
+	/**
+	 * Marks the events as ingested and informs the callback.
+	 */
+	void complete() {
+		if (!finished.compareAndSet(false, true)) {
+			return;
+		}
+		done.countDown();
+		if (callback != null) {
+			callback.ingested(events);
+		}
+	}
+
+	/**
+	 * Marks the ingestion of the events as failed and informs the callback.
+	 * @param exception
+	 */
+	void fail(Exception exception) {
+		if (!finished.compareAndSet(false, true)) {
+			return;
+		}
+		this.exception = exception;
+		done.countDown();
+		if (callback != null) {
+			callback.failed(events, exception);
+		}
+	}
+
+	/**
+	 * Marks the events as saved in the database.
+	 */
+	void persisted() {
+		persisted = true;
+	}
+
+	/**
+	 * @return true, if the events were saved in the database, even if a later ingestion step failed
+	 */
+	public boolean isPersisted() {
+		return persisted;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public List<SushiEvent> get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getResult();
+	}
+
+	@Override
+	public List<SushiEvent> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException("Events were not ingested within " + timeout + " " + unit);
+		}
+		return getResult();
+	}
+
+	private List<SushiEvent> getResult() throws ExecutionException {
+		if (exception != null) {
+			throw new ExecutionException(exception);
+		}
+		return events;
+	}
+
+}
@@ -0,0 +1,288 @@
+package sushi.eventhandling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Lock;
+
+import sushi.correlation.Correlator;
+import sushi.esper.SushiStreamProcessingAdapter;
+import sushi.event.ExternalKnowledgeIndex;
+import sushi.event.SushiEvent;
+import sushi.event.rollup.EventRollup;
+import sushi.persistence.Persistor;
+
+/**
+ * Staged ingestion of events, used by {@link Broker#sendAsync(List, IngestionCallback)}.
+ * The steps of {@link Broker#send(List)} run in separate threads: persistence, correlation,
+ * sending to the streaming engine and notification. The stages are connected by bounded queues,
+ * so producers only wait if the queue of the first stage is full (back-pressure).
+ * Each stage takes as many waiting submissions as fit into one batch and processes them together.
+ *
+ * Persistence, correlation and the streaming engine process their batches under the lock of the {@link Broker}:
+ * the rollups must not be reconciled between saving and counting the events,
+ * process instances must not be correlated concurrently and the listeners of the streaming engine send events themselves.
+ * Notifications are triggered without the lock, so the next batch can already be saved meanwhile.
+ * Each stage uses an entity manager of its own thread.
+ * The events keep their order across all stages.
+ */
+public class IngestionPipeline {
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/**
+	 * Marks the end of the submissions, it is passed through all stages on shutdown.
+	 */
+	private static final IngestionFuture END_OF_SUBMISSIONS = new IngestionFuture(Collections.<SushiEvent>emptyList(), null);
+
+	private final int batchSize;
+	private final Lock lock;
+	private final BlockingQueue<IngestionFuture> persistenceQueue;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private volatile boolean running = true;
+
+	/**
+	 * Creates and starts a pipeline.
+	 * @param queueCapacity maximal number of waiting submissions per stage
+	 * @param batchSize maximal number of events processed together by a stage,
+	 * a single submission with more events is processed as one batch
+	 * @param lock lock held while a stage, which shares data with the synchronous sending, processes a batch
+	 */
+	public IngestionPipeline(int queueCapacity, int batchSize, Lock lock) {
+		this.batchSize = batchSize;
+		this.lock = lock;
+		this.persistenceQueue = new ArrayBlockingQueue<IngestionFuture>(queueCapacity);
+		BlockingQueue<IngestionFuture> correlationQueue = new ArrayBlockingQueue<IngestionFuture>(queueCapacity);
+		BlockingQueue<IngestionFuture> engineQueue = new ArrayBlockingQueue<IngestionFuture>(queueCapacity);
+		BlockingQueue<IngestionFuture> notificationQueue = new ArrayBlockingQueue<IngestionFuture>(queueCapacity);
+
+		stages.add(new Stage("Persistence", persistenceQueue, correlationQueue, true) {
+			@Override
+			protected void process(List<SushiEvent> events) {
+				if (SushiEvent.save(events) == null) {
+					throw new RuntimeException("Events could not be saved.");
+				}
+				ExternalKnowledgeIndex.getInstance().eventsAdded(events);
+				EventRollup.getInstance().eventsAdded(events);
+			}
+
+			@Override
+			protected void processed(IngestionFuture future) {
+				future.persisted();
+			}
+		});
+		stages.add(new Stage("Correlation", correlationQueue, engineQueue, true) {
+			@Override
+			protected void process(List<SushiEvent> events) {
+				Correlator.correlate(events);
+			}
+		});
+		stages.add(new Stage("Engine", engineQueue, notificationQueue, true) {
+			@Override
+			protected void process(List<SushiEvent> events) {
+				SushiStreamProcessingAdapter.getInstance().addEvents(events);
+			}
+		});
+		stages.add(new Stage("Notification", notificationQueue, null, false) {
+			@Override
+			protected void process(List<SushiEvent> events) {
+				NotificationObservable.getInstance().trigger(events);
+			}
+		});
+		for (Stage stage : stages) {
+			stage.start();
+		}
+	}
+
+	/**
+	 * Hands the events to the pipeline. Blocks while the queue of the first stage is full,
+	 * so it must not be called while holding the lock of the {@link Broker}.
+	 * @param events
+	 * @param callback (optional) informed after the ingestion
+	 * @return future which is completed after the last stage
+	 */
+	public IngestionFuture submit(List<SushiEvent> events, IngestionCallback callback) {
+		IngestionFuture future = new IngestionFuture(events, callback);
+		if (events == null || events.isEmpty()) {
+			future.complete();
+			return future;
+		}
+		// no submission may follow the end of the submissions
+		synchronized (this) {
+			if (!running) {
+				future.fail(new IllegalStateException("The ingestion pipeline is shut down."));
+				return future;
+			}
+			try {
+				persistenceQueue.put(future);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.fail(e);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * Stops accepting submissions. The submissions already accepted are still processed by all stages,
+	 * use {@link #awaitTermination()} to wait for them.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			try {
+				persistenceQueue.put(END_OF_SUBMISSIONS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				// the submissions can not be processed without the end mark, so the stages are stopped immediately
+				for (Stage stage : stages) {
+					stage.interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits until all stages have processed the accepted submissions after {@link #shutdown()}.
+	 * @throws InterruptedException
+	 */
+	public void awaitTermination() throws InterruptedException {
+		for (Stage stage : stages) {
+			stage.join();
+		}
+	}
+
+	/**
+	 * @return true, if the pipeline accepts submissions
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return number of submissions waiting in all stages
+	 */
+	public int getNumberOfWaitingSubmissions() {
+		int waiting = 0;
+		for (Stage stage : stages) {
+			for (IngestionFuture future : stage.input) {
+				if (future != END_OF_SUBMISSIONS) {
+					waiting++;
+				}
+			}
+		}
+		return waiting;
+	}
+
+	/**
+	 * A stage takes submissions from its input queue, processes them batch-wise
+	 * and hands them to the next stage or completes them if it is the last stage.
+	 * It stops after it has processed all submissions before the end mark and handed the end mark on.
+	 */
+	private abstract class Stage extends Thread {
+
+		private final BlockingQueue<IngestionFuture> input;
+		private final BlockingQueue<IngestionFuture> output;
+		private final boolean locked;
+
+		private Stage(String name, BlockingQueue<IngestionFuture> input, BlockingQueue<IngestionFuture> output, boolean locked) {
+			super("IngestionPipeline-" + name);
+			this.input = input;
+			this.output = output;
+			this.locked = locked;
+			setDaemon(true);
+		}
+
+		protected abstract void process(List<SushiEvent> events);
+
+		/**
+		 * Called for each submission of a batch after the batch was processed.
+		 * @param future
+		 */
+		protected void processed(IngestionFuture future) {
+		}
+
+		@Override
+		public void run() {
+			try {
+				IngestionFuture first;
+				while ((first = input.take()) != END_OF_SUBMISSIONS) {
+					List<IngestionFuture> batch = new ArrayList<IngestionFuture>();
+					batch.add(first);
+					int numberOfEvents = first.getEvents().size();
+					IngestionFuture next;
+					while (numberOfEvents < batchSize && (next = input.peek()) != null && next != END_OF_SUBMISSIONS
+							&& numberOfEvents + next.getEvents().size() <= batchSize) {
+						batch.add(input.poll());
+						numberOfEvents += next.getEvents().size();
+					}
+					processBatch(batch);
+				}
+				if (output != null) {
+					output.put(END_OF_SUBMISSIONS);
+				}
+			} catch (InterruptedException e) {
+				// stopped without processing the remaining submissions
+				List<IngestionFuture> remaining = new ArrayList<IngestionFuture>();
+				input.drainTo(remaining);
+				failAll(remaining, new IllegalStateException("The ingestion pipeline was stopped."));
+			}
+		}
+
+		/**
+		 * Processes the batch and hands its submissions on.
+		 * Submissions, which were handed on, are not failed by this stage anymore.
+		 */
+		private void processBatch(List<IngestionFuture> batch) throws InterruptedException {
+			List<SushiEvent> events = new ArrayList<SushiEvent>();
+			for (IngestionFuture future : batch) {
+				events.addAll(future.getEvents());
+			}
+			if (locked) {
+				lock.lock();
+			}
+			try {
+				process(events);
+			} catch (Exception e) {
+				e.printStackTrace();
+				failAll(batch, e);
+				return;
+			} finally {
+				if (locked) {
+					lock.unlock();
+				}
+				// each batch is a unit of work of the thread of this stage
+				Persistor.closeEntityManager();
+			}
+			for (int i = 0; i < batch.size(); i++) {
+				IngestionFuture future = batch.get(i);
+				processed(future);
+				if (output == null) {
+					future.complete();
+					continue;
+				}
+				try {
+					output.put(future);
+				} catch (InterruptedException e) {
+					failAll(batch.subList(i, batch.size()), e);
+					throw e;
+				}
+			}
+		}
+
+		private void failAll(List<IngestionFuture> futures, Exception exception) {
+			for (IngestionFuture future : futures) {
+				if (future != END_OF_SUBMISSIONS) {
+					future.fail(exception);
+				}
+			}
+		}
+	}
+
+}
@@ -1,65 +1,101 @@
 package sushi.eventhandling;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
+import sushi.notification.SushiCondition;
+import sushi.notification.SushiNotificationForEvent;
 import sushi.notification.SushiNotificationRuleForEvent;
 
 /**
  * This method implements the Observable Pattern.
  * It saves the notification rules. It is informed by the broker about incoming events
  * and triggers the notification rules.
+ *
+ * The registered rules are kept in an immutable snapshot, which is replaced on every change (copy-on-write),
+ * so events can be triggered while rules are added or removed.
+ * For each event type, the rules with a condition are indexed by the attribute and value of the condition,
+ * so only the rules matching an event are looked up instead of checking every rule.
+ * Event types and rules are identified by their IDs, because each thread loads its own instances of them.
+ * The notifications are created in the triggering thread,
+ * while informing the users outside of the platform (e.g. by mail) runs in a separate thread.
  */
 public class NotificationObservable{
-	
+
 	private static NotificationObservable instance = null;
-	private Map<SushiEventType, HashSet<SushiNotificationRuleForEvent>> notifications = new HashMap<SushiEventType, HashSet<SushiNotificationRuleForEvent>>();
-	
+	private Map<Integer, Map<Integer, SushiNotificationRuleForEvent>> notifications = new HashMap<Integer, Map<Integer, SushiNotificationRuleForEvent>>();
+	private volatile Map<Integer, RuleIndex> ruleIndexes = Collections.emptyMap();
+	private final ExecutorService deliveryExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "NotificationDelivery");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
 	/**
 	 * Singleton, therefore the constructor is private.
 	 */
 	private NotificationObservable() {
 		initiateWithNotificationsFromDB();
 	}
-	
+
 	/**
 	 * Singleton class. Use this method to get the instance.
 	 * @return
 	 */
-	public static NotificationObservable getInstance() {
+	public static synchronized NotificationObservable getInstance() {
 		if (instance == null) {
 			instance = new NotificationObservable();
 		}
 		return instance;
 	}
-	
+
 	/**
 	 * Clears the singleton-object.
+	 * Deliveries already started are finished.
 	 */
 	public void clearInstance() {
-		instance = null;
+		synchronized (NotificationObservable.class) {
+			if (instance != null) {
+				instance.deliveryExecutor.shutdown();
+			}
+			instance = null;
+		}
 	}
-	
+
 	/**
 	 * Triggers the notification rule with an event.
 	 * A new notification will be created.
 	 * @param event
 	 */
 	public void trigger(SushiEvent event) {
-		Set<SushiNotificationRuleForEvent> notificationsToTrigger= notifications.get(event.getEventType());
-		if (notificationsToTrigger == null) return;
-		for (SushiNotificationRuleForEvent notification : notificationsToTrigger) {
-			if (notification.matches(event)) {
-				notification.trigger(event);
+		if (event.getEventType() == null) return;
+		RuleIndex index = ruleIndexes.get(event.getEventType().getID());
+		if (index == null) return;
+		for (SushiNotificationRuleForEvent notification : index.findMatchingRules(event)) {
+			SushiNotificationForEvent createdNotification = notification.createNotification(event);
+			Runnable delivery = notification.createDelivery(createdNotification);
+			if (delivery != null) {
+				deliveryExecutor.execute(delivery);
 			}
 		}
 	}
-	
+
 	/**
 	 * Registers the notifications from the database.
 	 */
@@ -69,43 +105,51 @@ public class NotificationObservable{
 			addNotificationObserver(notification);
 		}
 	}
-	
+
 	/**
 	 * Adds a new notification rule.
 	 * @param notification
 	 */
-	public void addNotificationObserver(SushiNotificationRuleForEvent notification) {
+	public synchronized void addNotificationObserver(SushiNotificationRuleForEvent notification) {
 		//get notifications already registered for this eventtype
-		HashSet<SushiNotificationRuleForEvent> listOfNotifcationsForEventType = notifications.get(notification.getEventType());
-		if (listOfNotifcationsForEventType == null) listOfNotifcationsForEventType = new HashSet<SushiNotificationRuleForEvent>();
-		listOfNotifcationsForEventType.add(notification);
-		notifications.put(notification.getEventType(), listOfNotifcationsForEventType);
+		int eventTypeID = notification.getEventType().getID();
+		Map<Integer, SushiNotificationRuleForEvent> listOfNotifcationsForEventType = notifications.get(eventTypeID);
+		if (listOfNotifcationsForEventType == null) listOfNotifcationsForEventType = new LinkedHashMap<Integer, SushiNotificationRuleForEvent>();
+		listOfNotifcationsForEventType.put(notification.getID(), notification);
+		notifications.put(eventTypeID, listOfNotifcationsForEventType);
+		publish(eventTypeID);
 	}
 
 	/**
 	 * Removes all notification rules that subscribed for the event type
 	 * @param eventType
 	 */
-	public void removeNotificationObserversForEventType(SushiEventType eventType) {
-		notifications.remove(eventType);
+	public synchronized void removeNotificationObserversForEventType(SushiEventType eventType) {
+		notifications.remove(eventType.getID());
+		publish(eventType.getID());
 	}
-	
-	public void clearNotifications() {
+
+	public synchronized void clearNotifications() {
 		notifications.clear();
+		ruleIndexes = Collections.emptyMap();
 	}
-	
+
 	/**
 	 * Removes a certain notification rule
 	 * @param notification
 	 */
-	public void removeNotificationObserver(SushiNotificationRuleForEvent notification) {
+	public synchronized void removeNotificationObserver(SushiNotificationRuleForEvent notification) {
 		//get notifications already registered for this eventtype
-		HashSet<SushiNotificationRuleForEvent> listOfNotifcationsForEventType = notifications.get(notification.getEventType());
+		int eventTypeID = notification.getEventType().getID();
+		Map<Integer, SushiNotificationRuleForEvent> listOfNotifcationsForEventType = notifications.get(eventTypeID);
 		if (listOfNotifcationsForEventType == null) return;
-		listOfNotifcationsForEventType.remove(notification);
-		notifications.put(notification.getEventType(), listOfNotifcationsForEventType);
+		listOfNotifcationsForEventType.remove(notification.getID());
+		if (listOfNotifcationsForEventType.isEmpty()) {
+			notifications.remove(eventTypeID);
+		}
+		publish(eventTypeID);
 	}
-	
+
 	/**
 	 * Removes several notification rules.
 	 * @param notifications
@@ -124,4 +168,91 @@ public class NotificationObservable{
 		for (SushiEvent event : events) trigger(event);
 	}
 
+	/**
+	 * Rebuilds the index for the event type and replaces the snapshot of indexes.
+	 * Must be called while holding the lock of this object.
+	 */
+	private void publish(int eventTypeID) {
+		Map<Integer, RuleIndex> newRuleIndexes = new HashMap<Integer, RuleIndex>(ruleIndexes);
+		Map<Integer, SushiNotificationRuleForEvent> rules = notifications.get(eventTypeID);
+		if (rules == null || rules.isEmpty()) {
+			newRuleIndexes.remove(eventTypeID);
+		} else {
+			newRuleIndexes.put(eventTypeID, new RuleIndex(rules.values()));
+		}
+		ruleIndexes = Collections.unmodifiableMap(newRuleIndexes);
+	}
+
+	/**
+	 * Returns the number of registered notification rules for the event type.
+	 * @param eventType
+	 */
+	public int getNumberOfNotificationRules(SushiEventType eventType) {
+		RuleIndex index = ruleIndexes.get(eventType.getID());
+		return (index == null) ? 0 : index.size;
+	}
+
+	/**
+	 * Immutable index of the notification rules of one event type.
+	 * A {@link SushiCondition} matches if the value of the attribute is a string equal to the condition value
+	 * or an integer equal to the parsed condition value, so a condition is indexed with both keys.
+	 */
+	private static class RuleIndex {
+
+		private final int size;
+		private final List<SushiNotificationRuleForEvent> rulesWithoutCondition = new ArrayList<SushiNotificationRuleForEvent>();
+		private final Map<String, Map<Serializable, List<SushiNotificationRuleForEvent>>> rulesByAttributeAndValue = new HashMap<String, Map<Serializable, List<SushiNotificationRuleForEvent>>>();
+
+		private RuleIndex(Collection<SushiNotificationRuleForEvent> rules) {
+			size = rules.size();
+			for (SushiNotificationRuleForEvent rule : rules) {
+				if (!rule.hasCondition()) {
+					rulesWithoutCondition.add(rule);
+					continue;
+				}
+				SushiCondition condition = rule.getCondition();
+				Map<Serializable, List<SushiNotificationRuleForEvent>> rulesByValue = rulesByAttributeAndValue.get(condition.getAttribute());
+				if (rulesByValue == null) {
+					rulesByValue = new HashMap<Serializable, List<SushiNotificationRuleForEvent>>();
+					rulesByAttributeAndValue.put(condition.getAttribute(), rulesByValue);
+				}
+				addRule(rulesByValue, condition.getValue(), rule);
+				try {
+					addRule(rulesByValue, Integer.parseInt(condition.getValue()), rule);
+				} catch (NumberFormatException e) {
+					//the condition matches only string values
+				}
+			}
+		}
+
+		private static void addRule(Map<Serializable, List<SushiNotificationRuleForEvent>> rulesByValue, Serializable value, SushiNotificationRuleForEvent rule) {
+			List<SushiNotificationRuleForEvent> rules = rulesByValue.get(value);
+			if (rules == null) {
+				rules = new ArrayList<SushiNotificationRuleForEvent>();
+				rulesByValue.put(value, rules);
+			}
+			rules.add(rule);
+		}
+
+		/**
+		 * Looks up the rules matching the event, each rule is returned once.
+		 */
+		private Set<SushiNotificationRuleForEvent> findMatchingRules(SushiEvent event) {
+			Set<SushiNotificationRuleForEvent> matchingRules = new LinkedHashSet<SushiNotificationRuleForEvent>(rulesWithoutCondition);
+			if (event.getValues() == null || rulesByAttributeAndValue.isEmpty()) {
+				return matchingRules;
+			}
+			for (Map.Entry<String, Map<Serializable, List<SushiNotificationRuleForEvent>>> entry : rulesByAttributeAndValue.entrySet()) {
+				Serializable value = event.getValues().get(entry.getKey());
+				if (value instanceof String || value instanceof Integer) {
+					List<SushiNotificationRuleForEvent> rules = entry.getValue().get(value);
+					if (rules != null) {
+						matchingRules.addAll(rules);
+					}
+				}
+			}
+			return matchingRules;
+		}
+	}
+
 }
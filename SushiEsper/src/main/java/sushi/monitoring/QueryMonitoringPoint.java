@@ -12,6 +12,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Query;
 import javax.persistence.Table;
 
+import sushi.persistence.MetadataCache;
 import sushi.persistence.Persistable;
 import sushi.persistence.Persistor;
 import sushi.process.SushiProcess;
@@ -27,6 +28,8 @@ import sushi.query.SushiQuery;
 public class QueryMonitoringPoint extends Persistable{
 
 	private static final long serialVersionUID = 1L;
+	
+	private static final MetadataCache<Integer, QueryMonitoringPoint> queryCache = MetadataCache.<Integer, QueryMonitoringPoint>create("QueryMonitoringPoint.findByQuery", QueryMonitoringPoint.class).dependsOnRemovalOf(SushiQuery.class);
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -143,6 +146,7 @@ public class QueryMonitoringPoint extends Persistable{
 			Query query = Persistor.getEntityManager().createQuery("DELETE FROM QueryMonitoringPoint");
 			int deleteRecords = query.executeUpdate();
 			entr.commit();
+			MetadataCache.invalidate(QueryMonitoringPoint.class);
 			System.out.println(deleteRecords + " records are deleted.");
 		} catch (Exception ex) {
 			System.out.println(ex.getMessage());
@@ -165,8 +169,17 @@ public class QueryMonitoringPoint extends Persistable{
 	 */
 	@SuppressWarnings("unchecked")
 	public static List<QueryMonitoringPoint> findByQuery(SushiQuery query){
+		List<QueryMonitoringPoint> cached = queryCache.get(query.getID());
+		if (cached != null) {
+			return cached;
+		}
 		Query q = Persistor.getEntityManager().createNativeQuery("SELECT * FROM QueryMonitoringPoint WHERE QUERY_ID = '" + query.getID() + "'", QueryMonitoringPoint.class);
-		return q.getResultList();
+		List<QueryMonitoringPoint> points = q.getResultList();
+		// new monitoring points, e.g. saved by cascade, do not always invalidate the cache, so an empty result is looked up again
+		if (!points.isEmpty()) {
+			queryCache.put(query.getID(), points);
+		}
+		return points;
 	}
 
 }
@@ -1,9 +1,9 @@
 package sushi.monitoring.bpmn;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import sushi.event.collection.SushiTree;
 import sushi.process.SushiProcess;
@@ -13,6 +13,9 @@ import sushi.query.SushiPatternQuery;
 
 /**
  * The central instance to get information for monitoring and analysing of the status of BPMN queries.
+ * The monitors are indexed by the IDs of the processes and process instances,
+ * so they can be found in constant time and updated from several threads.
+ * Query matches for known process instances are handled by ID, so the process instance is not loaded from the database.
  * @author micha
  */
 public class BPMNQueryMonitor {
@@ -24,13 +27,15 @@ public class BPMNQueryMonitor {
 	 * */
 	
 	private static BPMNQueryMonitor instance;
-	private Set<ProcessMonitor> processMonitors;
+	private ConcurrentMap<Integer, ProcessMonitor> processMonitors;
+	private ConcurrentMap<Integer, ProcessInstanceMonitor> processInstanceMonitors;
 
 	public BPMNQueryMonitor(){
-		processMonitors = new HashSet<ProcessMonitor>();
+		processMonitors = new ConcurrentHashMap<Integer, ProcessMonitor>();
+		processInstanceMonitors = new ConcurrentHashMap<Integer, ProcessInstanceMonitor>();
 	}
 	
-	public static BPMNQueryMonitor getInstance() {
+	public static synchronized BPMNQueryMonitor getInstance() {
 		//lazy initialize
 		if (instance == null) {
 			instance = new BPMNQueryMonitor();
@@ -64,22 +69,41 @@ public class BPMNQueryMonitor {
 		if(query != null && processInstance != null){
 			ProcessMonitor processMonitor = getProcessMonitorForProcess(processInstance.getProcess());
 			processMonitor.setQueryFinishedForProcessInstance(query, processInstance);
+			processInstanceMonitors.putIfAbsent(processInstance.getID(), processMonitor.getProcessInstanceMonitor(processInstance));
+		}
+	}
+	
+	/**
+	 * Sets the query finished for the process instance with the given ID.
+	 * The process instance is only loaded from the database, if it is not monitored yet.
+	 * @param query
+	 * @param processInstanceID
+	 */
+	public void setQueryFinishedForProcessInstance(SushiPatternQuery query, int processInstanceID){
+		if(query != null){
+			ProcessInstanceMonitor processInstanceMonitor = processInstanceMonitors.get(processInstanceID);
+			if(processInstanceMonitor != null){
+				processInstanceMonitor.setQueryFinished(query);
+			} else {
+				setQueryFinishedForProcessInstance(query, SushiProcessInstance.findByID(processInstanceID));
+			}
 		}
 	}
 	
 	public ProcessMonitor getProcessMonitorForProcess(SushiProcess process){
 		if(process != null){
-			for(ProcessMonitor processMonitor : processMonitors){
-				/*TODO: equals auf dem Process funktioniert nicht, da gleiche Prozesse mit verschiedenen IDs als Parameter kommen können:
-				 * SushiProcess.equals überschreiben?
-				 * Erstmal mit ID prüfen
-				 */
-				if(processMonitor.getProcess() != null && processMonitor.getProcess().getID() == process.getID()){
-					return processMonitor;
+			/*TODO: equals auf dem Process funktioniert nicht, da gleiche Prozesse mit verschiedenen IDs als Parameter kommen können:
+			 * SushiProcess.equals überschreiben?
+			 * Erstmal mit ID prüfen
+			 */
+			ProcessMonitor processMonitor = processMonitors.get(process.getID());
+			if(processMonitor == null){
+				ProcessMonitor newProcessMonitor = new ProcessMonitor(process);
+				processMonitor = processMonitors.putIfAbsent(process.getID(), newProcessMonitor);
+				if(processMonitor == null){
+					processMonitor = newProcessMonitor;
 				}
 			}
-			ProcessMonitor processMonitor = new ProcessMonitor(process);
-			processMonitors.add(processMonitor);
 			return processMonitor;
 		}
 		return null;
@@ -96,7 +120,7 @@ public class BPMNQueryMonitor {
 	}
 
 	public List<ProcessMonitor> getProcessMonitors() {
-		return new ArrayList<ProcessMonitor>(processMonitors);
+		return new ArrayList<ProcessMonitor>(processMonitors.values());
 	}
 	
 	public static void reset(){
@@ -105,10 +129,7 @@ public class BPMNQueryMonitor {
 	
 	private ProcessInstanceMonitor getProcessInstanceMonitor(SushiProcessInstance processInstance){
 		ProcessMonitor processMonitor = getProcessMonitorForProcess(processInstance.getProcess());
-		if(processMonitor.getProcessInstanceMonitor(processInstance) != null){
-			return processMonitor.getProcessInstanceMonitor(processInstance);
-		}
-		return null;
+		return processMonitor.getProcessInstanceMonitor(processInstance);
 	}
 
 }
@@ -5,16 +5,27 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import sushi.bpmn.element.AbstractBPMNElement;
 import sushi.event.collection.SushiTree;
 import sushi.process.SushiProcessInstance;
 import sushi.query.PatternQueryType;
 import sushi.query.SushiPatternQuery;
+import sushi.query.TimerService;
 
 /**
+ * Monitors the status of the queries for one process instance.
+ * The query monitors are indexed by their query, so a query match is handled without searching all query monitors.
+ * Status changes are synchronized, the status can be read concurrently.
+ * The query monitors report their status changes, so only the affected components are checked for violations.
+ * The start and end time of the process instance are updated with each status change
+ * and the changes are forwarded to the statistics of the {@link ProcessMonitor}.
  * @author micha
  */
 public class ProcessInstanceMonitor implements Serializable {
@@ -24,25 +35,57 @@ public class ProcessInstanceMonitor implements Serializable {
 	private SushiProcessInstance processInstance;
 	//TODO: Tree der QueryMonitors
 	private List<QueryMonitor> queryMonitors;
-	private ProcessInstanceStatus status;
+	private Map<SushiPatternQuery, QueryMonitor> queryMonitorsByQuery;
+	private QueryMonitor rootQueryMonitor;
+	private volatile ProcessInstanceStatus status;
 	private Date startTime;
 	private Date endTime;
 	private ViolationMonitor violationMonitor;
+	private Set<QueryMonitor> changedQueryMonitors = new LinkedHashSet<QueryMonitor>();
+	private ProcessMonitor processMonitor;
 	
 	public ProcessInstanceMonitor(SushiProcessInstance processInstance){
+		this(processInstance, null);
+	}
+	
+	/**
+	 * Creates a monitor for the process instance, which updates the statistics of the given {@link ProcessMonitor}.
+	 * @param processInstance
+	 * @param processMonitor
+	 */
+	public ProcessInstanceMonitor(SushiProcessInstance processInstance, ProcessMonitor processMonitor){
 		this.processInstance = processInstance;
+		this.processMonitor = processMonitor;
+		this.startTime = new Date();
+		this.endTime = this.startTime;
 		this.ID = processInstance.getID();
-		this.queryMonitors = new ArrayList<QueryMonitor>();
+		this.queryMonitors = new CopyOnWriteArrayList<QueryMonitor>();
+		this.queryMonitorsByQuery = new ConcurrentHashMap<SushiPatternQuery, QueryMonitor>();
 		this.violationMonitor = new ViolationMonitor(this);
 		refreshStatus();
 	}
 	
-	public void addQuery(SushiPatternQuery query){
-		this.queryMonitors.add(new QueryMonitor(query,QueryStatus.Started, processInstance));
+	public synchronized void addQuery(SushiPatternQuery query){
+		QueryMonitor queryMonitor = new QueryMonitor(query,QueryStatus.Started, processInstance);
+		queryMonitor.setProcessInstanceMonitor(this);
+		this.queryMonitors.add(queryMonitor);
+		this.queryMonitorsByQuery.put(query, queryMonitor);
+		if(rootQueryMonitor == null && query.getParentQuery() == null){
+			rootQueryMonitor = queryMonitor;
+		}
+		if(processMonitor != null){
+			processMonitor.queryMonitorAdded(queryMonitor);
+		}
+		if(queryMonitor.getStartTime().before(startTime)){
+			setTimes(queryMonitor.getStartTime(), endTime);
+		}
+		//the structure of the monitored components changed, so all queries are checked again
+		violationMonitor.queriesChanged();
+		changedQueryMonitors.addAll(queryMonitors);
 		refreshStatus();
 	}
 	
-	public void addQueries(Set<SushiPatternQuery> queries) {
+	public synchronized void addQueries(Set<SushiPatternQuery> queries) {
 		for(SushiPatternQuery query : queries){
 			this.addQuery(query);
 		}
@@ -52,16 +95,18 @@ public class ProcessInstanceMonitor implements Serializable {
 		return processInstance;
 	}
 
-	public void setQueryFinished(SushiPatternQuery query) {
-		if(findQueryMonitorByQuery(query) != null){
-			findQueryMonitorByQuery(query).setQueryStatus(QueryStatus.Finished);
+	public synchronized void setQueryFinished(SushiPatternQuery query) {
+		QueryMonitor queryMonitor = findQueryMonitorByQuery(query);
+		if(queryMonitor != null){
+			queryMonitor.setQueryStatus(QueryStatus.Finished);
 		}
 		refreshStatus();
 	}
 	
-	public void setQuerySkipped(SushiPatternQuery query) {
-		if(findQueryMonitorByQuery(query) != null){
-			findQueryMonitorByQuery(query).setQueryStatus(QueryStatus.Skipped);
+	public synchronized void setQuerySkipped(SushiPatternQuery query) {
+		QueryMonitor queryMonitor = findQueryMonitorByQuery(query);
+		if(queryMonitor != null){
+			queryMonitor.setQueryStatus(QueryStatus.Skipped);
 		}
 		refreshStatus();
 	}
@@ -70,7 +115,7 @@ public class ProcessInstanceMonitor implements Serializable {
 		return status;
 	}
 	
-	public void setStatus(ProcessInstanceStatus processInstanceStatus) {
+	public synchronized void setStatus(ProcessInstanceStatus processInstanceStatus) {
 		this.status = processInstanceStatus;
 	}
 
@@ -88,13 +133,18 @@ public class ProcessInstanceMonitor implements Serializable {
 	}
 	
 	private ProcessInstanceStatus refreshStatus(){
-		this.startTime = calculateStartTime();
-		this.endTime = calculateEndTime();
 		if(processInstance == null){
 			this.status = ProcessInstanceStatus.NotExisting;
 		} else {
 			adaptQueryStatus();
 			if(allQueriesTerminated()){
+				if(this.status == ProcessInstanceStatus.Running){
+					//pending boundary timers of the finished process instance are not needed anymore
+					TimerService.getInstance().cancelForProcessInstance(processInstance.getID());
+					if(processMonitor != null){
+						processMonitor.processInstanceFinished(this);
+					}
+				}
 				this.status = ProcessInstanceStatus.Finished;
 			} else {
 				this.status = ProcessInstanceStatus.Running;
@@ -105,25 +155,49 @@ public class ProcessInstanceMonitor implements Serializable {
 
 	/**
 	 * Searches for queries for the given process instance, that could be set started, skipped or finished.
+	 * Only the queries changed since the last search and their parent components are considered.
 	 */
 	private void adaptQueryStatus() {
-		for(SushiPatternQuery query : getQueriesWithStatus(QueryStatus.Finished)){
+		for(QueryMonitor queryMonitor : new ArrayList<QueryMonitor>(changedQueryMonitors)){
 			//XORQuery finished, SubQueries mit Running auf Skipped setzten  
-			if(query.getPatternQueryType().equals(PatternQueryType.XOR)){
-				skipStartedSubQueries(query);
+			if(queryMonitor.isFinished() && queryMonitor.getQuery().getPatternQueryType().equals(PatternQueryType.XOR)){
+				skipStartedSubQueries(queryMonitor.getQuery());
 			}
 		}
 		
-		violationMonitor.searchForViolations();
+		violationMonitor.searchForViolations(changedQueryMonitors);
+		changedQueryMonitors.clear();
+	}
+
+	/**
+	 * Called by a {@link QueryMonitor} of this process instance, if its status changed.
+	 * @param queryMonitor
+	 */
+	void queryStatusChanged(QueryMonitor queryMonitor, QueryStatus oldStatus, Date oldEndTime) {
+		changedQueryMonitors.add(queryMonitor);
+		if(processMonitor != null){
+			processMonitor.queryStatusChanged(queryMonitor, oldStatus, oldEndTime);
+		}
+		if(queryMonitor.hasEndTime() && queryMonitor.getEndTime().after(endTime)){
+			setTimes(startTime, queryMonitor.getEndTime());
+		}
+	}
+
+	private void setTimes(Date startTime, Date endTime) {
+		long oldRuntime = getRuntime();
+		this.startTime = startTime;
+		this.endTime = endTime;
+		if(processMonitor != null){
+			processMonitor.processInstanceRuntimeChanged(oldRuntime, getRuntime());
+		}
+	}
+
+	List<QueryMonitor> getQueryMonitors() {
+		return queryMonitors;
 	}
 	
 	private QueryMonitor getRootQueryMonitor(){
-		for(QueryMonitor queryMonitor : queryMonitors){
-			if(queryMonitor.getQuery().getParentQuery() == null){
-				return queryMonitor;
-			}
-		}
-		return null;
+		return rootQueryMonitor;
 	}
 
 	List<QueryMonitor> getSubQueryMonitors(QueryMonitor queryMonitor) {
@@ -136,12 +210,7 @@ public class ProcessInstanceMonitor implements Serializable {
 	}
 
 	QueryMonitor getQueryMonitorForQuery(SushiPatternQuery query) {
-		for(QueryMonitor queryMonitor : queryMonitors){
-			if(queryMonitor.getQuery().equals(query)){
-				return queryMonitor;
-			}
-		}
-		return null;
+		return findQueryMonitorByQuery(query);
 	}
 	
 	public List<QueryMonitor> getQueryMonitorsWithStatus(QueryStatus status) {
@@ -233,22 +302,24 @@ public class ProcessInstanceMonitor implements Serializable {
 	}
 	
 	public QueryStatus getStatusForQuery(SushiPatternQuery query){
-		if(findQueryMonitorByQuery(query) != null){
-			return findQueryMonitorByQuery(query).getQueryStatus();
+		QueryMonitor queryMonitor = findQueryMonitorByQuery(query);
+		if(queryMonitor != null){
+			return queryMonitor.getQueryStatus();
 		} else {
 			return QueryStatus.NotExisting;
 		}
 	}
 	
 	public Set<ViolationStatus> getViolationStatusForQuery(SushiPatternQuery query){
-		if(findQueryMonitorByQuery(query) != null){
-			return findQueryMonitorByQuery(query).getViolationStatus();
+		QueryMonitor queryMonitor = findQueryMonitorByQuery(query);
+		if(queryMonitor != null){
+			return queryMonitor.getViolationStatus();
 		} else {
 			return null;
 		}
 	}
 	
-	public void setStatusForQuery(SushiPatternQuery query, QueryStatus queryStatus){
+	public synchronized void setStatusForQuery(SushiPatternQuery query, QueryStatus queryStatus){
 		QueryMonitor queryMonitor = findQueryMonitorByQuery(query);
 		if(queryMonitor != null){
 			queryMonitor.setQueryStatus(queryStatus);
@@ -256,12 +327,7 @@ public class ProcessInstanceMonitor implements Serializable {
 	}
 	
 	private QueryMonitor findQueryMonitorByQuery(SushiPatternQuery query){
-		for(QueryMonitor queryMonitor : queryMonitors){
-			if(queryMonitor.getQuery().equals(query)){
-				return queryMonitor;
-			}
-		}
-		return null;
+		return (query != null) ? queryMonitorsByQuery.get(query) : null;
 	}
 
 	public Date getStartTime() {
@@ -272,36 +338,26 @@ public class ProcessInstanceMonitor implements Serializable {
 		return (endTime != null) ? endTime : new Date();
 	}
 	
-	private Date calculateStartTime(){
-		Date startTime = new Date();
-		for(QueryMonitor queryMonitor : queryMonitors){
-			if(queryMonitor.getStartTime().before(startTime)){
-				startTime = queryMonitor.getStartTime();
-			}
-		}
-		return startTime;
-	}
-	
-	private Date calculateEndTime(){
-		Date endTime = calculateStartTime();
-		for(QueryMonitor queryMonitor : queryMonitors){
-			if(queryMonitor.getEndTime().after(endTime)){
-				endTime = queryMonitor.getStartTime();
-			}
-		}
-		return endTime;
+	/**
+	 * Returns the time between the start of the first query and the end of the last ended query in milliseconds.
+	 * @return
+	 */
+	public long getRuntime() {
+		return getEndTime().getTime() - getStartTime().getTime();
 	}
 	
 	public Date getStartTimeForQuery(SushiPatternQuery query){
-		if(findQueryMonitorByQuery(query) != null){
-			return findQueryMonitorByQuery(query).getStartTime();
+		QueryMonitor queryMonitor = findQueryMonitorByQuery(query);
+		if(queryMonitor != null){
+			return queryMonitor.getStartTime();
 		}
 		return new Date();
 	}
 	
 	public Date getEndTimeForQuery(SushiPatternQuery query){
-		if(findQueryMonitorByQuery(query) != null){
-			return findQueryMonitorByQuery(query).getEndTime();
+		QueryMonitor queryMonitor = findQueryMonitorByQuery(query);
+		if(queryMonitor != null){
+			return queryMonitor.getEndTime();
 		}
 		return new Date();
 	}
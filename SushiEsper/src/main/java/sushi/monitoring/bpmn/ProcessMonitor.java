@@ -1,14 +1,27 @@
 package sushi.monitoring.bpmn;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import sushi.process.SushiProcess;
 import sushi.process.SushiProcessInstance;
 import sushi.query.SushiPatternQuery;
 
 /**
+ * Monitors the process instances of one process.
+ * The runtimes of the process instances and the aggregates for each query are maintained incrementally
+ * with the status changes of the process instances, so the statistics for the analysis are served without iterating the process instances.
+ * The lock of this monitor is never held while calling an existing {@link ProcessInstanceMonitor},
+ * because the process instance monitors report their changes to this monitor while holding their own lock.
  * @author micha
  */
 public class ProcessMonitor implements Serializable{
@@ -16,15 +29,18 @@ public class ProcessMonitor implements Serializable{
 	private static final long serialVersionUID = 1L;
 	private SushiProcess process;
 	private Set<SushiPatternQuery> queries;
-	private Set<ProcessInstanceMonitor> processInstanceMonitors;
+	private ConcurrentMap<Integer, ProcessInstanceMonitor> processInstanceMonitors;
 	private int ID;
 	private int numberOfProcessInstances;
-	private float averageRuntimeMillis;
+	private AtomicLong runtimeSum = new AtomicLong(0);
+	private RuntimeStatistics runtimeStatistics = new RuntimeStatistics();
+	private ConcurrentMap<SushiPatternQuery, QueryStatistics> queryStatistics;
 
 	public ProcessMonitor(SushiProcess process){
 		this.process = process;
-		this.queries = new HashSet<SushiPatternQuery>();
-		this.processInstanceMonitors = new HashSet<ProcessInstanceMonitor>();
+		this.queries = Collections.newSetFromMap(new ConcurrentHashMap<SushiPatternQuery, Boolean>());
+		this.processInstanceMonitors = new ConcurrentHashMap<Integer, ProcessInstanceMonitor>();
+		this.queryStatistics = new ConcurrentHashMap<SushiPatternQuery, QueryStatistics>();
 		this.ID = BPMNQueryMonitor.getInstance().getProcessMonitors().size();
 	}
 	
@@ -33,8 +49,13 @@ public class ProcessMonitor implements Serializable{
 	}
 	
 	public void addQuery(SushiPatternQuery query){
-		this.queries.add(query);
-		for(ProcessInstanceMonitor processInstanceMonitor : processInstanceMonitors){
+		List<ProcessInstanceMonitor> existingProcessInstanceMonitors;
+		synchronized (this) {
+			//process instance monitors created from now on get the query with their creation
+			this.queries.add(query);
+			existingProcessInstanceMonitors = new ArrayList<ProcessInstanceMonitor>(processInstanceMonitors.values());
+		}
+		for(ProcessInstanceMonitor processInstanceMonitor : existingProcessInstanceMonitors){
 			processInstanceMonitor.addQuery(query);
 		}
 	}
@@ -53,21 +74,24 @@ public class ProcessMonitor implements Serializable{
 	}
 	
 	private ProcessInstanceMonitor getProcessInstanceMonitorForProcessInstance(SushiProcessInstance processInstance){
-		for(ProcessInstanceMonitor processInstanceMonitor : processInstanceMonitors){
-//			if(processInstanceMonitor.getProcessInstance().equals(processInstance)){
-			/*TODO: equals auf dem Process funktioniert nicht, da gleiche Prozesse mit verschiedenen IDs als Parameter kommen können:
-			 * SushiProcess.equals überschreiben?
-			 * Erstmal mit ID prüfen
-			 */
-			if(processInstanceMonitor.getProcessInstance() != null && processInstanceMonitor.getProcessInstance().getID() == processInstance.getID()){
-				return processInstanceMonitor;
+		/*TODO: equals auf dem Process funktioniert nicht, da gleiche Prozesse mit verschiedenen IDs als Parameter kommen können:
+		 * SushiProcess.equals überschreiben?
+		 * Erstmal mit ID prüfen
+		 */
+		ProcessInstanceMonitor processInstanceMonitor = processInstanceMonitors.get(processInstance.getID());
+		if(processInstanceMonitor != null){
+			return processInstanceMonitor;
+		}
+		synchronized (this) {
+			processInstanceMonitor = processInstanceMonitors.get(processInstance.getID());
+			if(processInstanceMonitor == null){
+				processInstanceMonitor = new ProcessInstanceMonitor(processInstance, this);
+				processInstanceMonitor.addQueries(queries);
+				processInstanceMonitors.put(processInstance.getID(), processInstanceMonitor);
+				numberOfProcessInstances = processInstanceMonitors.size();
 			}
+			return processInstanceMonitor;
 		}
-		ProcessInstanceMonitor processInstanceMonitor = new ProcessInstanceMonitor(processInstance);
-		processInstanceMonitor.addQueries(queries);
-		processInstanceMonitors.add(processInstanceMonitor);
-		numberOfProcessInstances = processInstanceMonitors.size();
-		return processInstanceMonitor;
 	}
 
 	public ProcessInstanceStatus getProcessInstanceStatus(SushiProcessInstance processInstance) {
@@ -75,8 +99,8 @@ public class ProcessMonitor implements Serializable{
 		return processInstanceMonitor.getStatus();
 	}
 
-	public Set<ProcessInstanceMonitor> getProcessInstanceMonitors() {
-		return processInstanceMonitors;
+	public Collection<ProcessInstanceMonitor> getProcessInstanceMonitors() {
+		return Collections.unmodifiableCollection(processInstanceMonitors.values());
 	}
 	
 	/**
@@ -86,7 +110,7 @@ public class ProcessMonitor implements Serializable{
 	 */
 	public Set<SushiProcessInstance> getProcessInstances(ProcessInstanceStatus processInstanceStatus){
 		Set<SushiProcessInstance> processInstances = new HashSet<SushiProcessInstance>();
-		for(ProcessInstanceMonitor monitor : processInstanceMonitors){
+		for(ProcessInstanceMonitor monitor : processInstanceMonitors.values()){
 			if(monitor.getStatus().equals(processInstanceStatus)){
 				processInstances.add(monitor.getProcessInstance());
 			}
@@ -102,46 +126,78 @@ public class ProcessMonitor implements Serializable{
 		return numberOfProcessInstances;
 	}
 
+	/**
+	 * Returns the average runtime of all monitored process instances.
+	 * @return
+	 */
 	public float getAverageRuntimeMillis() {
-		float sum = 0;
-		for(ProcessInstanceMonitor processInstanceMonitor : processInstanceMonitors){
-			sum += processInstanceMonitor.getEndTime().getTime() - processInstanceMonitor.getStartTime().getTime();
-		}
-		averageRuntimeMillis = sum / processInstanceMonitors.size();
-		return averageRuntimeMillis;
+		return (float) runtimeSum.get() / processInstanceMonitors.size();
+	}
+	
+	/**
+	 * Returns the statistics over the runtimes of the finished process instances,
+	 * e.g. for the variance or percentiles of the runtime.
+	 * @return
+	 */
+	public RuntimeStatistics getRuntimeStatistics() {
+		return runtimeStatistics;
 	}
 	
 	public float getAverageRuntimeForQuery(SushiPatternQuery query){
-		if(processInstanceMonitors.isEmpty()){
+		QueryStatistics statistics = queryStatistics.get(query);
+		if(processInstanceMonitors.isEmpty() || statistics == null){
 			return 0;
 		}
-		float sum = 0;
-		for(ProcessInstanceMonitor processInstanceMonitor : processInstanceMonitors){
-			sum += processInstanceMonitor.getRuntimeForQuery(query);
-		}
-		return sum / processInstanceMonitors.size();
+		return (float) statistics.getRuntimeSum() / processInstanceMonitors.size();
 	}
 	
 	public float getPathFrequencyForQuery(SushiPatternQuery query){
-		if(processInstanceMonitors.isEmpty()){
+		QueryStatistics statistics = queryStatistics.get(query);
+		if(processInstanceMonitors.isEmpty() || statistics == null){
 			return 0;
 		}
-		float count = 0;
-		for(ProcessInstanceMonitor processInstanceMonitor : processInstanceMonitors){
-			if(processInstanceMonitor.getStatusForQuery(query).equals(QueryStatus.Finished)){
-				count++;
+		return (float) statistics.getNumberOfFinishedQueries() / processInstanceMonitors.size();
+	}
+	
+	/**
+	 * Returns the aggregates of the query over all process instances.
+	 * @param query
+	 * @return the statistics or null, if the query is not monitored for any process instance
+	 */
+	public QueryStatistics getQueryStatistics(SushiPatternQuery query){
+		return queryStatistics.get(query);
+	}
+	
+	void processInstanceRuntimeChanged(long oldRuntime, long newRuntime) {
+		runtimeSum.addAndGet(newRuntime - oldRuntime);
+	}
+	
+	void processInstanceFinished(ProcessInstanceMonitor processInstanceMonitor) {
+		runtimeStatistics.add(processInstanceMonitor.getRuntime());
+	}
+	
+	void queryMonitorAdded(QueryMonitor queryMonitor) {
+		getOrCreateQueryStatistics(queryMonitor.getQuery()).queryMonitorAdded(queryMonitor);
+	}
+	
+	void queryStatusChanged(QueryMonitor queryMonitor, QueryStatus oldStatus, Date oldEndTime) {
+		getOrCreateQueryStatistics(queryMonitor.getQuery()).queryStatusChanged(queryMonitor, oldStatus, oldEndTime);
+	}
+	
+	private QueryStatistics getOrCreateQueryStatistics(SushiPatternQuery query) {
+		QueryStatistics statistics = queryStatistics.get(query);
+		if(statistics == null){
+			QueryStatistics newStatistics = new QueryStatistics(query);
+			statistics = queryStatistics.putIfAbsent(query, newStatistics);
+			if(statistics == null){
+				statistics = newStatistics;
 			}
 		}
-		return count / processInstanceMonitors.size();
+		return statistics;
 	}
 
 	public ProcessInstanceMonitor getProcessInstanceMonitor(SushiProcessInstance processInstance) {
-		for(ProcessInstanceMonitor processInstanceMonitor : processInstanceMonitors){
-			if(processInstanceMonitor.getProcessInstance().equals(processInstance)){
-				return processInstanceMonitor;
-			}
-		}
-		return null;
+		return processInstanceMonitors.get(processInstance.getID());
 	}
 	
 }
@@ -33,6 +33,7 @@ public class QueryMonitor implements Serializable {
 	private Date endTime;
 	private boolean isInLoop;
 	private List<DetailedQueryStatus> detailedQueryStatus;
+	private ProcessInstanceMonitor processInstanceMonitor;
 	
 	public QueryMonitor(SushiPatternQuery query, QueryStatus queryStatus, SushiProcessInstance processInstance) {
 		this.query = query;
@@ -55,6 +56,8 @@ public class QueryMonitor implements Serializable {
 	}
 
 	public void setQueryStatus(QueryStatus queryStatus) {
+		QueryStatus oldStatus = getQueryStatus();
+		Date oldEndTime = this.endTime;
 		//TODO: Queries sollten mehrmals beendbar sein, falls sie sich in einer Schleife befinden
 		if(queryStatus.equals(QueryStatus.Finished) || queryStatus.equals(QueryStatus.Skipped)){
 			this.endTime = new Date();
@@ -70,8 +73,21 @@ public class QueryMonitor implements Serializable {
 			//Falls Query nochmal fertiggestellt wird (Schleife)
 			this.detailedQueryStatus.add(new DetailedQueryStatus(this.query, queryStatus, new HashSet<ViolationStatus>()));
 		}
-		
-		
+		statusChanged(oldStatus, oldEndTime);
+	}
+
+	/**
+	 * Sets the {@link ProcessInstanceMonitor}, which is informed about status changes of this query.
+	 * @param processInstanceMonitor
+	 */
+	void setProcessInstanceMonitor(ProcessInstanceMonitor processInstanceMonitor) {
+		this.processInstanceMonitor = processInstanceMonitor;
+	}
+
+	private void statusChanged(QueryStatus oldStatus, Date oldEndTime) {
+		if(processInstanceMonitor != null){
+			processInstanceMonitor.queryStatusChanged(this, oldStatus, oldEndTime);
+		}
 	}
 	
 	private Date calculateStartTime() {
@@ -128,7 +144,17 @@ public class QueryMonitor implements Serializable {
 	}
 
 	public void setEndTime(Date endTime) {
+		Date oldEndTime = this.endTime;
 		this.endTime = endTime;
+		statusChanged(getQueryStatus(), oldEndTime);
+	}
+
+	/**
+	 * Returns true, if the query was finished or skipped at least once, so the end time is known.
+	 * @return
+	 */
+	public boolean hasEndTime() {
+		return endTime != null;
 	}
 
 	/**
@@ -0,0 +1,103 @@
+package sushi.monitoring.bpmn;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import sushi.query.SushiPatternQuery;
+
+/**
+ * Aggregates the {@link QueryMonitor}s of one query over all process instances of a {@link ProcessMonitor}.
+ * The aggregates are updated, if the status of a query monitor changes,
+ * so the average runtime and the path frequency are available without iterating the process instances.
+ * @author micha
+ */
+public class QueryStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private SushiPatternQuery query;
+	private RuntimeStatistics runtimeStatistics = new RuntimeStatistics();
+	//times are stored relative to the creation of the statistics to avoid overflows of the sums
+	private long baseTime = System.currentTimeMillis();
+	private long endedRuntimeSum = 0;
+	private long runningStartTimeSum = 0;
+	private int numberOfRunningQueries = 0;
+	private int numberOfFinishedQueries = 0;
+
+	public QueryStatistics(SushiPatternQuery query) {
+		this.query = query;
+	}
+
+	/**
+	 * Registers a new query monitor, which has not ended yet.
+	 * @param queryMonitor
+	 */
+	synchronized void queryMonitorAdded(QueryMonitor queryMonitor) {
+		numberOfRunningQueries++;
+		runningStartTimeSum += queryMonitor.getStartTime().getTime() - baseTime;
+		if(queryMonitor.isFinished()){
+			numberOfFinishedQueries++;
+		}
+	}
+
+	/**
+	 * Updates the aggregates for a status change of the query monitor.
+	 * @param queryMonitor
+	 * @param oldStatus status before the change
+	 * @param oldEndTime end time before the change or null, if the query had not ended
+	 */
+	synchronized void queryStatusChanged(QueryMonitor queryMonitor, QueryStatus oldStatus, Date oldEndTime) {
+		long startTime = queryMonitor.getStartTime().getTime();
+		if(oldEndTime == null){
+			numberOfRunningQueries--;
+			runningStartTimeSum -= startTime - baseTime;
+		} else {
+			endedRuntimeSum -= oldEndTime.getTime() - startTime;
+		}
+		if(queryMonitor.hasEndTime()){
+			long runtime = queryMonitor.getEndTime().getTime() - startTime;
+			endedRuntimeSum += runtime;
+			if(!queryMonitor.getEndTime().equals(oldEndTime)){
+				runtimeStatistics.add(runtime);
+			}
+		} else {
+			numberOfRunningQueries++;
+			runningStartTimeSum += startTime - baseTime;
+		}
+		boolean wasFinished = QueryStatus.Finished.equals(oldStatus);
+		if(!wasFinished && queryMonitor.isFinished()){
+			numberOfFinishedQueries++;
+		} else if(wasFinished && !queryMonitor.isFinished()){
+			numberOfFinishedQueries--;
+		}
+	}
+
+	public SushiPatternQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns the sum of the runtimes of all query monitors.
+	 * The runtime of a query, which has not ended yet, lasts until now.
+	 * @return
+	 */
+	public synchronized long getRuntimeSum() {
+		return endedRuntimeSum + numberOfRunningQueries * (System.currentTimeMillis() - baseTime) - runningStartTimeSum;
+	}
+
+	/**
+	 * Returns the number of query monitors, whose current status is Finished.
+	 * @return
+	 */
+	public synchronized int getNumberOfFinishedQueries() {
+		return numberOfFinishedQueries;
+	}
+
+	/**
+	 * Returns the statistics over the runtimes of all ended executions of the query.
+	 * @return
+	 */
+	public RuntimeStatistics getRuntimeStatistics() {
+		return runtimeStatistics;
+	}
+
+}
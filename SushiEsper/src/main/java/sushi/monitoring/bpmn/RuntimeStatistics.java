@@ -0,0 +1,121 @@
+package sushi.monitoring.bpmn;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streaming statistics over runtimes in milliseconds, e.g. of finished process instances.
+ * Count, mean and variance (Welford's algorithm), minimum and maximum are updated with each value in constant time.
+ * Percentiles are estimated from a histogram with logarithmic buckets,
+ * so the estimation differs at most by {@link #PRECISION} from the real value and the memory does not grow with the number of values.
+ */
+public class RuntimeStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	public static final double PRECISION = 0.01;
+	private static final double LOG_BASE = Math.log(1 + PRECISION);
+
+	private long count = 0;
+	private double mean = 0;
+	private double squaredDeviationSum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+	private TreeMap<Integer, Long> histogram = new TreeMap<Integer, Long>();
+
+	/**
+	 * Adds a runtime. Negative runtimes are treated as 0.
+	 * @param runtimeMillis
+	 */
+	public synchronized void add(long runtimeMillis) {
+		long value = Math.max(0, runtimeMillis);
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		squaredDeviationSum += delta * (value - mean);
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		int bucket = getBucket(value);
+		Long bucketCount = histogram.get(bucket);
+		histogram.put(bucket, (bucketCount == null) ? 1 : bucketCount + 1);
+	}
+
+	private static int getBucket(long value) {
+		return (value <= 1) ? 0 : (int) Math.ceil(Math.log(value) / LOG_BASE);
+	}
+
+	private static long getBucketValue(int bucket) {
+		return (bucket == 0) ? 0 : Math.round(Math.pow(1 + PRECISION, bucket));
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return mean of the runtimes or 0, if no runtime was added
+	 */
+	public synchronized double getMean() {
+		return mean;
+	}
+
+	/**
+	 * @return variance of the runtimes or 0, if less than two runtimes were added
+	 */
+	public synchronized double getVariance() {
+		return (count < 2) ? 0 : squaredDeviationSum / (count - 1);
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @return minimal runtime or 0, if no runtime was added
+	 */
+	public synchronized long getMin() {
+		return (count == 0) ? 0 : min;
+	}
+
+	/**
+	 * @return maximal runtime or 0, if no runtime was added
+	 */
+	public synchronized long getMax() {
+		return (count == 0) ? 0 : max;
+	}
+
+	/**
+	 * Estimates the runtime, which is not exceeded by the given percentage of the runtimes.
+	 * @param percentile between 0 and 100, e.g. 50 for the median
+	 * @return estimated runtime or 0, if no runtime was added
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+		long seen = 0;
+		for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+			seen += entry.getValue();
+			if (seen >= rank) {
+				return Math.max(min, Math.min(max, getBucketValue(entry.getKey())));
+			}
+		}
+		return max;
+	}
+
+	public synchronized void clear() {
+		count = 0;
+		mean = 0;
+		squaredDeviationSum = 0;
+		min = Long.MAX_VALUE;
+		max = Long.MIN_VALUE;
+		histogram.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "count: " + count + ", mean: " + mean + ", min: " + getMin() + ", max: " + getMax();
+	}
+
+}
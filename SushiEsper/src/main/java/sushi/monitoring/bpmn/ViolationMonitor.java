@@ -2,9 +2,12 @@ package sushi.monitoring.bpmn;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,12 +22,21 @@ import sushi.query.SushiPatternQuery;
 /**
  * The ViolationMonitor tries to reveal violations while the execution of process instances.
  * For instance order, exclusiveness or cooccurence violations.
+ * The violations are searched incrementally: only the components containing a changed query are checked again.
+ * The structural information needed for the checks (order of the sequences, predecessors and successors of the queries,
+ * last monitorable element) is derived once from the process decomposition tree and kept until new queries are added.
  * @author micha
  */
 public class ViolationMonitor {
 
 	private ProcessInstanceMonitor processInstanceMonitor;
 	private SushiTree<AbstractBPMNElement> processDecompositionTree;
+	private Map<QueryMonitor, List<QueryMonitor>> orderedSubQueryMonitors = new HashMap<QueryMonitor, List<QueryMonitor>>();
+	private Map<SushiPatternQuery, Set<AbstractBPMNElement>> predecessorTable = new HashMap<SushiPatternQuery, Set<AbstractBPMNElement>>();
+	private Map<SushiPatternQuery, Set<AbstractBPMNElement>> successorTable = new HashMap<SushiPatternQuery, Set<AbstractBPMNElement>>();
+	private AbstractBPMNElement lastMonitorableElement;
+	private boolean lastMonitorableElementDetermined = false;
+	private Set<QueryMonitor> lastElementQueryMonitors;
 
 	/**
 	 * Creates a new ViolationMonitor for the given {@link ProcessInstanceMonitor} to monitor execution violations.
@@ -37,25 +49,65 @@ public class ViolationMonitor {
 	
 	/**
 	 * Searches for order, exclusiveness and cooccurence violations, during the execution of the specified process instance.
+	 * All components of the process instance are checked.
 	 */
 	public void searchForViolations(){
-		searchForOrderViolations();
-		searchForExclusivenessViolations();
-		searchForOccurenceViolations();
-		searchForLoopViolations();
+		searchForViolations(processInstanceMonitor.getQueryMonitors());
+	}
+
+	/**
+	 * Searches for order, exclusiveness and cooccurence violations in the components affected by the changed queries.
+	 * A component is affected, if its own query or the query of one of its direct children changed.
+	 * Queries changed by a check are considered by the following checks.
+	 * @param changedQueryMonitors monitors of the queries, whose status changed since the last search
+	 */
+	public void searchForViolations(Collection<QueryMonitor> changedQueryMonitors){
+		searchForOrderViolations(getAffectedComponents(changedQueryMonitors, PatternQueryType.SEQUENCE));
+		searchForExclusivenessViolations(getAffectedComponents(changedQueryMonitors, PatternQueryType.XOR));
+		if(!Collections.disjoint(getLastElementQueryMonitors(), changedQueryMonitors)){
+			searchForOccurenceViolations();
+		}
+		searchForLoopViolations(getAffectedComponents(changedQueryMonitors, PatternQueryType.LOOP));
+	}
+
+	/**
+	 * Discards the structural information derived from the queries, because a query was added.
+	 */
+	void queriesChanged() {
+		orderedSubQueryMonitors.clear();
+		lastElementQueryMonitors = null;
+	}
+
+	/**
+	 * Returns the monitors of the components with the given type, that contain one of the changed queries or are changed themselves.
+	 * @param changedQueryMonitors
+	 * @param patternQueryType
+	 * @return
+	 */
+	private Set<QueryMonitor> getAffectedComponents(Collection<QueryMonitor> changedQueryMonitors, PatternQueryType patternQueryType) {
+		Set<QueryMonitor> affectedComponents = new LinkedHashSet<QueryMonitor>();
+		for(QueryMonitor changedQueryMonitor : new ArrayList<QueryMonitor>(changedQueryMonitors)){
+			if(changedQueryMonitor.getQuery().getPatternQueryType().equals(patternQueryType)){
+				affectedComponents.add(changedQueryMonitor);
+			}
+			QueryMonitor parentQueryMonitor = processInstanceMonitor.getQueryMonitorForQuery(changedQueryMonitor.getQuery().getParentQuery());
+			if(parentQueryMonitor != null && parentQueryMonitor.getQuery().getPatternQueryType().equals(patternQueryType)){
+				affectedComponents.add(parentQueryMonitor);
+			}
+		}
+		return affectedComponents;
 	}
 
 	/**
 	 * This method searches for order violations in sequential components. So if the elements in the component are triggered 
 	 * in the false order, the sequential components has an order violation
 	 */
-	private void searchForOrderViolations() {
+	private void searchForOrderViolations(Set<QueryMonitor> sequenceQueryMonitors) {
 		//TODO: OrderViolation: Elemente in einer Sequenz, Reihenfolge der Elemente ermitteln, falls Elemente alle getriggert, aber in falscher Reihenfolge
-		for(QueryMonitor queryMonitor : processInstanceMonitor.getQueryMonitorsWithQueryType(PatternQueryType.SEQUENCE)){
+		for(QueryMonitor queryMonitor : sequenceQueryMonitors){
 			if(queryMonitor.isRunning()){
-				List<QueryMonitor> subQueryMonitors = processInstanceMonitor.getSubQueryMonitors(queryMonitor);
-				if(!subQueryMonitors.contains(null) && subQueryMonitors.size() > 1){
-					subQueryMonitors = orderQueryMonitorsSequential(queryMonitor);
+				List<QueryMonitor> subQueryMonitors = getOrderedSubQueryMonitors(queryMonitor);
+				if(subQueryMonitors != null){
 					boolean allSubQueriesTerminated = true;
 					boolean timeViolation = false;
 					
@@ -85,6 +137,28 @@ public class ViolationMonitor {
 		}
 	}
 	
+	/**
+	 * Returns the ordered {@link QueryMonitor}s of a sequence, which are ordered only once.
+	 * @param sequentialQueryMonitor
+	 * @return the ordered sub query monitors or null, if the sequence can not be checked (yet)
+	 */
+	private List<QueryMonitor> getOrderedSubQueryMonitors(QueryMonitor sequentialQueryMonitor) {
+		if(orderedSubQueryMonitors.containsKey(sequentialQueryMonitor)){
+			return orderedSubQueryMonitors.get(sequentialQueryMonitor);
+		}
+		List<QueryMonitor> subQueryMonitors = processInstanceMonitor.getSubQueryMonitors(sequentialQueryMonitor);
+		if(subQueryMonitors.contains(null)){
+			//not all sub queries are registered yet
+			return null;
+		}
+		List<QueryMonitor> orderedQueryMonitors = null;
+		if(subQueryMonitors.size() > 1){
+			orderedQueryMonitors = orderQueryMonitorsSequential(sequentialQueryMonitor);
+		}
+		orderedSubQueryMonitors.put(sequentialQueryMonitor, orderedQueryMonitors);
+		return orderedQueryMonitors;
+	}
+
 	/**
 	 * Tries to order {@link QueryMonitor}s which belong to a sequence.
 	 * @param sequentialQueryMonitors
@@ -129,28 +203,40 @@ public class ViolationMonitor {
 	 * @return
 	 */
 	private QueryMonitor searchPredecessor(QueryMonitor queryMonitor, List<QueryMonitor> orderedQueryMonitors) {
-		Set<AbstractBPMNElement> predecessors;
+		Set<AbstractBPMNElement> predecessors = getPredecessors(queryMonitor.getQuery());
 		for(QueryMonitor orderedQueryMonitor : orderedQueryMonitors){
+			if(!Collections.disjoint(predecessors, orderedQueryMonitor.getQuery().getMonitoredElements())){
+				return orderedQueryMonitor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the elements preceding the monitored elements of the query, which are looked up only once per query.
+	 * @param query
+	 * @return
+	 */
+	private Set<AbstractBPMNElement> getPredecessors(SushiPatternQuery query) {
+		Set<AbstractBPMNElement> predecessors = predecessorTable.get(query);
+		if(predecessors == null){
 			predecessors = new HashSet<AbstractBPMNElement>();
-			if(queryMonitor.getQuery().getPatternQueryType().equals(PatternQueryType.STATETRANSITION)){
-				for(AbstractBPMNElement monitoredElement : queryMonitor.getQuery().getMonitoredElements()){
+			if(query.getPatternQueryType().equals(PatternQueryType.STATETRANSITION)){
+				for(AbstractBPMNElement monitoredElement : query.getMonitoredElements()){
 					predecessors.addAll(monitoredElement.getPredecessors());
 				}
 			//Wenn es keine StateTransition ist, beobacht die Query eine Component, also bekommt man den Vorgänger als EntryPoint der Component
 			}else{
-				for(AbstractBPMNElement parent : processDecompositionTree.getParents(queryMonitor.getQuery().getMonitoredElements())){
+				for(AbstractBPMNElement parent : processDecompositionTree.getParents(query.getMonitoredElements())){
 					if(parent instanceof Component){
 						Component parentComponent = (Component) parent;
 						predecessors.add(parentComponent.getEntryPoint());
 					}
 				}
 			}
-			predecessors.retainAll(orderedQueryMonitor.getQuery().getMonitoredElements());
-			if(!predecessors.isEmpty()){
-				return orderedQueryMonitor;
-			}
+			predecessorTable.put(query, predecessors);
 		}
-		return null;
+		return predecessors;
 	}
 	
 	/**
@@ -160,36 +246,48 @@ public class ViolationMonitor {
 	 * @return
 	 */
 	private QueryMonitor searchSuccessor(QueryMonitor queryMonitor, List<QueryMonitor> orderedQueryMonitors) {
-		Set<AbstractBPMNElement> successors;
+		Set<AbstractBPMNElement> successors = getSuccessors(queryMonitor.getQuery());
 		for(QueryMonitor orderedQueryMonitor : orderedQueryMonitors){
+			if(!Collections.disjoint(successors, orderedQueryMonitor.getQuery().getMonitoredElements())){
+				return orderedQueryMonitor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the elements succeeding the monitored elements of the query, which are looked up only once per query.
+	 * @param query
+	 * @return
+	 */
+	private Set<AbstractBPMNElement> getSuccessors(SushiPatternQuery query) {
+		Set<AbstractBPMNElement> successors = successorTable.get(query);
+		if(successors == null){
 			successors = new HashSet<AbstractBPMNElement>();
-			if(queryMonitor.getQuery().getPatternQueryType().equals(PatternQueryType.STATETRANSITION)){
-				for(AbstractBPMNElement monitoredElement : queryMonitor.getQuery().getMonitoredElements()){
+			if(query.getPatternQueryType().equals(PatternQueryType.STATETRANSITION)){
+				for(AbstractBPMNElement monitoredElement : query.getMonitoredElements()){
 					successors.addAll(monitoredElement.getSuccessors());
 				}
 			//Wenn es keine StateTransition ist, beobacht die Query eine Component, also bekommt man den Nachfolger als ExitPoint der Component
 			}else{
-				for(AbstractBPMNElement parent : processDecompositionTree.getParents(queryMonitor.getQuery().getMonitoredElements())){
+				for(AbstractBPMNElement parent : processDecompositionTree.getParents(query.getMonitoredElements())){
 					if(parent instanceof Component){
 						Component parentComponent = (Component) parent;
 						successors.add(parentComponent.getExitPoint());
 					}
 				}
 			}
-			successors.retainAll(orderedQueryMonitor.getQuery().getMonitoredElements());
-			if(!successors.isEmpty()){
-				return orderedQueryMonitor;
-			}
+			successorTable.put(query, successors);
 		}
-		return null;
+		return successors;
 	}
 
 	/**
 	 * The method searches for exclusiveness violations between several pathes in a XOR component. If a second execution path 
 	 * is monitored for a XOR component, it will be treated as a exclusiveness-violation.
 	 */
-	private void searchForExclusivenessViolations() {
-		for(QueryMonitor queryMonitor : processInstanceMonitor.getQueryMonitorsWithQueryType(PatternQueryType.XOR)){
+	private void searchForExclusivenessViolations(Set<QueryMonitor> xorQueryMonitors) {
+		for(QueryMonitor queryMonitor : xorQueryMonitors){
 			List<QueryMonitor> subQueryMonitors = processInstanceMonitor.getSubQueryMonitors(queryMonitor);
 			if(!subQueryMonitors.contains(null) && !queryMonitor.isInLoop()){
 				int subQueriesFinished = 0;
@@ -214,40 +312,67 @@ public class ViolationMonitor {
 	private void searchForOccurenceViolations() {
 		// Misssing kann sich nur auf StateTransitions beziehen?
 		//Ohne Schleife: Falls Element noch Running ist --> Missing
-		AbstractBPMNElement endEvent = null;
-		for (AbstractBPMNElement element : processDecompositionTree.getLeafElements()) {
-			if(element instanceof BPMNEndEvent) {
-				endEvent = element;
+		Set<QueryMonitor> lastElementQueryMonitors = getLastElementQueryMonitors();
+		if(!lastElementQueryMonitors.isEmpty()){
+			QueryMonitor lastElementQueryMonitor = lastElementQueryMonitors.iterator().next();
+			if(lastElementQueryMonitor.isTerminated()){
+				//Ohne Schleife
+				for(QueryMonitor runningQueryMonitor : processInstanceMonitor.getQueryMonitorsWithStatus(QueryStatus.Started)){
+					//StateTransitions 
+					if(runningQueryMonitor.getQuery().getPatternQueryType().equals(PatternQueryType.STATETRANSITION)){
+						runningQueryMonitor.addViolationStatus(ViolationStatus.Missing);
+						runningQueryMonitor.setQueryStatus(QueryStatus.Aborted);
+						abortParentQueries(runningQueryMonitor);
+					}
+				}
 			}
 		}
-		if(endEvent != null && processDecompositionTree != null){
-			AbstractBPMNElement lastMonitorableElement = getNearestMonitorablePredecessor(endEvent, processDecompositionTree.getLeafElements());
-			Set<QueryMonitor> lastElementQueryMonitors = processInstanceMonitor.getQueryMonitorsWithMonitoredElements(Arrays.asList(lastMonitorableElement));
-			if(!lastElementQueryMonitors.isEmpty()){
-				QueryMonitor lastElementQueryMonitor = lastElementQueryMonitors.iterator().next();
-				if(lastElementQueryMonitor.isTerminated()){
-					//Ohne Schleife
-					for(QueryMonitor runningQueryMonitor : processInstanceMonitor.getQueryMonitorsWithStatus(QueryStatus.Started)){
-						//StateTransitions 
-						if(runningQueryMonitor.getQuery().getPatternQueryType().equals(PatternQueryType.STATETRANSITION)){
-							runningQueryMonitor.addViolationStatus(ViolationStatus.Missing);
-							runningQueryMonitor.setQueryStatus(QueryStatus.Aborted);
-							abortParentQueries(runningQueryMonitor);
-						}
-					}
+	}
+
+	/**
+	 * Returns the {@link QueryMonitor}s of the last monitorable element before the end event of the process.
+	 * @return
+	 */
+	private Set<QueryMonitor> getLastElementQueryMonitors() {
+		if(lastElementQueryMonitors == null){
+			AbstractBPMNElement lastMonitorableElement = getLastMonitorableElement();
+			if(lastMonitorableElement != null){
+				lastElementQueryMonitors = processInstanceMonitor.getQueryMonitorsWithMonitoredElements(Arrays.asList(lastMonitorableElement));
+			} else {
+				lastElementQueryMonitors = Collections.emptySet();
+			}
+		}
+		return lastElementQueryMonitors;
+	}
+
+	/**
+	 * Searches the last monitorable element before the end event of the process, which is determined only once.
+	 * @return the element or null, if the process has no decomposition tree or end event
+	 */
+	private AbstractBPMNElement getLastMonitorableElement() {
+		if(!lastMonitorableElementDetermined && processDecompositionTree != null){
+			AbstractBPMNElement endEvent = null;
+			for (AbstractBPMNElement element : processDecompositionTree.getLeafElements()) {
+				if(element instanceof BPMNEndEvent) {
+					endEvent = element;
 				}
 			}
+			if(endEvent != null){
+				lastMonitorableElement = getNearestMonitorablePredecessor(endEvent, processDecompositionTree.getLeafElements());
+			}
+			lastMonitorableElementDetermined = true;
 		}
+		return lastMonitorableElement;
 	}
 	
 	/**
 	 * Searches for cooccurence and exclusiveness violations in loop components. 
 	 * A more accurate distinction is not possible for the monitoring of loop components.
 	 */
-	private void searchForLoopViolations() {
+	private void searchForLoopViolations(Set<QueryMonitor> loopQueryMonitors) {
 		//LoopComponents untersuchen: Wenn ExecutionCount unterschiedlich in einer LoopComponent, dann LoopViolation für LoopComponent
 		//außer SubComponent ist wieder eine Loop
-		for(QueryMonitor queryMonitor : processInstanceMonitor.getQueryMonitorsWithQueryType(PatternQueryType.LOOP)){
+		for(QueryMonitor queryMonitor : loopQueryMonitors){
 			int loopExecutionCount = queryMonitor.getExecutionCount();
 			List<QueryMonitor> subQueryMonitors = processInstanceMonitor.getSubQueryMonitors(queryMonitor);
 			if(!subQueryMonitors.contains(null)){
@@ -0,0 +1,480 @@
+package sushi.query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import sushi.persistence.Persistor;
+
+/**
+ * Log of the results of the live queries.
+ * The latest entries of each query are kept in a ring buffer of {@link #getBufferSize()} entries,
+ * so the log of a busy query does not grow without limit in memory.
+ * All entries are appended to the table of {@link SushiQueryLogEntry}. They are written asynchronously in JDBC batches,
+ * when {@link #getBatchSize()} entries are pending or at the latest after {@link #FLUSH_INTERVAL_MILLIS},
+ * so a query match does not wait for the database.
+ * Entries of queries, which are not saved, are only kept in memory.
+ * The entries of a saved query are loaded from the database on its first use without holding the lock of the log.
+ *
+ * Before, the log was an element collection of {@link SushiQuery}. Its entries are moved once to the new table,
+ * before the first entries are loaded from a database.
+ */
+public class QueryLog {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1000;
+	public static final int DEFAULT_BATCH_SIZE = 200;
+	public static final long FLUSH_INTERVAL_MILLIS = 1000;
+	/** pending entries exceeding this number are dropped, e.g. if the database is not reachable */
+	public static final int MAXIMUM_PENDING_ENTRIES = 100000;
+
+	private static final String INSERT_ENTRY = "INSERT INTO SushiQueryLog (QueryID, Timestamp, Entry) VALUES (?, ?, ?)";
+	/** table and value column of the former element collection SushiQuery.log */
+	private static final String ELEMENT_COLLECTION_TABLE = "SushiQuery_log";
+	private static final String ELEMENT_COLLECTION_VALUE_COLUMN = "QueryLogs";
+
+	private static QueryLog instance = null;
+	private static int bufferSize = DEFAULT_BUFFER_SIZE;
+	private static int batchSize = DEFAULT_BATCH_SIZE;
+
+	private final Map<Object, LogBuffer> buffers = new HashMap<Object, LogBuffer>();
+	private List<PendingEntry> pendingEntries = new ArrayList<PendingEntry>();
+	private final Object flushLock = new Object();
+	private EntityManagerFactory database = null;
+	/** incremented whenever buffers are discarded, so buffers loaded meanwhile are not used */
+	private long bufferGeneration = 0;
+	private final Object migrationLock = new Object();
+	private EntityManagerFactory migratedDatabase = null;
+	private long numberOfDroppedEntries = 0;
+	private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "QueryLogFlush");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * Singleton, therefore the constructor is private.
+	 */
+	private QueryLog() {
+		flushExecutor.scheduleWithFixedDelay(flushTask, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Singleton class. Use this method to get the instance.
+	 * @return
+	 */
+	public static synchronized QueryLog getInstance() {
+		if (instance == null) {
+			instance = new QueryLog();
+		}
+		return instance;
+	}
+
+	/**
+	 * Writes the pending entries and clears the singleton-object, e.g. after switching the database.
+	 */
+	public static synchronized void clearInstance() {
+		if (instance != null) {
+			instance.flushExecutor.shutdown();
+			instance.flush();
+		}
+		instance = null;
+	}
+
+	/**
+	 * Appends an entry to the log of the query.
+	 * @param query
+	 * @param entry
+	 */
+	public void append(SushiQuery query, String entry) {
+		boolean flushNow;
+		LogBuffer buffer = getBuffer(query);
+		synchronized (this) {
+			buffer.add(entry);
+			if (query.getID() == 0) {
+				return;
+			}
+			if (pendingEntries.size() >= MAXIMUM_PENDING_ENTRIES) {
+				numberOfDroppedEntries++;
+				return;
+			}
+			pendingEntries.add(new PendingEntry(query.getID(), entry));
+			flushNow = pendingEntries.size() == batchSize;
+		}
+		if (flushNow) {
+			flushExecutor.execute(flushTask);
+		}
+	}
+
+	/**
+	 * Returns the latest entries of the log of the query, the oldest first.
+	 * @param query
+	 * @return
+	 */
+	public List<String> getEntries(SushiQuery query) {
+		LogBuffer buffer = getBuffer(query);
+		synchronized (this) {
+			return buffer.getEntries();
+		}
+	}
+
+	/**
+	 * Returns the number of all entries of the query, including the entries not kept in memory anymore.
+	 * @param query
+	 * @return
+	 */
+	public long getNumberOfEntries(SushiQuery query) {
+		LogBuffer buffer = getBuffer(query);
+		synchronized (this) {
+			return buffer.numberOfEntries;
+		}
+	}
+
+	/**
+	 * Removes all entries of the query from memory and the database.
+	 * @param query
+	 */
+	public void remove(SushiQuery query) {
+		synchronized (this) {
+			buffers.remove(getKey(query));
+			bufferGeneration++;
+			if (query.getID() == 0) {
+				return;
+			}
+			List<PendingEntry> remainingEntries = new ArrayList<PendingEntry>();
+			for (PendingEntry pendingEntry : pendingEntries) {
+				if (pendingEntry.queryID != query.getID()) {
+					remainingEntries.add(pendingEntry);
+				}
+			}
+			pendingEntries = remainingEntries;
+		}
+		executeDelete("DELETE FROM SushiQueryLog WHERE QueryID = " + query.getID());
+	}
+
+	/**
+	 * Removes the entries of all queries from memory and the database.
+	 */
+	public void removeAll() {
+		synchronized (this) {
+			buffers.clear();
+			bufferGeneration++;
+			pendingEntries = new ArrayList<PendingEntry>();
+		}
+		executeDelete("DELETE FROM SushiQueryLog");
+	}
+
+	/**
+	 * Writes the pending entries to the database.
+	 * If the entries can not be written, they are dropped.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			List<PendingEntry> entries;
+			synchronized (this) {
+				if (pendingEntries.isEmpty()) {
+					return;
+				}
+				entries = pendingEntries;
+				pendingEntries = new ArrayList<PendingEntry>();
+			}
+			Connection connection = null;
+			try {
+				connection = Persistor.openConnection();
+				PreparedStatement statement = connection.prepareStatement(INSERT_ENTRY);
+				try {
+					for (int i = 0; i < entries.size(); i++) {
+						PendingEntry entry = entries.get(i);
+						statement.setInt(1, entry.queryID);
+						statement.setTimestamp(2, entry.timestamp);
+						statement.setString(3, entry.entry);
+						statement.addBatch();
+						if ((i + 1) % batchSize == 0) {
+							statement.executeBatch();
+						}
+					}
+					statement.executeBatch();
+				} finally {
+					statement.close();
+				}
+			} catch (Exception e) {
+				//the flush task must not fail, otherwise it is not scheduled anymore
+				e.printStackTrace();
+				synchronized (this) {
+					numberOfDroppedEntries += entries.size();
+				}
+			} finally {
+				close(connection);
+			}
+		}
+	}
+
+	/**
+	 * Returns the buffer of the query. The entries of a saved query are loaded from the database
+	 * without holding the lock of this object, so other queries are not blocked meanwhile.
+	 */
+	private LogBuffer getBuffer(SushiQuery query) {
+		Object key = getKey(query);
+		while (true) {
+			long generation;
+			synchronized (this) {
+				checkDatabase();
+				LogBuffer buffer = buffers.get(key);
+				if (buffer != null) {
+					return buffer;
+				}
+				generation = bufferGeneration;
+			}
+			LogBuffer loadedBuffer = new LogBuffer(bufferSize);
+			if (query.getID() != 0) {
+				migrateIfNecessary();
+				load(query.getID(), loadedBuffer);
+			}
+			synchronized (this) {
+				checkDatabase();
+				LogBuffer buffer = buffers.get(key);
+				if (buffer != null) {
+					// loaded concurrently by another thread
+					return buffer;
+				}
+				if (generation == bufferGeneration) {
+					buffers.put(key, loadedBuffer);
+					return loadedBuffer;
+				}
+				// the buffers were discarded during the loading, so the loaded entries may be outdated
+			}
+		}
+	}
+
+	/**
+	 * Saved queries are identified by their ID, because several objects may represent the same query.
+	 */
+	private static Object getKey(SushiQuery query) {
+		return (query.getID() != 0) ? Integer.valueOf(query.getID()) : query;
+	}
+
+	/**
+	 * Fills the buffer with the latest entries of the query from the database, e.g. after a restart.
+	 */
+	private void load(int queryID, LogBuffer buffer) {
+		try {
+			List<SushiQueryLogEntry> latestEntries = SushiQueryLogEntry.findLatestByQueryID(queryID, buffer.entries.length);
+			for (int i = latestEntries.size() - 1; i >= 0; i--) {
+				buffer.add(latestEntries.get(i).getEntry());
+			}
+			buffer.numberOfEntries = SushiQueryLogEntry.countByQueryID(queryID);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Moves the entries of the former element collection SushiQuery.log into the table of {@link SushiQueryLogEntry}
+	 * and drops the old table, once per database.
+	 */
+	private void migrateIfNecessary() {
+		synchronized (migrationLock) {
+			EntityManagerFactory currentDatabase = Persistor.getEntityManagerFactory();
+			if (migratedDatabase == currentDatabase) {
+				return;
+			}
+			Connection connection = null;
+			try {
+				connection = Persistor.openConnection();
+				migrateElementCollection(connection);
+				migratedDatabase = currentDatabase;
+			} catch (SQLException e) {
+				e.printStackTrace();
+			} finally {
+				close(connection);
+			}
+		}
+	}
+
+	private void migrateElementCollection(Connection connection) throws SQLException {
+		String table = null;
+		String queryIDColumn = null;
+		PreparedStatement statement = connection.prepareStatement("SELECT TABLE_NAME, COLUMN_NAME FROM information_schema.COLUMNS "
+				+ "WHERE TABLE_SCHEMA = DATABASE() AND LOWER(TABLE_NAME) = LOWER(?) AND COLUMN_NAME <> ?");
+		try {
+			statement.setString(1, ELEMENT_COLLECTION_TABLE);
+			statement.setString(2, ELEMENT_COLLECTION_VALUE_COLUMN);
+			ResultSet result = statement.executeQuery();
+			if (result.next()) {
+				table = result.getString(1);
+				queryIDColumn = result.getString(2);
+			}
+		} finally {
+			statement.close();
+		}
+		if (table == null) {
+			return;
+		}
+		// the old entries have no time of their own, so they get the creation time of their query
+		Statement migration = connection.createStatement();
+		try {
+			// the entries are moved in one transaction, so they are not moved twice if dropping the table fails
+			connection.setAutoCommit(false);
+			int numberOfEntries;
+			try {
+				numberOfEntries = migration.executeUpdate("INSERT INTO SushiQueryLog (QueryID, Timestamp, Entry) "
+						+ "SELECT l." + queryIDColumn + ", q.TIMESTAMP, l." + ELEMENT_COLLECTION_VALUE_COLUMN + " "
+						+ "FROM " + table + " l LEFT JOIN SushiQuery q ON q.ID = l." + queryIDColumn);
+				migration.executeUpdate("DELETE FROM " + table);
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+			migration.executeUpdate("DROP TABLE " + table);
+			System.out.println(numberOfEntries + " query log entries were moved from " + table + " to SushiQueryLog.");
+		} finally {
+			migration.close();
+		}
+	}
+
+	/**
+	 * Discards the buffers and pending entries, if the database was switched, e.g. to the test database.
+	 * Must be called while holding the lock of this object.
+	 */
+	private void checkDatabase() {
+		EntityManagerFactory currentDatabase = Persistor.getEntityManagerFactory();
+		if (database != currentDatabase) {
+			bufferGeneration++;
+			buffers.clear();
+			pendingEntries = new ArrayList<PendingEntry>();
+			database = currentDatabase;
+		}
+	}
+
+	private void executeDelete(String sql) {
+		synchronized (flushLock) {
+			EntityTransaction transaction = Persistor.getEntityManager().getTransaction();
+			try {
+				transaction.begin();
+				Persistor.getEntityManager().createNativeQuery(sql).executeUpdate();
+				transaction.commit();
+			} catch (Exception e) {
+				e.printStackTrace();
+				if (transaction.isActive()) {
+					transaction.rollback();
+				}
+			}
+		}
+	}
+
+	private static void close(Connection connection) {
+		try {
+			if (connection != null) {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return number of entries, which could not be written to the database
+	 */
+	public synchronized long getNumberOfDroppedEntries() {
+		return numberOfDroppedEntries;
+	}
+
+	/**
+	 * @return maximal number of entries per query kept in memory
+	 */
+	public static int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the maximal number of entries per query kept in memory.
+	 * Has only an effect on buffers created afterwards, so call it before {@link #getInstance()} or after {@link #clearInstance()}.
+	 * @param bufferSize
+	 */
+	public static void setBufferSize(int bufferSize) {
+		QueryLog.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @return number of pending entries, which triggers writing them to the database
+	 */
+	public static int getBatchSize() {
+		return batchSize;
+	}
+
+	public static void setBatchSize(int batchSize) {
+		QueryLog.batchSize = batchSize;
+	}
+
+	/**
+	 * Ring buffer with the latest entries of one query.
+	 */
+	private static class LogBuffer {
+
+		private final String[] entries;
+		private int start = 0;
+		private int size = 0;
+		private long numberOfEntries = 0;
+
+		private LogBuffer(int capacity) {
+			entries = new String[Math.max(1, capacity)];
+		}
+
+		private void add(String entry) {
+			if (size < entries.length) {
+				entries[(start + size) % entries.length] = entry;
+				size++;
+			} else {
+				entries[start] = entry;
+				start = (start + 1) % entries.length;
+			}
+			numberOfEntries++;
+		}
+
+		private List<String> getEntries() {
+			List<String> result = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				result.add(entries[(start + i) % entries.length]);
+			}
+			return result;
+		}
+	}
+
+	private static class PendingEntry {
+
+		private final int queryID;
+		private final Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+		private final String entry;
+
+		private PendingEntry(int queryID, String entry) {
+			this.queryID = queryID;
+			this.entry = entry;
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package sushi.query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Query;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import sushi.persistence.Persistable;
+import sushi.persistence.Persistor;
+
+/**
+ * A pending boundary timer, which is saved so it can be restored by the {@link TimerService} after a restart.
+ * The event type and the process instances are referenced by their IDs, 
+ * so they can be removed while the timer is pending.
+ */
+@Entity
+@Table(name = "ScheduledTimer")
+public class ScheduledTimer extends Persistable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "ID")
+	private int ID;
+	
+	@Column(name = "BoundaryTimerEventTypeID")
+	private int boundaryTimerEventTypeID;
+	
+	@ElementCollection(fetch = FetchType.EAGER)
+	@CollectionTable(name="ScheduledTimer_ProcessInstances", joinColumns=@JoinColumn(name="ScheduledTimerID"))
+	@Column(name="ProcessInstanceID")
+	private List<Integer> processInstanceIDs;
+	
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "DueTime")
+	private Date dueTime;
+	
+	/**
+	 * JPA-default constructor
+	 */
+	public ScheduledTimer() {
+		this.ID = 0;
+		this.processInstanceIDs = new ArrayList<Integer>();
+	}
+	
+	/**
+	 * Creates a new timer.
+	 * @param boundaryTimerEventTypeID
+	 * @param processInstanceIDs
+	 * @param dueTime
+	 */
+	public ScheduledTimer(int boundaryTimerEventTypeID, List<Integer> processInstanceIDs, Date dueTime) {
+		this();
+		this.boundaryTimerEventTypeID = boundaryTimerEventTypeID;
+		this.processInstanceIDs = processInstanceIDs;
+		this.dueTime = dueTime;
+	}
+
+	@Override
+	public int getID() {
+		return ID;
+	}
+
+	public int getBoundaryTimerEventTypeID() {
+		return boundaryTimerEventTypeID;
+	}
+
+	public List<Integer> getProcessInstanceIDs() {
+		return new ArrayList<Integer>(processInstanceIDs);
+	}
+
+	public Date getDueTime() {
+		return dueTime;
+	}
+	
+	@Override
+	public ScheduledTimer save() {
+		return (ScheduledTimer) super.save();
+	}
+	
+	@Override
+	public ScheduledTimer remove() {
+		return (ScheduledTimer) super.remove();
+	}
+	
+	/**
+	 * @return all pending timers
+	 */
+	public static List<ScheduledTimer> findAll() {
+		Query q = Persistor.getEntityManager().createQuery("SELECT t FROM ScheduledTimer t");
+		return q.getResultList();
+	}
+
+}
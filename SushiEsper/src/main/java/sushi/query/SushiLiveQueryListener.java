@@ -15,11 +15,14 @@ import sushi.util.SetUtil;
 
 import com.espertech.esper.client.EventBean;
 import com.espertech.esper.client.UpdateListener;
-import com.espertech.esper.event.xml.XMLEventBean;
 
+/**
+ * A listener for live queries, which logs the results and triggers the notification rules and monitoring points of the query.
+ * The log is kept by the {@link QueryLog} and the notification rules and monitoring points are looked up in caches,
+ * so a match usually does not wait for the database.
+ */
 public class SushiLiveQueryListener implements UpdateListener {
 	
-	private List<String> log;
 	protected SushiQuery query;
 	
 	public SushiLiveQueryListener(SushiQuery liveQuery) {
@@ -38,9 +41,12 @@ public class SushiLiveQueryListener implements UpdateListener {
 			notificationRule.trigger(newData[0].getUnderlying().toString());
 		}
 		//trigger monitoringPoints
-		List<SushiProcessInstance> instances = getInstances(newData); 
-		for (QueryMonitoringPoint point : QueryMonitoringPoint.findByQuery(query)){
-			for (SushiProcessInstance instance : instances)	point.trigger(instance);
+		List<QueryMonitoringPoint> points = QueryMonitoringPoint.findByQuery(query);
+		if (!points.isEmpty()) {
+			List<SushiProcessInstance> instances = getInstances(newData); 
+			for (QueryMonitoringPoint point : points){
+				for (SushiProcessInstance instance : instances)	point.trigger(instance);
+			}
 		}
 	}
 	
@@ -52,17 +58,17 @@ public class SushiLiveQueryListener implements UpdateListener {
 			//ProcessInstance fuer Events ermitteln
 			HashMap event = (HashMap) newData[0].getUnderlying();
 			for(Object value : event.values()){
-				if(value instanceof XMLEventBean){
-					XMLEventBean bean = (XMLEventBean) value;
-					if(bean.get("ProcessInstances") != null){
+				if(value instanceof EventBean){
+					EventBean bean = (EventBean) value;
+					if(bean.getEventType().isProperty("ProcessInstances") && bean.get("ProcessInstances") != null){
 						processInstancesList.add(new HashSet<Integer>((List<Integer>) bean.get("ProcessInstances")));
 					}
 				}
 			}
 			processInstances = SetUtil.intersection(processInstancesList);
 		}
-		if(newData[0] instanceof XMLEventBean){
-			XMLEventBean bean = (XMLEventBean) newData[0];
+		if(newData[0].getEventType().isProperty("ProcessInstances")){
+			EventBean bean = newData[0];
 			if(bean.get("ProcessInstances") != null){
 				processInstancesList.add(new HashSet<Integer>((List<Integer>) bean.get("ProcessInstances")));
 			}
@@ -82,8 +88,12 @@ public class SushiLiveQueryListener implements UpdateListener {
 		return logString.toString();
 	}
 	
+	/**
+	 * Returns the number of all log entries of the query, including the entries not kept in memory anymore.
+	 * @return
+	 */
 	public int getNumberOfLogEntries() {
-		return query.getLog().size();
+		return (int) QueryLog.getInstance().getNumberOfEntries(query);
 	}
 	
 }
\ No newline at end of file
@@ -12,20 +12,17 @@ import sushi.bpmn.element.AbstractBPMNElement;
 import sushi.bpmn.element.AttachableElement;
 import sushi.esper.SushiStreamProcessingAdapter;
 import sushi.esper.SushiUtils;
-import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
-import sushi.event.attribute.SushiAttribute;
-import sushi.event.collection.SushiMapTree;
 import sushi.monitoring.bpmn.BPMNQueryMonitor;
-import sushi.process.SushiProcessInstance;
 import sushi.util.SetUtil;
 
 import com.espertech.esper.client.EventBean;
-import com.espertech.esper.event.xml.XMLEventBean;
 
 
 /**
  * A listener for {@link SushiPatternQuery}.
+ * A match is handled with the IDs of the process instances and the matched esper events,
+ * so no entities are loaded from the database for the derived pattern event or for resending caught events.
  * @author micha
  */
 public class SushiPatternQueryListener extends SushiLiveQueryListener implements Serializable {
@@ -54,11 +51,13 @@ public class SushiPatternQueryListener extends SushiLiveQueryListener implements
 		if(newData[0].getUnderlying() instanceof HashMap){
 			//ProcessInstance für PatternEvent ermitteln
 			List<Set<Integer>> processInstancesList = new ArrayList<Set<Integer>>();
+			EventBean lastBean = null;
 			HashMap patternEvent = (HashMap) newData[0].getUnderlying();
 			for(Object value : patternEvent.values()){
-				if(value instanceof XMLEventBean){
-					XMLEventBean bean = (XMLEventBean) value;
-					if(bean.get("ProcessInstances") != null){
+				if(value instanceof EventBean){
+					EventBean bean = (EventBean) value;
+					lastBean = bean;
+					if(bean.getEventType().isProperty("ProcessInstances") && bean.get("ProcessInstances") != null){
 						processInstancesList.add(new HashSet<Integer>((List<Integer>) bean.get("ProcessInstances")));
 					}
 				}
@@ -68,31 +67,29 @@ public class SushiPatternQueryListener extends SushiLiveQueryListener implements
 			if(!processInstances.isEmpty()){
 				/*TODO: processInstances.iterator().next() ist nicht ausreichend, hier würde nur die erste ProcessInstance berücksichtigt werden, 
 				 * auch wenn das Event zu mehreren ProcessInstanzen gehört*/
-				BPMNQueryMonitor.getInstance().setQueryFinishedForProcessInstance((SushiPatternQuery) query, SushiProcessInstance.findByID(processInstances.iterator().next()));
+				BPMNQueryMonitor.getInstance().setQueryFinishedForProcessInstance((SushiPatternQuery) query, processInstances.iterator().next());
 				//Neues Event erzeugen und an Esper schicken
-				SushiEvent event = new SushiEvent(SushiEventType.findByTypeName(query.getTitle()), new Date());
-				for(int processInstanceID : processInstances){
-					event.addProcessInstance(SushiProcessInstance.findByID(processInstanceID));
-				}
-				if(event.getEventType() != null){
-					SushiStreamProcessingAdapter.getInstance().addEvent(event);			
+				SushiStreamProcessingAdapter esper = SushiStreamProcessingAdapter.getInstance();
+				if(esper.isEventType(query.getTitle())){
+					esper.addEvent(query.getTitle(), new Date(), processInstances);
 				}
 				//Gefangene Events nochmal abschicken, die in anderer Query wieder gebraucht werden
 				if(!SushiUtils.isIntersectionNotEmpty(alreadyTriggeredProcessInstances, new ArrayList<Integer>(processInstances))){ /*Wurde Event schon zum zweiten Mal abgeschickt? */
-					SushiEvent lastEvent = getLastEvent(newData);
-					if(lastEvent != null){
+					if(lastBean != null){
+						List<Integer> lastProcessInstances = getProcessInstances(lastBean);
+						alreadyTriggeredProcessInstances.addAll(lastProcessInstances);
+						String lastEventTypeName = lastBean.getEventType().getName();
 						//Schleife wurde getriggert
 						if(isLoopQueryListener){
-							resendLastEvent(lastEvent);
+							resendLastEvent(lastBean);
 						}
 						//Catching-Event wurde getriggert
-						if(catchingElement != null && lastEvent.getEventType().getTypeName().equals(catchingElement.getName())){
-							resendLastEvent(lastEvent);
+						if(catchingElement != null && lastEventTypeName.equals(catchingElement.getName())){
+							resendLastEvent(lastBean);
 						}
 						//Timer-Event wurde getriggert
-						if(!timerTriggerEventTypeName.isEmpty() && lastEvent.getEventType().getTypeName().equals(timerTriggerEventTypeName)){
-							TimerListener timerListener = new TimerListener(lastEvent, timerEventType, timeDuration);
-							timerListener.start();
+						if(!timerTriggerEventTypeName.isEmpty() && lastEventTypeName.equals(timerTriggerEventTypeName)){
+							TimerService.getInstance().schedule(lastProcessInstances, timerEventType, timeDuration);
 						}
 					}
 				}
@@ -101,35 +98,16 @@ public class SushiPatternQueryListener extends SushiLiveQueryListener implements
 		System.out.println("Event received for query " + query.getTitle() + ": " + newData[0].getUnderlying());
 	}
 	
-	private SushiEvent getLastEvent(EventBean[] newData){
-		SushiEvent event = null;
-		if(newData[0].getUnderlying() instanceof HashMap){
-			HashMap patternEvent = (HashMap) newData[0].getUnderlying();
-			for(Object value : patternEvent.values()){
-				if(value instanceof XMLEventBean){
-					XMLEventBean bean = (XMLEventBean) value;
-					SushiEventType eventType = SushiEventType.findByTypeName(bean.getEventType().getName());
-					
-					SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
-					for(SushiAttribute valueType : eventType.getValueTypes()){
-						values.put(valueType.getName(), (Serializable) bean.get(valueType.getName()));
-					}
-					
-					event = new SushiEvent(eventType, new Date(), values);
-					List<Integer> processInstanceIDs = (List<Integer>) bean.get("ProcessInstances");
-					alreadyTriggeredProcessInstances.addAll(processInstanceIDs);
-					for(Integer processInstanceID : processInstanceIDs){
-						event.addProcessInstance(SushiProcessInstance.findByID(processInstanceID));
-					}
-				}
-			}
+	private List<Integer> getProcessInstances(EventBean bean){
+		if(bean.getEventType().isProperty("ProcessInstances") && bean.get("ProcessInstances") != null){
+			return (List<Integer>) bean.get("ProcessInstances");
 		}
-		return event;
+		return new ArrayList<Integer>();
 	}
 
-	private void resendLastEvent(SushiEvent event) {
-		//TODO: Nicht speichern, Event nur zu Esper senden
-		SushiStreamProcessingAdapter.getInstance().addEvent(event);
+	private void resendLastEvent(EventBean bean) {
+		//Event wird nicht gespeichert, sondern nur mit neuem Zeitstempel zu Esper gesendet
+		SushiStreamProcessingAdapter.getInstance().resendEvent(bean, new Date());
 	}
 
 	public List<SushiEventType> getLoopBreakEventTypes() {
@@ -159,7 +137,7 @@ public class SushiPatternQueryListener extends SushiLiveQueryListener implements
 	
 	/**
 	 * Adds a timerTrigger, that should be the name of the eventtype, that triggers the timer, to this query. 
-	 * If the listener gets such a timerTrigger, it starts a timer thread, that fires the timerEventType after 
+	 * If the listener gets such a timerTrigger, it schedules a timer at the {@link TimerService}, that fires the timerEventType after 
 	 * the specified timeDuration to Esper.
 	 * @param timerTrigger
 	 * @param timerEventType
@@ -7,7 +7,6 @@ import java.util.Iterator;
 import java.util.List;
 
 import javax.persistence.Column;
-import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
@@ -24,6 +23,7 @@ import javax.persistence.TemporalType;
 import sushi.esper.SushiStreamProcessingAdapter;
 import sushi.monitoring.QueryMonitoringPoint;
 import sushi.notification.SushiNotificationRuleForQuery;
+import sushi.persistence.MetadataCache;
 import sushi.persistence.Persistable;
 import sushi.persistence.Persistor;
 
@@ -59,9 +59,7 @@ public class SushiQuery extends Persistable {
 	@Enumerated(EnumType.STRING)
 	private SushiQueryTypeEnum type;
 
-	@ElementCollection
-	@Column(name ="QueryLogs", length=15000)
-	private List<String> log;
+	private static final MetadataCache<Integer, SushiNotificationRuleForQuery> notificationRuleCache = MetadataCache.<Integer, SushiNotificationRuleForQuery>create("SushiQuery.findNotificationForQuery", SushiNotificationRuleForQuery.class).dependsOnRemovalOf(SushiQuery.class);
 
 	/**
 	 * Default-Constructor for JPA.
@@ -71,7 +69,6 @@ public class SushiQuery extends Persistable {
 		this.title = "";
 		this.queryString = "";
 		this.timestamp = new Timestamp(System.currentTimeMillis());
-		this.log = new ArrayList<String>();
 	}
 
 	public SushiQuery(String title, String queryString, SushiQueryTypeEnum type) {
@@ -124,13 +121,20 @@ public class SushiQuery extends Persistable {
 		return this.type == SushiQueryTypeEnum.ONDEMAND;
 	}
 
+	/**
+	 * Returns the latest entries of the log of this query, which are kept by the {@link QueryLog}.
+	 * @return
+	 */
 	public List<String> getLog(){
-		return log;
+		return QueryLog.getInstance().getEntries(this);
 	}
 
+	/**
+	 * Appends an entry to the log of this query. The entry is saved asynchronously by the {@link QueryLog}.
+	 * @param logentry
+	 */
 	public void addEntryToLog(String logentry){
-		log.add(logentry);
-		this.merge();
+		QueryLog.getInstance().append(this, logentry);
 	}
 
 	public String toString() {
@@ -238,9 +242,21 @@ public class SushiQuery extends Persistable {
 
 	@SuppressWarnings("unchecked")
 	public List<SushiNotificationRuleForQuery> findNotificationForQuery(){
+		// unsaved queries share the ID 0, so their results are not cached
+		if (this.getID() != 0) {
+			List<SushiNotificationRuleForQuery> cached = notificationRuleCache.get(this.getID());
+			if (cached != null) {
+				return cached;
+			}
+		}
 		EntityManager em = Persistor.getEntityManager();
 		Query query = em.createNativeQuery("select * from SushiNotificationRule WHERE Disc = 'Q' AND QUERY_ID = '" + this.getID() + "'", SushiNotificationRuleForQuery.class);
-		return query.getResultList();
+		List<SushiNotificationRuleForQuery> notificationRules = query.getResultList();
+		// new notification rules, e.g. saved by cascade, do not always invalidate the cache, so an empty result is looked up again
+		if (this.getID() != 0 && !notificationRules.isEmpty()) {
+			notificationRuleCache.put(this.getID(), notificationRules);
+		}
+		return notificationRules;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -283,6 +299,7 @@ public class SushiQuery extends Persistable {
 		for (SushiNotificationRuleForQuery notification : this.findNotificationForQuery()) notification.remove();
 		//remove MonitoringPoints
 		for (QueryMonitoringPoint point: QueryMonitoringPoint.findByQuery(this)) point.remove();
+		QueryLog.getInstance().remove(this);
 		return (SushiQuery) super.remove();
 	}
 	
@@ -293,6 +310,8 @@ public class SushiQuery extends Persistable {
 			Query query = Persistor.getEntityManager().createQuery("DELETE FROM SushiQuery");
 			int deleteRecords = query.executeUpdate();
 			entr.commit();
+			MetadataCache.invalidate(SushiQuery.class);
+			QueryLog.getInstance().removeAll();
 			System.out.println(deleteRecords + " records are deleted.");
 		} catch (Exception ex) {
 			System.out.println(ex.getMessage());
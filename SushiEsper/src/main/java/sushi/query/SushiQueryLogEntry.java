@@ -0,0 +1,104 @@
+package sushi.query;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Query;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.eclipse.persistence.annotations.Index;
+
+import sushi.persistence.Persistable;
+import sushi.persistence.Persistor;
+
+/**
+ * An entry of the log of a live query.
+ * The entries are only appended, usually in batches by the {@link QueryLog}.
+ * The query is referenced by its ID, so queries can be removed independently of their log.
+ */
+@Entity
+@Table(name = "SushiQueryLog")
+public class SushiQueryLogEntry extends Persistable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "ID")
+	private int ID;
+
+	@Index
+	@Column(name = "QueryID")
+	private int queryID;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "Timestamp")
+	private Date timestamp;
+
+	@Column(name = "Entry", length = 15000)
+	private String entry;
+
+	/**
+	 * JPA-default constructor
+	 */
+	public SushiQueryLogEntry() {
+		this.ID = 0;
+	}
+
+	public SushiQueryLogEntry(int queryID, Date timestamp, String entry) {
+		this();
+		this.queryID = queryID;
+		this.timestamp = timestamp;
+		this.entry = entry;
+	}
+
+	@Override
+	public int getID() {
+		return ID;
+	}
+
+	public int getQueryID() {
+		return queryID;
+	}
+
+	public Date getTimestamp() {
+		return timestamp;
+	}
+
+	public String getEntry() {
+		return entry;
+	}
+
+	//JPA-Methods
+
+	/**
+	 * Returns the latest log entries of the query, the latest first.
+	 * @param queryID
+	 * @param maxResults
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<SushiQueryLogEntry> findLatestByQueryID(int queryID, int maxResults) {
+		Query query = Persistor.getEntityManager().createNativeQuery("SELECT * FROM SushiQueryLog WHERE QueryID = " + queryID + " ORDER BY ID DESC", SushiQueryLogEntry.class);
+		query.setMaxResults(maxResults);
+		return query.getResultList();
+	}
+
+	/**
+	 * Returns the number of log entries of the query.
+	 * @param queryID
+	 * @return
+	 */
+	public static long countByQueryID(int queryID) {
+		Query query = Persistor.getEntityManager().createNativeQuery("SELECT COUNT(*) FROM SushiQueryLog WHERE QueryID = " + queryID);
+		return ((Number) query.getSingleResult()).longValue();
+	}
+
+}
@@ -1,52 +1,109 @@
 package sushi.query;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 import sushi.esper.SushiStreamProcessingAdapter;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.eventhandling.Broker;
+import sushi.persistence.Persistor;
+import sushi.process.SushiProcessInstance;
 
 /**
- * This thread is indicated to wait for the specified time duration and then to send a timer event to Esper.
+ * This task is scheduled by the {@link TimerService} to send a timer event to Esper after the specified time duration.
  * It is used for monitoring of attached intermediate timer events.
  * @author micha
  */
-public class TimerListener extends Thread {
-	
-	private SushiEvent timerEvent;
-	private SushiEventType boundaryTimerEventType;
-	private float timeDuration;
+public class TimerListener implements Runnable {
 
+	private ScheduledTimer timer;
+	private ScheduledFuture<?> future;
+
+	/**
+	 * Creates a timer, which sends an event of the boundary timer event type
+	 * for the process instances of the timer event after the time duration.
+	 * @param timerEvent
+	 * @param boundaryTimerEventType
+	 * @param timeDuration in minutes
+	 */
 	public TimerListener(SushiEvent timerEvent, SushiEventType boundaryTimerEventType, float timeDuration) {
-		this.timerEvent = timerEvent;
-		this.boundaryTimerEventType = boundaryTimerEventType;
-		this.timeDuration = timeDuration;
+		this(getProcessInstanceIDs(timerEvent), boundaryTimerEventType, timeDuration);
+	}
+
+	/**
+	 * Creates a timer, which sends an event of the boundary timer event type
+	 * for the given process instances after the time duration.
+	 * @param processInstanceIDs
+	 * @param boundaryTimerEventType
+	 * @param timeDuration in minutes
+	 */
+	public TimerListener(List<Integer> processInstanceIDs, SushiEventType boundaryTimerEventType, float timeDuration) {
+		//Millisekunden = Minuten * 1000 * 60
+		long time = Math.round(timeDuration * 1000 * 60);
+		this.timer = new ScheduledTimer(boundaryTimerEventType.getID(), new ArrayList<Integer>(processInstanceIDs), new Date(System.currentTimeMillis() + time));
+	}
+
+	private static List<Integer> getProcessInstanceIDs(SushiEvent timerEvent) {
+		List<Integer> processInstanceIDs = new ArrayList<Integer>();
+		for (SushiProcessInstance processInstance : timerEvent.getProcessInstances()) {
+			processInstanceIDs.add(processInstance.getID());
+		}
+		return processInstanceIDs;
+	}
+
+	/**
+	 * Creates the task for a timer restored from the database.
+	 * @param timer
+	 */
+	public TimerListener(ScheduledTimer timer) {
+		this.timer = timer;
 	}
 
 	@Override
 	public void run() {
+		Broker.getLock().lock();
 		try {
-			//Millisekunden = Minuten * 1000 * 60
-			float time = timeDuration * 1000 * 60;
-			int sleepTime = Math.round(time);
-			
-			Thread.sleep(sleepTime);
-		} catch (InterruptedException e) {
+			long lateness = System.currentTimeMillis() - timer.getDueTime().getTime();
+			if (TimerService.getInstance().fired(this, lateness)) {
+				SushiEvent boundaryTimerEvent = createBoundaryTimerEvent();
+				// the event type may have been removed while the timer was pending
+				if (boundaryTimerEvent.getEventType() != null) {
+					System.err.println("Send Boundary Timer Event to Esper" + boundaryTimerEvent);
+					SushiStreamProcessingAdapter.getInstance().addEvent(boundaryTimerEvent);
+				}
+			}
+		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			Broker.getLock().unlock();
+			Persistor.closeEntityManager();
 		}
-		System.err.println("Send Boundary Timer Event to Esper" + createBoundaryTimerEvent());
-		
-		Broker.getLock().lock();
-		SushiStreamProcessingAdapter.getInstance().addEvent(createBoundaryTimerEvent());
-		Broker.getLock().unlock();
 	}
 
 	private SushiEvent createBoundaryTimerEvent() {
-		SushiEvent boundaryTimerEvent = new SushiEvent(boundaryTimerEventType, new Date());
-		boundaryTimerEvent.setProcessInstances(timerEvent.getProcessInstances());
+		SushiEvent boundaryTimerEvent = new SushiEvent(SushiEventType.findByID(timer.getBoundaryTimerEventTypeID()), new Date());
+		for (int processInstanceID : timer.getProcessInstanceIDs()) {
+			SushiProcessInstance processInstance = SushiProcessInstance.findByID(processInstanceID);
+			if (processInstance != null) {
+				boundaryTimerEvent.addProcessInstance(processInstance);
+			}
+		}
 		return boundaryTimerEvent;
 	}
-	
-}
 
+	public ScheduledTimer getTimer() {
+		return timer;
+	}
+
+	ScheduledFuture<?> getFuture() {
+		return future;
+	}
+
+	void setFuture(ScheduledFuture<?> future) {
+		this.future = future;
+	}
+
+}
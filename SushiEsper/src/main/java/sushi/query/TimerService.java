@@ -0,0 +1,253 @@
+package sushi.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import sushi.event.SushiEvent;
+import sushi.event.SushiEventType;
+
+/**
+ * Schedules the boundary timers of {@link SushiPatternQueryListener}s.
+ * All timers share one thread instead of one sleeping thread per timer.
+ * Pending timers are saved as {@link ScheduledTimer}s, so they can be restored after a restart,
+ * and are cancelled if their process instance is finished.
+ */
+public class TimerService {
+
+	private static TimerService instance = null;
+	private ScheduledThreadPoolExecutor executor;
+	private Set<TimerListener> pendingTimers = new HashSet<TimerListener>();
+	private Map<Integer, Set<TimerListener>> pendingTimersByProcessInstanceID = new HashMap<Integer, Set<TimerListener>>();
+	private long numberOfFiredTimers = 0;
+	private long numberOfCancelledTimers = 0;
+	private long totalLateness = 0;
+	private long maximumLateness = 0;
+
+	/**
+	 * Singleton, therefore the constructor is private.
+	 */
+	private TimerService() {
+		executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "TimerService");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Singleton class. Use this method to get the instance.
+	 * @return
+	 */
+	public static synchronized TimerService getInstance() {
+		if (instance == null) {
+			instance = new TimerService();
+		}
+		return instance;
+	}
+
+	/**
+	 * Stops the timer thread and clears the singleton-object. 
+	 * The pending timers stay saved and can be restored.
+	 */
+	public static synchronized void clearInstance() {
+		if (instance != null) {
+			instance.executor.shutdownNow();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Saves and schedules a timer, which sends an event of the boundary timer event type
+	 * for the process instances of the timer event after the time duration.
+	 * @param timerEvent
+	 * @param boundaryTimerEventType
+	 * @param timeDuration in minutes
+	 * @return the scheduled timer
+	 */
+	public synchronized TimerListener schedule(SushiEvent timerEvent, SushiEventType boundaryTimerEventType, float timeDuration) {
+		TimerListener timerListener = new TimerListener(timerEvent, boundaryTimerEventType, timeDuration);
+		timerListener.getTimer().save();
+		schedule(timerListener);
+		return timerListener;
+	}
+
+	/**
+	 * Saves and schedules a timer, which sends an event of the boundary timer event type
+	 * for the given process instances after the time duration.
+	 * @param processInstanceIDs
+	 * @param boundaryTimerEventType
+	 * @param timeDuration in minutes
+	 * @return the scheduled timer
+	 */
+	public synchronized TimerListener schedule(List<Integer> processInstanceIDs, SushiEventType boundaryTimerEventType, float timeDuration) {
+		TimerListener timerListener = new TimerListener(processInstanceIDs, boundaryTimerEventType, timeDuration);
+		timerListener.getTimer().save();
+		schedule(timerListener);
+		return timerListener;
+	}
+
+	/**
+	 * Schedules the saved timers, that are not pending yet, e.g. after a restart.
+	 * Timers, whose due time has passed, fire immediately.
+	 * @return number of restored timers
+	 */
+	public synchronized int restore() {
+		Set<Integer> pendingTimerIDs = new HashSet<Integer>();
+		for (TimerListener timerListener : pendingTimers) {
+			pendingTimerIDs.add(timerListener.getTimer().getID());
+		}
+		int numberOfRestoredTimers = 0;
+		for (ScheduledTimer timer : ScheduledTimer.findAll()) {
+			if (!pendingTimerIDs.contains(timer.getID())) {
+				schedule(new TimerListener(timer));
+				numberOfRestoredTimers++;
+			}
+		}
+		return numberOfRestoredTimers;
+	}
+
+	/**
+	 * Cancels the timer and removes it from the database.
+	 * @param timerListener
+	 * @return true, if the timer was pending
+	 */
+	public synchronized boolean cancel(TimerListener timerListener) {
+		if (!unregister(timerListener)) {
+			return false;
+		}
+		timerListener.getFuture().cancel(false);
+		removeFromDatabase(timerListener.getTimer());
+		numberOfCancelledTimers++;
+		return true;
+	}
+
+	/**
+	 * Cancels all pending timers of the process instance, e.g. after the process instance is finished.
+	 * @param processInstanceID
+	 * @return number of cancelled timers
+	 */
+	public synchronized int cancelForProcessInstance(int processInstanceID) {
+		Set<TimerListener> timerListeners = pendingTimersByProcessInstanceID.get(processInstanceID);
+		if (timerListeners == null) {
+			return 0;
+		}
+		int numberOfCancelledTimers = 0;
+		for (TimerListener timerListener : new ArrayList<TimerListener>(timerListeners)) {
+			if (cancel(timerListener)) {
+				numberOfCancelledTimers++;
+			}
+		}
+		return numberOfCancelledTimers;
+	}
+
+	/**
+	 * Called by the timer when it fires. Removes the timer from the pending timers and the database.
+	 * @param timerListener
+	 * @param lateness milliseconds between due time and firing
+	 * @return false, if the timer was cancelled in the meantime and must not send its event
+	 */
+	synchronized boolean fired(TimerListener timerListener, long lateness) {
+		if (!unregister(timerListener)) {
+			return false;
+		}
+		removeFromDatabase(timerListener.getTimer());
+		numberOfFiredTimers++;
+		totalLateness += Math.max(lateness, 0);
+		maximumLateness = Math.max(maximumLateness, lateness);
+		return true;
+	}
+
+	private void schedule(TimerListener timerListener) {
+		ScheduledTimer timer = timerListener.getTimer();
+		long delay = Math.max(timer.getDueTime().getTime() - System.currentTimeMillis(), 0);
+		timerListener.setFuture(executor.schedule(timerListener, delay, TimeUnit.MILLISECONDS));
+		pendingTimers.add(timerListener);
+		for (int processInstanceID : timer.getProcessInstanceIDs()) {
+			Set<TimerListener> timerListeners = pendingTimersByProcessInstanceID.get(processInstanceID);
+			if (timerListeners == null) {
+				timerListeners = new HashSet<TimerListener>();
+				pendingTimersByProcessInstanceID.put(processInstanceID, timerListeners);
+			}
+			timerListeners.add(timerListener);
+		}
+	}
+
+	private boolean unregister(TimerListener timerListener) {
+		ScheduledTimer timer = timerListener.getTimer();
+		if (!pendingTimers.remove(timerListener)) {
+			return false;
+		}
+		for (int processInstanceID : timer.getProcessInstanceIDs()) {
+			Set<TimerListener> timerListeners = pendingTimersByProcessInstanceID.get(processInstanceID);
+			if (timerListeners != null) {
+				timerListeners.remove(timerListener);
+				if (timerListeners.isEmpty()) {
+					pendingTimersByProcessInstanceID.remove(processInstanceID);
+				}
+			}
+		}
+		return true;
+	}
+
+	private void removeFromDatabase(ScheduledTimer timer) {
+		// the timer is not saved, if saving failed
+		if (timer.getID() != 0) {
+			timer.remove();
+		}
+	}
+
+	/**
+	 * @return number of timers waiting to fire
+	 */
+	public synchronized int getNumberOfPendingTimers() {
+		return pendingTimers.size();
+	}
+
+	/**
+	 * @return pending timers of the process instance
+	 */
+	public synchronized List<TimerListener> getPendingTimers(int processInstanceID) {
+		Set<TimerListener> timerListeners = pendingTimersByProcessInstanceID.get(processInstanceID);
+		if (timerListeners == null) {
+			return new ArrayList<TimerListener>();
+		}
+		return new ArrayList<TimerListener>(timerListeners);
+	}
+
+	public synchronized long getNumberOfFiredTimers() {
+		return numberOfFiredTimers;
+	}
+
+	public synchronized long getNumberOfCancelledTimers() {
+		return numberOfCancelledTimers;
+	}
+
+	/**
+	 * @return average milliseconds between due time and firing of the fired timers
+	 */
+	public synchronized double getAverageLateness() {
+		if (numberOfFiredTimers == 0) {
+			return 0;
+		}
+		return (double) totalLateness / numberOfFiredTimers;
+	}
+
+	/**
+	 * @return maximal milliseconds between due time and firing of the fired timers
+	 */
+	public synchronized long getMaximumLateness() {
+		return maximumLateness;
+	}
+
+}
@@ -1,8 +1,10 @@
 package sushi.transformation;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -18,70 +20,77 @@ import com.espertech.esper.client.UpdateListener;
 
 /**
  * Listener for events generated by the data stream management system.
+ * All events generated by one invocation of the listener are sent to the broker as one batch,
+ * so bursts of a pattern (e.g. with every or repeat) lock the broker only once.
  */
 public class TransformationListener implements UpdateListener {
 	private SushiEventType eventType;
 	private int numberOfEventsFired;
-	
-	
+	private List<AttributeConverter> converters = null;
+
+
 	public TransformationListener(SushiEventType sushiEventType) {
 		eventType = sushiEventType;
 		numberOfEventsFired = 0;
 	}
-	
+
 	/**
 	 * Normalizes the transformed events and sends them to the broker.
-	 * 
+	 *
 	 * @see UpdateListener#update(EventBean[], EventBean[])
 	 */
 	public void update(EventBean[] newData, EventBean[] oldData) {
-		
+		if (newData == null) {
+			return;
+		}
 		Set<Map<String, Serializable>> uniqueEvents = new HashSet<Map<String, Serializable>>();
-		
+		List<SushiEvent> events = new ArrayList<SushiEvent>();
+
 		// create event/attribute values for event type
 		for (EventBean data : newData) {
-			System.out.println("Event received: " + data.getUnderlying());
 			Map<String, Serializable> attributeExpressionsAndValues = (Map<String, Serializable>) data.getUnderlying();
-			if (!uniqueEvents.contains(attributeExpressionsAndValues)) {
-				uniqueEvents.add(attributeExpressionsAndValues);
+			if (uniqueEvents.add(attributeExpressionsAndValues)) {
 				SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
-				
-				for (SushiAttribute attribute : eventType.getRootLevelValueTypes()) {
+
+				for (AttributeConverter converter : getConverters()) {
 					try {
-						String attributeExpression = attribute.getAttributeExpression();
-						Serializable attributeValue = null;
-						if (attribute.getType() == SushiAttributeTypeEnum.DATE) {
-							attributeValue = (Date) attributeExpressionsAndValues.get(attributeExpression);
-						} else if (attribute.getType() == SushiAttributeTypeEnum.INTEGER) {
-							if (attributeExpressionsAndValues.get(attributeExpression) instanceof Long) {
-								attributeValue = ((Long) attributeExpressionsAndValues.get(attributeExpression)).intValue();
-							} else if (attributeExpressionsAndValues.get(attributeExpression) instanceof Double) {
-								attributeValue = ((Double) attributeExpressionsAndValues.get(attributeExpression)).intValue();
-							} else {
-								attributeValue = (Integer) attributeExpressionsAndValues.get(attributeExpression);
-							}
-						} else {
-							attributeValue = attributeExpressionsAndValues.get(attributeExpression).toString();
-						}
-						values.put(attributeExpression, attributeValue); 
+						values.put(converter.attributeExpression, converter.convert(attributeExpressionsAndValues.get(converter.attributeExpression)));
 					} catch (Exception e) {
 						e.printStackTrace();
 					}
 				}
 
-				System.out.println(values.toString());
 				SushiEvent event = new SushiEvent(eventType, new Date(), values);
-				
+
 				Object timestamp = attributeExpressionsAndValues.get("Timestamp");
 				if (timestamp instanceof Date) {
 					event.setTimestamp((Date) timestamp);
 				}
-				
-				Broker.send(event);
-				System.out.println("Event created: " + event);
-				numberOfEventsFired++;
+				events.add(event);
 			}
 		}
+
+		if (!events.isEmpty()) {
+			// not sent asynchronously: the listener is called under the lock of the Broker,
+			// where waiting for a full ingestion pipeline would never end
+			Broker.send(events);
+			System.out.println("Events created: " + events.size() + " of type " + eventType.getTypeName());
+			numberOfEventsFired += events.size();
+		}
+	}
+
+	/**
+	 * The conversion of the values for the attributes of the event type is determined once.
+	 */
+	private List<AttributeConverter> getConverters() {
+		if (converters == null) {
+			List<AttributeConverter> attributeConverters = new ArrayList<AttributeConverter>();
+			for (SushiAttribute attribute : eventType.getRootLevelValueTypes()) {
+				attributeConverters.add(new AttributeConverter(attribute.getAttributeExpression(), attribute.getType()));
+			}
+			converters = attributeConverters;
+		}
+		return converters;
 	}
 
 	public int getNumberOfEventsFired() {
@@ -92,5 +101,34 @@ public class TransformationListener implements UpdateListener {
 		this.numberOfEventsFired = numberOfEventsFired;
 	}
 
-	
+	/**
+	 * Converts the values generated by Esper to the type of an attribute of the event type.
+	 */
+	private static class AttributeConverter {
+
+		private final String attributeExpression;
+		private final SushiAttributeTypeEnum type;
+
+		private AttributeConverter(String attributeExpression, SushiAttributeTypeEnum type) {
+			this.attributeExpression = attributeExpression;
+			this.type = (type == null) ? SushiAttributeTypeEnum.STRING : type;
+		}
+
+		private Serializable convert(Object value) {
+			switch (type) {
+			case DATE:
+				return (Date) value;
+			case INTEGER:
+				// Esper generates Long or Double values for calculations
+				if (value instanceof Number) {
+					return ((Number) value).intValue();
+				}
+				return (Integer) value;
+			default:
+				return value.toString();
+			}
+		}
+	}
+
+
 }
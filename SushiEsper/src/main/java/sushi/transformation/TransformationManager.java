@@ -18,7 +18,6 @@ import sushi.transformation.element.externalknowledge.ExternalKnowledgeExpressio
 
 import com.espertech.esper.client.EPAdministrator;
 import com.espertech.esper.client.EPException;
-import com.espertech.esper.client.EPStatement;
 
 /**
  * Handles the transformation of events. Checks transformations rules for validity 
@@ -67,16 +66,12 @@ public class TransformationManager {
 	 * @throws EPException
 	 */
 	public TransformationListener register(TransformationRule transformationRule) throws EPException {
-		/* NOTE: one statement for each transformation rule
-		 * 
-		 * other option would be: 
-		 * 		if the transformation rule is equal an existing one, 
-		 * 		a second listener (probably transforming to another event type but with the same attributes)
-		 * 		would be added to the existing statement
+		/* NOTE: transformation rules with the same stateless query share one statement,
+		 * the listener of each rule (probably transforming to another event type but with the same attributes)
+		 * is added to the existing statement
 		 */
-		EPStatement newStatement = esper.createStatement(transformationRule.getQuery(), generateStatementName(transformationRule));
 		TransformationListener listener = esper.createTransformationListener(transformationRule.getEventType());
-		newStatement.addListener(listener);
+		esper.getStatementRegistry().acquire(transformationRule.getQuery(), generateStatementName(transformationRule), listener);
 		return listener;
 	}
 	
@@ -88,19 +83,8 @@ public class TransformationManager {
 	 * @throws EPException
 	 */
 	public boolean removeFromEsper(TransformationRule transformationRule) throws EPException {
-		EPStatement statement = esper.getStatement(generateStatementName(transformationRule));
-		if (statement != null) {
-			// statement has only one listener - see comment in addToEsper(...)
-			statement.removeAllListeners();
-			statement.destroy();
-//			statement.removeListener(transformationRule.getTransformationListener());
-//			if (!statement.getUpdateListeners().hasNext()) {
-//				statement.destroy();
-//			}
-			return true;
-		} else {
-			return false;
-		}
+		// the statement is destroyed, if no other rule or query shares it - see comment in register(...)
+		return esper.getStatementRegistry().release(generateStatementName(transformationRule));
 	}
 
 	private String generateStatementName(TransformationRule transformationRule) {
@@ -0,0 +1,100 @@
+package sushi.esper.queries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sushi.esper.EsperUtils;
+import sushi.esper.SushiEventRepresentationEnum;
+import sushi.esper.SushiStreamProcessingAdapter;
+import sushi.event.SushiEvent;
+import sushi.event.SushiEventType;
+import sushi.event.attribute.SushiAttribute;
+import sushi.event.attribute.SushiAttributeTree;
+import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.event.collection.SushiMapTree;
+import sushi.persistence.Persistor;
+import sushi.util.XMLUtils;
+
+import com.espertech.esper.client.EPOnDemandQueryResult;
+
+/**
+ * Tests sending events to Esper as map events instead of XML-DOM documents.
+ */
+public class MapEventRepresentationTest {
+
+	private SushiStreamProcessingAdapter esper;
+	private SushiEventType eventType;
+
+	@Before
+	public void setup() {
+		Persistor.useTestEnviroment();
+		SushiStreamProcessingAdapter.clearInstance();
+		SushiStreamProcessingAdapter.setEventRepresentation(SushiEventRepresentationEnum.MAP);
+		esper = SushiStreamProcessingAdapter.getInstance();
+
+		SushiAttribute vehicleInformation = new SushiAttribute("vehicle_information");
+		new SushiAttribute(vehicleInformation, "transport", SushiAttributeTypeEnum.STRING);
+		SushiAttributeTree attributes = new SushiAttributeTree();
+		attributes.addRoot(new SushiAttribute("Container", SushiAttributeTypeEnum.STRING));
+		attributes.addRoot(new SushiAttribute("Weight", SushiAttributeTypeEnum.INTEGER));
+		attributes.addRoot(vehicleInformation);
+		eventType = new SushiEventType("ContainerMapEvent", attributes);
+		esper.addEventType(eventType);
+	}
+
+	@After
+	public void tearDown() {
+		SushiStreamProcessingAdapter.clearInstance();
+		SushiStreamProcessingAdapter.setEventRepresentation(SushiEventRepresentationEnum.XML_DOM);
+	}
+
+	@Test
+	public void testMapEvents() {
+		assertTrue("Event type was not added.", esper.isEventType(eventType));
+		assertTrue(esper.eventTypeHasAttribute(eventType, "vehicle_information.transport"));
+
+		List<SushiEvent> events = new ArrayList<SushiEvent>();
+		for (int i = 0; i < 10; i++) {
+			SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+			values.addRootElement("Container", "C" + i);
+			values.addRootElement("Weight", Integer.toString(i * 100));
+			values.addRootElement("vehicle_information", null);
+			values.addChild("vehicle_information", "transport", (i % 2 == 0) ? "Truck" : "Ship");
+			events.add(new SushiEvent(eventType, new Date(), values));
+		}
+		esper.addEvents(events);
+
+		EPOnDemandQueryResult result = esper.getEsperRuntime().executeQuery("SELECT * FROM ContainerMapEventWindow WHERE Weight > 450 AND vehicle_information.transport = 'Truck'");
+		assertTrue("expected 2 events, got " + result.getArray().length, result.getArray().length == 2);
+	}
+
+	@Test
+	public void testDateValuesGivenAsText() {
+		SushiAttributeTree attributes = new SushiAttributeTree();
+		attributes.addRoot(new SushiAttribute("Arrival", SushiAttributeTypeEnum.DATE));
+		SushiEventType arrivalEventType = new SushiEventType("ArrivalMapEvent", attributes);
+		Date arrival = new Date(1358256600000L);
+
+		//dates given as text are parsed like in the XML representation
+		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+		values.addRootElement("Arrival", XMLUtils.getFormattedDate(arrival));
+		Map<String, Object> map = EsperUtils.eventToMap(new SushiEvent(arrivalEventType, new Date(), values));
+		assertEquals(arrival, map.get("Arrival"));
+
+		values = new SushiMapTree<String, Serializable>();
+		values.addRootElement("Arrival", "tomorrow");
+		map = EsperUtils.eventToMap(new SushiEvent(arrivalEventType, new Date(), values));
+		assertTrue(map.get("Arrival") == null);
+	}
+
+}
@@ -0,0 +1,128 @@
+package sushi.esper.queries;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sushi.esper.StatementRegistry;
+import sushi.esper.StatementRegistry.SharedStatement;
+
+import com.espertech.esper.client.Configuration;
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPServiceProviderManager;
+import com.espertech.esper.client.EventBean;
+import com.espertech.esper.client.UpdateListener;
+
+/**
+ * Tests the sharing of statements with the same EPL by the {@link StatementRegistry}.
+ */
+public class StatementRegistryTest {
+
+	private EPServiceProvider esper;
+	private StatementRegistry registry;
+
+	@Before
+	public void setup() {
+		Configuration configuration = new Configuration();
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("Value", Integer.class);
+		configuration.addEventType("RegistryEvent", properties);
+		esper = EPServiceProviderManager.getProvider("StatementRegistryTest", configuration);
+		esper.initialize();
+		registry = new StatementRegistry(esper.getEPAdministrator());
+	}
+
+	@Test
+	public void testCanonicalize() {
+		assertTrue(StatementRegistry.canonicalize(" SELECT *\n\tFROM  RegistryEvent ; ").equals("SELECT * FROM RegistryEvent"));
+		assertTrue(StatementRegistry.canonicalize("SELECT 'a  b' FROM RegistryEvent").equals("SELECT 'a  b' FROM RegistryEvent"));
+	}
+
+	@Test
+	public void testSharedStatement() {
+		CountingListener firstListener = new CountingListener();
+		CountingListener secondListener = new CountingListener();
+		SharedStatement firstStatement = registry.acquire("SELECT * FROM RegistryEvent WHERE Value > 1", "first", firstListener);
+		SharedStatement secondStatement = registry.acquire("SELECT *  FROM RegistryEvent\nWHERE Value > 1", null, secondListener);
+		assertTrue(firstStatement == secondStatement);
+		assertTrue(firstStatement.getNumberOfReferences() == 2);
+		assertTrue(registry.getNumberOfSharedAcquisitions() == 1);
+
+		sendEvent(2);
+		sendEvent(0);
+		assertTrue(firstListener.count == 1 && secondListener.count == 1);
+		assertTrue(firstStatement.getNumberOfUpdates() == 1);
+		assertTrue(firstStatement.getNumberOfEvents() == 1);
+
+		assertTrue(registry.release("first"));
+		assertTrue(!registry.release("first"));
+		assertTrue(!firstStatement.getStatement().isDestroyed());
+		sendEvent(3);
+		assertTrue(firstListener.count == 1 && secondListener.count == 2);
+
+		assertTrue(registry.release(secondListener));
+		assertTrue(firstStatement.getStatement().isDestroyed());
+		assertTrue(registry.getSharedStatements().isEmpty());
+	}
+
+	@Test
+	public void testStatementsWithStateAreNotShared() {
+		String pattern = "SELECT * FROM PATTERN [every (A=RegistryEvent(Value = 1) -> B=RegistryEvent(Value = 2))]";
+		CountingListener firstListener = new CountingListener();
+		SharedStatement firstStatement = registry.acquire(pattern, null, firstListener);
+		assertTrue(!firstStatement.isShareable());
+		sendEvent(1);
+		
+		//the second listener must not get the match started before it was registered
+		CountingListener secondListener = new CountingListener();
+		SharedStatement secondStatement = registry.acquire(pattern, null, secondListener);
+		assertTrue(firstStatement != secondStatement);
+		assertTrue(registry.getNumberOfSharedAcquisitions() == 0);
+		sendEvent(2);
+		assertTrue(firstListener.count == 1 && secondListener.count == 0);
+		
+		assertTrue(!registry.acquire("SELECT * FROM RegistryEvent.win:length(2)", null, new CountingListener()).isShareable());
+		assertTrue(!registry.acquire("SELECT count(*) FROM RegistryEvent", null, new CountingListener()).isShareable());
+		assertTrue(registry.getSharedStatements().size() == 4);
+		
+		assertTrue(registry.release(firstListener));
+		assertTrue(firstStatement.getStatement().isDestroyed());
+		assertTrue(!secondStatement.getStatement().isDestroyed());
+	}
+
+	@Test
+	public void testFailingListener() {
+		CountingListener listener = new CountingListener();
+		registry.acquire("SELECT * FROM RegistryEvent", null, new UpdateListener() {
+			@Override
+			public void update(EventBean[] newEvents, EventBean[] oldEvents) {
+				throw new RuntimeException("failing listener");
+			}
+		});
+		SharedStatement statement = registry.acquire("SELECT * FROM RegistryEvent", null, listener);
+		sendEvent(1);
+		assertTrue(listener.count == 1);
+		assertTrue(statement.getNumberOfUpdates() == 1);
+	}
+
+	private void sendEvent(int value) {
+		Map<String, Object> event = new HashMap<String, Object>();
+		event.put("Value", value);
+		esper.getEPRuntime().sendEvent(event, "RegistryEvent");
+	}
+
+	private static class CountingListener implements UpdateListener {
+
+		private int count = 0;
+
+		@Override
+		public void update(EventBean[] newEvents, EventBean[] oldEvents) {
+			count += newEvents.length;
+		}
+	}
+
+}
@@ -18,6 +18,7 @@ import com.espertech.esper.client.EPOnDemandQueryResult;
 import sushi.esper.SushiStreamProcessingAdapter;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
+import sushi.event.SushiWindowRetentionEnum;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.attribute.SushiAttributeTree;
 import sushi.event.attribute.SushiAttributeTypeEnum;
@@ -134,5 +135,37 @@ public class SushiEsperTests {
 		EPOnDemandQueryResult result = SushiStreamProcessingAdapter.getInstance().getEsperRuntime().executeQuery("Select * From KinoWindow");
 		assertTrue("Number of events should have been 999, instead of " + result.getArray().length, result.getArray().length == 999);
 	}
+	
+	@Test
+	public void testRemoveEventsByID(){
+		eventType = Broker.send(eventType);
+		SushiEvent.setEventType(events, eventType);
+		Broker.send(events);
+		List<Integer> eventIDs = new ArrayList<Integer>();
+		for (SushiEvent event : events.subList(0, 100)) {
+			assertTrue("Event was not saved", event.getID() != 0);
+			eventIDs.add(event.getID());
+		}
+		esper.removeEventsByID(eventType.getTypeName(), eventIDs);
+		EPOnDemandQueryResult result = esper.getEsperRuntime().executeQuery("Select * From KinoWindow");
+		assertTrue("Number of events should have been 899, instead of " + result.getArray().length, result.getArray().length == 899);
+		esper.removeEvents(events.subList(100, 200));
+		result = esper.getEsperRuntime().executeQuery("Select * From KinoWindow");
+		assertTrue("Number of events should have been 799, instead of " + result.getArray().length, result.getArray().length == 799);
+	}
+	
+	@Test
+	public void testWindowRetention(){
+		eventType.setWindowRetention(SushiWindowRetentionEnum.LENGTH, 100);
+		esper.createWindow(eventType);
+		assertTrue("Window has not been created", esper.hasWindow("KinoWindow"));
+		assertTrue("Window is not indexed by event ID", !esper.getWindowIndexNames(eventType).isEmpty());
+		for (SushiEvent event : events) {
+			event.setEventType(eventType);
+			esper.addEvent(event);
+		}
+		EPOnDemandQueryResult result = esper.getEsperRuntime().executeQuery("Select * From KinoWindow");
+		assertTrue("Number of events should have been 100, instead of " + result.getArray().length, result.getArray().length == 100);
+	}
 
 }
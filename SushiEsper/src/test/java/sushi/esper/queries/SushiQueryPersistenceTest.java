@@ -2,8 +2,13 @@ package sushi.esper.queries;
 
 import static org.junit.Assert.assertTrue;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.FixMethodOrder;
@@ -11,6 +16,7 @@ import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
 import sushi.persistence.Persistor;
+import sushi.query.QueryLog;
 import sushi.query.SushiQuery;
 import sushi.query.SushiQueryTypeEnum;
 
@@ -73,4 +79,55 @@ public class SushiQueryPersistenceTest {
 		assertTrue("should find query in db, but did not", SushiQuery.findQueryByTitle("testquery")==q1);
 	}
 	
+	@Test
+	public void testBoundedQueryLog(){
+		QueryLog.clearInstance();
+		QueryLog.setBufferSize(3);
+		try {
+			SushiQuery q1 = new SushiQuery("testquery", "select * from stuff", SushiQueryTypeEnum.LIVE);
+			q1 = q1.save();
+			for (int i = 0; i < 5; i++) {
+				q1.addEntryToLog("entry" + i);
+			}
+			List<String> log = q1.getLog();
+			assertTrue("only the latest entries should be kept", log.equals(Arrays.asList("entry2", "entry3", "entry4")));
+			assertTrue(QueryLog.getInstance().getNumberOfEntries(q1) == 5);
+			//the entries are reloaded from the database
+			QueryLog.clearInstance();
+			assertTrue(QueryLog.getInstance().getNumberOfEntries(q1) == 5);
+			assertTrue(q1.getLog().equals(Arrays.asList("entry2", "entry3", "entry4")));
+			q1.remove();
+			assertTrue(QueryLog.getInstance().getNumberOfEntries(q1) == 0);
+		} finally {
+			QueryLog.setBufferSize(QueryLog.DEFAULT_BUFFER_SIZE);
+			QueryLog.clearInstance();
+		}
+	}
+	
+	@Test
+	public void testMigrationOfElementCollectionLog() throws SQLException {
+		SushiQuery q1 = new SushiQuery("testquery", "select * from stuff", SushiQueryTypeEnum.LIVE);
+		q1 = q1.save();
+		//the log was an element collection of the query before
+		Connection connection = Persistor.openConnection();
+		try {
+			Statement statement = connection.createStatement();
+			statement.executeUpdate("DROP TABLE IF EXISTS SushiQuery_log");
+			statement.executeUpdate("CREATE TABLE SushiQuery_log (SushiQuery_ID INTEGER, QueryLogs VARCHAR(15000))");
+			statement.executeUpdate("INSERT INTO SushiQuery_log VALUES (" + q1.getID() + ", 'old entry')");
+			statement.close();
+			
+			QueryLog.clearInstance();
+			assertTrue(q1.getLog().equals(Arrays.asList("old entry")));
+			q1.addEntryToLog("new entry");
+			QueryLog.clearInstance();
+			assertTrue(q1.getLog().equals(Arrays.asList("old entry", "new entry")));
+			ResultSet tables = connection.getMetaData().getTables(null, null, "SushiQuery_log", null);
+			assertTrue("the old table should be dropped", !tables.next());
+		} finally {
+			connection.close();
+			QueryLog.clearInstance();
+		}
+	}
+	
 }
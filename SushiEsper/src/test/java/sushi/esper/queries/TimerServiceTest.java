@@ -0,0 +1,80 @@
+package sushi.esper.queries;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sushi.event.SushiEvent;
+import sushi.event.SushiEventType;
+import sushi.persistence.Persistor;
+import sushi.process.SushiProcessInstance;
+import sushi.query.TimerService;
+
+/**
+ * Tests scheduling, cancelling and restoring of boundary timers by the {@link TimerService}.
+ */
+public class TimerServiceTest {
+
+	private SushiEventType timerEventType;
+	private SushiProcessInstance processInstance;
+
+	@Before
+	public void setup() {
+		Persistor.useTestEnviroment();
+		TimerService.clearInstance();
+		timerEventType = new SushiEventType("BoundaryTimer");
+		timerEventType.save();
+		processInstance = new SushiProcessInstance();
+		processInstance.save();
+	}
+
+	@After
+	public void tearDown() {
+		TimerService.clearInstance();
+	}
+
+	@Test
+	public void testFireTimer() throws InterruptedException {
+		TimerService timerService = TimerService.getInstance();
+		// 0.001 minutes = 60 milliseconds
+		timerService.schedule(createTimerEvent(), timerEventType, 0.001f);
+		assertTrue(timerService.getNumberOfPendingTimers() == 1);
+		Thread.sleep(1000);
+		assertTrue(timerService.getNumberOfPendingTimers() == 0);
+		assertTrue(timerService.getNumberOfFiredTimers() == 1);
+		assertTrue(timerService.getMaximumLateness() >= 0);
+	}
+
+	@Test
+	public void testCancelTimer() {
+		TimerService timerService = TimerService.getInstance();
+		timerService.schedule(createTimerEvent(), timerEventType, 60);
+		assertTrue(timerService.getPendingTimers(processInstance.getID()).size() == 1);
+		assertTrue(timerService.cancelForProcessInstance(processInstance.getID()) == 1);
+		assertTrue(timerService.getNumberOfPendingTimers() == 0);
+		assertTrue(timerService.restore() == 0);
+	}
+
+	@Test
+	public void testRestoreTimer() {
+		TimerService.getInstance().schedule(createTimerEvent(), timerEventType, 60);
+		TimerService.clearInstance();
+		TimerService timerService = TimerService.getInstance();
+		assertTrue(timerService.getNumberOfPendingTimers() == 0);
+		assertTrue(timerService.restore() == 1);
+		assertTrue(timerService.getPendingTimers(processInstance.getID()).size() == 1);
+		assertTrue(timerService.restore() == 0);
+		timerService.cancelForProcessInstance(processInstance.getID());
+	}
+
+	private SushiEvent createTimerEvent() {
+		SushiEvent timerEvent = new SushiEvent(new SushiEventType("TimerTrigger"), new Date());
+		timerEvent.addProcessInstance(processInstance);
+		return timerEvent;
+	}
+
+}
@@ -0,0 +1,147 @@
+package sushi.eventhandling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sushi.event.SushiEvent;
+import sushi.event.SushiEventType;
+import sushi.event.attribute.SushiAttribute;
+import sushi.event.attribute.SushiAttributeTree;
+import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.event.collection.SushiMapTree;
+import sushi.persistence.Persistor;
+
+/**
+ * Tests the asynchronous sending of events with the {@link IngestionPipeline}.
+ */
+public class IngestionPipelineTest {
+
+	private SushiEventType eventType;
+
+	@Before
+	public void setup() {
+		Persistor.useTestEnviroment();
+		Broker.shutdownPipeline();
+		SushiAttribute attribute = new SushiAttribute("Number", SushiAttributeTypeEnum.INTEGER);
+		eventType = Broker.send(new SushiEventType("PipelineEvent", new SushiAttributeTree(attribute)));
+	}
+
+	@After
+	public void tearDown() {
+		Broker.configurePipeline(IngestionPipeline.DEFAULT_QUEUE_CAPACITY, IngestionPipeline.DEFAULT_BATCH_SIZE);
+	}
+
+	private SushiEvent createEvent(int number) {
+		return new SushiEvent(eventType, new Date(), new SushiMapTree<String, Serializable>("Number", number));
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		Broker.configurePipeline(100, 5);
+		final List<Integer> ingestedNumbers = Collections.synchronizedList(new ArrayList<Integer>());
+		IngestionCallback callback = new IngestionCallback() {
+			@Override
+			public void ingested(List<SushiEvent> events) {
+				for (SushiEvent event : events) {
+					ingestedNumbers.add((Integer) event.getValues().get("Number"));
+				}
+			}
+
+			@Override
+			public void failed(List<SushiEvent> events, Exception exception) {
+			}
+		};
+		List<IngestionFuture> futures = new ArrayList<IngestionFuture>();
+		for (int i = 0; i < 20; i++) {
+			futures.add(Broker.sendAsync(Arrays.asList(createEvent(2 * i), createEvent(2 * i + 1)), callback));
+		}
+		int previousID = 0;
+		for (IngestionFuture future : futures) {
+			for (SushiEvent event : future.get(30, TimeUnit.SECONDS)) {
+				assertTrue(event.getID() > previousID);
+				previousID = event.getID();
+			}
+			assertTrue(future.isPersisted());
+		}
+		assertEquals(40, ingestedNumbers.size());
+		for (int i = 0; i < ingestedNumbers.size(); i++) {
+			assertEquals(i, ingestedNumbers.get(i).intValue());
+		}
+		assertEquals(40, SushiEvent.findByEventType(eventType).size());
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		Broker.configurePipeline(1, 1);
+		final List<IngestionFuture> futures = Collections.synchronizedList(new ArrayList<IngestionFuture>());
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 3; i++) {
+					futures.add(Broker.sendAsync(createEvent(i)));
+				}
+			}
+		};
+		// the persistence stage waits for the lock, so only one submission fits into its queue
+		Broker.getLock().lock();
+		try {
+			producer.start();
+			producer.join(2000);
+			assertTrue("the producer should wait for the full pipeline", producer.isAlive());
+			assertTrue(futures.size() == 2);
+			assertTrue(!futures.get(0).isDone() && !futures.get(1).isDone());
+		} finally {
+			Broker.getLock().unlock();
+		}
+		producer.join(30000);
+		assertTrue(!producer.isAlive());
+		for (IngestionFuture future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		assertEquals(3, SushiEvent.findByEventType(eventType).size());
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		IngestionPipeline pipeline = Broker.getPipeline();
+		List<IngestionFuture> futures = new ArrayList<IngestionFuture>();
+		Broker.getLock().lock();
+		try {
+			for (int i = 0; i < 10; i++) {
+				futures.add(Broker.sendAsync(createEvent(i)));
+			}
+			pipeline.shutdown();
+		} finally {
+			Broker.getLock().unlock();
+		}
+		// the accepted submissions are processed completely, later ones are failed
+		pipeline.awaitTermination();
+		for (IngestionFuture future : futures) {
+			assertTrue(future.isDone() && future.isPersisted());
+			future.get();
+		}
+		IngestionFuture lateFuture = pipeline.submit(Arrays.asList(createEvent(10)), null);
+		assertTrue(lateFuture.isDone() && !lateFuture.isPersisted());
+		try {
+			lateFuture.get();
+			assertTrue("a submission after the shutdown should fail", false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(10, SushiEvent.findByEventType(eventType).size());
+	}
+
+}
@@ -0,0 +1,118 @@
+package sushi.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sushi.monitoring.bpmn.ProcessInstanceMonitor;
+import sushi.monitoring.bpmn.ProcessInstanceStatus;
+import sushi.monitoring.bpmn.ProcessMonitor;
+import sushi.monitoring.bpmn.QueryStatistics;
+import sushi.process.SushiProcess;
+import sushi.process.SushiProcessInstance;
+import sushi.query.PatternQueryType;
+import sushi.query.SushiPatternQuery;
+import sushi.query.SushiQueryTypeEnum;
+
+/**
+ * Tests the incrementally maintained statistics of the {@link ProcessMonitor} and its {@link QueryStatistics}.
+ */
+public class ProcessMonitorStatisticsTest {
+
+	private SushiProcessInstance createProcessInstance(int ID) {
+		SushiProcessInstance processInstance = new SushiProcessInstance();
+		processInstance.setID(ID);
+		return processInstance;
+	}
+
+	private SushiPatternQuery createQuery(String title) {
+		return new SushiPatternQuery(title, "", SushiQueryTypeEnum.LIVE, PatternQueryType.STATETRANSITION);
+	}
+
+	@Test
+	public void testQueryStatistics() {
+		ProcessMonitor processMonitor = new ProcessMonitor(new SushiProcess("StatisticsProcess"));
+		SushiProcessInstance firstInstance = createProcessInstance(1);
+		SushiProcessInstance secondInstance = createProcessInstance(2);
+		SushiPatternQuery firstQuery = createQuery("FirstQuery");
+		SushiPatternQuery secondQuery = createQuery("SecondQuery");
+
+		//the first process instance gets the queries afterwards, the second one with its creation
+		processMonitor.getProcessInstanceStatus(firstInstance);
+		processMonitor.addQuery(firstQuery);
+		processMonitor.addQuery(secondQuery);
+		processMonitor.getProcessInstanceStatus(secondInstance);
+		assertEquals(2, processMonitor.getNumberOfProcessInstances());
+
+		QueryStatistics statistics = processMonitor.getQueryStatistics(firstQuery);
+		assertTrue(statistics != null);
+		assertEquals(0, statistics.getNumberOfFinishedQueries());
+		assertEquals(0, processMonitor.getPathFrequencyForQuery(firstQuery), 0);
+
+		processMonitor.setQueryFinishedForProcessInstance(firstQuery, firstInstance);
+		assertEquals(1, statistics.getNumberOfFinishedQueries());
+		assertEquals(0.5, processMonitor.getPathFrequencyForQuery(firstQuery), 0);
+		assertEquals(1, statistics.getRuntimeStatistics().getCount());
+
+		processMonitor.setQueryFinishedForProcessInstance(firstQuery, secondInstance);
+		assertEquals(2, statistics.getNumberOfFinishedQueries());
+		assertEquals(1, processMonitor.getPathFrequencyForQuery(firstQuery), 0);
+		assertEquals(0, processMonitor.getPathFrequencyForQuery(secondQuery), 0);
+
+		//both queries of the process instance ended, so its runtime is included in the statistics
+		long queryRuntimeSum = 0;
+		for (ProcessInstanceMonitor processInstanceMonitor : processMonitor.getProcessInstanceMonitors()) {
+			queryRuntimeSum += processInstanceMonitor.getRuntimeForQuery(firstQuery);
+		}
+		assertEquals(queryRuntimeSum, statistics.getRuntimeSum());
+		assertEquals((float) queryRuntimeSum / 2, processMonitor.getAverageRuntimeForQuery(firstQuery), 0.001);
+
+		processMonitor.setQueryFinishedForProcessInstance(secondQuery, firstInstance);
+		assertEquals(ProcessInstanceStatus.Finished, processMonitor.getProcessInstanceStatus(firstInstance));
+		assertEquals(ProcessInstanceStatus.Running, processMonitor.getProcessInstanceStatus(secondInstance));
+		assertEquals(1, processMonitor.getRuntimeStatistics().getCount());
+
+		long runtimeSum = 0;
+		for (ProcessInstanceMonitor processInstanceMonitor : processMonitor.getProcessInstanceMonitors()) {
+			runtimeSum += processInstanceMonitor.getRuntime();
+		}
+		assertEquals((float) runtimeSum / 2, processMonitor.getAverageRuntimeMillis(), 0.001);
+	}
+
+	@Test
+	public void testConcurrentQueriesAndStatusChanges() throws InterruptedException {
+		final ProcessMonitor processMonitor = new ProcessMonitor(new SushiProcess("ConcurrentStatisticsProcess"));
+		final SushiProcessInstance processInstance = createProcessInstance(1);
+		final SushiPatternQuery firstQuery = createQuery("FirstQuery");
+		processMonitor.addQuery(firstQuery);
+		processMonitor.getProcessInstanceStatus(processInstance);
+
+		//adding queries and finishing queries lock the monitors in different order, which must not deadlock
+		Thread queryAdder = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 200; i++) {
+					processMonitor.addQuery(createQuery("Query" + i));
+				}
+			}
+		};
+		Thread queryFinisher = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 200; i++) {
+					processMonitor.setQueryFinishedForProcessInstance(firstQuery, processInstance);
+				}
+			}
+		};
+		queryAdder.start();
+		queryFinisher.start();
+		queryAdder.join(10000);
+		queryFinisher.join(10000);
+		assertFalse("monitors are deadlocked", queryAdder.isAlive() || queryFinisher.isAlive());
+		assertEquals(201, processMonitor.getProcessInstanceMonitors().iterator().next().getQueries().size());
+		assertEquals(1, processMonitor.getQueryStatistics(firstQuery).getNumberOfFinishedQueries());
+	}
+
+}
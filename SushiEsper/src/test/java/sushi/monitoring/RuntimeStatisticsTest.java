@@ -0,0 +1,35 @@
+package sushi.monitoring;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sushi.monitoring.bpmn.RuntimeStatistics;
+
+/**
+ * Tests the streaming statistics over the runtimes of process instances.
+ */
+public class RuntimeStatisticsTest {
+
+	@Test
+	public void testStatistics() {
+		RuntimeStatistics statistics = new RuntimeStatistics();
+		assertTrue(statistics.getCount() == 0);
+		assertTrue(statistics.getPercentile(50) == 0);
+		for (long runtime = 1; runtime <= 1000; runtime++) {
+			statistics.add(runtime * 1000);
+		}
+		assertTrue(statistics.getCount() == 1000);
+		assertTrue(statistics.getMin() == 1000);
+		assertTrue(statistics.getMax() == 1000000);
+		assertTrue(Math.abs(statistics.getMean() - 500500) < 0.001);
+		//variance of 1..1000 is 83416.67, the runtimes are scaled by 1000
+		assertTrue(Math.abs(statistics.getVariance() - 83416666666.67) < 1);
+		long median = statistics.getPercentile(50);
+		assertTrue(median >= 500000 && median <= 500000 * (1 + RuntimeStatistics.PRECISION));
+		long percentile99 = statistics.getPercentile(99);
+		assertTrue(percentile99 >= 990000 && percentile99 <= 990000 * (1 + RuntimeStatistics.PRECISION));
+		assertTrue(statistics.getPercentile(100) == 1000000);
+	}
+
+}
@@ -99,5 +99,53 @@ public class NotificationEventTest {
 		
 	}
 
+	@Test
+	public void notificationWithSeveralConditionsTest(){
+		NotificationObservable.getInstance().clearInstance();
+		SushiAttribute attribute = new SushiAttribute("TestAttribute", SushiAttributeTypeEnum.STRING);
+		SushiAttributeTree attributes = new SushiAttributeTree(attribute);
+		SushiEventType eventType = new SushiEventType("TestType3", attributes);
+		Broker.send(eventType);
+		
+		SushiUser user = new SushiUser("name", "1234", "email");
+		user.save();
+		
+		Broker.send(new SushiNotificationRuleForEvent(eventType, new SushiCondition("TestAttribute", "Wert"), user, SushiNotificationPriorityEnum.LOW));
+		Broker.send(new SushiNotificationRuleForEvent(eventType, new SushiCondition("TestAttribute", "AndererWert"), user, SushiNotificationPriorityEnum.LOW));
+		Broker.send(new SushiNotificationRuleForEvent(eventType, new SushiCondition("OtherAttribute", "Wert"), user, SushiNotificationPriorityEnum.LOW));
+		assertTrue(NotificationObservable.getInstance().getNumberOfNotificationRules(eventType) == 3);
+		
+		SushiMapTree tree = new SushiMapTree(attribute.getAttributeExpression(), "Wert");
+		SushiEvent event = new SushiEvent(eventType, new Date(), tree);
+		Broker.send(event);
+		
+		assertTrue(SushiNotificationForEvent.findUnseenForUser(user).size() == 1);
+		
+	}
 	
+	@Test
+	public void notificationForEventTypeOfOtherUnitOfWorkTest(){
+		NotificationObservable.getInstance().clearInstance();
+		SushiAttribute attribute = new SushiAttribute("TestAttribute", SushiAttributeTypeEnum.STRING);
+		SushiAttributeTree attributes = new SushiAttributeTree(attribute);
+		SushiEventType eventType = new SushiEventType("TestType4", attributes);
+		Broker.send(eventType);
+		
+		SushiUser user = new SushiUser("name", "1234", "email");
+		user.save();
+		Broker.send(new SushiNotificationRuleForEvent(eventType, user, SushiNotificationPriorityEnum.LOW));
+		
+		// the event type of the event is another instance of the same event type, e.g. loaded by another request
+		Persistor.closeEntityManager();
+		SushiEventType loadedEventType = SushiEventType.findByTypeName("TestType4");
+		assertTrue(loadedEventType != eventType);
+		assertTrue(NotificationObservable.getInstance().getNumberOfNotificationRules(loadedEventType) == 1);
+		
+		SushiMapTree tree = new SushiMapTree(attribute.getAttributeExpression(), "Wert");
+		SushiEvent event = new SushiEvent(loadedEventType, new Date(), tree);
+		Broker.send(event);
+		
+		assertTrue(SushiNotificationForEvent.findUnseenForUser(user).size() == 1);
+	}
+
 }
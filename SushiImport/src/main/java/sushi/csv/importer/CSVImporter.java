@@ -3,18 +3,28 @@ package sushi.csv.importer;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.LineNumberReader;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import sushi.event.SushiEvent;
 import sushi.event.attribute.SushiAttribute;
-import sushi.event.attribute.SushiAttributeTypeEnum;
 import sushi.event.collection.SushiMapTree;
+import sushi.excel.importer.ColumnPlan;
+import sushi.excel.importer.EventBatchHandler;
 import sushi.excel.importer.FileNormalizer;
+import sushi.excel.importer.ImportException;
 import sushi.excel.importer.SushiImportEvent;
 
 /**
@@ -23,8 +33,10 @@ import sushi.excel.importer.SushiImportEvent;
 public class CSVImporter extends FileNormalizer{
 	
 	private static final long serialVersionUID = 1L;
+	private static final int READ_BUFFER_SIZE = 1 << 20;
 	private char maskChar = '"';
 	private char separator = ';';
+	private int parserThreads = Runtime.getRuntime().availableProcessors();
 
 	@Override
 	public List<String> getColumnTitlesFromFile(String filePath) {
@@ -88,44 +100,161 @@ public class CSVImporter extends FileNormalizer{
 	
 	@Override
 	public List<SushiEvent> importEventsFromFile(String filePath, List<SushiAttribute> selectedAttributes, String timestamp) {
-		String seperator = ";";
-		String line;
-		String[] split;
-		List<String> lineElements;
-		List<SushiEvent> eventList = new ArrayList<SushiEvent>();
-		List<Integer> selectedColumnIndexes = new ArrayList<Integer>();
-		List<String> columnTitles = getColumnTitlesFromFile(filePath);
-		List<String> selectedColumnTitles = new ArrayList<String>();
-		int timeStampColumnIndex = columnTitles.indexOf(timestamp);
-		
-		for (SushiAttribute attribute : selectedAttributes) {
-			selectedColumnTitles.add(attribute.getName());
-		}
-		
-		try {
-			FileReader file = new FileReader(filePath);
-			BufferedReader data = new BufferedReader(file);
-
-			line = data.readLine();
-			//if seperator is defined replace default seperator (;) and move one row forward
-			if (line.contains("sep")){
-				split = line.split("=");
-				seperator = split[1];
-				line = data.readLine();
+		final List<SushiEvent> eventList = new ArrayList<SushiEvent>();
+		importEventsFromFile(filePath, selectedAttributes, timestamp, DEFAULT_BATCH_SIZE, new EventBatchHandler() {
+			@Override
+			public void handle(List<SushiEvent> events) {
+				eventList.addAll(events);
 			}
-			split = line.split(seperator);
-			for(int i = 0; i < split.length; i++){
-				if(selectedColumnTitles.contains(split[i])) selectedColumnIndexes.add(i);
+		});
+		return eventList;
+	}
+	
+	/**
+	 * Reads the file piecewise: the rows are parsed in parallel in batches of batchSize rows,
+	 * the batches are handed to the handler in the order of the file.
+	 * At most two batches per parser thread are held in memory, independent of the size of the file.
+	 * @throws ImportException if a row could not be parsed, the batches before this row were already handed to the handler
+	 */
+	@Override
+	public long importEventsFromFile(String filePath, List<SushiAttribute> selectedAttributes, String timestamp, int batchSize, EventBatchHandler handler) {
+		long numberOfEvents = 0;
+		LineNumberReader data = null;
+		ExecutorService parser = null;
+		try {
+			// counts all lines of the file, so failures are reported with the row number shown by editors
+			data = new LineNumberReader(new FileReader(filePath), READ_BUFFER_SIZE);
+			List<String> columnTitles = readColumnTitles(data);
+			if (columnTitles == null) {
+				return 0;
 			}
+			ColumnPlan plan = new ColumnPlan(columnTitles, selectedAttributes, timestamp);
+			int threads = Math.max(1, parserThreads);
+			parser = Executors.newFixedThreadPool(threads);
+			Deque<Future<List<SushiEvent>>> pendingBatches = new ArrayDeque<Future<List<SushiEvent>>>();
+			List<String> lines = new ArrayList<String>(batchSize);
+			List<Integer> rowNumbers = new ArrayList<Integer>(batchSize);
+			String line;
 			while ((line = data.readLine()) != null) {
-				split = line.split(seperator);
-				lineElements = getElementsFromLine(line);
-				eventList.add(generateEventFromRow(lineElements, columnTitles, selectedAttributes, selectedColumnIndexes, timeStampColumnIndex));
+				if (line.isEmpty()) {
+					continue;
+				}
+				lines.add(line);
+				rowNumbers.add(data.getLineNumber());
+				if (lines.size() >= batchSize) {
+					pendingBatches.add(parser.submit(new BatchParser(lines, rowNumbers, plan)));
+					lines = new ArrayList<String>(batchSize);
+					rowNumbers = new ArrayList<Integer>(batchSize);
+					if (pendingBatches.size() >= 2 * threads) {
+						numberOfEvents += handleBatch(pendingBatches.poll(), handler);
+					}
+				}
+			}
+			if (!lines.isEmpty()) {
+				pendingBatches.add(parser.submit(new BatchParser(lines, rowNumbers, plan)));
+			}
+			while (!pendingBatches.isEmpty()) {
+				numberOfEvents += handleBatch(pendingBatches.poll(), handler);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			if (parser != null) {
+				parser.shutdownNow();
+			}
+			close(data);
+		}
+		return numberOfEvents;
+	}
+	
+	/**
+	 * Reads the column titles and a preceding definition of the separator (sep=...).
+	 * @return column titles or null, if the file is empty
+	 */
+	private List<String> readColumnTitles(BufferedReader data) throws IOException {
+		String line = data.readLine();
+		//if seperator is defined replace default seperator (;) and move one row forward
+		if (line != null && line.startsWith("sep=")) {
+			separator = line.split("=")[1].charAt(0);
+			line = data.readLine();
+		}
+		return (line == null) ? null : getElementsFromLine(line);
+	}
+	
+	/**
+	 * Waits for the parsing of a batch and hands it to the handler.
+	 * @return number of events of the batch
+	 */
+	private int handleBatch(Future<List<SushiEvent>> batch, EventBatchHandler handler) {
+		List<SushiEvent> events;
+		try {
+			events = batch.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Import was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		handler.handle(events);
+		return events.size();
+	}
+	
+	private static void close(BufferedReader data) {
+		if (data != null) {
+			try {
+				data.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * @return number of threads parsing the rows of a file in parallel
+	 */
+	public int getParserThreads() {
+		return parserThreads;
+	}
+
+	public void setParserThreads(int parserThreads) {
+		this.parserThreads = parserThreads;
+	}
+	
+	/**
+	 * Creates the events of a batch of rows.
+	 */
+	private class BatchParser implements Callable<List<SushiEvent>> {
+		
+		private final List<String> lines;
+		private final List<Integer> rowNumbers;
+		private final ColumnPlan plan;
+		
+		/**
+		 * @param lines
+		 * @param rowNumbers numbers of the lines in the file, starting with 1
+		 * @param plan
+		 */
+		private BatchParser(List<String> lines, List<Integer> rowNumbers, ColumnPlan plan) {
+			this.lines = lines;
+			this.rowNumbers = rowNumbers;
+			this.plan = plan;
+		}
+
+		@Override
+		public List<SushiEvent> call() {
+			List<SushiEvent> events = new ArrayList<SushiEvent>(lines.size());
+			for (int i = 0; i < lines.size(); i++) {
+				try {
+					events.add(plan.createEvent(getElementsFromLine(lines.get(i))));
+				} catch (RuntimeException e) {
+					throw new ImportException(rowNumbers.get(i), e);
+				}
+			}
+			return events;
 		}
-		return eventList;
 	}
 	
 	private SushiImportEvent generateImportEventFromRow(List<String> rowSplit, List<String> columnTitles, List<Integer> selectedColumnIndexes, String timestampName) {
@@ -145,23 +274,6 @@ public class CSVImporter extends FileNormalizer{
 		
 	}
 
-	private SushiEvent generateEventFromRow(List<String> rowSplit, List<String> columnTitles, List<SushiAttribute> selectedAttributes, List<Integer> selectedColumnIndexes, int timeStampColumnIndex) {
-		//Default value
-		Date timestamp = new Date();
-		SimpleDateFormat sdfToDate = new SimpleDateFormat("dd.MM.yyyy HH:mm");
-		if(timeStampColumnIndex > -1){
-			try {
-				timestamp = sdfToDate.parse(rowSplit.get(timeStampColumnIndex));
-			} catch (ParseException e) {
-				e.printStackTrace();
-			}
-		}
-	
-		SushiMapTree<String, Serializable> values = generateValueTree(rowSplit, columnTitles, selectedAttributes, selectedColumnIndexes, timeStampColumnIndex);
-		SushiEvent event = new SushiEvent(timestamp, values);
-		return event;
-	}
-	
 	private SushiMapTree<String, Serializable> generateValueTree(List<String> rowSplit, List<String> columnTitles, List<Integer> selectedColumnIndexes, int timeStampColumnIndex) {
 		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
 		for(int i : selectedColumnIndexes){
@@ -172,38 +284,6 @@ public class CSVImporter extends FileNormalizer{
 		return values;
 	}
 
-	private SushiMapTree<String, Serializable> generateValueTree(List<String> rowSplit, List<String> columnTitles, List<SushiAttribute> selectedAttributes, List<Integer> selectedColumnIndexes, int timeStampColumnIndex) {
-		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
-		SushiAttributeTypeEnum attributeType = null;
-		for (int i : selectedColumnIndexes) {
-			if (i != timeStampColumnIndex) {
-				String attributeName = columnTitles.get(i);
-				for (SushiAttribute attribute : selectedAttributes) {
-					if (attribute.getName().equals(attributeName)) {
-						attributeType = attribute.getType();
-					}
-				}
-				Serializable attributeValue = rowSplit.get(i);
-				if (attributeType != null) {
-					if (attributeType.equals(SushiAttributeTypeEnum.DATE)) {
-						SimpleDateFormat sdfToDate = new SimpleDateFormat("dd.MM.yyyy HH:mm");
-						try {
-							attributeValue = sdfToDate.parse(rowSplit.get(i));
-						} catch (ParseException e) {
-							e.printStackTrace();
-						}
-					} else if (attributeType.equals(SushiAttributeTypeEnum.INTEGER)) {
-						attributeValue = Integer.parseInt(rowSplit.get(i));
-					} else {
-						attributeValue = rowSplit.get(i);
-					}
-				}
-				values.addRootElement(attributeName, attributeValue);
-			}
-		}
-		return values;
-	}
-	
 	private List<String> getElementsFromLine(String line){
 		List<String> elements = new ArrayList<String>();
 		boolean entryMasked = false;
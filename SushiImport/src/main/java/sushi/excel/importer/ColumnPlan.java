@@ -0,0 +1,191 @@
+package sushi.excel.importer;
+
+import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sushi.event.SushiEvent;
+import sushi.event.attribute.SushiAttribute;
+import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.event.collection.SushiMapTree;
+
+/**
+ * Mapping of the columns of a tabular file to the selected attributes, determined once per import
+ * instead of searching the attribute of each cell.
+ * The plan can be shared by several threads parsing rows in parallel.
+ */
+public class ColumnPlan implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	public static final String DEFAULT_DATE_PATTERN = "dd.MM.yyyy HH:mm";
+
+	private final List<String> columnTitles;
+	private final int timestampColumnIndex;
+	private final int[] valueColumnIndexes;
+	private final boolean[] valueColumns;
+	private final SushiAttributeTypeEnum[] columnTypes;
+	private final String datePattern;
+	private transient volatile ThreadLocal<SimpleDateFormat> dateFormat;
+
+	/**
+	 * @param columnTitles titles of all columns of the file
+	 * @param selectedAttributes attributes, whose columns are imported
+	 * @param timestamp title of the timestamp column or null
+	 */
+	public ColumnPlan(List<String> columnTitles, List<SushiAttribute> selectedAttributes, String timestamp) {
+		this(columnTitles, selectedAttributes, timestamp, DEFAULT_DATE_PATTERN);
+	}
+
+	/**
+	 * @param columnTitles titles of all columns of the file
+	 * @param selectedAttributes attributes, whose columns are imported
+	 * @param timestamp title of the timestamp column or null
+	 * @param datePattern pattern of dates given as text
+	 */
+	public ColumnPlan(List<String> columnTitles, List<SushiAttribute> selectedAttributes, String timestamp, String datePattern) {
+		this(columnTitles, getTypesByName(selectedAttributes), timestamp, datePattern);
+	}
+
+	private ColumnPlan(List<String> columnTitles, Map<String, SushiAttributeTypeEnum> typesByName, String timestamp, String datePattern) {
+		this.columnTitles = new ArrayList<String>(columnTitles);
+		this.timestampColumnIndex = (timestamp == null) ? -1 : columnTitles.indexOf(timestamp);
+		this.datePattern = datePattern;
+		List<Integer> indexes = new ArrayList<Integer>();
+		valueColumns = new boolean[columnTitles.size()];
+		columnTypes = new SushiAttributeTypeEnum[columnTitles.size()];
+		for (int i = 0; i < columnTitles.size(); i++) {
+			if (typesByName.containsKey(columnTitles.get(i)) && i != timestampColumnIndex) {
+				indexes.add(i);
+				valueColumns[i] = true;
+				columnTypes[i] = typesByName.get(columnTitles.get(i));
+			}
+		}
+		valueColumnIndexes = new int[indexes.size()];
+		for (int i = 0; i < valueColumnIndexes.length; i++) {
+			valueColumnIndexes[i] = indexes.get(i);
+		}
+	}
+
+	/**
+	 * Creates a plan for the selected columns without attribute types, e.g. for a preview of the file.
+	 * @param columnTitles titles of all columns of the file
+	 * @param selectedColumnTitles titles of the imported columns
+	 * @param timestamp title of the timestamp column or null
+	 * @return
+	 */
+	public static ColumnPlan forSelectedColumns(List<String> columnTitles, List<String> selectedColumnTitles, String timestamp) {
+		Map<String, SushiAttributeTypeEnum> typesByName = new HashMap<String, SushiAttributeTypeEnum>();
+		for (String selectedColumnTitle : selectedColumnTitles) {
+			typesByName.put(selectedColumnTitle, null);
+		}
+		return new ColumnPlan(columnTitles, typesByName, timestamp, DEFAULT_DATE_PATTERN);
+	}
+
+	private static Map<String, SushiAttributeTypeEnum> getTypesByName(List<SushiAttribute> selectedAttributes) {
+		Map<String, SushiAttributeTypeEnum> typesByName = new HashMap<String, SushiAttributeTypeEnum>();
+		for (SushiAttribute attribute : selectedAttributes) {
+			typesByName.put(attribute.getName(), attribute.getType());
+		}
+		return typesByName;
+	}
+
+	/**
+	 * @return index of the timestamp column or -1
+	 */
+	public int getTimestampColumnIndex() {
+		return timestampColumnIndex;
+	}
+
+	/**
+	 * @return indexes of the imported columns without the timestamp column, in the order of the columns
+	 */
+	public int[] getValueColumnIndexes() {
+		return valueColumnIndexes;
+	}
+
+	/**
+	 * @param columnIndex
+	 * @return true, if the column is imported as attribute value
+	 */
+	public boolean isValueColumn(int columnIndex) {
+		return columnIndex >= 0 && columnIndex < valueColumns.length && valueColumns[columnIndex];
+	}
+
+	public String getColumnTitle(int columnIndex) {
+		return columnTitles.get(columnIndex);
+	}
+
+	/**
+	 * @param columnIndex
+	 * @return type of the attribute of the column or null, if the attribute has no type
+	 */
+	public SushiAttributeTypeEnum getColumnType(int columnIndex) {
+		return columnTypes[columnIndex];
+	}
+
+	/**
+	 * Creates an event from a row of text values, e.g. of a CSV file.
+	 * If the timestamp can not be parsed, the current time is used.
+	 * @param row
+	 * @return
+	 * @throws NumberFormatException if a value of an integer attribute is not an integer
+	 */
+	public SushiEvent createEvent(List<String> row) {
+		Date timestamp = null;
+		if (timestampColumnIndex > -1) {
+			timestamp = parseDate(row.get(timestampColumnIndex));
+		}
+		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+		for (int i : valueColumnIndexes) {
+			String text = row.get(i);
+			Serializable attributeValue = text;
+			SushiAttributeTypeEnum attributeType = columnTypes[i];
+			if (attributeType == SushiAttributeTypeEnum.DATE) {
+				Date date = parseDate(text);
+				if (date != null) {
+					attributeValue = date;
+				}
+			} else if (attributeType == SushiAttributeTypeEnum.INTEGER) {
+				attributeValue = Integer.parseInt(text);
+			}
+			values.addRootElement(columnTitles.get(i), attributeValue);
+		}
+		return new SushiEvent((timestamp == null) ? new Date() : timestamp, values);
+	}
+
+	/**
+	 * Parses a date given as text with the date pattern of the plan.
+	 * @param text
+	 * @return date or null, if the text could not be parsed
+	 */
+	public Date parseDate(String text) {
+		try {
+			return getDateFormat().parse(text);
+		} catch (ParseException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private SimpleDateFormat getDateFormat() {
+		if (dateFormat == null) {
+			synchronized (this) {
+				if (dateFormat == null) {
+					dateFormat = new ThreadLocal<SimpleDateFormat>() {
+						@Override
+						protected SimpleDateFormat initialValue() {
+							return new SimpleDateFormat(datePattern);
+						}
+					};
+				}
+			}
+		}
+		return dateFormat.get();
+	}
+
+}
@@ -0,0 +1,19 @@
+package sushi.excel.importer;
+
+import java.util.List;
+
+import sushi.event.SushiEvent;
+
+/**
+ * Receives the events of a streaming import in batches, e.g. to send them to the Broker.
+ * The batches are handed over in the order of the rows of the file, one after another.
+ */
+public interface EventBatchHandler {
+
+	/**
+	 * Handles the next batch of imported events.
+	 * @param events
+	 */
+	void handle(List<SushiEvent> events);
+
+}
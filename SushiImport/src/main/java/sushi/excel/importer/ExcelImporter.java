@@ -1,19 +1,12 @@
 package sushi.excel.importer;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.DateUtil;
 
 import sushi.event.SushiEvent;
 import sushi.event.attribute.SushiAttribute;
@@ -21,223 +14,227 @@ import sushi.event.attribute.SushiAttributeTypeEnum;
 import sushi.event.collection.SushiMapTree;
 
 /**
- * This class imports events from an excel file.
+ * This class imports events from an excel file (.xls or .xlsx).
+ * The rows of the first sheet are streamed by an {@link ExcelRowReader} instead of loading the whole workbook,
+ * the first row contains the column titles.
  */
 public class ExcelImporter extends FileNormalizer implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
-	/**
-	 * Creates an {@link HSSFWorkbook} from an excel file.
-	 */
-	private HSSFWorkbook loadWorkbook(String fileName) {
+	@Override
+	public ArrayList<String> getColumnTitlesFromFile(String fileName) {
+		final ArrayList<String> columnTitles = new ArrayList<String>();
 		try {
-			InputStream myxls = new FileInputStream(fileName);
-			return new HSSFWorkbook(myxls);
+			ExcelRowReader.forFile(fileName).read(fileName, new ExcelRowReader.RowHandler() {
+				@Override
+				public boolean handleRow(List<Object> cells, boolean lastCellBlank) {
+					columnTitles.addAll(generateColumnTitles(cells));
+					return false;
+				}
+			});
 		} catch (IOException e) {
+			e.printStackTrace();
 			System.err.println("Workbook could not be load.");
-			return null;
 		}
-	}
-	
-	@Override
-	public ArrayList<String> getColumnTitlesFromFile(String fileName) {
-		HSSFWorkbook workbook = this.loadWorkbook(fileName);
-		HSSFSheet firstSheet = workbook.getSheetAt(0);
-		return generateColumnTitlesFromSheet(firstSheet);
+		return columnTitles;
 	}
 
 	/**
-	 * Returns the column titles from the given workbook sheet.
+	 * Returns the column titles from the cells of the first row.
 	 */
-	private ArrayList<String> generateColumnTitlesFromSheet(HSSFSheet sheet) {
-		HSSFRow firstRow = sheet.getRow(0);
-		if(firstRow != null){
-			ArrayList<String> columnTitles = new ArrayList<String>();
-			for(Cell currentCell : firstRow){
-				columnTitles.add(currentCell.getStringCellValue().trim().replaceAll(" +","_").replaceAll("[^a-zA-Z0-9_]+",""));
-			}
-			return columnTitles;
-		} else {
-			return new ArrayList<String>();
+	private static List<String> generateColumnTitles(List<Object> cells) {
+		List<String> columnTitles = new ArrayList<String>(cells.size());
+		for (Object cell : cells) {
+			String title = (cell == null) ? "" : cell.toString();
+			columnTitles.add(title.trim().replaceAll(" +","_").replaceAll("[^a-zA-Z0-9_]+",""));
 		}
-		
+		return columnTitles;
 	}
 
 	@Override
-	public List<SushiImportEvent> importEventsForPreviewFromFile(String filePath, List<String> selectedColumnTitles) throws IllegalArgumentException {
-		
-		List<SushiImportEvent> eventList = new ArrayList<SushiImportEvent>();
-		List<String> columnTitles = this.getColumnTitlesFromFile(filePath);
-		if (!columnTitles.isEmpty()) {
-			String timestampName = getTimestampColumn(selectedColumnTitles);
-			Iterator<Row> rowIterator = getRowIterator(filePath);
-
-			// Eliminate headline row
-			rowIterator.next();
-			
-			while (rowIterator.hasNext()) {
-				HSSFRow actualRow = (HSSFRow) rowIterator.next();
-				if(!isRowEmpty(actualRow)){
-					eventList.add(this.generateImportEventFromRow(actualRow, selectedColumnTitles, columnTitles, timestampName));
+	public List<SushiImportEvent> importEventsForPreviewFromFile(String filePath, final List<String> selectedColumnTitles) throws IllegalArgumentException {
+		final List<SushiImportEvent> eventList = new ArrayList<SushiImportEvent>();
+		final String timestampName = getTimestampColumn(selectedColumnTitles);
+		try {
+			ExcelRowReader.forFile(filePath).read(filePath, new HeaderAwareRowHandler() {
+				@Override
+				protected void handleHeader(List<String> columnTitles) {
+					plan = ColumnPlan.forSelectedColumns(columnTitles, selectedColumnTitles, timestampName);
 				}
-			}
+
+				@Override
+				protected void handleValueRow(int rowNumber, List<Object> cells) {
+					eventList.add(generateImportEventFromRow(cells, plan, timestampName));
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 		return eventList;
 	}
-	
+
 	@Override
 	public List<SushiEvent> importEventsFromFile(String filePath, List<SushiAttribute> selectedAttributes, String timestamp) {
-		List<SushiEvent> eventList = new ArrayList<SushiEvent>();
-		List<String> columnTitles = getColumnTitlesFromFile(filePath);
-		List<String> selectedColumnTitles = new ArrayList<String>();
-		if (!columnTitles.isEmpty()) {
-			
-			for (SushiAttribute attribute : selectedAttributes) {
-				selectedColumnTitles.add(attribute.getName());
+		final List<SushiEvent> eventList = new ArrayList<SushiEvent>();
+		importEventsFromFile(filePath, selectedAttributes, timestamp, DEFAULT_BATCH_SIZE, new EventBatchHandler() {
+			@Override
+			public void handle(List<SushiEvent> events) {
+				eventList.addAll(events);
 			}
-			
-			int timeStampColumnIndex = columnTitles.indexOf(timestamp);
-			Iterator<Row> rowIterator = getRowIterator(filePath);
-	
-			// Eliminate headline row
-			rowIterator.next();
-			
-			while (rowIterator.hasNext()) {
-				HSSFRow actualRow = (HSSFRow) rowIterator.next();
-				if (!isRowEmpty(actualRow)) {
-					eventList.add(this.generateEventFromRow(actualRow, selectedColumnTitles, selectedAttributes, columnTitles, timeStampColumnIndex));
+		});
+		return eventList;
+	}
+
+	/**
+	 * Reads the file piecewise: the events are created while the rows are read
+	 * and handed to the handler in batches of batchSize events.
+	 * @throws ImportException if a row could not be converted, the batches before this row were already handed to the handler
+	 */
+	@Override
+	public long importEventsFromFile(String filePath, final List<SushiAttribute> selectedAttributes, final String timestamp, final int batchSize, final EventBatchHandler handler) {
+		final long[] numberOfEvents = new long[1];
+		final List<List<SushiEvent>> batchHolder = new ArrayList<List<SushiEvent>>(1);
+		batchHolder.add(new ArrayList<SushiEvent>(batchSize));
+		try {
+			ExcelRowReader.forFile(filePath).read(filePath, new HeaderAwareRowHandler() {
+				@Override
+				protected void handleHeader(List<String> columnTitles) {
+					plan = new ColumnPlan(columnTitles, selectedAttributes, timestamp);
 				}
-			}
+
+				@Override
+				protected void handleValueRow(int rowNumber, List<Object> cells) {
+					List<SushiEvent> batch = batchHolder.get(0);
+					try {
+						batch.add(generateEventFromRow(cells, plan));
+					} catch (RuntimeException e) {
+						throw new ImportException(rowNumber, e);
+					}
+					if (batch.size() >= batchSize) {
+						handler.handle(batch);
+						numberOfEvents[0] += batch.size();
+						batchHolder.set(0, new ArrayList<SushiEvent>(batchSize));
+					}
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		return eventList;
+		List<SushiEvent> lastBatch = batchHolder.get(0);
+		if (!lastBatch.isEmpty()) {
+			handler.handle(lastBatch);
+			numberOfEvents[0] += lastBatch.size();
+		}
+		return numberOfEvents[0];
 	}
-	
+
 	/**
-	 * Generates a event for preview from the given row. The difference to the normal creation is the treatment of the date. Import events have 
-	 * @param actualRow
-	 * @param selectedColumnTitles
-	 * @param columnTitles
+	 * Generates a event for preview from the given row. The difference to the normal creation is the treatment of the date.
+	 * @param cells
+	 * @param plan
 	 * @param timestampName
 	 */
-	private SushiImportEvent generateImportEventFromRow(HSSFRow actualRow, List<String> selectedColumnTitles, List<String> columnTitles, String timestampName) {
-		Date timestamp;
-		int timestampColumnIndex = columnTitles.indexOf(timestampName);
-		if (timestampColumnIndex > -1) {
-			timestamp = actualRow.getCell(timestampColumnIndex).getDateCellValue();
-		} else {
-			timestamp = null;
+	private SushiImportEvent generateImportEventFromRow(List<Object> cells, ColumnPlan plan, String timestampName) {
+		Date timestamp = null;
+		if (plan.getTimestampColumnIndex() > -1) {
+			timestamp = toDate(getCell(cells, plan.getTimestampColumnIndex()), plan);
+		}
+		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+		for (int i : plan.getValueColumnIndexes()) {
+			Object cell = getCell(cells, i);
+			if (cell instanceof Date) {
+				values.put(plan.getColumnTitle(i), (Date) cell);
+			} else if (cell != null) {
+				values.put(plan.getColumnTitle(i), toText(cell));
+			}
 		}
-		SushiMapTree<String, Serializable> values = generateValueTree(actualRow, selectedColumnTitles, columnTitles, timestampColumnIndex);
-		SushiImportEvent event = new SushiImportEvent(timestamp, values, timestampName, new Date());
-		return event;
+		return new SushiImportEvent(timestamp, values, timestampName, new Date());
 	}
-	
+
 	/**
 	 * Generates a event from the given row.
-	 * @param actualRow
-	 * @param selectedColumnTitles
-	 * @param selectedAttributes
-	 * @param columnTitles
-	 * @param timeStampColumnIndex
+	 * The values are converted to the types of the selected attributes.
+	 * @param cells
+	 * @param plan
 	 */
-	private SushiEvent generateEventFromRow(HSSFRow actualRow, List<String> selectedColumnTitles, List<SushiAttribute> selectedAttributes, List<String> columnTitles, int timeStampColumnIndex) {
-		Date timestamp;
-		//Falls kein TimeStamp gefunden wurde, wird die aktuelle Einlesezeit verwendet
-		if(timeStampColumnIndex > -1){
-			timestamp = actualRow.getCell(timeStampColumnIndex).getDateCellValue();
+	private SushiEvent generateEventFromRow(List<Object> cells, ColumnPlan plan) {
+		Date timestamp = null;
+		if (plan.getTimestampColumnIndex() > -1) {
+			timestamp = toDate(getCell(cells, plan.getTimestampColumnIndex()), plan);
 		}
-		else{
-			timestamp = new Date();
+		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
+		for (int i : plan.getValueColumnIndexes()) {
+			Object cell = getCell(cells, i);
+			if (cell == null) {
+				continue;
+			}
+			Serializable attributeValue;
+			SushiAttributeTypeEnum attributeType = plan.getColumnType(i);
+			if (attributeType == SushiAttributeTypeEnum.DATE) {
+				Date date = toDate(cell, plan);
+				attributeValue = (date != null) ? date : toText(cell);
+			} else if (attributeType == SushiAttributeTypeEnum.INTEGER) {
+				// TODO: support double/float
+				attributeValue = (cell instanceof Number) ? Integer.valueOf(((Number) cell).intValue()) : Integer.valueOf(toText(cell).trim());
+			} else {
+				attributeValue = toText(cell);
+			}
+			values.addRootElement(plan.getColumnTitle(i), attributeValue);
 		}
-		SushiMapTree<String, Serializable> values = generateValueTree(actualRow, selectedColumnTitles, selectedAttributes, columnTitles, timeStampColumnIndex);
-		SushiEvent event = new SushiEvent(timestamp, values);
-		return event;
+		//Falls kein TimeStamp gefunden wurde, wird die aktuelle Einlesezeit verwendet
+		return new SushiEvent((timestamp == null) ? new Date() : timestamp, values);
 	}
-	
-	private Iterator<Row> getRowIterator(String filePath) {
-		HSSFWorkbook workbook = this.loadWorkbook(filePath);
-		HSSFSheet firstSheet = workbook.getSheetAt(0);
-		Iterator<Row> rowIterator = firstSheet.rowIterator();
-		return rowIterator;
+
+	private static Object getCell(List<Object> cells, int columnIndex) {
+		return (columnIndex < cells.size()) ? cells.get(columnIndex) : null;
 	}
-	
-	/**
-	 * Returns true, if a {@link HSSFRow} has no values.
-	 * @param actualRow
-	 */
-	private boolean isRowEmpty(HSSFRow actualRow) {
-		boolean emptyRow = true;
-		Iterator<Cell> cellIterator = actualRow.cellIterator(); 
-		while(cellIterator.hasNext()){
-			Cell actualCell = cellIterator.next();
-			emptyRow = (actualCell.getCellType() != Cell.CELL_TYPE_BLANK) ? false : true;
+
+	private static Date toDate(Object cell, ColumnPlan plan) {
+		if (cell instanceof Date) {
+			return (Date) cell;
+		} else if (cell instanceof Number) {
+			return DateUtil.getJavaDate(((Number) cell).doubleValue());
+		} else if (cell instanceof String) {
+			return plan.parseDate(((String) cell).trim());
 		}
-		return emptyRow;
+		return null;
 	}
-	
-	/**
-	 * Returns a new {@link SushiMapTree} from the given row with the values for the selected columns.
-	 * @param actualRow
-	 * @param selectedColumnTitles
-	 * @param columnTitles
-	 * @param timeStampColumnIndex
-	 * @return
-	 */
-	private SushiMapTree<String, Serializable> generateValueTree(HSSFRow actualRow, List<String> selectedColumnTitles, List<String> columnTitles, int timeStampColumnIndex) {
-		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
-		Iterator<Cell> cellIterator = actualRow.cellIterator();
-		while (cellIterator.hasNext()) {
-			Cell actualCell = cellIterator.next();
-			if (selectedColumnTitles.contains(columnTitles.get(actualCell.getColumnIndex())) && actualCell.getColumnIndex() != timeStampColumnIndex) {
-				if (actualCell.getCellType() == Cell.CELL_TYPE_STRING) {
-					values.put(columnTitles.get(actualCell.getColumnIndex()), actualCell.getStringCellValue());
-				} else if (actualCell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
-					values.put(columnTitles.get(actualCell.getColumnIndex()), Double.toString(actualCell.getNumericCellValue()));
-				}
-			}
+
+	private static String toText(Object cell) {
+		if (cell instanceof Double) {
+			return Double.toString((Double) cell);
 		}
-		return values;
+		return cell.toString();
 	}
-	
+
 	/**
-	 * Returns a new {@link SushiMapTree} from the given row with the values for the selected columns.
-	 * It is possible to specify the selected {@link SushiAttribute}s.
-	 * @param actualRow
-	 * @param selectedColumnTitles
-	 * @param columnTitles
-	 * @param timeStampColumnIndex
-	 * @return
+	 * Takes the first row as column titles and passes the following rows, which are not empty.
+	 * Like before, a row is empty, if its last cell is blank.
 	 */
-	private SushiMapTree<String, Serializable> generateValueTree(HSSFRow actualRow, List<String> selectedColumnTitles, List<SushiAttribute> selectedAttributes, List<String> columnTitles, int timeStampColumnIndex) {
-		SushiMapTree<String, Serializable> values = new SushiMapTree<String, Serializable>();
-		Iterator<Cell> cellIterator = actualRow.cellIterator();
-		SushiAttributeTypeEnum attributeType = null;
-		while (cellIterator.hasNext()) {
-			Cell actualCell = cellIterator.next();
-			String attributeName = columnTitles.get(actualCell.getColumnIndex());
-			for (SushiAttribute attribute : selectedAttributes) {
-				if (attribute.getName().equals(attributeName)) {
-					attributeType = attribute.getType();
-				}
-			}
-			if (selectedColumnTitles.contains(columnTitles.get(actualCell.getColumnIndex())) && actualCell.getColumnIndex() != timeStampColumnIndex) {
-				Serializable attributeValue = null;
-				if (attributeType != null) {
-					if (attributeType.equals(SushiAttributeTypeEnum.DATE)) {
-						attributeValue = actualCell.getDateCellValue();
-					} else if (attributeType.equals(SushiAttributeTypeEnum.INTEGER)) {
-						// TODO: support double/float
-//						attributeValue = Math.round(actualCell.getNumericCellValue());
-						attributeValue = new Integer((int) actualCell.getNumericCellValue());
-					} else if (attributeType.equals(SushiAttributeTypeEnum.STRING)) {
-						attributeValue = actualCell.getStringCellValue();
-					}
-				}
-				values.addRootElement(attributeName, attributeValue);
+	private abstract static class HeaderAwareRowHandler implements ExcelRowReader.RowHandler {
+
+		protected ColumnPlan plan;
+		private boolean headerRead = false;
+
+		@Override
+		public boolean handleRow(int rowNumber, List<Object> cells, boolean lastCellBlank) {
+			if (!headerRead) {
+				headerRead = true;
+				handleHeader(generateColumnTitles(cells));
+			} else if (!lastCellBlank) {
+				handleValueRow(rowNumber, cells);
 			}
+			return true;
 		}
-		return values;
+
+		protected abstract void handleHeader(List<String> columnTitles);
+
+		/**
+		 * @param rowNumber number of the row in the sheet, starting with 1
+		 * @param cells
+		 */
+		protected abstract void handleValueRow(int rowNumber, List<Object> cells);
 	}
 
 }
@@ -0,0 +1,68 @@
+package sushi.excel.importer;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.poi.POIXMLDocument;
+
+/**
+ * Reads the rows of the first sheet of an excel file one after another,
+ * without loading the whole workbook into memory.
+ * The values of the cells are handed over as String, Double, Date (for numbers formatted as date) or Boolean.
+ * Missing and blank cells are null.
+ */
+public abstract class ExcelRowReader {
+
+	/**
+	 * Receives the rows of a sheet in their order.
+	 */
+	public interface RowHandler {
+
+		/**
+		 * Handles the next row of the sheet, which contains at least one cell.
+		 * @param rowNumber number of the row in the sheet, starting with 1
+		 * @param cells values of the cells by column index
+		 * @param lastCellBlank true, if the last cell of the row is blank
+		 * @return false to stop reading the sheet
+		 */
+		boolean handleRow(int rowNumber, List<Object> cells, boolean lastCellBlank);
+	}
+
+	/**
+	 * Reads the rows of the first sheet of the file.
+	 * @param filePath
+	 * @param handler
+	 * @throws IOException if the file can not be read
+	 */
+	public abstract void read(String filePath, RowHandler handler) throws IOException;
+
+	/**
+	 * Returns a reader for the format of the file: a SAX based reader for .xlsx files
+	 * and a record based reader for .xls files.
+	 * @param filePath
+	 * @return
+	 * @throws IOException
+	 */
+	public static ExcelRowReader forFile(String filePath) throws IOException {
+		InputStream input = new BufferedInputStream(new FileInputStream(filePath));
+		try {
+			return POIXMLDocument.hasOOXMLHeader(input) ? new XLSXRowReader() : new XLSRowReader();
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Sets the value of a cell and fills the missing cells before with null.
+	 */
+	protected static void setCell(List<Object> cells, int columnIndex, Object value) {
+		while (cells.size() <= columnIndex) {
+			cells.add(null);
+		}
+		cells.set(columnIndex, value);
+	}
+
+}
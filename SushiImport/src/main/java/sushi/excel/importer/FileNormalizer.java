@@ -14,6 +14,7 @@ import sushi.event.attribute.SushiAttributeTypeEnum;
 public abstract class FileNormalizer implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
 
 	/**
 	 * Returns the titles as list for files with tabular content.
@@ -51,6 +52,26 @@ public abstract class FileNormalizer implements Serializable {
 	 */
 	public abstract List<SushiEvent> importEventsFromFile(String filePath, List<SushiAttribute> selectedAttributes, String timestamp);
 	
+	/**
+	 * Imports data from a file and hands the created events in batches of at most batchSize events to the handler,
+	 * so the events of the file are not held in memory at once.
+	 * This implementation imports all events first, importers able to read the file piecewise override it.
+	 * @param filePath
+	 * @param selectedAttributes
+	 * @param timestamp
+	 * @param batchSize
+	 * @param handler
+	 * @return number of imported events
+	 * @throws ImportException if an event could not be created from a row, the batches before this row were already handed to the handler
+	 */
+	public long importEventsFromFile(String filePath, List<SushiAttribute> selectedAttributes, String timestamp, int batchSize, EventBatchHandler handler) {
+		List<SushiEvent> events = importEventsFromFile(filePath, selectedAttributes, timestamp);
+		for (int i = 0; i < events.size(); i += batchSize) {
+			handler.handle(new ArrayList<SushiEvent>(events.subList(i, Math.min(i + batchSize, events.size()))));
+		}
+		return events.size();
+	}
+	
 	/**
 	 * Tries to identify a timestamp from the given attributes.
 	 * @param attributes
@@ -0,0 +1,28 @@
+package sushi.excel.importer;
+
+/**
+ * Thrown by a streaming import, if an event could not be created from a row of the file.
+ * The rows before were already handed to the {@link EventBatchHandler}.
+ */
+@SuppressWarnings("serial")
+public class ImportException extends RuntimeException {
+
+	private final long rowNumber;
+
+	/**
+	 * @param rowNumber number of the row in the file, counting all rows including the column titles, starting with 1
+	 * @param cause
+	 */
+	public ImportException(long rowNumber, Throwable cause) {
+		super("Row " + rowNumber + " could not be imported: " + cause.getMessage(), cause);
+		this.rowNumber = rowNumber;
+	}
+
+	/**
+	 * @return number of the row in the file, which could not be imported, counting all rows including the column titles, starting with 1
+	 */
+	public long getRowNumber() {
+		return rowNumber;
+	}
+
+}
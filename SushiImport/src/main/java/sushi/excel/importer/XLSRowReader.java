@@ -0,0 +1,152 @@
+package sushi.excel.importer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.MissingRecordAwareHSSFListener;
+import org.apache.poi.hssf.eventusermodel.dummyrecord.LastCellOfRowDummyRecord;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Reads the rows of the first sheet of an .xls file from the records of the file,
+ * so only the current row and the shared strings are held in memory.
+ */
+public class XLSRowReader extends ExcelRowReader {
+
+	@Override
+	public void read(String filePath, RowHandler handler) throws IOException {
+		InputStream input = new FileInputStream(filePath);
+		try {
+			SheetListener sheetListener = new SheetListener(handler);
+			MissingRecordAwareHSSFListener listener = new MissingRecordAwareHSSFListener(sheetListener);
+			sheetListener.formatListener = new FormatTrackingHSSFListener(listener);
+			HSSFRequest request = new HSSFRequest();
+			request.addListenerForAllRecords(sheetListener.formatListener);
+			new HSSFEventFactory().processWorkbookEvents(request, new POIFSFileSystem(input));
+		} catch (StopReadingException e) {
+			// the handler does not need more rows
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Collects the cells of the current row of the first sheet.
+	 */
+	private static class SheetListener implements HSSFListener {
+
+		private final RowHandler handler;
+		private FormatTrackingHSSFListener formatListener;
+		private SSTRecord sharedStrings;
+		private int sheetIndex = -1;
+		private List<Object> cells = new ArrayList<Object>();
+		private boolean lastCellBlank = false;
+		private int stringFormulaColumn = -1;
+
+		private SheetListener(RowHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void processRecord(Record record) {
+			if (record instanceof BOFRecord) {
+				if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+					sheetIndex++;
+					if (sheetIndex > 0) {
+						throw new StopReadingException();
+					}
+				}
+			} else if (record instanceof SSTRecord) {
+				sharedStrings = (SSTRecord) record;
+			} else if (sheetIndex == 0) {
+				processCellRecord(record);
+			}
+		}
+
+		private void processCellRecord(Record record) {
+			if (record instanceof BlankRecord) {
+				setCell(((BlankRecord) record).getColumn(), null, true);
+			} else if (record instanceof BoolErrRecord) {
+				BoolErrRecord boolErrRecord = (BoolErrRecord) record;
+				setCell(boolErrRecord.getColumn(), boolErrRecord.isBoolean() ? Boolean.valueOf(boolErrRecord.getBooleanValue()) : null, false);
+			} else if (record instanceof FormulaRecord) {
+				FormulaRecord formulaRecord = (FormulaRecord) record;
+				if (formulaRecord.hasCachedResultString()) {
+					// the result follows in a string record
+					stringFormulaColumn = formulaRecord.getColumn();
+				} else if (formulaRecord.getCachedResultType() == Cell.CELL_TYPE_BOOLEAN) {
+					setCell(formulaRecord.getColumn(), Boolean.valueOf(formulaRecord.getCachedBooleanValue()), false);
+				} else {
+					setCell(formulaRecord.getColumn(), getNumericValue(formulaRecord, formulaRecord.getValue()), false);
+				}
+			} else if (record instanceof StringRecord) {
+				if (stringFormulaColumn > -1) {
+					setCell(stringFormulaColumn, ((StringRecord) record).getString(), false);
+					stringFormulaColumn = -1;
+				}
+			} else if (record instanceof LabelRecord) {
+				LabelRecord labelRecord = (LabelRecord) record;
+				setCell(labelRecord.getColumn(), labelRecord.getValue(), false);
+			} else if (record instanceof LabelSSTRecord) {
+				LabelSSTRecord labelSSTRecord = (LabelSSTRecord) record;
+				setCell(labelSSTRecord.getColumn(), sharedStrings.getString(labelSSTRecord.getSSTIndex()).getString(), false);
+			} else if (record instanceof NumberRecord) {
+				NumberRecord numberRecord = (NumberRecord) record;
+				setCell(numberRecord.getColumn(), getNumericValue(numberRecord, numberRecord.getValue()), false);
+			} else if (record instanceof LastCellOfRowDummyRecord) {
+				if (!cells.isEmpty()) {
+					boolean continueReading = handler.handleRow(((LastCellOfRowDummyRecord) record).getRow() + 1, cells, lastCellBlank);
+					cells = new ArrayList<Object>();
+					lastCellBlank = false;
+					if (!continueReading) {
+						throw new StopReadingException();
+					}
+				}
+			}
+		}
+
+		private void setCell(int columnIndex, Object value, boolean blank) {
+			ExcelRowReader.setCell(cells, columnIndex, value);
+			lastCellBlank = blank;
+		}
+
+		/**
+		 * Numbers formatted as date are returned as date.
+		 */
+		private Object getNumericValue(CellValueRecordInterface record, double value) {
+			if (DateUtil.isADateFormat(formatListener.getFormatIndex(record), formatListener.getFormatString(record)) && DateUtil.isValidExcelDate(value)) {
+				return DateUtil.getJavaDate(value);
+			}
+			return Double.valueOf(value);
+		}
+	}
+
+	/**
+	 * Aborts the processing of the records.
+	 */
+	private static class StopReadingException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+}
@@ -0,0 +1,186 @@
+package sushi.excel.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the rows of the first sheet of an .xlsx file with a SAX parser,
+ * so only the current row and the shared strings are held in memory.
+ */
+public class XLSXRowReader extends ExcelRowReader {
+
+	private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+	static {
+		PARSER_FACTORY.setNamespaceAware(true);
+	}
+
+	@Override
+	public void read(String filePath, RowHandler handler) throws IOException {
+		OPCPackage pkg;
+		try {
+			pkg = OPCPackage.open(filePath, PackageAccess.READ);
+		} catch (OpenXML4JException e) {
+			throw new IOException("Workbook could not be opened.", e);
+		}
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			SheetHandler sheetHandler = new SheetHandler(new ReadOnlySharedStringsTable(pkg), reader.getStylesTable(), handler);
+			Iterator<InputStream> sheets = reader.getSheetsData();
+			if (!sheets.hasNext()) {
+				return;
+			}
+			InputStream sheet = sheets.next();
+			try {
+				SAXParser parser;
+				synchronized (PARSER_FACTORY) {
+					parser = PARSER_FACTORY.newSAXParser();
+				}
+				parser.parse(sheet, sheetHandler);
+			} catch (StopReadingException e) {
+				// the handler does not need more rows
+			} finally {
+				sheet.close();
+			}
+		} catch (OpenXML4JException e) {
+			throw new IOException("Workbook could not be read.", e);
+		} catch (SAXException e) {
+			throw new IOException("Sheet could not be parsed.", e);
+		} catch (ParserConfigurationException e) {
+			throw new IOException("Sheet could not be parsed.", e);
+		} finally {
+			// the package was opened read-only, so nothing has to be saved
+			pkg.revert();
+		}
+	}
+
+	/**
+	 * Collects the cells of the current row from the elements of the sheet.
+	 */
+	private static class SheetHandler extends DefaultHandler {
+
+		private final ReadOnlySharedStringsTable sharedStrings;
+		private final StylesTable styles;
+		private final RowHandler handler;
+		private List<Object> cells = new ArrayList<Object>();
+		private int rowNumber = 0;
+		private boolean lastCellBlank = false;
+		private final StringBuilder text = new StringBuilder();
+		private boolean readingText = false;
+		private int columnIndex = -1;
+		private String cellType = null;
+		private String cellStyle = null;
+		private boolean cellHasValue = false;
+
+		private SheetHandler(ReadOnlySharedStringsTable sharedStrings, StylesTable styles, RowHandler handler) {
+			this.sharedStrings = sharedStrings;
+			this.styles = styles;
+			this.handler = handler;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if ("row".equals(localName)) {
+				// the reference of a row is optional, rows without cells may be left out
+				String reference = attributes.getValue("r");
+				rowNumber = (reference != null) ? Integer.parseInt(reference) : rowNumber + 1;
+				cells = new ArrayList<Object>();
+				lastCellBlank = false;
+				columnIndex = -1;
+			} else if ("c".equals(localName)) {
+				String reference = attributes.getValue("r");
+				if (reference != null) {
+					columnIndex = CellReference.convertColStringToIndex(reference.replaceAll("[0-9]", ""));
+				} else {
+					columnIndex++;
+				}
+				cellType = attributes.getValue("t");
+				cellStyle = attributes.getValue("s");
+				cellHasValue = false;
+			} else if ("v".equals(localName) || "is".equals(localName)) {
+				// the text of an inline string may be split into several runs
+				text.setLength(0);
+				readingText = true;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (readingText) {
+				text.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if ("v".equals(localName) || "is".equals(localName)) {
+				readingText = false;
+				setCell(cells, columnIndex, getValue(text.toString()));
+				cellHasValue = true;
+			} else if ("c".equals(localName)) {
+				if (!cellHasValue) {
+					setCell(cells, columnIndex, null);
+				}
+				lastCellBlank = !cellHasValue;
+			} else if ("row".equals(localName)) {
+				if (!cells.isEmpty() && !handler.handleRow(rowNumber, cells, lastCellBlank)) {
+					throw new StopReadingException();
+				}
+			}
+		}
+
+		private Object getValue(String value) {
+			if ("s".equals(cellType)) {
+				return sharedStrings.getEntryAt(Integer.parseInt(value));
+			} else if ("inlineStr".equals(cellType) || "str".equals(cellType)) {
+				return value;
+			} else if ("b".equals(cellType)) {
+				return Boolean.valueOf("1".equals(value));
+			} else if ("e".equals(cellType)) {
+				return null;
+			}
+			double number = Double.parseDouble(value);
+			if (isDateFormatted() && DateUtil.isValidExcelDate(number)) {
+				return DateUtil.getJavaDate(number);
+			}
+			return Double.valueOf(number);
+		}
+
+		private boolean isDateFormatted() {
+			if (cellStyle == null || styles == null) {
+				return false;
+			}
+			XSSFCellStyle style = styles.getStyleAt(Integer.parseInt(cellStyle));
+			return style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+		}
+	}
+
+	/**
+	 * Aborts the parsing of the sheet.
+	 */
+	private static class StopReadingException extends SAXException {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+}
@@ -28,8 +28,6 @@ import sushi.event.collection.SushiMapTree;
  */
 public class XMLParser extends AbstractXMLParser {
 
-	private static SushiMapTree<String, Serializable> eventValueTree;
-
 	/**
 	 * Parses a single event from a XML file from the given file path.
 	 * @param filePath
@@ -90,7 +88,7 @@ public class XMLParser extends AbstractXMLParser {
 		NodeList rootElementNodes = (NodeList) rootElementsResult;
 		assert(rootElementNodes.getLength() == 1);
 		Node actualRootElement = rootElementNodes.item(0);
-		eventValueTree = new SushiMapTree<String, Serializable>();
+		SushiMapTree<String, Serializable> eventValueTree = new SushiMapTree<String, Serializable>();
 		SushiEventType eventType = null;
 		if (pathToXSD == null){
 			String XSDName = getXSDNameFromNode(actualRootElement);
@@ -105,7 +103,7 @@ public class XMLParser extends AbstractXMLParser {
 			if (eventType == null) eventType = XSDParser.generateEventTypeFromXSD(pathToXSD, FileUtils.getFileNameWithoutExtension(pathToXSD)); 
 		}
 		// eventValueTree befuellen
-		generateEventTreeFromElement(actualRootElement);
+		generateEventTreeFromElement(eventValueTree, actualRootElement);
 
 		if(eventType == null){
 			throw new XMLParsingException("No matching eventtype was found; please upload corresponding XSD");
@@ -144,15 +142,17 @@ public class XMLParser extends AbstractXMLParser {
 		}
 	}
 
-	private static void generateEventTreeFromElement(Node actualRootElement) {
-		getChildNodesFromEvent(actualRootElement, true);
+	private static void generateEventTreeFromElement(SushiMapTree<String, Serializable> eventValueTree, Node actualRootElement) {
+		getChildNodesFromEvent(eventValueTree, actualRootElement, true);
 	}
 
 	/**
-	 * Parses the attributes of the event from the given {@link Node}.
+	 * Parses the attributes of the event from the given {@link Node} into the given tree.
+	 * The tree is passed along instead of being shared, so several events can be parsed at the same time.
+	 * @param eventValueTree
 	 * @param actualRootElement
 	 */
-	private static SushiMapTree<String, Serializable> getChildNodesFromEvent(Node actualRootElement, Boolean shouldBeRoot) {
+	private static SushiMapTree<String, Serializable> getChildNodesFromEvent(SushiMapTree<String, Serializable> eventValueTree, Node actualRootElement, Boolean shouldBeRoot) {
 		NodeList childNodeList = actualRootElement.getChildNodes();
 		for(int i = 0; i < childNodeList.getLength(); i++){
 			Node childNode = childNodeList.item(i);
@@ -170,7 +170,7 @@ public class XMLParser extends AbstractXMLParser {
 					//					eventValueTree.addChild(actualRootElement.getNodeName().replace(":", "_"), nodeName, nodeText);
 					eventValueTree.addChild(actualRootElement.getNodeName().trim().replaceAll(" +","_").replaceAll("[^a-zA-Z0-9_]+",""), nodeName, nodeText);
 				}
-				getChildNodesFromEvent(childNode, false);
+				getChildNodesFromEvent(eventValueTree, childNode, false);
 			}
 		}
 		return eventValueTree;
@@ -198,7 +198,7 @@ public class XMLParser extends AbstractXMLParser {
 	 * @param element
 	 * @return
 	 */
-	private static String getXSDNameFromNode(Node element) {
+	public static String getXSDNameFromNode(Node element) {
 		Node xsdAttribute = element.getAttributes().getNamedItem("xsi:noNamespaceSchemaLocation");
 		if (xsdAttribute == null) {
 			System.err.println("no xsd stated in xml");
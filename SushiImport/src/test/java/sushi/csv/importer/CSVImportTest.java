@@ -3,6 +3,10 @@ package sushi.csv.importer;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
@@ -12,6 +16,8 @@ import sushi.csv.importer.CSVImporter;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
+import sushi.excel.importer.EventBatchHandler;
+import sushi.excel.importer.ImportException;
 import sushi.util.SushiTestHelper;
 
 /**
@@ -53,6 +59,59 @@ public class CSVImportTest {
 //		assertTrue("Not the right number of events imported. Number should be 999 but was " + events2.size(), events2.size() == 999);
 	}
 	
+	@Test
+	public void testStreamingExtractionOfEvents() {
+		CSVImporter csvNormalizer = new CSVImporter();
+		csvNormalizer.setParserThreads(3);
+		List<String> columnTitles = csvNormalizer.getColumnTitlesFromFile(filePath);
+		List<SushiAttribute> attributes = SushiTestHelper.createAttributes(columnTitles);
+		List<SushiEvent> events = csvNormalizer.importEventsFromFile(filePath, attributes);
+		final List<SushiEvent> streamedEvents = new ArrayList<SushiEvent>();
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		long numberOfEvents = csvNormalizer.importEventsFromFile(filePath, attributes, "Timestamp", 100, new EventBatchHandler() {
+			@Override
+			public void handle(List<SushiEvent> batch) {
+				batchSizes.add(batch.size());
+				streamedEvents.addAll(batch);
+			}
+		});
+		assertTrue("Number should be 999 but was " + numberOfEvents, numberOfEvents == 999);
+		assertTrue(batchSizes.size() == 10 && batchSizes.get(9) == 99);
+		for (int i = 0; i < events.size(); i++) {
+			assertEquals(events.get(i).getValues().get("Location"), streamedEvents.get(i).getValues().get("Location"));
+			assertEquals(events.get(i).getTimestamp(), streamedEvents.get(i).getTimestamp());
+		}
+	}
+	
+	@Test
+	public void testStreamingImportStopsAtInvalidRow() throws IOException {
+		File file = File.createTempFile("InvalidKino", ".csv");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write("sep=;\nTimestamp;Location;Rating\n30.10.2012 20:24;1;red\n30.10.2012 20:32;2;yellow\n\n"
+				+ "30.10.2012 20:40;3;red\n30.10.2012 20:48;four;red\n30.10.2012 20:56;5;red\n");
+		writer.close();
+		CSVImporter csvNormalizer = new CSVImporter();
+		csvNormalizer.setParserThreads(1);
+		List<SushiAttribute> attributes = SushiTestHelper.createAttributes(csvNormalizer.getColumnTitlesFromFile(file.getPath()));
+		final List<SushiEvent> streamedEvents = new ArrayList<SushiEvent>();
+		try {
+			csvNormalizer.importEventsFromFile(file.getPath(), attributes, "Timestamp", 2, new EventBatchHandler() {
+				@Override
+				public void handle(List<SushiEvent> batch) {
+					streamedEvents.addAll(batch);
+				}
+			});
+			assertTrue("the invalid row should stop the import", false);
+		} catch (ImportException e) {
+			//the separator definition, the column titles and the empty line are counted like in an editor
+			assertEquals(7, e.getRowNumber());
+			assertTrue(e.getCause() instanceof NumberFormatException);
+		}
+		assertEquals(2, streamedEvents.size());
+		assertEquals(2, streamedEvents.get(1).getValues().get("Location"));
+	}
+	
 	@Test
 	public void testImportAndExport() {
 		CSVImporter csvNormalizer = new CSVImporter();
@@ -61,6 +61,29 @@ public class ExcelImportTest {
 		
 	}
 
+	@Test
+	public void testStreamingExtractionOfEvents() {
+		ExcelImporter excelNormalizer = new ExcelImporter();
+		List<String> columnTitles = excelNormalizer.getColumnTitlesFromFile(filePath);
+		List<SushiAttribute> attributes = SushiTestHelper.createAttributes(columnTitles);
+		final List<SushiEvent> streamedEvents = new ArrayList<SushiEvent>();
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		long numberOfEvents = excelNormalizer.importEventsFromFile(filePath, attributes, "Timestamp", 100, new EventBatchHandler() {
+			@Override
+			public void handle(List<SushiEvent> batch) {
+				batchSizes.add(batch.size());
+				streamedEvents.addAll(batch);
+			}
+		});
+		assertTrue("Number should be 999 but was " + numberOfEvents, numberOfEvents == 999);
+		assertTrue(batchSizes.size() == 10 && batchSizes.get(9) == 99);
+		//12: 30.10.2012 20:46	1 yellow
+		SushiEvent testEvent1 = streamedEvents.get(10);
+		assertTrue("Date of event 1 does not match.", testEvent1.getTimestamp().compareTo(new Date(2012 - 1900, 9, 30, 20, 46, 58)) == 0);
+		assertTrue("Location of event 1 does not match.", testEvent1.getValues().get("Location").equals(1));
+		assertTrue("Rating of event 1 is not right.", testEvent1.getValues().get("Rating").equals("yellow"));
+	}
+
 	@Test
 	public void testColumnSelection() {
 		ExcelImporter excelNormalizer = new ExcelImporter();
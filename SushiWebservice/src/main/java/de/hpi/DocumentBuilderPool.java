@@ -0,0 +1,66 @@
+package de.hpi;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * pool of namespace aware {@link DocumentBuilder}s for the webservice
+ * a document builder is not thread safe, but it is expensive to create,
+ * so every request borrows one from the pool and returns it afterwards
+ */
+public class DocumentBuilderPool {
+
+	public static final int MAXIMUM_NUMBER_OF_IDLE_BUILDERS = 16;
+
+	private static DocumentBuilderPool instance = null;
+
+	private final DocumentBuilderFactory domFactory;
+	private final ConcurrentLinkedQueue<DocumentBuilder> idleBuilders = new ConcurrentLinkedQueue<DocumentBuilder>();
+	private final AtomicInteger numberOfIdleBuilders = new AtomicInteger(0);
+
+	private DocumentBuilderPool() {
+		domFactory = DocumentBuilderFactory.newInstance();
+		domFactory.setNamespaceAware(true);
+	}
+
+	public static synchronized DocumentBuilderPool getInstance() {
+		if (instance == null) {
+			instance = new DocumentBuilderPool();
+		}
+		return instance;
+	}
+
+	/**
+	 * returns an idle document builder or a new one, if all builders are in use
+	 * @return
+	 * @throws ParserConfigurationException
+	 */
+	public DocumentBuilder borrowBuilder() throws ParserConfigurationException {
+		DocumentBuilder builder = idleBuilders.poll();
+		if (builder != null) {
+			numberOfIdleBuilders.decrementAndGet();
+			return builder;
+		}
+		synchronized (domFactory) {
+			return domFactory.newDocumentBuilder();
+		}
+	}
+
+	/**
+	 * resets the document builder and keeps it for the next request, as long as the pool is not full
+	 * @param builder
+	 */
+	public void returnBuilder(DocumentBuilder builder) {
+		if (builder == null) return;
+		builder.reset();
+		if (numberOfIdleBuilders.incrementAndGet() <= MAXIMUM_NUMBER_OF_IDLE_BUILDERS) {
+			idleBuilders.offer(builder);
+		} else {
+			numberOfIdleBuilders.decrementAndGet();
+		}
+	}
+}
@@ -3,17 +3,31 @@ package de.hpi;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import javax.jws.WebService;
 import javax.jws.soap.SOAPBinding;
 import javax.jws.soap.SOAPBinding.Style;
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import com.espertech.esper.client.EPStatementSyntaxException;
@@ -22,8 +36,10 @@ import sushi.esper.SushiStreamProcessingAdapter;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.eventhandling.Broker;
+import sushi.eventhandling.IngestionFuture;
 import sushi.notification.SushiNotificationPriorityEnum;
 import sushi.notification.SushiNotificationRuleForQuery;
+import sushi.persistence.Persistor;
 import sushi.query.SushiQuery;
 import sushi.query.SushiQueryTypeEnum;
 import sushi.user.SushiUser;
@@ -37,27 +53,84 @@ import sushi.xml.importer.XSDParser;
  * registered in src/main/webapps/WEB-INF/services/XMLService/META-INF/services.xml
  * to start webserver run: mvn jetty:run (WSDL ist deployed to: localhost:8080/SushiWebservice/services/EventProcessingPlatformWebservice?wsdl) 
  * 
+ * events can be imported one per call or in bulk: 
+ * importEventBatch takes an envelope, whose child elements are the events, 
+ * importEventStream takes one event document per line
+ * the bulk operations return one result per event, which is ACCEPTED or starts with REJECTED
+ * 
  */
 public class EventProcessingPlatformWebservice {
+	
+	public static final String ACCEPTED = "accepted";
+	public static final String REJECTED = "rejected: ";
+	
+	private static final String XML_SCHEMA_INSTANCE_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+	
+	/**
+	 * compiled schemas of the event types registered by this webservice, by schema name
+	 */
+	private static Map<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+	private static SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
 
 	/**
 	 * imort xml-event if eventtyp of event is registered to the EPP 
 	 */
 	public boolean importEvents(String xml){
-		// generate document from xml String
-		Document doc = stringToDoc(xml);
-		if (doc == null) return false;
-		
-		// generate the Event from the doc via XML Parser
-		SushiEvent newEvent;
 		try {
-			newEvent = XMLParser.generateEventFromDoc(doc);
-		} catch (XMLParsingException e) {
-			e.printStackTrace();
-			return false;
+			String[] results = importEventDocuments(splitLines(xml, false));
+			return results[0].equals(ACCEPTED);
+		} finally {
+			Persistor.closeEntityManager();
+		}
+	}
+	
+	/**
+	 * imports all events of the envelope, which are the child elements of its root element
+	 * the accepted events are sent to the platform together
+	 * @param xml envelope, e.g. &lt;Events&gt;&lt;Event1 ...&gt;...&lt;/Event1&gt;&lt;Event2 ...&gt;...&lt;/Event2&gt;&lt;/Events&gt;
+	 * @return one result per event in order of the envelope
+	 */
+	public String[] importEventBatch(String xml){
+		DocumentBuilderPool pool = DocumentBuilderPool.getInstance();
+		DocumentBuilder builder = null;
+		try {
+			Document envelope;
+			try {
+				builder = pool.borrowBuilder();
+				envelope = builder.parse(new InputSource(new StringReader(xml)));
+			} catch (Exception e) {
+				e.printStackTrace();
+				return new String[] {REJECTED + "envelope is not parseable: " + e.getMessage()};
+			}
+			List<Document> documents = new ArrayList<Document>();
+			for (Node child = envelope.getDocumentElement().getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() == Node.ELEMENT_NODE) {
+					Document doc = builder.newDocument();
+					doc.appendChild(doc.importNode(child, true));
+					documents.add(doc);
+				}
+			}
+			pool.returnBuilder(builder);
+			builder = null;
+			return sendEvents(documents, new String[documents.size()]);
+		} finally {
+			pool.returnBuilder(builder);
+			Persistor.closeEntityManager();
+		}
+	}
+	
+	/**
+	 * imports line-delimited events, each non-empty line is an XML document with one event
+	 * the accepted events are sent to the platform together
+	 * @param lines
+	 * @return one result per non-empty line in order of the lines
+	 */
+	public String[] importEventStream(String lines){
+		try {
+			return importEventDocuments(splitLines(lines, true));
+		} finally {
+			Persistor.closeEntityManager();
 		}
-		Broker.send(newEvent);
-		return true;
 	}
 	
 	/**
@@ -65,46 +138,202 @@ public class EventProcessingPlatformWebservice {
 	 * register XSD Eventtyp
 	 */
 	public boolean registerEventType(String xsd, String schemaName){
-		// generate input stream from xml for creating the doc
-		Document doc = stringToDoc(xsd);
-		if (doc == null) return false;
-		//test for already existing
-		if (SushiEventType.findBySchemaName(schemaName) != null) return false;
+		try {
+			// generate input stream from xml for creating the doc
+			Document doc = stringToDoc(xsd);
+			if (doc == null) return false;
+			//test for already existing
+			if (SushiEventType.findBySchemaName(schemaName) != null) return false;
 		
-		// generate the EventType from the xml string via XML Parser
-		SushiEventType newEventType;
-		newEventType = XSDParser.generateEventType(doc, schemaName);
-		Broker.send(newEventType);
-		return true;
+			// generate the EventType from the xml string via XML Parser
+			SushiEventType newEventType;
+			newEventType = XSDParser.generateEventType(doc, schemaName);
+			Broker.send(newEventType);
+			compileSchema(xsd, schemaName);
+			return true;
+		} finally {
+			Persistor.closeEntityManager();
+		}
 	}
 	
 	/**
 	 * adds Esper EPL-query to the EPP and if it is triggered, it sends an email to @param email  
 	 */
 	public String addQueryNotification(String title, String queryString, String email) {
-		//addQuery
-		SushiQuery query = new SushiQuery(title, queryString, SushiQueryTypeEnum.LIVE);
 		try {
-			// query.validate();
-		} catch(EPStatementSyntaxException e) {
-			return e.getExpression();
-		}
-		query.save();
-		query.addToEsper();
+			//addQuery
+			SushiQuery query = new SushiQuery(title, queryString, SushiQueryTypeEnum.LIVE);
+			try {
+				// query.validate();
+			} catch(EPStatementSyntaxException e) {
+				return e.getExpression();
+			}
+			query.save();
+			query.addToEsper();
 		
-		//add User
-		SushiUser user;
-		if (SushiUser.findByMail(email).isEmpty()) {
-			user = new SushiUser(email, "1234", email);
-			user.save();
-		} else {
-			user = SushiUser.findByMail(email).get(0);
-		}
+			//add User
+			SushiUser user;
+			if (SushiUser.findByMail(email).isEmpty()) {
+				user = new SushiUser(email, "1234", email);
+				user.save();
+			} else {
+				user = SushiUser.findByMail(email).get(0);
+			}
 		
-		//addNotification
-		SushiNotificationRuleForQuery notificationRule = new SushiNotificationRuleForQuery(query, user, SushiNotificationPriorityEnum.HIGH);
-		notificationRule.save();
-		return "ok";		
+			//addNotification
+			SushiNotificationRuleForQuery notificationRule = new SushiNotificationRuleForQuery(query, user, SushiNotificationPriorityEnum.HIGH);
+			notificationRule.save();
+			return "ok";		
+		} finally {
+			Persistor.closeEntityManager();
+		}
+	}
+	
+	/**
+	 * parses, validates and sends the given event documents
+	 * @param xmlDocuments
+	 * @return one result per document
+	 */
+	private String[] importEventDocuments(List<String> xmlDocuments) {
+		String[] results = new String[xmlDocuments.size()];
+		List<Document> documents = new ArrayList<Document>();
+		DocumentBuilderPool pool = DocumentBuilderPool.getInstance();
+		DocumentBuilder builder = null;
+		try {
+			builder = pool.borrowBuilder();
+			for (int i = 0; i < xmlDocuments.size(); i++) {
+				try {
+					documents.add(builder.parse(new InputSource(new StringReader(xmlDocuments.get(i)))));
+				} catch (SAXException e) {
+					documents.add(null);
+					results[i] = REJECTED + "event is not parseable: " + e.getMessage();
+				} catch (IOException e) {
+					documents.add(null);
+					results[i] = REJECTED + "event is not parseable: " + e.getMessage();
+				}
+				builder.reset();
+			}
+		} catch (ParserConfigurationException e) {
+			e.printStackTrace();
+			for (int i = 0; i < results.length; i++) {
+				documents.add(null);
+				results[i] = REJECTED + "no parser available";
+			}
+		} finally {
+			pool.returnBuilder(builder);
+		}
+		return sendEvents(documents, results);
+	}
+	
+	/**
+	 * validates the documents against the schemas of their event types, if the schemas were registered by this webservice,
+	 * generates the events and sends the accepted events to the platform together
+	 * @param documents documents of the events, null for events, which are already rejected
+	 * @param results results of the events, filled for the accepted events and the rejected events
+	 * @return results
+	 */
+	private String[] sendEvents(List<Document> documents, String[] results) {
+		Map<String, Validator> validators = new HashMap<String, Validator>();
+		List<SushiEvent> events = new ArrayList<SushiEvent>();
+		List<Integer> eventIndexes = new ArrayList<Integer>();
+		for (int i = 0; i < documents.size(); i++) {
+			Document doc = documents.get(i);
+			if (doc == null) continue;
+			try {
+				validate(doc, validators);
+				events.add(XMLParser.generateEventFromDoc(doc));
+				eventIndexes.add(i);
+			} catch (SAXException e) {
+				results[i] = REJECTED + "event is not valid: " + e.getMessage();
+			} catch (IOException e) {
+				results[i] = REJECTED + "event is not valid: " + e.getMessage();
+			} catch (XMLParsingException e) {
+				results[i] = REJECTED + e.getMessage();
+			}
+		}
+		String result = ACCEPTED;
+		// events of concurrent requests are saved together by the ingestion pipeline
+		IngestionFuture future = Broker.sendAsync(events, null);
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (!future.isPersisted()) {
+				result = REJECTED + "request was interrupted before the events were saved";
+			}
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			// saved events are part of the platform, even if a later step failed
+			if (!future.isPersisted()) {
+				result = REJECTED + "events could not be saved: " + e.getCause().getMessage();
+			}
+		}
+		for (Integer index : eventIndexes) {
+			results[index] = result;
+		}
+		return results;
+	}
+	
+	/**
+	 * validates the document against the compiled schema of its event type
+	 * documents without a known schema are not validated, as they were before
+	 * @param doc
+	 * @param validators validators of this request by schema name, a validator is not thread safe
+	 */
+	private void validate(Document doc, Map<String, Validator> validators) throws SAXException, IOException {
+		Element root = doc.getDocumentElement();
+		if (!root.hasAttributeNS(XML_SCHEMA_INSTANCE_NAMESPACE, "noNamespaceSchemaLocation")) return;
+		String schemaName = XMLParser.getXSDNameFromNode(root);
+		Validator validator = validators.get(schemaName);
+		if (validator == null) {
+			Schema schema = schemas.get(schemaName);
+			if (schema == null) return;
+			validator = schema.newValidator();
+			validators.put(schemaName, validator);
+		}
+		validator.validate(new DOMSource(doc));
+	}
+	
+	/**
+	 * compiles the schema of an event type once, so the events of the type are validated without parsing the XSD again
+	 * @param xsd
+	 * @param schemaName
+	 */
+	private void compileSchema(String xsd, String schemaName) {
+		try {
+			Schema schema;
+			synchronized (schemaFactory) {
+				schema = schemaFactory.newSchema(new StreamSource(new StringReader(xsd)));
+			}
+			schemas.put(schemaName, schema);
+		} catch (SAXException e) {
+			System.err.println("Schema " + schemaName + " could not be compiled, its events are not validated.");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * splits line-delimited events
+	 * @param text
+	 * @param lineDelimited whether the text contains one event per line or is a single event
+	 * @return
+	 */
+	private static List<String> splitLines(String text, boolean lineDelimited) {
+		List<String> lines = new ArrayList<String>();
+		if (text == null) {
+			if (!lineDelimited) lines.add("");
+			return lines;
+		}
+		if (!lineDelimited) {
+			lines.add(text);
+			return lines;
+		}
+		for (String line : text.split("\\r?\\n")) {
+			if (!line.trim().isEmpty()) {
+				lines.add(line);
+			}
+		}
+		return lines;
 	}
 	
 	private Document stringToDoc(String xml) {
@@ -115,25 +344,25 @@ public class EventProcessingPlatformWebservice {
 			e1.printStackTrace();
 			return null;
 		}
-		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-		domFactory.setNamespaceAware(true);
+		DocumentBuilderPool pool = DocumentBuilderPool.getInstance();
 		DocumentBuilder builder = null;
-		try {
-			builder = domFactory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		}
 		// need document from xml for the xml parser
 		Document doc = null;
 		System.out.println("received EventType: \n" + xml);
 		try {
+			builder = pool.borrowBuilder();
 			doc = builder.parse(xsdInputStream);
+		} catch (ParserConfigurationException e) {
+			e.printStackTrace();
+			return null;
 		} catch (SAXException e) {
 			e.printStackTrace();
 			return null;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			pool.returnBuilder(builder);
 		}
 		
 		return doc;
@@ -0,0 +1,81 @@
+package de.hpi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sushi.event.SushiEvent;
+import sushi.event.SushiEventType;
+import sushi.persistence.Persistor;
+
+/**
+ * Tests the import of events by the {@link EventProcessingPlatformWebservice}:
+ * parsing, validation against the registered schema and splitting of envelopes and line-delimited events.
+ */
+public class EventProcessingPlatformWebserviceTest {
+
+	private static final String SCHEMA_NAME = "ServiceEvent";
+	private static final String XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" elementFormDefault=\"qualified\">"
+			+ "<xs:element name=\"ServiceEvent\"><xs:complexType><xs:sequence>"
+			+ "<xs:element name=\"Location\" type=\"xs:int\"/>"
+			+ "</xs:sequence></xs:complexType></xs:element></xs:schema>";
+
+	private EventProcessingPlatformWebservice webservice;
+
+	@Before
+	public void setup() {
+		Persistor.useTestEnviroment();
+		webservice = new EventProcessingPlatformWebservice();
+		assertTrue(webservice.registerEventType(XSD, SCHEMA_NAME));
+	}
+
+	private static String createEvent(String schemaName, String location) {
+		return "<" + schemaName + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:noNamespaceSchemaLocation=\"" + schemaName + ".xsd\">"
+				+ "<Location>" + location + "</Location></" + schemaName + ">";
+	}
+
+	private static long getNumberOfEvents() {
+		return SushiEvent.findByEventType(SushiEventType.findBySchemaName(SCHEMA_NAME)).size();
+	}
+
+	@Test
+	public void testSingleEvent() {
+		assertTrue(webservice.importEvents(createEvent(SCHEMA_NAME, "1")));
+		assertTrue(!webservice.importEvents(createEvent(SCHEMA_NAME, "one")));
+		assertTrue(!webservice.importEvents("<" + SCHEMA_NAME));
+		assertEquals(1, getNumberOfEvents());
+	}
+
+	@Test
+	public void testEnvelope() {
+		String[] results = webservice.importEventBatch("<Events>" + createEvent(SCHEMA_NAME, "1") + "\n"
+				+ createEvent(SCHEMA_NAME, "two") + createEvent("UnknownEvent", "3") + createEvent(SCHEMA_NAME, "4") + "</Events>");
+		assertEquals(4, results.length);
+		assertEquals(EventProcessingPlatformWebservice.ACCEPTED, results[0]);
+		assertTrue(results[1], results[1].startsWith(EventProcessingPlatformWebservice.REJECTED + "event is not valid"));
+		assertTrue(results[2], results[2].startsWith(EventProcessingPlatformWebservice.REJECTED));
+		assertEquals(EventProcessingPlatformWebservice.ACCEPTED, results[3]);
+		assertEquals(2, getNumberOfEvents());
+
+		results = webservice.importEventBatch("<Events>" + createEvent(SCHEMA_NAME, "5"));
+		assertEquals(1, results.length);
+		assertTrue(results[0], results[0].startsWith(EventProcessingPlatformWebservice.REJECTED + "envelope is not parseable"));
+		assertEquals(0, webservice.importEventBatch("<Events/>").length);
+		assertEquals(2, getNumberOfEvents());
+	}
+
+	@Test
+	public void testLineDelimitedEvents() {
+		String[] results = webservice.importEventStream(createEvent(SCHEMA_NAME, "1") + "\r\n\n  \n"
+				+ "<" + SCHEMA_NAME + ">\n" + createEvent(SCHEMA_NAME, "3"));
+		assertEquals(3, results.length);
+		assertEquals(EventProcessingPlatformWebservice.ACCEPTED, results[0]);
+		assertTrue(results[1], results[1].startsWith(EventProcessingPlatformWebservice.REJECTED + "event is not parseable"));
+		assertEquals(EventProcessingPlatformWebservice.ACCEPTED, results[2]);
+		assertEquals(2, getNumberOfEvents());
+		assertEquals(0, webservice.importEventStream(null).length);
+	}
+
+}
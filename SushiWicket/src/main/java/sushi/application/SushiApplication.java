@@ -13,6 +13,8 @@ import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.request.Request;
 import org.apache.wicket.request.Response;
 import org.apache.wicket.request.component.IRequestableComponent;
+import org.apache.wicket.request.cycle.AbstractRequestCycleListener;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.resource.CssResourceReference;
 import org.apache.wicket.request.resource.JavaScriptResourceReference;
 import org.apache.wicket.request.resource.PackageResourceReference;
@@ -26,6 +28,8 @@ import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.attribute.SushiAttributeTypeEnum;
 import sushi.eventhandling.Broker;
+import sushi.persistence.Persistor;
+import sushi.query.TimerService;
 import sushi.transformation.TransformationManager;
 import de.agilecoders.wicket.Bootstrap;
 import de.agilecoders.wicket.markup.html.bootstrap.extensions.html5player.Html5PlayerCssReference;
@@ -81,11 +85,26 @@ public class SushiApplication extends WebApplication {
 		sushiEsper = SushiStreamProcessingAdapter.getInstance();
 //		initializeEventTypesForShowCase();
 		TransformationManager.getInstance();
+		TimerService.getInstance().restore();
 		
 		setAuthorizationStrategy();
+		closeEntityManagerAfterRequests();
 		
 	}
 
+	/**
+	 * Each request is a unit of work with its own persistence context,
+	 * so the request threads do not keep stale objects from previous requests.
+	 */
+	private void closeEntityManagerAfterRequests() {
+		getRequestCycleListeners().add(new AbstractRequestCycleListener() {
+			@Override
+			public void onEndRequest(RequestCycle cycle) {
+				Persistor.closeEntityManager();
+			}
+		});
+	}
+
 	/**
 	 * Initializes the authorization strategy for the web application. 
 	 * Pages, which implement the {@link SushiAuthenticatedWebPage} interface, are only accessible for authenticated users.
@@ -229,18 +229,18 @@ public class CorrelationPage extends AbstractSushiPage {
 	
 	private void addEventTypesToProcessAndCorrelate(AjaxRequestTarget target) {
 		SushiProcess selectedProcess = SushiProcess.findByName(processSelect.getChoices().get(Integer.parseInt(processSelect.getValue()))).get(0);
-		addEventTypesToSelectedProcess(selectedProcess);
+		selectedProcess = addEventTypesToSelectedProcess(selectedProcess);
 		
 		tryToCorrelateEvents(selectedProcess, target);
 	}
 	
-	private void addEventTypesToSelectedProcess(SushiProcess selectedProcess) {
+	private SushiProcess addEventTypesToSelectedProcess(SushiProcess selectedProcess) {
 		if (simpleCorrelationWithRules) {
 			selectedProcess.setEventTypes(simpleCorrelationWithRulesPanel.getCorrelationEventTypes());
 		} else {
 			selectedProcess.setEventTypes(simpleCorrelationPanel.getCorrelationEventTypes());
 		}
-		selectedProcess.merge();
+		return selectedProcess.merge();
 	}
 	
 	/**
@@ -267,15 +267,15 @@ public class CorrelationPage extends AbstractSushiPage {
 		Set<CorrelationRule> correlationRules = new HashSet<CorrelationRule>(simpleCorrelationWithRulesPanel.getCorrelationRules());
 		if (simpleCorrelationWithRules) {
 			if (advancedCorrelationPanel.isTimeCorrelationSelected()) {
-				RuleCorrelator.correlate(correlationRules, selectedProcess, advancedCorrelationPanel.getTimeCondition());
+				selectedProcess = RuleCorrelator.correlate(correlationRules, selectedProcess, advancedCorrelationPanel.getTimeCondition());
 			} else {
-				RuleCorrelator.correlate(correlationRules, selectedProcess, null);
+				selectedProcess = RuleCorrelator.correlate(correlationRules, selectedProcess, null);
 			}
 		} else {
 			if (advancedCorrelationPanel.isTimeCorrelationSelected()) {
-				AttributeCorrelator.correlate(selectedProcess.getEventTypes(), correlationAttributes, selectedProcess, advancedCorrelationPanel.getTimeCondition());
+				selectedProcess = AttributeCorrelator.correlate(selectedProcess.getEventTypes(), correlationAttributes, selectedProcess, advancedCorrelationPanel.getTimeCondition());
 			} else {
-				AttributeCorrelator.correlate(selectedProcess.getEventTypes(), correlationAttributes, selectedProcess, null);
+				selectedProcess = AttributeCorrelator.correlate(selectedProcess.getEventTypes(), correlationAttributes, selectedProcess, null);
 			}
 		}
 		correlationPage.getFeedbackPanel().success("Correlation finished! " + SushiProcessInstance.findByProcess(selectedProcess).size() + " process instances created!");
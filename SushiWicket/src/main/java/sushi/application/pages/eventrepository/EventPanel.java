@@ -131,9 +131,9 @@ public class EventPanel extends Panel {
 	    add(buttonForm);
 		
 		columns = new ArrayList<IColumn<SushiEvent, String>>();
-		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("ID"), "ID"));
-		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("Timestamp"), "timestamp"));
-		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("EventType"), "eventType"));
+		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("ID"), "ID", "ID"));
+		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("Timestamp"), "timestamp", "timestamp"));
+		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("EventType"), "eventType", "eventType"));
 		columns.add(new AbstractColumn<SushiEvent, String>(Model.of("Values"), "values") {
 			@Override
 			public void populateItem(final Item<ICellPopulator<SushiEvent>> item, final String componentId,
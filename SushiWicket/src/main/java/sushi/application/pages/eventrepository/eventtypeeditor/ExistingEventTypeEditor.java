@@ -36,6 +36,7 @@ import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.collection.SushiMapTree;
+import sushi.event.rollup.EventRollup;
 import sushi.eventhandling.Broker;
 import sushi.notification.SushiCondition;
 
@@ -207,6 +208,7 @@ public class ExistingEventTypeEditor extends Panel {
 			public void onSubmit(AjaxRequestTarget target, Form form) {
 				for(SushiEventType selectedEventType : selectedEventTypes){
 					selectedEventType.remove();
+					EventRollup.getInstance().eventTypeRemoved(selectedEventType);
 				}
 				target.add(eventTypesCheckBoxMultipleChoice);
 	        }
@@ -1,16 +1,22 @@
 package sushi.application.pages.eventrepository.model;
 
+import java.io.Serializable;
+import java.util.List;
+
 import sushi.application.pages.eventrepository.EventPanel;
 import sushi.event.SushiEvent;
 import sushi.process.SushiProcessInstance;
 
 /**
  * This class filters {@link SushiEvent}s in the {@link EventPanel}.
+ * The filter is compiled to a condition for the database with {@link #toCondition(List)},
+ * so only the displayed events have to be loaded.
  * @author micha
  */
 public class EventFilter extends AbstractFilter {
 	
 	private static final long serialVersionUID = 1L;
+	private static final String NO_EVENTS = "1 = 0";
 	
 	public EventFilter(){
 		super();
@@ -26,55 +32,97 @@ public class EventFilter extends AbstractFilter {
 		super(filterCriteria, filterCondition, filterValue);
 	}
 
+	/**
+	 * Returns the filter as SQL condition on the table Event for {@link SushiEvent#findByCondition(String, List)}.
+	 * The filter value is passed as positional parameter.
+	 * @param parameters receives the values of the parameters of the condition
+	 * @return condition or null, if the filter matches all events
+	 */
+	public String toCondition(List<Object> parameters) {
+		if(filterCriteria == null || filterCondition == null || filterValue == null){
+			return null;
+		}
+		String operator = getOperator();
+		if(filterCriteria.equals("ID") || filterCriteria.equals("Event Type (ID)") || filterCriteria.equals("Process Instance")){
+			int value;
+			try{
+				value = Integer.parseInt(filterValue.trim());
+			}
+			catch(NumberFormatException e){
+				return NO_EVENTS;
+			}
+			parameters.add(value);
+			String parameter = "?" + parameters.size();
+			if(filterCriteria.equals("ID")){
+				return "ID " + operator + " " + parameter;
+			} else if(filterCriteria.equals("Event Type (ID)")){
+				return "EVENTTYPE_ID " + operator + " " + parameter;
+			} else {
+				return "EXISTS (SELECT * FROM ProcessInstance_Event pie " +
+						"WHERE pie.events_ID = Event.ID AND pie.processInstances_ID " + operator + " " + parameter + ")";
+			}
+		} else if(SushiEvent.findAllEventAttributes().contains(filterCriteria)){
+			// attribute values are compared by equality
+			parameters.add(filterCriteria);
+			String keyParameter = "?" + parameters.size();
+			parameters.add(filterValue);
+			String valueParameter = "?" + parameters.size();
+			return "MapTreeID IN (SELECT mte.SushiMapTree_SushiMapID FROM SushiMapTree_SushiMapTreeElements mte " +
+					"JOIN SushiMapElement me ON me.ID = mte.treeElements_ID " +
+					"WHERE me.MapKey = " + keyParameter + " AND me.MapValue = " + valueParameter + ")";
+		}
+		return NO_EVENTS;
+	}
+
+	private String getOperator() {
+		if(filterCondition.equals("<")){
+			return "<";
+		} else if(filterCondition.equals(">")){
+			return ">";
+		}
+		return "=";
+	}
 
+	/**
+	 * Checks a single event in memory with the same semantics as {@link #toCondition(List)}.
+	 * @param event
+	 * @return
+	 */
 	public boolean match(SushiEvent event) {
 		if(filterCriteria == null || filterCondition == null || filterValue == null){
 			return true;
 		}
-		if(filterCriteria.equals("ID")){
+		if(filterCriteria.equals("ID") || filterCriteria.equals("Event Type (ID)") || filterCriteria.equals("Process Instance")){
+			int value;
 			try{
-				if(filterCondition.equals("<")){
-					if(event.getID() < Integer.parseInt(filterValue)) return true;
-				} else if(filterCondition.equals(">")){
-					if(event.getID() < Integer.parseInt(filterValue)) return true;
-				} else {
-					if(event.getID() == Integer.parseInt(filterValue)) return true;
-				}
+				value = Integer.parseInt(filterValue.trim());
 			}
 			catch(NumberFormatException e){
 				return false;
 			}
-		} else if(filterCriteria.equals("Event Type (ID)")){
-			if(filterCondition.equals("<")){
-				if(event.getEventType().getID() < Integer.parseInt(filterValue)) return true;
-			} else if(filterCondition.equals(">")){
-				if(event.getEventType().getID() > Integer.parseInt(filterValue)) return true;
+			if(filterCriteria.equals("ID")){
+				return compare(event.getID(), value);
+			} else if(filterCriteria.equals("Event Type (ID)")){
+				return event.getEventType() != null && compare(event.getEventType().getID(), value);
 			} else {
-				if(event.getEventType().getID() == Integer.parseInt(filterValue)) return true;
-			}
-			return false;
-		} else if(filterCriteria.equals("Process Instance")){
-			if(filterCondition.equals("<")){
-				for(SushiProcessInstance processInstance : event.getProcessInstances()){
-					if(!(processInstance.getID() < event.getID())) return false;
-				}
-				return true;
-			} else if(filterCondition.equals(">")){
 				for(SushiProcessInstance processInstance : event.getProcessInstances()){
-					if(!(processInstance.getID() > event.getID())) return false;
+					if(compare(processInstance.getID(), value)) return true;
 				}
-				return true;
-			} else {
-				for(SushiProcessInstance processInstance : event.getProcessInstances()){
-					if(!(processInstance.getID() == event.getID())) return false;
-				}
-				return true;
+				return false;
 			}
 		} else if(SushiEvent.findAllEventAttributes().contains(filterCriteria)){
-			return SushiEvent.findByValue(filterCriteria, filterValue).contains(event);
-		} else {
-			return false;
+			Serializable value = event.getValues().get(filterCriteria);
+			return value != null && value.toString().equals(filterValue);
 		}
 		return false;
 	}
+
+	private boolean compare(int actualValue, int value) {
+		if(filterCondition.equals("<")){
+			return actualValue < value;
+		} else if(filterCondition.equals(">")){
+			return actualValue > value;
+		}
+		return actualValue == value;
+	}
 }
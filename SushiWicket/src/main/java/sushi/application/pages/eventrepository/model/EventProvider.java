@@ -1,50 +1,123 @@
 package sushi.application.pages.eventrepository.model;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
-import org.apache.wicket.extensions.markup.html.repeater.data.sort.ISortState;
+import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
 import org.apache.wicket.extensions.markup.html.repeater.data.table.ISortableDataProvider;
 import org.apache.wicket.extensions.markup.html.repeater.data.table.filter.IFilterStateLocator;
-import org.apache.wicket.extensions.markup.html.repeater.util.SingleSortState;
-import org.apache.wicket.model.IModel;
-import org.apache.wicket.model.Model;
-
 
 import sushi.application.components.table.SushiProvider;
-import sushi.application.components.table.model.AbstractDataProvider;
 import sushi.event.SushiEvent;
-import sushi.eventhandling.Broker;
+import sushi.event.rollup.EventRollup;
 
 /**
  * This class is the provider for {@link SushiEvent}s.
  * A filter can be specified to return only some events.
+ * The filter is evaluated by the database and only the events of the displayed page are loaded,
+ * sorted by the database. The number of matching events is cached for {@link #COUNT_CACHE_MILLIS}.
  * @author micha
  */
 public class EventProvider extends SushiProvider<SushiEvent> implements ISortableDataProvider<SushiEvent, String>, IFilterStateLocator {
 	
 	private static final long serialVersionUID = 1L;
+	public static final long COUNT_CACHE_MILLIS = 5000;
+	/** sort properties of the event table and their columns in the database */
+	private static final Map<String, String> SORT_COLUMNS = new LinkedHashMap<String, String>();
+	static {
+		SORT_COLUMNS.put("ID", "ID");
+		SORT_COLUMNS.put("timestamp", "TIMESTAMP");
+		SORT_COLUMNS.put("eventType", "EVENTTYPE_ID");
+	}
 	private EventFilter eventFilter = new EventFilter();
+	private String condition;
+	private List<Object> conditionParameters = new ArrayList<Object>();
+	private long numberOfEvents = -1;
+	private long numberOfEventsTime = 0;
 	
 	/**
 	 * Constructor for providing {@link SushiEvent}s.
 	 */
 	public EventProvider() {
-		super(SushiEvent.findAll());
-		entities = filterEvents(SushiEvent.findAll(), eventFilter);
+		super(new ArrayList<SushiEvent>());
+		sortState.setPropertySortOrder("ID", SortOrder.ASCENDING);
+		compileFilter();
+	}
+	
+	private void compileFilter() {
+		conditionParameters = new ArrayList<Object>();
+		condition = eventFilter.toCondition(conditionParameters);
+		numberOfEvents = -1;
+	}
+	
+	@Override
+	public Iterator<? extends SushiEvent> iterator(long first, long count) {
+		String orderColumn = "ID";
+		boolean ascending = true;
+		for (Entry<String, String> sortColumn : SORT_COLUMNS.entrySet()) {
+			SortOrder sortOrder = sortState.getPropertySortOrder(sortColumn.getKey());
+			if (sortOrder != SortOrder.NONE) {
+				orderColumn = sortColumn.getValue();
+				ascending = (sortOrder == SortOrder.ASCENDING);
+				break;
+			}
+		}
+		return SushiEvent.findByCondition(condition, conditionParameters, orderColumn, ascending, (int) first, (int) count).iterator();
+	}
+	
+	@Override
+	public long size() {
+		if (numberOfEvents < 0 || System.currentTimeMillis() - numberOfEventsTime > COUNT_CACHE_MILLIS) {
+			numberOfEvents = SushiEvent.getNumberOfEvents(condition, conditionParameters);
+			numberOfEventsTime = System.currentTimeMillis();
+		}
+		return numberOfEvents;
+	}
+	
+	/**
+	 * Returns all events matching the filter, e.g. for an export. 
+	 * The events are loaded from the database on each call.
+	 */
+	@Override
+	public List<SushiEvent> getEntities() {
+		return SushiEvent.findByCondition(condition, conditionParameters);
+	}
+	
+	@Override
+	public void selectEntry(int entryId) {
+		SushiEvent event = SushiEvent.findByID(entryId);
+		if (event != null) {
+			selectEntry(event);
+		}
 	}
 	
-	private List<SushiEvent> filterEvents(List<SushiEvent> eventsToFilter, EventFilter eventFilter) {
-		List<SushiEvent> returnedEvents = new ArrayList<SushiEvent>();
-		for(SushiEvent event: eventsToFilter){
-			if(eventFilter.match(event)){
-				returnedEvents.add(event);
+	@Override
+	public void deselectEntry(int entryId) {
+		for (SushiEvent event : new ArrayList<SushiEvent>(selectedEntities)) {
+			if (event.getID() == entryId) {
+				deselectEntry(event);
+				return;
 			}
 		}
-		return returnedEvents;
+	}
+	
+	@Override
+	public void selectAllEntries() {
+		selectedEntities.addAll(getEntities());
+	}
+	
+	@Override
+	public void deleteSelectedEntries() {
+		for (SushiEvent event : selectedEntities) {
+			event.remove();
+		}
+		EventRollup.getInstance().eventsRemoved(selectedEntities);
+		selectedEntities.clear();
+		numberOfEvents = -1;
 	}
 	
 	@Override
@@ -55,6 +128,7 @@ public class EventProvider extends SushiProvider<SushiEvent> implements ISortabl
 	@Override
 	public void setFilterState(Object state) {
 		this.eventFilter = (EventFilter) state;
+		compileFilter();
 	}
 
 	public EventFilter getEventFilter() {
@@ -63,7 +137,7 @@ public class EventProvider extends SushiProvider<SushiEvent> implements ISortabl
 
 	public void setEventFilter(EventFilter eventFilter) {
 		this.eventFilter = eventFilter;
-		entities = filterEvents(SushiEvent.findAll(), eventFilter);
+		compileFilter();
 	}
 		
 }
@@ -112,9 +112,9 @@ public class Export extends AbstractSushiPage {
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	private void addEventTable() {
 		columns = new ArrayList<IColumn<SushiEvent, String>>();
-		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("ID"), "ID"));
-		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("Timestamp"), "timestamp"));
-		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("EventType"), "eventType"));
+		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("ID"), "ID", "ID"));
+		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("Timestamp"), "timestamp", "timestamp"));
+		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("EventType"), "eventType", "eventType"));
 		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("Values"), "values"));
 		columns.add(new PropertyColumn<SushiEvent, String>(Model.of("Process Instances"), "processInstances"));
 		
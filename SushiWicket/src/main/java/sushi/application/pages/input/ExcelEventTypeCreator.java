@@ -43,8 +43,10 @@ import sushi.event.attribute.SushiAttribute;
 import sushi.event.attribute.SushiAttributeTree;
 import sushi.event.attribute.SushiAttributeTypeEnum;
 import sushi.eventhandling.Broker;
+import sushi.eventhandling.IngestingEventBatchHandler;
 import sushi.excel.importer.ExcelImporter;
 import sushi.excel.importer.FileNormalizer;
+import sushi.excel.importer.ImportException;
 import sushi.excel.importer.SushiImportEvent;
 import sushi.excel.importer.TimeStampNames;
 import sushi.xml.importer.AbstractXMLParser;
@@ -255,20 +257,42 @@ public class ExcelEventTypeCreator extends AbstractSushiPage {
 					target.add(excelEventTypeCreator.getFeedbackPanel());
 					return;
 				}
-				List<SushiEvent> events = fileNormalizer.importEventsFromFile(filePath, eventTypeAttributesTree.getRoots(), timestampName);
-				if (eventTypeUsingImportTime) {
-					for (SushiEvent actualEvent : events) {
-						actualEvent.setTimestamp(new Date());
+				final SushiEventType importedEventType = eventType;
+				IngestingEventBatchHandler handler = new IngestingEventBatchHandler() {
+					@Override
+					protected void prepare(List<SushiEvent> events) {
+						for (SushiEvent event : events) {
+							if (eventTypeUsingImportTime) {
+								event.setTimestamp(new Date());
+							}
+							event.setEventType(importedEventType);
+						}
 					}
+				};
+				ImportException importException = null;
+				try {
+					fileNormalizer.importEventsFromFile(filePath, eventTypeAttributesTree.getRoots(), timestampName, FileNormalizer.DEFAULT_BATCH_SIZE, handler);
+				} catch (ImportException e) {
+					importException = e;
 				}
-				for (SushiEvent event : events) {
-					event.setEventType(eventType);
+				long numberOfEvents = handler.awaitIngestion();
+				long numberOfUnsavedEvents = handler.getNumberOfSentEvents() - numberOfEvents;
+				// the events before a failure were already added, so the user has to know how far the import got
+				if (importException != null || numberOfUnsavedEvents > 0) {
+					String feedback = "Only " + numberOfEvents + " events have been added to " + eventTypeName + ".";
+					if (numberOfUnsavedEvents > 0) {
+						feedback += " " + numberOfUnsavedEvents + " events could not be saved.";
+					}
+					if (importException != null) {
+						feedback += " The import stopped at row " + importException.getRowNumber() + ": " + importException.getCause().getMessage();
+					}
+					excelEventTypeCreator.getFeedbackPanel().error(feedback);
+					target.add(excelEventTypeCreator.getFeedbackPanel());
+					return;
 				}
-
-				Broker.send(events);
 				PageParameters pageParameters = new PageParameters();
 
-				pageParameters.add("successFeedback", events.size() + " events have been added to " + eventTypeName);
+				pageParameters.add("successFeedback", numberOfEvents + " events have been added to " + eventTypeName);
 				setResponsePage(MainPage.class, pageParameters);
 			}
 		};
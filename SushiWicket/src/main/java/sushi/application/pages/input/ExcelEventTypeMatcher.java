@@ -28,9 +28,10 @@ import sushi.application.pages.main.MainPage;
 import sushi.csv.importer.CSVImporter;
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
-import sushi.eventhandling.Broker;
+import sushi.eventhandling.IngestingEventBatchHandler;
 import sushi.excel.importer.ExcelImporter;
 import sushi.excel.importer.FileNormalizer;
+import sushi.excel.importer.ImportException;
 import sushi.excel.importer.SushiImportEvent;
 
 public class ExcelEventTypeMatcher extends AbstractSushiPage {
@@ -135,16 +136,43 @@ public class ExcelEventTypeMatcher extends AbstractSushiPage {
 				if (selectedEventTypes.isEmpty()) {
 					getFeedbackPanel().error("Please select at least one event type!");
 				} else {
-					int eventsCount = 0;
-					for (SushiEventType selectedEventType : selectedEventTypes) {
+					long eventsCount = 0;
+					StringBuilder failures = new StringBuilder();
+					for (final SushiEventType selectedEventType : selectedEventTypes) {
 						SushiEventType eventType = selectedEventType;
 						String timestamp = eventType.getTimestampName();
-						List<SushiEvent> events = fileNormalizer.importEventsFromFile(filePath, eventType.getRootLevelValueTypes(), timestamp);
-						for (SushiEvent event : events) {
-							event.setEventType(selectedEventType);
+						IngestingEventBatchHandler handler = new IngestingEventBatchHandler() {
+							@Override
+							protected void prepare(List<SushiEvent> events) {
+								for (SushiEvent event : events) {
+									event.setEventType(selectedEventType);
+								}
+							}
+						};
+						ImportException importException = null;
+						try {
+							fileNormalizer.importEventsFromFile(filePath, eventType.getRootLevelValueTypes(), timestamp, FileNormalizer.DEFAULT_BATCH_SIZE, handler);
+						} catch (ImportException e) {
+							importException = e;
 						}
-						Broker.send(events);
-						eventsCount = events.size();
+						long numberOfEvents = handler.awaitIngestion();
+						long numberOfUnsavedEvents = handler.getNumberOfSentEvents() - numberOfEvents;
+						eventsCount += numberOfEvents;
+						// the events before a failure were already added, so the user has to know how far the import got
+						if (importException != null || numberOfUnsavedEvents > 0) {
+							failures.append(" Only " + numberOfEvents + " events have been added to " + eventType.getTypeName() + ".");
+							if (numberOfUnsavedEvents > 0) {
+								failures.append(" " + numberOfUnsavedEvents + " events could not be saved.");
+							}
+							if (importException != null) {
+								failures.append(" The import stopped at row " + importException.getRowNumber() + ": " + importException.getCause().getMessage());
+							}
+						}
+					}
+					if (failures.length() > 0) {
+						getFeedbackPanel().error(failures.toString().trim());
+						target.add(getFeedbackPanel());
+						return;
 					}
 					String selectedEventTypesString = selectedEventTypes.toString().substring(1, selectedEventTypes.toString().length()-1);
 					PageParameters pageParameters = new PageParameters();
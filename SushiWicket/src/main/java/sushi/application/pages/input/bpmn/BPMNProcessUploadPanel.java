@@ -143,8 +143,8 @@ public class BPMNProcessUploadPanel extends Panel{
 				if(!containsOtherProcessSameBPMNProcessName(process, bpmnProcessNameInputValue)){
 					processModel.setName(bpmnProcessNameInputValue);
 	            	process.setBpmnProcess(processModel);
-	            	processModel.save();
-	            	process.save();
+	            	processModel = (BPMNProcess) processModel.save();
+	            	process = process.save();
 	            	saveModelButton.setVisible(false);
 	            	cancelButton.setVisible(false);
 	            	saveChangesButton.setVisible(true);
@@ -200,8 +200,8 @@ public class BPMNProcessUploadPanel extends Panel{
 				processModel.setName(bpmnProcessNameInputValue);
 				//TODO: geändertes Modell einlesen
 				
-            	processModel.save();
-            	process.save();
+            	processModel = (BPMNProcess) processModel.save();
+            	process = process.save();
             }
         });
 		saveChangesButton.setVisible(false);
@@ -13,9 +13,13 @@ import org.apache.tools.ant.util.DateUtils;
 
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
+import sushi.event.rollup.EventRollup;
+import sushi.event.rollup.RollupBucket;
+import sushi.event.rollup.RollupGranularity;
 import sushi.process.SushiProcessInstance;
 import sushi.visualisation.SushiEventView;
 import sushi.visualisation.SushiChartConfiguration;
+import sushi.visualisation.SushiTimePeriodEnum;
 
 import com.googlecode.wickedcharts.highcharts.options.Axis;
 import com.googlecode.wickedcharts.highcharts.options.AxisType;
@@ -35,13 +39,18 @@ import com.googlecode.wickedcharts.highcharts.options.series.CustomCoordinatesSe
 /**
  * This class prepares a splatter diagram that illustrates the occurence of events of certain eventtypes
  * This object can be used to create a chart-object with the wicked chart framework.
+ * Event types with more than {@link #MAXIMUM_NUMBER_OF_PLOTTED_EVENTS} events in the time period
+ * are shown with one point per non-empty bucket of the {@link EventRollup} instead of one point per event.
  */
 public class EventViewOptions extends Options{
 	
+	public static final int MAXIMUM_NUMBER_OF_PLOTTED_EVENTS = 1000;
+	
 	public SushiEventView eventView;
 
     private List<Coordinate<String, Number>> eventsWithoutProcessInstance = new ArrayList<Coordinate<String, Number>>();
     private HashMap<SushiProcessInstance, List<Coordinate<String, Number>>> processSeriesData = new HashMap<SushiProcessInstance, List<Coordinate<String, Number>>>();
+    private HashMap<SushiEventType, List<Coordinate<String, Number>>> aggregatedSeriesData = new HashMap<SushiEventType, List<Coordinate<String, Number>>>();
 	
 	private HashMap<SushiEventType, Integer> mappingTypeToInt = new HashMap<SushiEventType, Integer>();
 
@@ -103,6 +112,15 @@ public class EventViewOptions extends Options{
 		    addSeries(series);
 	    }
 	    
+	    //add series for event types shown by their buckets
+	    String granularity = RollupGranularity.forPeriod(eventView.getTimePeriod()).name().toLowerCase();
+	    for (Entry<SushiEventType, List<Coordinate<String, Number>>> seriesTuple : aggregatedSeriesData.entrySet()) {
+	    	CustomCoordinatesSeries<String, Number> series = new CustomCoordinatesSeries<String, Number>();
+		    series.setName(seriesTuple.getKey().getTypeName() + " (per " + granularity + ")");
+		    series.setData(seriesTuple.getValue());
+		    addSeries(series);
+	    }
+	    
 		//add series for uncorrelated events
 	    CustomCoordinatesSeries<String, Number> series = new CustomCoordinatesSeries<String, Number>();
 	    series.setName("uncorrelated");
@@ -118,27 +136,43 @@ public class EventViewOptions extends Options{
 	}
 	  
 	private void sortEventsForEventType(SushiEventType eventType){
-		for (SushiEvent event : SushiEvent.findByEventTypeAndTime(eventType, eventView.getTimePeriod())) {
+		//the rollups tell, whether the events of the time period can be plotted one by one
+		SushiTimePeriodEnum period = eventView.getTimePeriod();
+		Date start = (period == SushiTimePeriodEnum.INF) ? null : period.getStartTime();
+		List<RollupBucket> buckets = EventRollup.getInstance().getEventCounts(eventType, RollupGranularity.forPeriod(period), start, null);
+		long numberOfEvents = 0;
+		for (RollupBucket bucket : buckets) {
+			numberOfEvents += bucket.getNumberOfEvents();
+		}
+		if (numberOfEvents > MAXIMUM_NUMBER_OF_PLOTTED_EVENTS) {
+			List<Coordinate<String, Number>> seriesData = new ArrayList<Coordinate<String, Number>>();
+			for (RollupBucket bucket : buckets) {
+				seriesData.add(getCoordinate(bucket.getBucketStart(), eventType));
+			}
+			aggregatedSeriesData.put(eventType, seriesData);
+			return;
+		}
+		for (SushiEvent event : SushiEvent.findByEventTypeAndTime(eventType, period)) {
 			List<SushiProcessInstance> processInstances = event.getProcessInstances();
 			if (processInstances.isEmpty()) {
 				//no process instance
-				eventsWithoutProcessInstance.add(getCoordinate(event, eventType));
+				eventsWithoutProcessInstance.add(getCoordinate(event.getTimestamp(), eventType));
 				continue;
 			}
 			for (SushiProcessInstance instance : processInstances) {
 				List<Coordinate<String, Number>> seriesData = processSeriesData.get(instance);
-				if (seriesData.equals(null)) {	//create new seriesDatea
+				if (seriesData == null) {	//create new seriesDatea
 				    seriesData = new ArrayList<Coordinate<String, Number>>();
 				}
-				seriesData.add(getCoordinate(event, eventType));
+				seriesData.add(getCoordinate(event.getTimestamp(), eventType));
 			    processSeriesData.put(instance, seriesData);
 			}
 		}
 	}
 	
-	private Coordinate<String, Number> getCoordinate(SushiEvent event, SushiEventType eventType) {
+	private Coordinate<String, Number> getCoordinate(Date timestamp, SushiEventType eventType) {
 		return new Coordinate<String, Number>
-		(DateUtils.format(event.getTimestamp(), "'Date.UTC('yyyy, M, d, h, m, s')'"),
+		(DateUtils.format(timestamp, "'Date.UTC('yyyy, M, d, h, m, s')'"),
 				mappingTypeToInt.get(eventType));
 	}
 
@@ -20,10 +20,11 @@ import org.apache.wicket.model.PropertyModel;
 import org.odlabs.wiquery.ui.slider.AjaxSlider;
 
 import sushi.application.pages.eventrepository.eventtypeeditor.model.EventTypeNamesProvider;
-import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttribute;
 import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.event.rollup.AttributeStatistics;
+import sushi.event.rollup.EventRollup;
 import sushi.visualisation.SushiChartTypeEnum;
 import sushi.visualisation.SushiChartConfiguration;
 import de.agilecoders.wicket.markup.html.bootstrap.common.NotificationPanel;
@@ -137,9 +138,13 @@ public class ChartConfigurationPanel extends Panel{
 		if (isSliderInvisible()) {
 			return;
 		}
-		//find smallest ang biggest value from selected attribute
-		long min = SushiEvent.getMinOfAttributeValue(selectedAttribute.getName(), selectedEventType);
-		long max = SushiEvent.getMaxOfAttributeValue(selectedAttribute.getName(), selectedEventType);
+		//find smallest and biggest value from selected attribute in the rollups
+		AttributeStatistics statistics = EventRollup.getInstance().getAttributeStatistics(selectedEventType, selectedAttribute.getName());
+		if (statistics == null) {
+			return;
+		}
+		long min = (long) Math.floor(statistics.getMinimum());
+		long max = (long) Math.ceil(statistics.getMaximum());
 		//the maximum should be the difference from the min-value to the max-value
 		slider.setMax(Math.abs(max) + Math.abs(min));
 		sliderContainer.detach();
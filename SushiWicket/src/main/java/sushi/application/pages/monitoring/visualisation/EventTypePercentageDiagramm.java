@@ -1,7 +1,9 @@
 package sushi.application.pages.monitoring.visualisation;
  
-import sushi.event.SushiEvent;
+import java.util.Map;
+
 import sushi.event.SushiEventType;
+import sushi.event.rollup.EventRollup;
 
 import com.googlecode.wickedcharts.highcharts.options.ChartOptions;
 import com.googlecode.wickedcharts.highcharts.options.Cursor;
@@ -63,15 +65,17 @@ public class EventTypePercentageDiagramm extends Options {
 	    .setType(SeriesType.PIE)
 	    .setName("Event Types Percentage");
 		
-		//get overall number of events
-		double numberOfEvents = SushiEvent.getNumberOfEvents();
+		//get overall number of events and the numbers of events by event type from the rollups
+		EventRollup rollup = EventRollup.getInstance();
+		double numberOfEvents = rollup.getNumberOfEvents();
+		Map<Integer, Long> numbersOfEventsByEventTypeID = rollup.getNumberOfEventsByEventTypeID();
 	
 		for (SushiEventType type : SushiEventType.findAll()) {
-			double numberOfEventsOfEventType = SushiEvent.getNumberOfEventsByEventType(type);
+			Long numberOfEventsOfEventType = numbersOfEventsByEventTypeID.get(type.getID());
 			double percentage = 0;
 			if (numberOfEvents > 0) {
 				//calculate percentage
-				percentage = numberOfEventsOfEventType / numberOfEvents;
+				percentage = ((numberOfEventsOfEventType == null) ? 0 : numberOfEventsOfEventType) / numberOfEvents;
 			}
 			series.addPoint(new Point(type.getTypeName(), Math.round(percentage* 100)/100.0));
 		}
@@ -2,10 +2,13 @@ package sushi.application.pages.monitoring.visualisation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
 
 import sushi.event.SushiEvent;
 import sushi.event.SushiEventType;
 import sushi.event.attribute.SushiAttributeTypeEnum;
+import sushi.event.rollup.EventRollup;
 import sushi.visualisation.SushiChartConfiguration;
 
 import com.googlecode.wickedcharts.highcharts.options.Axis;
@@ -130,49 +133,26 @@ public class SushiColumnChartOptions extends Options {
   }
 
   /**
-   * create data series for integer attributes
+   * create data series for integer attributes from the histogram of the rollups,
+   * each range of rangeSize values will be one column
    * @return data series
    */
   public List<SimpleSeries> getIntegerValues() {
-	  try{
-		  List<SimpleSeries> series = new ArrayList<SimpleSeries>();
-		  //build groups
-		  List<IntegerBarChartValue> periods = new ArrayList<IntegerBarChartValue>();
-		  long max = SushiEvent.getMaxOfAttributeValue(attributeName, eventType);
-		  long min = SushiEvent.getMinOfAttributeValue(attributeName, eventType);
-		  if (min < 0) {
-			  //build ranges for min to 0
-			  for (int i = -1; i <= min; i -= rangeSize) {
-				  periods.add(new IntegerBarChartValue(i - rangeSize-1, i));
-			  }
-		  }
-			  // build ranges from 0 up  
-		  for (int i = 0; i <= max; i += rangeSize) {
-			  periods.add(new IntegerBarChartValue(i, i + rangeSize-1));
-		  }
-		  //collect frequencies
-		  List<SushiEvent> events = SushiEvent.findByEventType(eventType);
-		  for (SushiEvent event : events) {
-			  int value = Integer.parseInt((String) event.getValues().getValueOfAttribute(attributeName));
-			  for (IntegerBarChartValue period : periods) {
-				  if (period.containsValue(value)) {
-					  period.increaseFrequency();
-					  break;
-				  }
-			  }
-		  }
-		  //put into series
-		  for (IntegerBarChartValue value : periods) {
-			  if (value.getFrequency() == 0) continue;
-			  SimpleSeries serie = new SimpleSeries();
-		      serie.setName(value.getNameOfPeriod());
-		      serie.setData(value.getFrequency());
-			  series.add(serie);
-		  }
-		  return series;
-	  } catch(Exception e) {
+	  int binWidth = Math.max(1, rangeSize);
+	  SortedMap<Long, Long> histogram = EventRollup.getInstance().getHistogram(eventType, attributeName, binWidth);
+	  if (histogram.isEmpty()) {
+		  //no integer values known, e.g. for nested attributes
 		  return getStringSeries();
 	  }
+	  List<SimpleSeries> series = new ArrayList<SimpleSeries>();
+	  for (Entry<Long, Long> bin : histogram.entrySet()) {
+		  IntegerBarChartValue period = new IntegerBarChartValue(bin.getKey().intValue(), (int) (bin.getKey() + binWidth - 1));
+		  SimpleSeries serie = new SimpleSeries();
+	      serie.setName(period.getNameOfPeriod());
+	      serie.setData(bin.getValue());
+		  series.add(serie);
+	  }
+	  return series;
   }
 
 }
\ No newline at end of file